@@ -0,0 +1,131 @@
+package com.gmail.benrcarver.distributed.workload;
+
+import com.gmail.benrcarver.distributed.FSOperation;
+import com.gmail.benrcarver.distributed.coin.InterleavedMultiFaceCoin;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.TimelineRecorder;
+import com.gmail.benrcarver.distributed.workload.files.CompactPathStore;
+import com.gmail.benrcarver.distributed.workload.files.FilePool;
+import com.gmail.benrcarver.distributed.workload.files.FilePoolUtils;
+import com.gmail.benrcarver.distributed.workload.files.FileSelectionPolicy;
+import com.gmail.benrcarver.distributed.workload.files.FileTreeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of the client-side work that the {@link RandomlyGeneratedWorkload.Worker} loop does around each
+ * file system operation: flipping the operation coin, selecting a path from the file pool, building rename targets,
+ * and recording the operation's latency into the per-thread histograms and the shared timeline. The HDFS client
+ * call itself is left out.
+ *
+ * Run with {@code mvn -P jmh test-compile exec:exec}. The {@code gc} profiler (enabled by default) reports the
+ * bytes allocated per operation; {@code WorkerLoopAllocationTest} checks the same loop against a fixed budget.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorkerLoopBenchmark {
+    /**
+     * The number of files in the pool when each trial starts.
+     */
+    @Param({"100000", "1000000"})
+    public int numFiles;
+
+    private InterleavedMultiFaceCoin coin;
+    private FilePool pool;
+    private LatencyRecorder latencyRecorder;
+    private TimelineRecorder timeline;
+    private final StringBuilder renameTarget = new StringBuilder(256);
+
+    private String path;
+    private long latency = 1000000L;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Mostly reads and metadata operations, plus renames. Creates and deletes are left out so that the size of
+        // the pool does not change during a trial.
+        coin = new InterleavedMultiFaceCoin(new BigDecimal(0), new BigDecimal(0),
+                new BigDecimal(40), new BigDecimal(10), new BigDecimal(0), new BigDecimal(10),
+                new BigDecimal(10), new BigDecimal(0), new BigDecimal(0), new BigDecimal(0),
+                new BigDecimal(0), new BigDecimal(20), new BigDecimal(10), new BigDecimal(0),
+                new BigDecimal(0), new SplittableRandom(42));
+
+        pool = new FileTreeGenerator("/bench", 16, 4, 6,
+                new CompactPathStore(FileTreeGenerator.THRESHOLD), FileSelectionPolicy.UNIFORM);
+        pool.setRandom(new SplittableRandom(7));
+        for (int i = 0; i < numFiles; i++)
+            pool.fileCreationSucceeded(pool.getFileToCreate());
+
+        latencyRecorder = new LatencyRecorder(7);
+        timeline = new TimelineRecorder(100);
+        path = pool.getFileToRead();
+    }
+
+    /**
+     * Everything the worker does for one operation, other than the operation itself.
+     */
+    @Benchmark
+    public String workerLoop() {
+        FSOperation operation = coin.flip();
+        String selected = FilePoolUtils.getPath(operation, pool);
+        if (selected == null)
+            return null;
+
+        boolean isRename = operation == FSOperation.RENAME_FILE;
+        String to = isRename ? RandomlyGeneratedWorkload.getRenameTarget(selected, renameTarget) : "";
+
+        latency = nextLatency();
+        latencyRecorder.recordOperation(operation.getName(), latency);
+        timeline.record(operation.getName(), latency, true, System.currentTimeMillis());
+
+        if (isRename)
+            pool.fileRenamed(selected, to);
+        return to;
+    }
+
+    @Benchmark
+    public FSOperation flipCoin() {
+        return coin.flip();
+    }
+
+    @Benchmark
+    public String selectFileToRead() {
+        return pool.getFileToRead();
+    }
+
+    @Benchmark
+    public String buildRenameTarget() {
+        return RandomlyGeneratedWorkload.getRenameTarget(path, renameTarget);
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        latency = nextLatency();
+        latencyRecorder.recordOperation(FSOperation.READ_FILE.getName(), latency);
+        timeline.record(FSOperation.READ_FILE.getName(), latency, true, System.currentTimeMillis());
+    }
+
+    /**
+     * Vary the latencies, so that they do not all fall into the same bucket of the histograms.
+     */
+    private long nextLatency() {
+        return 100000L + (latency * 31 + 7) % 10000000L;
+    }
+}
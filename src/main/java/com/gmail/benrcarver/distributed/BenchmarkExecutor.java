@@ -0,0 +1,773 @@
+package com.gmail.benrcarver.distributed;
+
+import com.gmail.benrcarver.distributed.util.FileData;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.TimelineRecorder;
+import com.gmail.benrcarver.distributed.util.VirtualThreads;
+import io.hops.metrics.OperationPerformed;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math3.util.Pair;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent engine used to execute benchmarks on behalf of {@link Commands#executeBenchmark}.
+ *
+ * Previously, every trial created a brand-new set of platform threads, each of which grabbed an HDFS client
+ * from the cache and returned it at the end of the trial. This executor instead keeps its worker threads alive
+ * between trials. Each worker is bound to a single {@link DistributedFileSystem} client for its entire lifetime,
+ * so the second (and every subsequent) trial starts with hot threads, warm clients, and a warm JIT.
+ *
+ * The executor only ever grows. If a trial requests fewer threads than the executor currently has, the
+ * surplus workers simply sit out that trial. Each trial gets its own start barrier and end semaphore, which
+ * preserves the exact timing semantics of the old, per-trial threads: the clock starts once every participating
+ * worker is ready and stops as soon as the last worker finishes its operations (before any metrics are collected).
+ *
+ * When {@link Commands#USE_VIRTUAL_THREADS} is set, the workers are virtual threads rather than platform threads.
+ * This allows for many more concurrent clients per VM. If the flag changes between trials, the existing workers
+ * are shut down and recreated using the new kind of thread.
+ *
+ * By default, each worker issues one operation at a time. In pipelined mode ({@code opsInFlight > 1}), each
+ * worker is a logical client that keeps {@code opsInFlight} operations outstanding, each on its own HDFS client.
+ * The operations are submitted to a shared executor through an {@link ExecutorCompletionService}, and the worker
+ * issues the next operation as soon as any outstanding one completes. The HDFS client API is blocking, so each
+ * in-flight operation still occupies a thread of that executor; combine pipelining with virtual threads to
+ * generate a high offered load without a correspondingly high number of platform threads.
+ */
+public class BenchmarkExecutor {
+    public static final Logger LOG = LoggerFactory.getLogger(BenchmarkExecutor.class);
+
+    private static final String EMPTY_STRING = "";
+
+    /**
+     * The number of times a worker whose HDFS client could not be created is replaced before the trial fails.
+     */
+    private static final int MAX_WORKER_CREATION_ATTEMPTS = 3;
+
+    /**
+     * The worker threads owned by this executor. Only modified while holding the executor's monitor.
+     */
+    private final List<BenchmarkWorker> workers = new ArrayList<>();
+
+    /**
+     * The number of trials that this executor has executed.
+     */
+    private int trialsExecuted = 0;
+
+    /**
+     * Whether the current workers are running on virtual threads.
+     */
+    private boolean virtualWorkers = false;
+
+    /**
+     * Runs the in-flight operations of pipelined trials. Created on demand, using the same kind of threads as
+     * the workers.
+     */
+    private ExecutorService pipelineExecutor;
+
+    /**
+     * Execute a single trial of a benchmark using the first {@code numThreads} workers of this executor.
+     * New workers are created if there are not enough of them.
+     *
+     * See {@link Commands#executeBenchmark} for a description of the parameters.
+     *
+     * @return A result containing all the metric information for this trial.
+     */
+    public synchronized DistributedBenchmarkResult execute(
+            DistributedFileSystem sharedHdfs,
+            int numThreads,
+            String[][] fileBatches,
+            int operationsPerFile,
+            int opCode,
+            FSOperation operation,
+            int opsInFlight) throws InterruptedException {
+        if (fileBatches.length < numThreads)
+            throw new IllegalArgumentException("Received only " + fileBatches.length +
+                    " file batches for " + numThreads + " threads.");
+        if (opsInFlight < 1)
+            throw new IllegalArgumentException("The number of operations in flight per client must be at least 1. " +
+                    "Got: " + opsInFlight);
+
+        boolean useVirtualThreads = Commands.USE_VIRTUAL_THREADS;
+        if (useVirtualThreads != virtualWorkers && workers.size() > 0) {
+            LOG.info("Switching benchmark workers to " + (useVirtualThreads ? "virtual" : "platform") + " threads.");
+            shutdown();
+        }
+        virtualWorkers = useVirtualThreads;
+
+        int numReused = Math.min(numThreads, workers.size());
+        ensureWorkers(sharedHdfs, numThreads);
+
+        trialsExecuted++;
+        LOG.info("Starting trial #" + trialsExecuted + " of the benchmark executor with " + numThreads +
+                (virtualWorkers ? " virtual" : "") + " thread(s). Reusing " + numReused +
+                " existing worker(s), created " + (numThreads - numReused) + " new worker(s).");
+
+        if (opsInFlight > 1) {
+            LOG.info("Each worker will keep " + opsInFlight + " operations in flight.");
+            if (pipelineExecutor == null)
+                pipelineExecutor = Executors.newCachedThreadPool(
+                        VirtualThreads.newThreadFactory("benchmark-op-", virtualWorkers));
+        }
+
+        Trial trial = new Trial(sharedHdfs, numThreads, fileBatches, operationsPerFile, operation, opsInFlight,
+                pipelineExecutor);
+        for (int i = 0; i < numThreads; i++) {
+            workers.get(i).assign(trial);
+        }
+
+        trial.readySemaphore.acquire();             // Will block until all client threads are ready to go.
+        long start = System.currentTimeMillis();    // Start the clock.
+        trial.startLatch.countDown();               // Let the threads start.
+
+        // As soon as the workers finish, they call release() on the endSemaphore. Once all workers have
+        // done this, we designate the benchmark as ended and record the stop time. Then we wait for the
+        // workers to place their statistics into the appropriate collections where we can aggregate them.
+        trial.endSemaphore.acquire();
+        long end = System.currentTimeMillis();
+
+        LOG.info("Benchmark completed in " + (end - start) + "ms. Waiting for the " + numThreads +
+                " worker(s) to publish their metrics now...");
+        trial.collectedLatch.await();
+
+        List<OperationPerformed> allOperationsPerformed = new ArrayList<>();
+        Pair<Integer, Integer> cacheHitsAndMisses =
+                Commands.mergeMetricInformation(sharedHdfs, trial.operationsPerformed, allOperationsPerformed);
+        int totalCacheHits = cacheHitsAndMisses.getFirst();
+        int totalCacheMisses = cacheHitsAndMisses.getSecond();
+
+        double durationSeconds = (end - start) / 1.0e3;
+
+        int numSuccess = trial.numSuccessfulOps.get();
+        int totalOperations = trial.numOps.get();
+        LOG.info("Finished performing all " + totalOperations + " operations in " + durationSeconds + " sec.");
+        double totalThroughput = (double)totalOperations / durationSeconds;
+        double successThroughput = (double)numSuccess / durationSeconds;
+        LOG.info("Number of successful operations: " + numSuccess);
+        LOG.info("Number of failed operations: " + (totalOperations - numSuccess));
+
+        // Each worker recorded into its own histograms, so we merge them here without any locking.
+        LatencyRecorder latencies = new LatencyRecorder();
+        for (int i = 0; i < numThreads; i++)
+            latencies.merge(trial.latencyRecorders[i]);
+        latencies.logSummary(LOG);
+
+        // The raw samples are only retained when they'll actually be used, as this is O(operations).
+        DescriptiveStatistics latencyTcp = null;
+        DescriptiveStatistics latencyHttp = null;
+        if (Commands.keepRawLatencies()) {
+            latencyTcp = new DescriptiveStatistics();
+            latencyHttp = new DescriptiveStatistics();
+            for (int i = 0; i < numThreads; i++) {
+                if (trial.tcpLatencies[i] != null)
+                    for (double latency : trial.tcpLatencies[i])
+                        latencyTcp.addValue(latency);
+                if (trial.httpLatencies[i] != null)
+                    for (double latency : trial.httpLatencies[i])
+                        latencyHttp.addValue(latency);
+            }
+
+            sharedHdfs.addLatencies(latencyTcp.getValues(), latencyHttp.getValues());
+        }
+        LOG.info("Total Throughput: " + totalThroughput + " ops/sec.");
+        LOG.info("Successful Throughput: " + successThroughput + " ops/sec.");
+        if (latencies.getNumReads() > 0)
+            LOG.info("Read Throughput: " + String.format("%.2f", latencies.getBytesRead() / durationSeconds / 1.0e6) +
+                    " MB/sec.");
+
+        int numCarrierThreads = trial.carrierThreads.size();
+        // On JVMs without virtual threads, the workers fell back to platform threads.
+        if (virtualWorkers && VirtualThreads.isSupported())
+            LOG.info("The " + numThreads + " virtual thread(s) ran on " + numCarrierThreads + " carrier thread(s).");
+
+        DistributedBenchmarkResult result = new DistributedBenchmarkResult(null, opCode, numSuccess,
+                durationSeconds, start, end, totalCacheHits, totalCacheMisses,
+                Commands.TRACK_OP_PERFORMED ? allOperationsPerformed.toArray(new OperationPerformed[0]) : null,
+                Commands.TRACK_OP_PERFORMED ? sharedHdfs.getTransactionEvents() : null,
+                latencyTcp, latencyHttp, totalOperations - numSuccess);
+        result.numCarrierThreads = numCarrierThreads;
+        result.opsInFlightPerClient = opsInFlight;
+        result.latencyHistograms = latencies;
+        result.timeline = trial.timeline.toTimeline();
+        return result;
+    }
+
+    /**
+     * Create new workers until there are at least {@code numWorkers} of them. The new workers create their
+     * HDFS clients in parallel. This blocks until all of them have a client.
+     *
+     * A worker whose client could not be created exits right away, and is replaced by a new one. If a worker still
+     * has no client after {@link BenchmarkExecutor#MAX_WORKER_CREATION_ATTEMPTS} attempts, the workers created by
+     * this call are shut down and an {@link IllegalStateException} is thrown, which fails the trial.
+     */
+    private void ensureWorkers(DistributedFileSystem sharedHdfs, int numWorkers) throws InterruptedException {
+        if (workers.size() >= numWorkers)
+            return;
+
+        int firstNewWorker = workers.size();
+        int numToCreate = numWorkers - firstNewWorker;
+        CountDownLatch clientsCreated = new CountDownLatch(numToCreate);
+        ThreadFactory threadFactory = VirtualThreads.newThreadFactory("benchmark-worker-", virtualWorkers);
+
+        LOG.info("Creating " + numToCreate + " new benchmark worker(s). Executor will have " + numWorkers +
+                " worker(s).");
+        for (int i = firstNewWorker; i < numWorkers; i++) {
+            BenchmarkWorker worker = new BenchmarkWorker(i, sharedHdfs, clientsCreated, threadFactory);
+            workers.add(worker);
+            worker.start();
+        }
+
+        clientsCreated.await();
+
+        for (int attempt = 1; ; attempt++) {
+            List<Integer> failedWorkers = new ArrayList<>();
+            for (int i = firstNewWorker; i < numWorkers; i++) {
+                if (!workers.get(i).hasClient())
+                    failedWorkers.add(i);
+            }
+
+            if (failedWorkers.isEmpty())
+                return;
+
+            if (attempt >= MAX_WORKER_CREATION_ATTEMPTS) {
+                removeWorkersFrom(firstNewWorker);
+                throw new IllegalStateException("Could not create an HDFS client for " + failedWorkers.size() +
+                        " benchmark worker(s) after " + attempt + " attempt(s).");
+            }
+
+            LOG.warn("Could not create an HDFS client for " + failedWorkers.size() + " benchmark worker(s). " +
+                    "Replacing them (attempt " + (attempt + 1) + "/" + MAX_WORKER_CREATION_ATTEMPTS + ").");
+            clientsCreated = new CountDownLatch(failedWorkers.size());
+            for (int i : failedWorkers) {
+                BenchmarkWorker worker = new BenchmarkWorker(i, sharedHdfs, clientsCreated, threadFactory);
+                workers.set(i, worker);
+                worker.start();
+            }
+
+            clientsCreated.await();
+        }
+    }
+
+    /**
+     * Terminate the workers from the given index onwards, and remove them from the executor.
+     */
+    private void removeWorkersFrom(int index) throws InterruptedException {
+        List<BenchmarkWorker> removed = workers.subList(index, workers.size());
+        for (BenchmarkWorker worker : removed) {
+            if (worker.hasClient())
+                worker.assign(Trial.SHUTDOWN);
+        }
+
+        for (BenchmarkWorker worker : removed) {
+            worker.join();
+        }
+
+        removed.clear();
+    }
+
+    /**
+     * Return the number of worker threads currently owned by this executor.
+     */
+    public synchronized int getNumWorkers() {
+        return workers.size();
+    }
+
+    /**
+     * Return the number of trials that have been executed by this executor.
+     */
+    public synchronized int getTrialsExecuted() {
+        return trialsExecuted;
+    }
+
+    /**
+     * Terminate all the worker threads. Their HDFS clients are returned to the {@link Commands#clientPool}.
+     * The executor can still be used after this; it will simply create new workers the next time it is used.
+     */
+    public synchronized void shutdown() throws InterruptedException {
+        LOG.info("Shutting down benchmark executor. Terminating " + workers.size() + " worker(s).");
+
+        for (BenchmarkWorker worker : workers) {
+            worker.assign(Trial.SHUTDOWN);
+        }
+
+        for (BenchmarkWorker worker : workers) {
+            worker.join();
+        }
+
+        workers.clear();
+
+        if (pipelineExecutor != null) {
+            pipelineExecutor.shutdown();
+            pipelineExecutor = null;
+        }
+    }
+
+    /**
+     * All the state associated with a single trial. A new instance is created for each trial, which is how the
+     * start barrier and end semaphore are re-armed between trials.
+     */
+    private static class Trial {
+        /**
+         * Sentinel instructing a worker to exit.
+         */
+        static final Trial SHUTDOWN = new Trial();
+
+        final DistributedFileSystem sharedHdfs;
+        final int numThreads;
+        final String[][] fileBatches;
+        final int operationsPerFile;
+        final FSOperation operation;
+
+        // The number of operations each worker keeps in flight, and the executor that runs them (if this is > 1).
+        final int opsInFlight;
+        final ExecutorService pipelineExecutor;
+
+        // Used to synchronize threads; they each count down once they're ready.
+        // So, they all cannot start until they are all ready.
+        final CountDownLatch startLatch;
+
+        // Used to synchronize threads; they block when they finish executing to avoid using CPU cycles
+        // by aggregating their results. Once all the threads have finished, they aggregate their results.
+        final CountDownLatch endLatch;
+
+        // Counted down by each worker once it has published its metrics. Replaces joining the threads.
+        final CountDownLatch collectedLatch;
+
+        final Semaphore readySemaphore;
+        final Semaphore endSemaphore;
+
+        final BlockingQueue<List<OperationPerformed>> operationsPerformed;
+
+        final AtomicInteger numSuccessfulOps = new AtomicInteger(0);
+        final AtomicInteger numOps = new AtomicInteger(0);
+        final AtomicInteger numThreadsFinished = new AtomicInteger(0);
+
+        // The distinct carrier threads used by the workers (only interesting when using virtual threads).
+        final Set<String> carrierThreads = VirtualThreads.newCarrierThreadSet();
+
+        // Each worker writes only to its own slot of these arrays. The writes are published to the main
+        // thread by the collectedLatch, so no other synchronization is required.
+        final LatencyRecorder[] latencyRecorders;
+        final double[][] tcpLatencies;
+        final double[][] httpLatencies;
+
+        // Per-interval throughput and latency. Shared by all the workers.
+        final TimelineRecorder timeline;
+
+        private Trial() {
+            this.sharedHdfs = null;
+            this.numThreads = 0;
+            this.fileBatches = null;
+            this.operationsPerFile = 0;
+            this.operation = null;
+            this.opsInFlight = 0;
+            this.pipelineExecutor = null;
+            this.startLatch = null;
+            this.endLatch = null;
+            this.collectedLatch = null;
+            this.readySemaphore = null;
+            this.endSemaphore = null;
+            this.operationsPerformed = null;
+            this.latencyRecorders = null;
+            this.tcpLatencies = null;
+            this.httpLatencies = null;
+            this.timeline = null;
+        }
+
+        Trial(DistributedFileSystem sharedHdfs, int numThreads, String[][] fileBatches,
+              int operationsPerFile, FSOperation operation, int opsInFlight, ExecutorService pipelineExecutor) {
+            this.sharedHdfs = sharedHdfs;
+            this.numThreads = numThreads;
+            this.fileBatches = fileBatches;
+            this.operationsPerFile = operationsPerFile;
+            this.operation = operation;
+            this.opsInFlight = opsInFlight;
+            this.pipelineExecutor = pipelineExecutor;
+
+            this.startLatch = new CountDownLatch(numThreads + 1);
+            this.endLatch = new CountDownLatch(numThreads);
+            this.collectedLatch = new CountDownLatch(numThreads);
+            this.readySemaphore = new Semaphore((numThreads * -1) + 1);
+            this.endSemaphore = new Semaphore((numThreads * -1) + 1);
+            this.operationsPerformed = new ArrayBlockingQueue<>(numThreads);
+
+            this.latencyRecorders = new LatencyRecorder[numThreads];
+            this.tcpLatencies = new double[numThreads][];
+            this.httpLatencies = new double[numThreads][];
+            this.timeline = new TimelineRecorder(Commands.TIMELINE_INTERVAL_MILLIS);
+        }
+    }
+
+    /**
+     * A single in-flight operation of a pipelined trial. Each slot has its own HDFS client, and is resubmitted
+     * (with the next path) as soon as its previous operation completes.
+     */
+    private static class PipelineSlot implements Callable<PipelineSlot> {
+        final DistributedFileSystem hdfs;
+        FSOperation operation;
+        String path;
+        long issueTime;
+        long completionTime;
+        boolean success;
+
+        /**
+         * For reads, the statistics from {@link FileData#getLastRead()}, which must be copied on the thread that
+         * performed the read.
+         */
+        long timeToFirstByteNanos;
+        long bytesRead;
+
+        PipelineSlot(DistributedFileSystem hdfs) {
+            this.hdfs = hdfs;
+        }
+
+        @Override
+        public PipelineSlot call() {
+            try {
+                success = operation.call(hdfs, path, EMPTY_STRING);
+            } catch (RuntimeException ex) {
+                LOG.error("Encountered an exception while executing " + operation.getName() + ":", ex);
+                success = false;
+            }
+            completionTime = System.nanoTime();
+
+            if (success && operation == FSOperation.READ_FILE) {
+                FileData.ReadStats stats = FileData.getLastRead();
+                timeToFirstByteNanos = stats.timeToFirstByteNanos;
+                bytesRead = stats.bytesRead;
+            }
+            return this;
+        }
+    }
+
+    /**
+     * A long-lived worker. Each worker owns one HDFS client, which it keeps until the executor is shut down.
+     * In pipelined mode, the worker owns one additional client per additional operation in flight. The worker
+     * runs on either a platform thread or a virtual thread.
+     */
+    private static class BenchmarkWorker implements Runnable {
+        private final int workerId;
+        private final DistributedFileSystem sharedHdfs;
+        private final CountDownLatch clientCreated;
+        private final BlockingQueue<Trial> assignments = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        /**
+         * The HDFS client bound to this worker, or null if it could not be created (in which case the worker has
+         * exited).
+         */
+        private volatile DistributedFileSystem hdfs;
+
+        /**
+         * The additional HDFS clients used in pipelined mode. Only grows, like the executor itself.
+         */
+        private final List<DistributedFileSystem> pipelineClients = new ArrayList<>();
+
+        // The number of (successful) operations performed by this worker during the current trial.
+        private int numOpsCurrentTrial;
+        private int numSuccessfulOpsCurrentTrial;
+
+        BenchmarkWorker(int workerId, DistributedFileSystem sharedHdfs, CountDownLatch clientCreated,
+                        ThreadFactory threadFactory) {
+            this.workerId = workerId;
+            this.sharedHdfs = sharedHdfs;
+            this.clientCreated = clientCreated;
+            this.thread = threadFactory.newThread(this);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void join() throws InterruptedException {
+            thread.join();
+        }
+
+        void assign(Trial trial) {
+            assignments.add(trial);
+        }
+
+        boolean hasClient() {
+            return hdfs != null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                hdfs = Commands.getHdfsClient(sharedHdfs, false);
+            } catch (RuntimeException ex) {
+                LOG.error("Benchmark worker " + workerId + " could not create its HDFS client:", ex);
+            } finally {
+                clientCreated.countDown();
+            }
+
+            if (hdfs == null)
+                return;
+
+            while (true) {
+                Trial trial;
+                try {
+                    trial = assignments.take();
+                } catch (InterruptedException e) {
+                    LOG.warn("Benchmark worker " + workerId + " interrupted while waiting for a trial. Exiting.");
+                    break;
+                }
+
+                if (trial == Trial.SHUTDOWN)
+                    break;
+
+                runTrial(trial);
+            }
+
+            Commands.returnHdfsClient(hdfs);
+            for (DistributedFileSystem pipelineClient : pipelineClients)
+                Commands.returnHdfsClient(pipelineClient);
+        }
+
+        /**
+         * Apply the current settings of the shared HDFS instance. The settings may have been changed
+         * (e.g., via the Commander's menu) since the previous trial.
+         */
+        private void syncClientSettings(DistributedFileSystem sharedHdfs, DistributedFileSystem hdfs) {
+            hdfs.setBenchmarkModeEnabled(Commands.BENCHMARKING_MODE);
+            hdfs.setServerlessFunctionLogLevel(sharedHdfs.getServerlessFunctionLogLevel());
+            hdfs.setConsistencyProtocolEnabled(sharedHdfs.getConsistencyProtocolEnabled());
+            hdfs.setHttpTcpReplacementChance(sharedHdfs.getHttpTcpReplacementChance());
+        }
+
+        /**
+         * Take part in the given trial. Whatever happens, the worker releases the trial's ready and end semaphores
+         * and counts down its latches exactly once, so the main thread never waits forever for a failed worker.
+         * A worker whose clients could not be prepared sits out the trial.
+         */
+        private void runTrial(Trial trial) {
+            final LatencyRecorder latencyRecorder = new LatencyRecorder();
+            List<DistributedFileSystem> clients = null;
+            numOpsCurrentTrial = 0;
+            numSuccessfulOpsCurrentTrial = 0;
+
+            try {
+                try {
+                    clients = prepareClients(trial);
+                } catch (RuntimeException ex) {
+                    LOG.error("Benchmark worker " + workerId + " could not prepare its HDFS clients. It will not " +
+                            "perform any operations during this trial:", ex);
+                } finally {
+                    VirtualThreads.recordCarrierThread(trial.carrierThreads);
+                    // Ready to start. Once all threads have done this, the timer begins.
+                    trial.readySemaphore.release();
+                    trial.startLatch.countDown(); // Wait for the main thread's signal to actually begin.
+                }
+
+                try {
+                    trial.startLatch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+
+                try {
+                    if (clients == null)
+                        LOG.warn("Benchmark worker " + workerId + " is sitting out the trial.");
+                    else if (trial.opsInFlight > 1)
+                        runOperationsPipelined(trial, clients, latencyRecorder);
+                    else
+                        runOperations(trial, latencyRecorder);
+                } catch (RuntimeException ex) {
+                    // Don't let one bad operation kill a long-lived worker (and hang the trial).
+                    LOG.error("Benchmark worker " + workerId + " encountered an exception while executing " +
+                            trial.operation.getName() + ":", ex);
+                } catch (InterruptedException ex) {
+                    LOG.error("Benchmark worker " + workerId + " interrupted while executing " +
+                            trial.operation.getName() + ".");
+                } finally {
+                    trial.endSemaphore.release();
+                    VirtualThreads.recordCarrierThread(trial.carrierThreads);
+
+                    int completed = trial.numThreadsFinished.incrementAndGet();
+                    LOG.info("Thread " + workerId + " has finished executing. " + completed + "/" +
+                            trial.numThreads + " have finished executing.");
+
+                    trial.endLatch.countDown();
+                }
+
+                try {
+                    trial.endLatch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+
+                trial.numSuccessfulOps.addAndGet(numSuccessfulOpsCurrentTrial);
+                trial.numOps.addAndGet(numOpsCurrentTrial);
+
+                if (clients != null)
+                    collectMetrics(trial, clients, latencyRecorder);
+            } catch (RuntimeException ex) {
+                LOG.error("Benchmark worker " + workerId + " could not collect its metrics:", ex);
+            } finally {
+                trial.latencyRecorders[workerId] = latencyRecorder;
+                trial.collectedLatch.countDown();
+            }
+        }
+
+        /**
+         * Return the clients used by the given trial (creating any missing pipeline clients), with their settings
+         * synced with those of the shared HDFS instance.
+         */
+        private List<DistributedFileSystem> prepareClients(Trial trial) {
+            while (pipelineClients.size() < trial.opsInFlight - 1)
+                pipelineClients.add(Commands.getHdfsClient(trial.sharedHdfs, false));
+
+            // Only the clients used by this trial are synced and, later, have their metrics collected.
+            final List<DistributedFileSystem> clients = new ArrayList<>(trial.opsInFlight);
+            clients.add(hdfs);
+            clients.addAll(pipelineClients.subList(0, trial.opsInFlight - 1));
+            for (DistributedFileSystem client : clients)
+                syncClientSettings(trial.sharedHdfs, client);
+
+            return clients;
+        }
+
+        /**
+         * Publish the metrics of the given clients to the trial, and clear them for the next trial.
+         */
+        private void collectMetrics(Trial trial, List<DistributedFileSystem> clients,
+                                    LatencyRecorder latencyRecorder) {
+            // The client samples go straight into the histograms. They are only copied when the raw samples are
+            // retained, as that is O(operations).
+            boolean keepRawLatencies = Commands.keepRawLatencies();
+            List<OperationPerformed> operationsPerformed = new ArrayList<>();
+            DescriptiveStatistics httpLatencies = keepRawLatencies ? new DescriptiveStatistics() : null;
+            DescriptiveStatistics tcpLatencies = keepRawLatencies ? new DescriptiveStatistics() : null;
+            for (DistributedFileSystem client : clients) {
+                if (!Commands.BENCHMARKING_MODE)
+                    operationsPerformed.addAll(client.getOperationsPerformed());
+
+                double[] http = client.getLatencyHttpStatistics().getValues();
+                double[] tcp = client.getLatencyTcpStatistics().getValues();
+                latencyRecorder.recordHttpLatencies(http);
+                latencyRecorder.recordTcpLatencies(tcp);
+
+                if (keepRawLatencies) {
+                    for (double latency : http)
+                        httpLatencies.addValue(latency);
+                    for (double latency : tcp)
+                        tcpLatencies.addValue(latency);
+                }
+
+                // Clear the metric data associated with the client so that it is fresh for the next trial.
+                Commands.clearMetricDataNoPrompt(client);
+            }
+
+            if (!Commands.BENCHMARKING_MODE)
+                trial.operationsPerformed.add(operationsPerformed);
+
+            if (keepRawLatencies) {
+                trial.httpLatencies[workerId] = httpLatencies.getValues();
+                trial.tcpLatencies[workerId] = tcpLatencies.getValues();
+            }
+        }
+
+        /**
+         * Perform this worker's operations one at a time, using the worker's own HDFS client.
+         */
+        private void runOperations(Trial trial, LatencyRecorder latencyRecorder) {
+            final FSOperation operation = trial.operation;
+            final int operationsPerFile = trial.operationsPerFile;
+            final String operationName = operation.getName();
+            final TimelineRecorder timeline = trial.timeline;
+            final boolean isRead = operation == FSOperation.READ_FILE;
+
+            for (String filePath : trial.fileBatches[workerId]) {
+                for (int k = 0; k < operationsPerFile; k++) {
+                    long opStart = System.nanoTime();
+                    boolean success = operation.call(hdfs, filePath, EMPTY_STRING);
+                    long latency = System.nanoTime() - opStart;
+                    if (success)
+                        numSuccessfulOpsCurrentTrial++;
+                    latencyRecorder.recordOperation(operationName, latency);
+                    if (success && isRead) {
+                        FileData.ReadStats stats = FileData.getLastRead();
+                        latencyRecorder.recordRead(stats.timeToFirstByteNanos, stats.bytesRead);
+                    }
+                    timeline.record(operationName, latency, success);
+                    numOpsCurrentTrial++;
+                }
+            }
+        }
+
+        /**
+         * Perform this worker's operations (in the same order as {@link BenchmarkWorker#runOperations}) while
+         * keeping up to {@code trial.opsInFlight} of them outstanding, one per client. Latencies are measured
+         * from the moment an operation is submitted, so they include any time spent waiting for an executor thread.
+         */
+        private void runOperationsPipelined(Trial trial, List<DistributedFileSystem> clients,
+                                            LatencyRecorder latencyRecorder) throws InterruptedException {
+            final FSOperation operation = trial.operation;
+            final int operationsPerFile = trial.operationsPerFile;
+            final String operationName = operation.getName();
+            final TimelineRecorder timeline = trial.timeline;
+            final String[] files = trial.fileBatches[workerId];
+            final int totalOps = files.length * operationsPerFile;
+
+            ExecutorCompletionService<PipelineSlot> completions =
+                    new ExecutorCompletionService<>(trial.pipelineExecutor);
+
+            int nextOp = 0;
+            int inFlight = 0;
+            for (int i = 0; i < clients.size() && nextOp < totalOps; i++, nextOp++, inFlight++) {
+                PipelineSlot slot = new PipelineSlot(clients.get(i));
+                slot.operation = operation;
+                submit(completions, slot, files[nextOp / operationsPerFile]);
+            }
+
+            while (inFlight > 0) {
+                PipelineSlot slot;
+                try {
+                    slot = completions.take().get();
+                } catch (ExecutionException ex) {
+                    // PipelineSlot.call() catches everything an FSOperation is expected to throw.
+                    throw new IllegalStateException("Pipelined operation failed unexpectedly.", ex.getCause());
+                }
+                inFlight--;
+
+                long latency = slot.completionTime - slot.issueTime;
+                if (slot.success)
+                    numSuccessfulOpsCurrentTrial++;
+                latencyRecorder.recordOperation(operationName, latency);
+                if (slot.success && operation == FSOperation.READ_FILE)
+                    latencyRecorder.recordRead(slot.timeToFirstByteNanos, slot.bytesRead);
+                timeline.record(operationName, latency, slot.success);
+                numOpsCurrentTrial++;
+
+                if (nextOp < totalOps) {
+                    submit(completions, slot, files[nextOp / operationsPerFile]);
+                    nextOp++;
+                    inFlight++;
+                }
+            }
+        }
+
+        private void submit(ExecutorCompletionService<PipelineSlot> completions, PipelineSlot slot, String path) {
+            slot.path = path;
+            slot.issueTime = System.nanoTime();
+            completions.submit(slot);
+        }
+    }
+}
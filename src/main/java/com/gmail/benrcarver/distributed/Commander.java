@@ -5,7 +5,12 @@ import com.esotericsoftware.kryonet.FrameworkMessage;
 import com.esotericsoftware.kryonet.Listener;
 import com.esotericsoftware.kryonet.Server;
 import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.SubtreeBuilder;
+import com.gmail.benrcarver.distributed.util.Timeline;
 import com.gmail.benrcarver.distributed.util.Utils;
+import com.gmail.benrcarver.distributed.util.VirtualThreads;
 import com.gmail.benrcarver.distributed.workload.RandomlyGeneratedWorkload;
 import com.gmail.benrcarver.distributed.workload.WorkloadResponse;
 import com.google.gson.Gson;
@@ -280,6 +285,14 @@ public class Commander {
             hdfsConfigFilePath = config.getHdfsConfigFile();
             isServerless = config.getIsServerless();
             commanderExecutesToo = config.getCommanderExecutesToo();
+            Commands.USE_VIRTUAL_THREADS = config.getUseVirtualThreads();
+            Commands.SEND_RAW_LATENCIES = config.getSendRawLatencies();
+            Commands.LATENCY_HISTOGRAM_PRECISION_BITS = config.getLatencyHistogramPrecisionBits();
+            Commands.TIMELINE_INTERVAL_MILLIS = config.getTimelineIntervalMillis();
+            Commands.OPS_IN_FLIGHT_PER_CLIENT = Math.max(1, config.getOpsInFlightPerClient());
+            Commands.setFileSizeDistribution(config.getFileSizeDistribution());
+            clientPool.configure(config.getClientPoolMinSize(), config.getClientPoolMaxSize(),
+                    config.getClientPoolIdleTimeoutMillis(), config.getClientPoolHealthCheckIntervalMillis());
             maxHeapSizeGb = config.getMaxHeapSizeGb();
             minHeapSizeGb = config.getMinHeapSizeGb();
             maxNewSizeMb = config.getMaxNewSizeMb();
@@ -468,6 +481,12 @@ public class Commander {
 
         primaryHdfs = initDfsClient(null, true);
 
+        try {
+            clientPool.prewarm(primaryHdfs, clientPool.getMinSize());
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted while pre-creating HDFS clients:", ex);
+        }
+
         while (true) {
             updateGCMetrics();
             long startingGCs = numGarbageCollections;
@@ -478,6 +497,18 @@ public class Commander {
                 int op = getNextOperation();
 
                 switch (op) {
+                    case OP_SET_OPS_IN_FLIGHT:
+                        setOpsInFlight();
+                        break;
+                    case OP_PRINT_CLIENT_POOL_METRICS:
+                        LOG.info(clientPool.getMetricsString());
+                        break;
+                    case OP_TOGGLE_RAW_LATENCIES:
+                        toggleRawLatencies();
+                        break;
+                    case OP_TOGGLE_VIRTUAL_THREADS:
+                        toggleVirtualThreads();
+                        break;
                     case OP_SET_COMMANDER_EXECUTES_TOO:
                         setCommanderExecutesToo();
                         break;
@@ -593,7 +624,7 @@ public class Commander {
                         break;
                     case OP_CREATE_SUBTREE:
                         LOG.info("CREATE SUBTREE selected!");
-                        Commands.createSubtree(primaryHdfs);
+                        createSubtree(primaryHdfs);
                         break;
                     case OP_PING:
                         LOG.info("PING selected!");
@@ -671,6 +702,10 @@ public class Commander {
                         LOG.info("READER WRITER TEST #1 selected!");
                         readerWriterTest1();
                         break;
+                    case OP_SNAPSHOT_NAMESPACE:
+                        LOG.info("SNAPSHOT NAMESPACE selected!");
+                        Commands.snapshotNamespace(primaryHdfs);
+                        break;
                     default:
                         LOG.info("ERROR: Unknown or invalid operation specified: " + op);
                         break;
@@ -711,6 +746,90 @@ public class Commander {
         System.out.println("Updated value: " + commanderExecutesToo);
     }
 
+    /**
+     * Enable/disable retaining all raw latency samples in the results of the Commander and the followers. Latency
+     * histograms are always included.
+     */
+    private void toggleRawLatencies() {
+        Commands.SEND_RAW_LATENCIES = !Commands.SEND_RAW_LATENCIES;
+
+        if (Commands.SEND_RAW_LATENCIES)
+            LOG.info("ENABLING raw latency samples in benchmark results.");
+        else
+            LOG.info("DISABLING raw latency samples in benchmark results. Only histograms will be kept.");
+
+        if (nonDistributed)
+            return;
+
+        JsonObject payload = new JsonObject();
+        String operationId = UUID.randomUUID().toString();
+        payload.addProperty(OPERATION, OP_TOGGLE_RAW_LATENCIES);
+        payload.addProperty(OPERATION_ID, operationId);
+        payload.addProperty(RAW_LATENCIES, Commands.SEND_RAW_LATENCIES);
+
+        issueCommandToFollowers((Commands.SEND_RAW_LATENCIES ? "Enabling" : "Disabling" ) + " Raw Latencies",
+                operationId, payload, false);
+    }
+
+    /**
+     * Set the number of operations each benchmark client keeps in flight, both locally and on the followers.
+     */
+    private void setOpsInFlight() {
+        System.out.println("Currently, each benchmark client keeps " + Commands.OPS_IN_FLIGHT_PER_CLIENT +
+                " operation(s) in flight.");
+
+        int opsInFlight = getIntFromUser("How many operations should each client keep in flight? (1 disables " +
+                "pipelining)");
+
+        if (opsInFlight < 1) {
+            LOG.error("The number of operations in flight must be at least 1. Got: " + opsInFlight);
+            return;
+        }
+
+        Commands.OPS_IN_FLIGHT_PER_CLIENT = opsInFlight;
+        LOG.info("Benchmark clients will keep " + opsInFlight + " operation(s) in flight.");
+
+        if (!nonDistributed) {
+            JsonObject payload = new JsonObject();
+            String operationId = UUID.randomUUID().toString();
+            payload.addProperty(OPERATION, OP_SET_OPS_IN_FLIGHT);
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty(OPS_IN_FLIGHT, opsInFlight);
+
+            issueCommandToFollowers("Set Operations In Flight", operationId, payload, false);
+        }
+    }
+
+    /**
+     * Enable/disable running benchmark clients on virtual threads, both locally and on the followers.
+     */
+    private void toggleVirtualThreads() {
+        if (Commands.USE_VIRTUAL_THREADS) {
+            System.out.println("Currently, benchmark clients DO run on virtual threads.");
+        } else {
+            System.out.println("Currently, benchmark clients do NOT run on virtual threads.");
+        }
+
+        if (!VirtualThreads.isSupported())
+            LOG.warn("Virtual threads are not supported by this JVM (Java " + System.getProperty("java.version") +
+                    "). Platform threads will be used regardless of this setting.");
+
+        boolean toggle = getBooleanFromUser("Should benchmark clients run on virtual threads?");
+        Commands.USE_VIRTUAL_THREADS = toggle;
+        LOG.info((toggle ? "ENABLING" : "DISABLING") + " virtual threads.");
+
+        if (!nonDistributed) {
+            JsonObject payload = new JsonObject();
+            String operationId = UUID.randomUUID().toString();
+            payload.addProperty(OPERATION, OP_TOGGLE_VIRTUAL_THREADS);
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty(VIRTUAL_THREADS, toggle);
+
+            issueCommandToFollowers((toggle ? "Enabling" : "Disabling" ) + " Virtual Threads", operationId,
+                    payload, false);
+        }
+    }
+
     private void readerWriterTest1() throws InterruptedException, FileNotFoundException {
         int numReaders = getIntFromUser("How many reader threads?");
         int numWriters = getIntFromUser("How many writer threads?");
@@ -869,20 +988,8 @@ public class Commander {
                 // First clear the metric data associated with the client.
                 Commands.clearMetricDataNoPrompt(hdfs);
 
-                try {
-                    // Now return the client to the pool so that it can be used again in the future.
-                    Commands.returnHdfsClient(hdfs);
-                } catch (InterruptedException e) {
-                    LOG.error("Encountered error when trying to return HDFS client. Closing it instead.");
-                    e.printStackTrace();
-
-                    try {
-                        hdfs.close();
-
-                    } catch (IOException ex) {
-                        LOG.error("Encountered IOException while closing DistributedFileSystem object:", ex);
-                    }
-                }
+                // Now return the client to the pool so that it can be used again in the future.
+                Commands.returnHdfsClient(hdfs);
             });
             readers.add(readerThread);
         }
@@ -967,20 +1074,8 @@ public class Commander {
                 // First clear the metric data associated with the client.
                 Commands.clearMetricDataNoPrompt(hdfs);
 
-                try {
-                    // Now return the client to the pool so that it can be used again in the future.
-                    Commands.returnHdfsClient(hdfs);
-                } catch (InterruptedException e) {
-                    LOG.error("Encountered error when trying to return HDFS client. Closing it instead.");
-                    e.printStackTrace();
-
-                    try {
-                        hdfs.close();
-
-                    } catch (IOException ex) {
-                        LOG.error("Encountered IOException while closing DistributedFileSystem object:", ex);
-                    }
-                }
+                // Now return the client to the pool so that it can be used again in the future.
+                Commands.returnHdfsClient(hdfs);
             });
             writers.add(writerThread);
         }
@@ -1057,7 +1152,143 @@ public class Commander {
         LOG.info("Successful Throughput: " + successThroughput + " ops/sec.");
 
         if (LOG.isDebugEnabled())
-            LOG.debug("At end of benchmark, the HDFS Clients Cache has " + hdfsClients.size() + " clients.");
+            LOG.debug("At end of benchmark, " + clientPool.getMetricsString());
+    }
+
+    /**
+     * Create a complete subtree with a {@link com.gmail.benrcarver.distributed.util.SubtreeBuilder}. If we have
+     * followers, then the subtree can be split between them (and us, if the Commander executes tasks too): each
+     * creates the subtrees of some of the root's subdirectories. Once every partition has been created, their
+     * results are combined into the throughput of each level of the whole subtree.
+     */
+    private void createSubtree(final DistributedFileSystem sharedHdfs) throws IOException, InterruptedException {
+        String subtreeRootPath = getStringFromUser("Subtree root directory:").trim();
+        int subtreeDepth = getIntFromUser("Subtree depth:");
+        int maxSubDirs = getIntFromUser("Max subdirs:");
+        int filesPerDir = getIntFromUser("Files per directory:");
+        int numThreads = getIntFromUser("Number of threads (per VM):");
+
+        double totalPossibleDirectories = 0;
+        for (int level = 0; level <= subtreeDepth + 1; level++)
+            totalPossibleDirectories += Math.pow(maxSubDirs, level);
+        LOG.info("\nThis could create a maximum of " + totalPossibleDirectories + " directories and " +
+                ((totalPossibleDirectories - 1) * filesPerDir) + " files.");
+
+        // If they answered anything other than 'y', then abort.
+        if (!getBooleanFromUser("Is this okay?")) {
+            LOG.info("\nAborting.");
+            return;
+        }
+
+        String checkpointPath = getStringFromUser("Local checkpoint file, used to resume an interrupted build " +
+                "(enter nothing for the default):").trim();
+        if (checkpointPath.isEmpty())
+            checkpointPath = "./output/createSubtree" + subtreeRootPath.replace('/', '_') + ".checkpoint";
+
+        boolean distribute = !nonDistributed && followers.size() > 0 &&
+                getBooleanFromUser("Split the subtree across the " + followers.size() + " follower(s)?");
+        if (!distribute) {
+            Commands.createSubtree(sharedHdfs, subtreeRootPath, subtreeDepth, maxSubDirs, filesPerDir, numThreads,
+                    0, 1, checkpointPath);
+            return;
+        }
+
+        int numPartitions = followers.size() + (commanderExecutesToo ? 1 : 0);
+        String operationId = UUID.randomUUID().toString();
+        waitingOn.clear();
+        BlockingQueue<DistributedBenchmarkResult> resultQueue = new ArrayBlockingQueue<>(followers.size());
+        resultQueues.put(operationId, resultQueue);
+
+        int partition = 0;
+        for (FollowerConnection followerConnection : followers) {
+            JsonObject payload = new JsonObject();
+            payload.addProperty(OPERATION, OP_CREATE_SUBTREE);
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty("subtreeRoot", subtreeRootPath);
+            payload.addProperty("subtreeDepth", subtreeDepth);
+            payload.addProperty("maxSubDirs", maxSubDirs);
+            payload.addProperty("filesPerDir", filesPerDir);
+            payload.addProperty("numberOfThreads", numThreads);
+            payload.addProperty("partition", partition++);
+            payload.addProperty("numPartitions", numPartitions);
+            payload.addProperty("checkpointPath", checkpointPath);
+
+            LOG.debug("Sending partition " + (partition - 1) + "/" + numPartitions + " of subtree " +
+                    subtreeRootPath + " to follower at " + followerConnection.getRemoteAddressTCP());
+            followerConnection.sendTCP(new Gson().toJson(payload));
+            waitingOn.add(followerConnection.name);
+        }
+
+        // Combined result of each level, across all the partitions.
+        TreeMap<Integer, SubtreeBuilder.LevelResult> levelResults = new TreeMap<>();
+        int numPartitionsFailed = 0;
+
+        try {
+            if (commanderExecutesToo) {
+                DistributedBenchmarkResult localResult = Commands.createSubtree(sharedHdfs, subtreeRootPath,
+                        subtreeDepth, maxSubDirs, filesPerDir, numThreads, partition, numPartitions, checkpointPath);
+                combineLevelResults(levelResults, localResult.subtreeLevels);
+            } else {
+                LOG.info("Commander is not executing this job. Waiting for the followers to create the subtree.");
+            }
+
+            int counter = 0;
+            long time = System.currentTimeMillis();
+            while (waitingOn.size() > 0) {
+                LOG.debug("Still waiting on the following Followers: " + StringUtils.join(waitingOn, ", "));
+                Thread.sleep(1000);
+
+                counter += (System.currentTimeMillis() - time);
+                time = System.currentTimeMillis();
+                if (counter >= 60000) {
+                    if (getBooleanFromUser("Stop waiting early?"))
+                        break;
+
+                    counter = 0;
+                }
+            }
+        } finally {
+            resultQueues.remove(operationId);
+        }
+
+        if (waitingOn.size() > 0) {
+            LOG.warn("Did not receive subtree results from: " + StringUtils.join(waitingOn, ", "));
+            numPartitionsFailed += waitingOn.size();
+        }
+
+        for (DistributedBenchmarkResult result : resultQueue) {
+            if (result.subtreeLevels == null)
+                numPartitionsFailed++;
+            else
+                combineLevelResults(levelResults, result.subtreeLevels);
+        }
+
+        LOG.info("=== Subtree Creation Completed (All Partitions) ===");
+        if (numPartitionsFailed > 0)
+            LOG.warn(numPartitionsFailed + "/" + numPartitions + " partition(s) did not report a result. The " +
+                    "levels below only include the partitions that did.");
+        int numDirectoriesCreated = 0;
+        int numFilesCreated = 0;
+        int numFailures = 0;
+        for (SubtreeBuilder.LevelResult result : levelResults.values()) {
+            numDirectoriesCreated += result.getDirsCreated();
+            numFilesCreated += result.getFilesCreated();
+            numFailures += result.getFailures();
+            LOG.info(result.toString());
+        }
+        LOG.info("Directories created: " + numDirectoriesCreated);
+        LOG.info("Files created: " + numFilesCreated);
+        LOG.info("Failures: " + numFailures);
+        LOG.info("===================================================");
+    }
+
+    /**
+     * Add the per-level results of one partition of a subtree to the combined results of each level.
+     */
+    private static void combineLevelResults(Map<Integer, SubtreeBuilder.LevelResult> combined,
+                                            List<SubtreeBuilder.LevelResult> partitionResults) {
+        for (SubtreeBuilder.LevelResult result : partitionResults)
+            combined.merge(result.getLevel(), result, SubtreeBuilder.LevelResult::combine);
     }
 
     /**
@@ -1123,17 +1354,30 @@ public class Commander {
             payload.addProperty("configuration", base64);
         }
 
+        // Build our own workload first. If the configuration is unusable here (e.g., a missing trace file), then
+        // we bail out before any Follower has created a workload that nothing would ever abort.
+        RandomlyGeneratedWorkload workload;
+        try {
+            workload = new RandomlyGeneratedWorkload(configuration,
+                    sharedHdfs, followers.size() + 1, 0, operationId); // Add one to include self.
+        } catch (RuntimeException ex) {
+            LOG.error("Failed to create Random Workload " + operationId + ". Not notifying Followers.", ex);
+            return;
+        }
+
         waitingOn.clear();
         workloadResponseQueue.clear();
 
         int expectedNumResponses = followers.size();
 
         LOG.info("Telling Followers to prepare for Random Workload " + operationId);
-        issueCommandToFollowers("Prepare for Random Workload", operationId, payload, true);
-
-        RandomlyGeneratedWorkload workload =
-                new RandomlyGeneratedWorkload(configuration,
-                        sharedHdfs, followers.size() + 1, operationId); // Add one to include self.
+        // Each Follower is told its index, so that the VMs can take turns issuing operations. We are index 0.
+        int workerIndex = 1;
+        for (FollowerConnection followerConnection : followers) {
+            payload.addProperty("WORKER_INDEX", workerIndex++);
+            followerConnection.sendTCP(new Gson().toJson(payload));
+            waitingOn.add(followerConnection.name);
+        }
 
         int counter = 0;
         long time = System.currentTimeMillis();
@@ -1181,6 +1425,17 @@ public class Commander {
             payload.addProperty(OPERATION, OP_ABORT_RANDOM_WORKLOAD);
             LOG.error("Aborting workload.");
             issueCommandToFollowers("Abort Random Workload", operationId, payload, false);
+            workload.closeGenerator();
+            return;
+        }
+
+        if (workload.hasPrepopulatedNamespace() && !prepopulateNamespace(workload, operationId)) {
+            payload = new JsonObject();
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty(OPERATION, OP_ABORT_RANDOM_WORKLOAD);
+            LOG.error("Aborting workload.");
+            issueCommandToFollowers("Abort Random Workload", operationId, payload, false);
+            workload.closeGenerator();
             return;
         }
 
@@ -1239,6 +1494,7 @@ public class Commander {
             payload.addProperty(OPERATION, OP_ABORT_RANDOM_WORKLOAD);
             LOG.error("Aborting workload.");
             issueCommandToFollowers("Abort Random Workload", operationId, payload, false);
+            workload.closeGenerator();
             return;
         }
 
@@ -1289,8 +1545,9 @@ public class Commander {
         if (localResult.opsPerformed != null)
             primaryHdfs.addOperationPerformeds(localResult.opsPerformed);
 
-        primaryHdfs.addLatencies(localResult.tcpLatencyStatistics.getValues(),
-                localResult.httpLatencyStatistics.getValues());
+        if (localResult.tcpLatencyStatistics != null && localResult.httpLatencyStatistics != null)
+            primaryHdfs.addLatencies(localResult.tcpLatencyStatistics.getValues(),
+                    localResult.httpLatencyStatistics.getValues());
 
         if (localResult.txEvents != null) {
             primaryHdfs.mergeTransactionEvents(localResult.txEvents, true);
@@ -1359,6 +1616,114 @@ public class Commander {
         workload.closeLimiterFileStream();
     }
 
+    /**
+     * Create the pre-populated namespace of a prepared random workload, partitioned across ourselves (partition 0)
+     * and the followers. Then, send every follower the manifest of the namespace (i.e., the files that could not be
+     * created by any VM), so that all VMs start the workload with the same files in their file pools.
+     *
+     * @return False if any follower failed to pre-populate its partition or to receive the manifest.
+     */
+    private boolean prepopulateNamespace(RandomlyGeneratedWorkload workload, String operationId)
+            throws InterruptedException {
+        int numPartitions = followers.size() + 1; // Add one to include self.
+        LOG.info("Pre-populating the namespace of random workload " + operationId + " across " + numPartitions +
+                " VM(s) now...");
+        long start = System.currentTimeMillis();
+
+        waitingOn.clear();
+        workloadResponseQueue.clear();
+
+        int partition = 1;
+        for (FollowerConnection followerConnection : followers) {
+            JsonObject payload = new JsonObject();
+            payload.addProperty(OPERATION, OP_PREPOPULATE_RANDOM_WORKLOAD);
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty("partition", partition++);
+            payload.addProperty("numPartitions", numPartitions);
+            followerConnection.sendTCP(new Gson().toJson(payload));
+            waitingOn.add(followerConnection.name);
+        }
+
+        int[] localFailedFiles = workload.doPrepopulate(0, numPartitions);
+
+        if (!waitForWorkloadResponses("pre-populating the namespace"))
+            return false;
+
+        int numFailedFiles = localFailedFiles.length;
+        for (WorkloadResponse resp : workloadResponseQueue) {
+            if (resp.failedFiles != null)
+                numFailedFiles += resp.failedFiles.length;
+        }
+
+        int[] failedFiles = Arrays.copyOf(localFailedFiles, numFailedFiles);
+        int offset = localFailedFiles.length;
+        for (WorkloadResponse resp : workloadResponseQueue) {
+            if (resp.failedFiles != null) {
+                System.arraycopy(resp.failedFiles, 0, failedFiles, offset, resp.failedFiles.length);
+                offset += resp.failedFiles.length;
+            }
+        }
+        Arrays.sort(failedFiles);
+
+        LOG.info("Pre-populated the namespace in " + (System.currentTimeMillis() - start) + " ms. " +
+                failedFiles.length + " file(s) could not be created.");
+
+        waitingOn.clear();
+        workloadResponseQueue.clear();
+
+        if (followers.size() > 0) {
+            JsonObject payload = new JsonObject();
+            payload.addProperty(OPERATION, OP_SET_PREPOPULATED_NAMESPACE);
+            payload.addProperty(OPERATION_ID, operationId);
+            JsonArray failedFilesJson = new JsonArray();
+            for (int file : failedFiles)
+                failedFilesJson.add(file);
+            payload.add("failedFiles", failedFilesJson);
+            issueCommandToFollowers("Set Pre-Populated Namespace", operationId, payload, true);
+        }
+
+        workload.setPrepopulatedNamespace(failedFiles);
+
+        return waitForWorkloadResponses("receiving the pre-populated namespace");
+    }
+
+    /**
+     * Wait until every follower in {@link Commander#waitingOn} has sent a {@link WorkloadResponse}, or until the user
+     * decides to stop waiting.
+     *
+     * @param stage What the followers are doing, for logging.
+     * @return False if any of the followers reported an error.
+     */
+    private boolean waitForWorkloadResponses(String stage) throws InterruptedException {
+        long counter = 0;
+        long time = System.currentTimeMillis();
+        while (waitingOn.size() > 0) {
+            LOG.debug("Still waiting on the following Followers: " + StringUtils.join(waitingOn, ", "));
+            Thread.sleep(1000);
+
+            if (numDisconnections.getAndSet(0) > 0)
+                LOG.warn("There has been at least one disconnection.");
+
+            counter += (System.currentTimeMillis() - time);
+            time = System.currentTimeMillis();
+            if (counter >= 60000) {
+                if (getBooleanFromUser("Stop waiting early?"))
+                    break;
+
+                counter = 0;
+            }
+        }
+
+        for (WorkloadResponse resp : workloadResponseQueue) {
+            if (resp.erred) {
+                LOG.error("Follower encountered error while " + stage + "...");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private void mkdirWeakScaling(final DistributedFileSystem sharedHdfs) throws IOException, InterruptedException {
         int directoryChoice = getIntFromUser("Should the threads create directories within the " +
                 "SAME DIRECTORY [1], DIFFERENT DIRECTORIES [2], or \"RANDOM MKDIRs\" [3]?");
@@ -1554,6 +1919,10 @@ public class Commander {
         System.out.print("Please enter a filename (without an extension):\n>");
         String fileName = scanner.nextLine().trim();
 
+        if (!Commands.keepRawLatencies())
+            LOG.warn("Raw latency samples are not being kept (see operation -17), so the latencies of " +
+                    "benchmarks run since then will be missing from the files.");
+
         System.out.println("Writing TCP latencies to file: ./latencies/" + fileName + "-tcp.dat");
         System.out.println("Writing HTTP latencies to file: ./latencies/" + fileName + "-http.dat");
         System.out.println("Writing merged latencies to file: ./latencies/" + fileName + "-merged.dat");
@@ -1628,7 +1997,7 @@ public class Commander {
         BENCHMARKING_MODE = toggle;
         primaryHdfs.setBenchmarkModeEnabled(toggle);
 
-        for (DistributedFileSystem hdfs : hdfsClients) {
+        for (DistributedFileSystem hdfs : clientPool.getClients()) {
             hdfs.setBenchmarkModeEnabled(toggle);
         }
 
@@ -1714,7 +2083,7 @@ public class Commander {
         } else {
             primaryHdfs.setServerlessFunctionLogLevel(newLogLevel);
 
-            for (DistributedFileSystem hdfs : hdfsClients) {
+            for (DistributedFileSystem hdfs : clientPool.getClients()) {
                 hdfs.setServerlessFunctionLogLevel(newLogLevel);
             }
         }
@@ -1773,7 +2142,7 @@ public class Commander {
         primaryHdfs.setConsistencyProtocolEnabled(toggle);
         consistencyEnabled = toggle;
 
-        for (DistributedFileSystem hdfs : hdfsClients) {
+        for (DistributedFileSystem hdfs : clientPool.getClients()) {
             hdfs.setConsistencyProtocolEnabled(toggle);
         }
 
@@ -1842,7 +2211,7 @@ public class Commander {
 
              primaryHdfs.setHttpTcpReplacementChance(chance);
 
-            for (DistributedFileSystem hdfs : hdfsClients) {
+            for (DistributedFileSystem hdfs : clientPool.getClients()) {
                 hdfs.setHttpTcpReplacementChance(chance);
             }
         } catch (NumberFormatException ex) {
@@ -2315,8 +2684,12 @@ public class Commander {
         DescriptiveStatistics cacheHits = new DescriptiveStatistics();
         DescriptiveStatistics cacheMisses = new DescriptiveStatistics();
 
-        DescriptiveStatistics tcpLatency = new DescriptiveStatistics();
-        DescriptiveStatistics httpLatency = new DescriptiveStatistics();
+        // Merged histograms of all the results. Merging is O(number of buckets) per result.
+        LatencyRecorder latencies = new LatencyRecorder();
+
+        // Timelines of all the results, merged by wall-clock interval.
+        Timeline timeline = new Timeline(Commands.TIMELINE_INTERVAL_MILLIS);
+        String operationId = null;
 
         DescriptiveStatistics gcTime = new DescriptiveStatistics();
         int totalNumberOfGCs = 0;
@@ -2334,6 +2707,8 @@ public class Commander {
             LOG.info("========== LOCAL RESULT ==========");
             LOG.info("Num Ops Performed   : " + localResult.numOpsPerformed);
             LOG.info("Duration (sec)      : " + localResult.durationSeconds);
+            if (localResult.opsInFlightPerClient > 1)
+                LOG.info("Ops in flight/client: " + localResult.opsInFlightPerClient);
             LOG.info("Cache hits          : " + localResult.cacheHits);
             LOG.info("Cache misses        : " + localResult.cacheMisses);
             if (localResult.cacheHits + localResult.cacheMisses > 0)
@@ -2344,11 +2719,9 @@ public class Commander {
 
             allThroughputValues.add(localResult.getOpsPerSecond());
 
-            for (double d : localResult.tcpLatencyStatistics.getValues())
-                tcpLatency.addValue(d);
-
-            for (double d : localResult.httpLatencyStatistics.getValues())
-                httpLatency.addValue(d);
+            mergeLatencies(latencies, localResult);
+            mergeTimeline(timeline, localResult);
+            operationId = localResult.opId;
 
             // Gather garbage collection information.
             if (localResult.opsPerformed != null) {
@@ -2374,6 +2747,8 @@ public class Commander {
                 LOG.info("========== RECEIVED RESULT FROM " + res.jvmId + " ==========");
                 LOG.info("Num Ops Performed   : " + res.numOpsPerformed);
                 LOG.info("Duration (sec)      : " + res.durationSeconds);
+                if (res.opsInFlightPerClient > 1)
+                    LOG.info("Ops in flight/client: " + res.opsInFlightPerClient);
                 LOG.info("Cache hits          : " + res.cacheHits);
                 LOG.info("Cache misses        : " + res.cacheMisses);
                 if (res.cacheHits + res.cacheMisses > 0)
@@ -2388,25 +2763,21 @@ public class Commander {
                 cacheHits.addValue(res.cacheHits);
                 cacheMisses.addValue(res.cacheMisses);
 
-                if (res.tcpLatencyStatistics != null && res.httpLatencyStatistics != null) {
-                    DescriptiveStatistics latencyTcp = res.tcpLatencyStatistics;
-                    DescriptiveStatistics latencyHttp = res.httpLatencyStatistics;
-                    primaryHdfs.addLatencies(latencyTcp.getValues(), latencyHttp.getValues());
-
-                    LOG.info("Latency TCP (ms) [min: " + latencyTcp.getMin() + ", max: " + latencyTcp.getMax() +
-                            ", avg: " + latencyTcp.getMean() + ", std dev: " + latencyTcp.getStandardDeviation() +
-                            ", N: " + latencyTcp.getN() + "]");
-                    LOG.info("Latency HTTP (ms) [min: " + latencyHttp.getMin() + ", max: " + latencyHttp.getMax() +
-                            ", avg: " + latencyHttp.getMean() + ", std dev: " + latencyHttp.getStandardDeviation() +
-                            ", N: " + latencyHttp.getN() + "]");
-
-                    for (double d : latencyTcp.getValues())
-                        tcpLatency.addValue(d);
+                // Raw latencies are only included if they were explicitly requested.
+                if (res.tcpLatencyStatistics != null && res.httpLatencyStatistics != null)
+                    primaryHdfs.addLatencies(res.tcpLatencyStatistics.getValues(),
+                            res.httpLatencyStatistics.getValues());
 
-                    for (double d : latencyHttp.getValues())
-                        httpLatency.addValue(d);
+                if (res.latencyHistograms != null) {
+                    LOG.info("Latency TCP (ms) " + res.latencyHistograms.getTcpLatency().toSummaryString());
+                    LOG.info("Latency HTTP (ms) " + res.latencyHistograms.getHttpLatency().toSummaryString());
                 }
 
+                mergeLatencies(latencies, res);
+                mergeTimeline(timeline, res);
+                if (operationId == null)
+                    operationId = res.opId;
+
                 // Gather garbage collection information.
                 if (res.opsPerformed != null) {
                     OperationPerformed[] tmpOperationsPerformed = res.opsPerformed;
@@ -2448,17 +2819,10 @@ public class Commander {
         int totalCacheHits = (int)(cacheHits.getN() > 0 ? cacheHits.getSum() : 0);
         int totalCacheMisses = (int)(cacheMisses.getN() > 0 ? cacheMisses.getSum() : 0);
 
-        // Compute weighted average.
-        double avgCombinedLatency = 0.0;
-        double totalNumLatencies = tcpLatency.getN() + httpLatency.getN();
-        if (tcpLatency.getN() > 0)
-            // If TCP only, then `(tcpLatency.getN() / totalNumLatencies)` will evaluate to 1.
-            // Otherwise, `(tcpLatency.getN() / totalNumLatencies)` will help compute a weighted average.
-            avgCombinedLatency += (tcpLatency.getMean() * (tcpLatency.getN() / totalNumLatencies));
-        if (httpLatency.getN() > 0)
-            // If HTTP only, then `(httpLatency.getN() / totalNumLatencies)` will evaluate to 1.
-            // Otherwise, `(httpLatency.getN() / totalNumLatencies)` will help compute a weighted average.
-            avgCombinedLatency += (httpLatency.getMean() * (httpLatency.getN() / totalNumLatencies));
+        // The combined histogram computes the weighted average of the TCP and HTTP latencies for us.
+        double avgTcpLatency = latencies.getTcpLatency().getMean();
+        double avgHttpLatency = latencies.getHttpLatency().getMean();
+        double avgCombinedLatency = latencies.getCombinedLatency().getMean();
 
         double cacheHitRate = 0.0;
         if (totalCacheHits > 0 || totalCacheMisses > 0)
@@ -2470,18 +2834,24 @@ public class Commander {
         LOG.info("Cache hits: " + totalCacheHits);
         LOG.info("Cache misses: " + totalCacheMisses);
         LOG.info("Cache hit percentage: " + cacheHitRate);
-        LOG.info("Average TCP latency: " + tcpLatency.getMean() + " ms");
-        LOG.info("Average HTTP latency: " + httpLatency.getMean() + " ms");
+        LOG.info("Average TCP latency: " + avgTcpLatency + " ms");
+        LOG.info("Average HTTP latency: " + avgHttpLatency + " ms");
         LOG.info("Average combined latency: " + avgCombinedLatency + " ms");
+        latencies.logSummary(LOG);
         LOG.info("Aggregate Throughput (ops/sec): " + aggregateThroughput);
+        if (latencies.getNumReads() > 0)
+            LOG.info("Aggregate Read Throughput (MB/sec): " +
+                    String.format("%.2f", latencies.getBytesRead() / duration.getMean() / 1.0e6));
         LOG.info("Number of GCs: " + totalNumberOfGCs);
         LOG.info("Time spent GC-ing: " + gcTime.getSum() + " ms");
 
+        writeTimelineToFile(timeline, operationId);
+
         DecimalFormat df = new DecimalFormat("#.####");
         String metricsString = String.format("%s %d %d %s %s %s %s %s", df.format(aggregateThroughput),
                 totalCacheHits, totalCacheMisses,
-                df.format(cacheHitRate), df.format(tcpLatency.getMean()),
-                df.format(httpLatency.getMean()), df.format(avgCombinedLatency), df.format(duration.getMean()));
+                df.format(cacheHitRate), df.format(avgTcpLatency),
+                df.format(avgHttpLatency), df.format(avgCombinedLatency), df.format(duration.getMean()));
 
         LOG.info(metricsString);
 
@@ -2495,10 +2865,66 @@ public class Commander {
         }
 
         return new AggregatedResult(aggregateThroughput, totalCacheHits, totalCacheMisses, metricsString,
-                tcpLatency.getMean(), httpLatency.getMean(), avgCombinedLatency, duration.getMean(),
+                avgTcpLatency, avgHttpLatency, avgCombinedLatency, duration.getMean(),
                 totalNumberOfGCs, gcTime.getSum());
     }
 
+    /**
+     * Merge the timeline of the given result (if it has one) into the given timeline.
+     */
+    private static void mergeTimeline(Timeline timeline, DistributedBenchmarkResult result) {
+        if (result.timeline == null)
+            return;
+
+        try {
+            timeline.merge(result.timeline);
+        } catch (IllegalArgumentException ex) {
+            LOG.error("Could not merge timeline of result from " + result.jvmId + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Write the given timeline to "./timelines/<operationId>.csv".
+     */
+    private static void writeTimelineToFile(Timeline timeline, String operationId) {
+        if (timeline.isEmpty())
+            return;
+
+        if (operationId == null)
+            operationId = String.valueOf(System.currentTimeMillis());
+
+        File dir = new File("./timelines");
+        dir.mkdirs();
+
+        File file = new File(dir, operationId + ".csv");
+        LOG.info("Writing timeline with " + timeline.getIntervals().size() + " interval(s) of " +
+                timeline.getIntervalMillis() + " ms to file: " + file.getPath());
+
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            timeline.writeCsv(writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Merge the latencies of the given result into the given recorder. If the result does not have latency
+     * histograms (e.g., it was produced by a benchmark that does not record them), then its raw latencies are used.
+     */
+    private static void mergeLatencies(LatencyRecorder latencies, DistributedBenchmarkResult result) {
+        if (result.latencyHistograms != null) {
+            latencies.merge(result.latencyHistograms);
+            return;
+        }
+
+        if (result.tcpLatencyStatistics != null)
+            latencies.recordTcpLatencies(result.tcpLatencyStatistics.getValues());
+
+        if (result.httpLatencyStatistics != null)
+            latencies.recordHttpLatencies(result.httpLatencyStatistics.getValues());
+    }
+
     /**
      * Weak scaling, reads.
      *
@@ -2667,75 +3093,77 @@ public class Commander {
     }
 
     /**
-     * Used to automatically establish a number of connections between clients and NameNodes.
+     * Used to automatically establish a number of connections between clients and NameNodes, both locally and on
+     * the followers. See {@link ConnectionWarmer}.
      */
-    private void establishConnections() throws IOException, InterruptedException {
-        List<Integer> numClients = Arrays.asList(1, 2, 4, 8, 16, 24, 32, 48, 64, 80, 96, 112, 128, 144, 160, 176, 192, 208, 224, 240, 256);
-
-        int targetNumConnections = getIntFromUser("How many connections do you want to establish per client VM?");
-
-        if (!numClients.contains(targetNumConnections))
-            throw new IllegalArgumentException("The target number of connections must be one of the following: " +
-                    StringUtils.join(numClients, ",") + ". You specified: " + targetNumConnections + ".");
-        // if (targetNumConnections % 2 != 0)
-        //    throw new IllegalArgumentException("The number of connections to be established must be a power of 2.");
-
-        if (targetNumConnections > 256)
-            throw new IllegalArgumentException("Targeting more than 256 connections per VM is not supported.");
-
-        System.out.print("Please specify a file path containing HopsFS files to use:\n> ");
-        String inputPath = scanner.nextLine();
-
-        int originalPostTrialSleepInterval = postTrialSleepInterval;
-
-        LOG.info("Target connections per VM: " + targetNumConnections);
-        LOG.info("Total number of clients: " + ((followers.size() + 1) * targetNumConnections));
-        LOG.info("File containing HopsFS file paths: '" + inputPath + "'");
+    private void establishConnections() throws InterruptedException {
+        if (!isServerless) {
+            LOG.error("Establishing TCP connections is not supported by Vanilla HopsFS!");
+            return;
+        }
 
-        boolean acceptable = getBooleanFromUser("Are these settings acceptable?");
+        int numClients = getIntFromUser("How many clients should be warmed up per VM?");
+        int targetNumConnections = getIntFromUser("How many of these clients must be connected (per VM) " +
+                "for warm-up to be considered complete?");
+        int timeoutSeconds = getIntFromUser("Timeout (in seconds)?");
 
-        if (!acceptable) {
-            LOG.warn("Settings were deemed unacceptable. Aborting.");
+        if (targetNumConnections > numClients) {
+            LOG.error("The target number of connections (" + targetNumConnections +
+                    ") cannot exceed the number of clients (" + numClients + ").");
             return;
         }
 
-        List<Integer> sleepIntervals = Arrays.asList(125, 125, 250, 500, 500, 750, 750, 750, 775, 800, 950, 1250, 1350, 1450, 1550, 1650, 1750, 1850, 1950, 2050, 2150);
+        String operationId = UUID.randomUUID().toString();
+        long timeoutMillis = timeoutSeconds * 1000L;
+
+        int numFollowers = followers.size();
+        waitingOn.clear();
+        if (numFollowers > 0) {
+            JsonObject payload = new JsonObject();
+            payload.addProperty(OPERATION, OP_ESTABLISH_CONNECTIONS);
+            payload.addProperty(OPERATION_ID, operationId);
+            payload.addProperty("numClients", numClients);
+            payload.addProperty("targetConnections", targetNumConnections);
+            payload.addProperty("timeoutMillis", timeoutMillis);
+            issueCommandToFollowers("Establish Connections", operationId, payload, true);
+        }
 
-        int targetIndex = numClients.indexOf(targetNumConnections);
+        LatencyHistogram timeToConnected = new LatencyHistogram();
+        int totalClients = 0;
+        int totalConnected = 0;
 
-        for (int i = 0; i <= targetIndex; i++) {
-            int numClientsToUse = numClients.get(i);
-            postTrialSleepInterval = sleepIntervals.get(i);
+        if (commanderExecutesToo) {
+            DistributedBenchmarkResult localResult = ConnectionWarmer.warmUp(primaryHdfs, numClients,
+                    targetNumConnections, timeoutMillis);
+            timeToConnected.add(localResult.timeToConnected);
+            totalClients += localResult.numClients;
+            totalConnected += localResult.numOpsPerformed;
+        }
 
-            LOG.info("Beginning trials using " + numClientsToUse + " clients per VM. Sleep interval: " +
-                    postTrialSleepInterval + " ms.");
+        // Followers give up once the timeout has expired, so there is no need to prompt the user while waiting.
+        long waitDeadline = System.currentTimeMillis() + timeoutMillis + 30000;
+        while (waitingOn.size() > 0 && System.currentTimeMillis() < waitDeadline) {
+            LOG.debug("Still waiting on the following Followers: " + StringUtils.join(waitingOn, ", "));
+            Thread.sleep(250);
+        }
 
-            JsonObject payload = new JsonObject();
-            payload.addProperty(OPERATION, OP_WEAK_SCALING_READS_V2);
-            payload.addProperty("numThreads", numClientsToUse);
-            payload.addProperty("filesPerThread", 4);
-            payload.addProperty("inputPath", inputPath);
-            payload.addProperty("shuffle", true);
-
-            performDistributedBenchmark(primaryHdfs, 2, payload, numClientsToUse,
-                    4, inputPath, true, OP_WEAK_SCALING_READS_V2, null,
-                    "Weak Scaling Read v2 -- Connection Establishment", new DistributedBenchmarkOperation() {
-                        @Override
-                        public DistributedBenchmarkResult call(DistributedFileSystem sharedHdfs, String nameNodeEndpoint,
-                                                               int numThreads, int opsPerFile, String inputPath,
-                                                               boolean shuffle, int opCode, List<String> directories)
-                                throws FileNotFoundException, InterruptedException {
-                            return Commands.weakScalingBenchmarkV2(sharedHdfs, numThreads,
-                                    opsPerFile, inputPath, shuffle, OP_WEAK_SCALING_READS_V2);
-                        }
-                    });
+        if (waitingOn.size() > 0)
+            LOG.warn("Did not receive warm-up results from: " + StringUtils.join(waitingOn, ", "));
 
-            LOG.info("Finished iteration " + (i+1) + "/" + (targetIndex+1) + ". Sleeping for 0.5 seconds...");
-            Thread.sleep(500);
+        BlockingQueue<DistributedBenchmarkResult> resultQueue = resultQueues.remove(operationId);
+        if (resultQueue != null) {
+            for (DistributedBenchmarkResult result : resultQueue) {
+                if (result.timeToConnected != null)
+                    timeToConnected.add(result.timeToConnected);
+                totalClients += result.numClients;
+                totalConnected += result.numOpsPerformed;
+            }
         }
 
-        // Reset `postTrialSleepInterval` to its original value.
-        postTrialSleepInterval = originalPostTrialSleepInterval;
+        LOG.info("==== CONNECTION WARM-UP ====");
+        LOG.info("Connected clients: " + totalConnected + "/" + totalClients + " (target: " +
+                targetNumConnections + " per VM)");
+        LOG.info("Time-to-connected (ms) " + timeToConnected.toSummaryString());
     }
 
     private int getNextOperation() {
@@ -2839,6 +3267,17 @@ public class Commander {
             registrationPayload.addProperty(NAMENODE_ENDPOINT, NAME_NODE_ENDPOINT);
             registrationPayload.addProperty(HDFS_CONFIG_PATH, hdfsConfigFilePath);
             registrationPayload.addProperty(TRACK_OP_PERFORMED, followersTrackOpsPerformed);
+            registrationPayload.addProperty(VIRTUAL_THREADS, Commands.USE_VIRTUAL_THREADS);
+            registrationPayload.addProperty(RAW_LATENCIES, Commands.SEND_RAW_LATENCIES);
+            registrationPayload.addProperty(LATENCY_HISTOGRAM_PRECISION, Commands.LATENCY_HISTOGRAM_PRECISION_BITS);
+            registrationPayload.addProperty(TIMELINE_INTERVAL, Commands.TIMELINE_INTERVAL_MILLIS);
+            registrationPayload.addProperty(OPS_IN_FLIGHT, Commands.OPS_IN_FLIGHT_PER_CLIENT);
+            registrationPayload.addProperty(FILE_SIZE_DISTRIBUTION, Commands.getFileSizeDistribution());
+            registrationPayload.addProperty(CLIENT_POOL_MIN_SIZE, clientPool.getMinSize());
+            registrationPayload.addProperty(CLIENT_POOL_MAX_SIZE, clientPool.getMaxSize());
+            registrationPayload.addProperty(CLIENT_POOL_IDLE_TIMEOUT, clientPool.getIdleTimeoutMillis());
+            registrationPayload.addProperty(CLIENT_POOL_HEALTH_CHECK_INTERVAL,
+                    clientPool.getHealthCheckIntervalMillis());
 
             LOG.debug("Sending '" + NAMENODE_ENDPOINT + "' as '" + NAMENODE_ENDPOINT + "'.");
             LOG.debug("Sending '" + HDFS_CONFIG_PATH + "' as '" + hdfsConfigFilePath + "'.");
@@ -2878,10 +3317,16 @@ public class Commander {
                 String opId = result.opId;
 
                 BlockingQueue<DistributedBenchmarkResult> resultQueue = resultQueues.get(opId);
-                resultQueue.add(result);
-
                 waitingOn.remove(followerName);
 
+                if (resultQueue == null) {
+                    // The operation stopped waiting for results (e.g., connection warm-up timed out).
+                    LOG.warn("Discarding late result of operation " + opId + " from Follower " + followerName + ".");
+                    return;
+                }
+
+                resultQueue.add(result);
+
                 LOG.info("resultQueue.size(): " + resultQueue.size());
             }
             else if (object instanceof WorkloadResponse) {
@@ -2920,6 +3365,11 @@ public class Commander {
         System.out.println("\n====== MENU ======");
         System.out.println("Debug Operations:");
         System.out.println(
+                "(-19) Set operations in flight per benchmark client\n" +
+                "(-18) Print HDFS client pool statistics\n" +
+                "(-17) Toggle keeping raw latency samples (required to save latencies to a file)\n" +
+                "(-16) Toggle virtual threads in self and followers\n" +
+                "(-15) Get/set whether the Commander executes tasks/jobs too\n" +
                 "(-14) Set Random HTTP/TCP Replacement Chance\n" +
                 "(-13) Establish/Pre-Warm Connections\n" +
                 "(-12) Print latency statistics to a file\n" +
@@ -2940,7 +3390,7 @@ public class Commander {
                 "\n(19) Create n directories one-after-another.\n(20) Weak Scaling Reads v2\n(21) File Stat Benchmark" +
                 "\n(22) Unavailable.\n(23) List Directories from File (Weak Scaling)\n(24) Stat File (Weak Scaling)" +
                 "\n(25) Weak Scaling (MKDIR).\n(26) Randomly-generated workload.\n(30) Create from file." +
-                "\n(31) Reader-Writer Test #1.\n");
+                "\n(31) Reader-Writer Test #1.\n(32) Snapshot namespace (for use as an existing subtree).\n");
         System.out.println("==================\n");
         System.out.println("What would you like to do?");
         System.out.print("> ");
@@ -1,7 +1,12 @@
 package com.gmail.benrcarver.distributed;
 
 import com.gmail.benrcarver.distributed.coin.BMConfiguration;
-import com.gmail.benrcarver.distributed.util.TreeNode;
+import com.gmail.benrcarver.distributed.coin.FileSizeMultiFaceCoin;
+import com.gmail.benrcarver.distributed.util.FileData;
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
+import com.gmail.benrcarver.distributed.util.NamespaceSnapshot;
+import com.gmail.benrcarver.distributed.util.PathList;
+import com.gmail.benrcarver.distributed.util.SubtreeBuilder;
 import com.gmail.benrcarver.distributed.util.Utils;
 
 import java.io.*;
@@ -27,6 +32,8 @@ import org.apache.commons.math3.util.Pair;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.fs.FileStatus;
 import io.hops.metrics.OperationPerformed;
@@ -67,47 +74,134 @@ public class Commands {
      */
     public static volatile boolean IS_SERVERLESS = true;
 
+    /**
+     * If true, then benchmark clients are run on virtual threads rather than platform threads (when supported
+     * by the JVM). This applies to {@link Commands#executeBenchmark} and the randomly-generated workload.
+     */
+    public static volatile boolean USE_VIRTUAL_THREADS = false;
+
+    /**
+     * If true, then the Commander and the followers include every raw latency sample in their results (in addition
+     * to the latency histograms). This is expensive for large benchmarks and is only required when we want to write
+     * the individual latencies to a file on the Commander.
+     */
+    public static volatile boolean SEND_RAW_LATENCIES = false;
+
+    /**
+     * Number of bits of precision used by the {@link com.gmail.benrcarver.distributed.util.LatencyHistogram}
+     * instances created during benchmarks. Must be the same on the Commander and all followers.
+     */
+    public static volatile int LATENCY_HISTOGRAM_PRECISION_BITS = LatencyHistogram.DEFAULT_PRECISION_BITS;
+
+    /**
+     * Length, in milliseconds, of the intervals of the throughput/latency timeline recorded during benchmarks.
+     * Must be the same on the Commander and all followers so that their timelines can be merged.
+     */
+    public static volatile long TIMELINE_INTERVAL_MILLIS = 100;
+
+    /**
+     * The number of operations each client of {@link Commands#executeBenchmark} keeps in flight. When this is
+     * greater than 1, each client issues its operations over this many HDFS clients without waiting for the previous
+     * operation to complete. See {@link BenchmarkExecutor}.
+     */
+    public static volatile int OPS_IN_FLIGHT_PER_CLIENT = 1;
+
+    /**
+     * The distribution from which the sizes of the files created by benchmarks are drawn, or null if they are
+     * created empty. See {@link Commands#setFileSizeDistribution(String)}.
+     */
+    public static volatile FileSizeMultiFaceCoin FILE_SIZES = null;
+
+    /**
+     * The distribution that {@link Commands#FILE_SIZES} was created from, or an empty string.
+     */
+    private static volatile String fileSizeDistribution = "";
+
     /**
      * Used to cache clients for reuse.
      */
-    public static BlockingQueue<DistributedFileSystem> hdfsClients
-            = new ArrayBlockingQueue<>(1024);
+    public static final HdfsClientPool clientPool = new HdfsClientPool();
+
+    /**
+     * Permissions, owner, and replication factor set by the CHMOD, CHOWN, and SET REPLICATION operations.
+     */
+    public static final FsPermission BENCHMARK_PERMISSION = new FsPermission((short) 0755);
+    public static final String BENCHMARK_USER = getCurrentUserName();
+    public static final short BENCHMARK_REPLICATION = 3;
+
+    /**
+     * Persistent worker threads used by {@link Commands#executeBenchmark}. These are reused across trials.
+     */
+    public static final BenchmarkExecutor benchmarkExecutor = new BenchmarkExecutor();
+
+    private static String getCurrentUserName() {
+        try {
+            return UserGroupInformation.getCurrentUser().getShortUserName();
+        } catch (IOException ex) {
+            LOG.warn("Could not determine the current user. Using the 'user.name' system property instead.");
+            return System.getProperty("user.name");
+        }
+    }
 
     /**
-     * Retrieve an HDFS client to use during a benchmark. This will attempt to reuse an existing client.
-     * If none are available, then a new client is created.
+     * Retrieve an HDFS client to use during a benchmark. This will attempt to reuse an existing client from the
+     * {@link Commands#clientPool}. If none are available, then a new client is created. This does not block
+     * on other threads.
      *
      * @return An HDFS client instance.
      */
-    public static synchronized DistributedFileSystem getHdfsClient(
-            DistributedFileSystem sharedHdfs, boolean warmingUp) {
-        DistributedFileSystem hdfs;
-        hdfs = hdfsClients.poll();
+    public static DistributedFileSystem getHdfsClient(DistributedFileSystem sharedHdfs, boolean warmingUp) {
+        DistributedFileSystem hdfs = clientPool.acquire(sharedHdfs);
 
-        if (hdfs != null) {
-            hdfs.setBenchmarkModeEnabled(Commands.BENCHMARKING_MODE);
-            hdfs.setServerlessFunctionLogLevel(sharedHdfs.getServerlessFunctionLogLevel());
+        hdfs.setBenchmarkModeEnabled(Commands.BENCHMARKING_MODE);
+        hdfs.setServerlessFunctionLogLevel(sharedHdfs.getServerlessFunctionLogLevel());
 
-            if (warmingUp)
-                hdfs.setConsistencyProtocolEnabled(false);
-            else
-                hdfs.setConsistencyProtocolEnabled(sharedHdfs.getConsistencyProtocolEnabled());
-        }
-        else {
-            LOG.warn("No HDFS client instances available (size = " +
-                    hdfsClients.size() + "). Creating a new client now...");
-            hdfs = Commander.initDfsClient(sharedHdfs, false);
+        if (warmingUp)
+            hdfs.setConsistencyProtocolEnabled(false);
+        else
+            hdfs.setConsistencyProtocolEnabled(sharedHdfs.getConsistencyProtocolEnabled());
 
-            if (warmingUp)
-                hdfs.setConsistencyProtocolEnabled(false);
-            else
-                hdfs.setConsistencyProtocolEnabled(sharedHdfs.getConsistencyProtocolEnabled());
-        }
         return hdfs;
     }
 
-    public static void returnHdfsClient(DistributedFileSystem hdfs) throws InterruptedException {
-        hdfsClients.add(hdfs);
+    /**
+     * Return a client obtained via {@link Commands#getHdfsClient} to the {@link Commands#clientPool}.
+     */
+    public static void returnHdfsClient(DistributedFileSystem hdfs) {
+        clientPool.release(hdfs);
+    }
+
+    /**
+     * Set the distribution from which the sizes of the files created by benchmarks are drawn.
+     *
+     * @param distribution A list of (size in bytes, percentage) pairs, e.g. "[(1024,10),(2048,20),(4096,70)]",
+     *                     whose percentages add up to 100. If null or empty, files are created empty.
+     */
+    public static synchronized void setFileSizeDistribution(String distribution) {
+        if (distribution == null || distribution.trim().isEmpty()) {
+            FILE_SIZES = null;
+            fileSizeDistribution = "";
+        } else {
+            FILE_SIZES = new FileSizeMultiFaceCoin(distribution.trim());
+            fileSizeDistribution = distribution.trim();
+        }
+    }
+
+    /**
+     * Return the distribution set by {@link Commands#setFileSizeDistribution(String)}, or an empty string if files
+     * are created empty.
+     */
+    public static String getFileSizeDistribution() {
+        return fileSizeDistribution;
+    }
+
+    /**
+     * Return true if the raw latency samples should be retained in benchmark results. Retaining them is
+     * O(operations), so the Commander and the followers alike only do so if explicitly requested (see
+     * {@link Commands#SEND_RAW_LATENCIES}). Otherwise, only the latency histograms are kept.
+     */
+    public static boolean keepRawLatencies() {
+        return SEND_RAW_LATENCIES;
     }
 
     public static boolean exists(DistributedFileSystem hdfs, String targetPath) {
@@ -124,6 +218,9 @@ public class Commands {
     /**
      * Generic driver used to execute all/most benchmarks.
      *
+     * The benchmark is executed by the persistent {@link Commands#benchmarkExecutor}, so the worker threads
+     * (and their HDFS clients) are reused across trials rather than being created anew each time.
+     *
      * @param sharedHdfs The primary/shared HDFS instance used to collect/aggregate metric information.
      * @param numThreads Number of HopsFS clients to use (one per thread).
      * @param fileBatches Batches of files for each client. One batch per thread.
@@ -141,181 +238,30 @@ public class Commands {
             int operationsPerFile,
             int opCode,
             FSOperation operation) throws InterruptedException {
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("At start of benchmark, the HDFS Clients Cache has " + hdfsClients.size() + " clients.");
-        }
-
-        Thread[] threads = new Thread[numThreads];
-
-        // Used to synchronize threads; they each connect to HopsFS and then
-        // count down. So, they all cannot start until they are all connected.
-        final CountDownLatch startLatch = new CountDownLatch(numThreads + 1);
-
-        // Used to synchronize threads; they block when they finish executing to avoid using CPU cycles
-        // by aggregating their results. Once all the threads have finished, they aggregate their results.
-        final CountDownLatch endLatch = new CountDownLatch(numThreads);
-        final Semaphore readySemaphore = new Semaphore((numThreads * -1) + 1);
-        final Semaphore endSemaphore = new Semaphore((numThreads * -1) + 1);
-
-        final BlockingQueue<List<OperationPerformed>> operationsPerformed =
-                new java.util.concurrent.ArrayBlockingQueue<>(numThreads);
-
-        // Keep track of number of successful operations.
-        AtomicInteger numSuccessfulOps = new AtomicInteger(0);
-        AtomicInteger numOps = new AtomicInteger(0);
-        AtomicInteger numThreadsFinished = new AtomicInteger(0);
-
-        final SynchronizedDescriptiveStatistics latencyHttp = new SynchronizedDescriptiveStatistics();
-        final SynchronizedDescriptiveStatistics latencyTcp = new SynchronizedDescriptiveStatistics();
-        final SynchronizedDescriptiveStatistics latencyBoth = new SynchronizedDescriptiveStatistics();
-
-        for (int i = 0; i < numThreads; i++) {
-            final String[] filesForCurrentThread = fileBatches[i];
-            final int threadId = i;
-            Thread thread = new Thread(() -> {
-                DistributedFileSystem hdfs = getHdfsClient(sharedHdfs, false);
-
-                readySemaphore.release(); // Ready to start. Once all threads have done this, the timer begins.
-
-                startLatch.countDown(); // Wait for the main thread's signal to actually begin.
-
-                try {
-                    startLatch.await();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
-                int numSuccessfulOpsCurrentThread = 0;
-                int numOpsCurrentThread = 0;
-
-                //for (String filePath : filesForCurrentThread) {
-                for (String filePath : filesForCurrentThread) {
-                    for (int k = 0; k < operationsPerFile; k++) {
-                        if (operation.call(hdfs, filePath, EMPTY_STRING))
-                            numSuccessfulOpsCurrentThread++;
-                        numOpsCurrentThread++;
-                    }
-                }
-
-                // This way, we don't have to wait for all the statistics to be added to lists and whatnot.
-                // As soon as the threads finish, they call release() on the endSemaphore. Once all threads have
-                // done this, we designate the benchmark as ended and record the stop time. Then we join the threads
-                // so that all the statistics are placed into the appropriate collections where we can aggregate them.
-                endSemaphore.release();
-
-                int completed = numThreadsFinished.incrementAndGet();
-
-                //if (LOG.isDebugEnabled())
-                LOG.info("Thread " + threadId + " has finished executing. " + completed + "/" + numThreads +
-                            " have finished executing.");
-
-                endLatch.countDown();
-
-                try {
-                    endLatch.await();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-
-                numSuccessfulOps.addAndGet(numSuccessfulOpsCurrentThread);
-                numOps.addAndGet(numOpsCurrentThread);
-
-                if (!BENCHMARKING_MODE) {
-                    //if (LOG.isDebugEnabled()) LOG.debug("[THREAD " + threadId + "] Collecting operations performed.");
-                    operationsPerformed.add(hdfs.getOperationsPerformed());
-//                    if (TRACK_OP_PERFORMED) {
-//                        //if (LOG.isDebugEnabled()) LOG.debug("[THREAD " + threadId + "] Collecting statistics packages & tx events.");
-//                        statisticsPackages.add(hdfs.getStatisticsPackages());
-//                        transactionEvents.add(hdfs.getTransactionEvents());
-//                    }
-                }
-
-                //if (LOG.isDebugEnabled()) LOG.debug("[THREAD " + threadId + "] Collecting HTTP latencies.");
-                for (double latency : hdfs.getLatencyHttpStatistics().getValues()) {
-                    latencyHttp.addValue(latency);
-                    latencyBoth.addValue(latency);
-                }
-
-                //if (LOG.isDebugEnabled()) LOG.debug("[THREAD " + threadId + "] Collecting TCP latencies.");
-                for (double latency : hdfs.getLatencyTcpStatistics().getValues()) {
-                    latencyTcp.addValue(latency);
-                    latencyBoth.addValue(latency);
-                }
-
-                // First clear the metric data associated with the client.
-                clearMetricDataNoPrompt(hdfs);
-
-                try {
-                    // Now return the client to the pool so that it can be used again in the future.
-                    returnHdfsClient(hdfs);
-                } catch (InterruptedException e) {
-                    LOG.error("Encountered error when trying to return HDFS client. Closing it instead.");
-                    e.printStackTrace();
-
-                    LOG.warn("[THREAD " + threadId + "] Terminating HDFS connection.");
-                    try {
-                        hdfs.close();
-
-                        LOG.warn("[THREAD " + threadId + "] Terminated HDFS connection.");
-                    } catch (IOException ex) {
-                        LOG.error("Encountered IOException while closing DistributedFileSystem object:", ex);
-                    }
-                }
-            });
-            threads[i] = thread;
-        }
-
-        LOG.info("Starting threads.");
-        for (Thread thread : threads) {
-            thread.start();
-        }
-
-        readySemaphore.acquire();                   // Will block until all client threads are ready to go.
-        long start = System.currentTimeMillis();    // Start the clock.
-        startLatch.countDown();                     // Let the threads start.
-
-        // This way, we don't have to wait for all the statistics to be added to lists and whatnot.
-        // As soon as the threads finish, they call release() on the endSemaphore. Once all threads have
-        // done this, we designate the benchmark as ended and record the stop time. Then we join the threads
-        // so that all the statistics are placed into the appropriate collections where we can aggregate them.
-        endSemaphore.acquire();
-        long end = System.currentTimeMillis();
+        return executeBenchmark(sharedHdfs, numThreads, fileBatches, operationsPerFile, opCode, operation,
+                OPS_IN_FLIGHT_PER_CLIENT);
+    }
 
-        LOG.info("Benchmark completed in " + (end - start) + "ms. Joining the " + threads.length + " threads now...");
-        for (Thread thread : threads) {
-            thread.join();
+    /**
+     * Same as {@link Commands#executeBenchmark(DistributedFileSystem, int, String[][], int, int, FSOperation)},
+     * except that each client keeps {@code opsInFlight} operations in flight rather than
+     * {@link Commands#OPS_IN_FLIGHT_PER_CLIENT}.
+     */
+    public static DistributedBenchmarkResult executeBenchmark(
+            DistributedFileSystem sharedHdfs,
+            int numThreads,
+            String[][] fileBatches,
+            int operationsPerFile,
+            int opCode,
+            FSOperation operation,
+            int opsInFlight) throws InterruptedException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("At start of benchmark, " + clientPool.getMetricsString() + ". " +
+                    "The benchmark executor has " + benchmarkExecutor.getNumWorkers() + " workers.");
         }
 
-        List<OperationPerformed> allOperationsPerformed = new ArrayList<>();
-        Pair<Integer, Integer> cacheHitsAndMisses = mergeMetricInformation(sharedHdfs, operationsPerformed, allOperationsPerformed);
-                // statisticsPackages, transactionEvents, allOperationsPerformed);
-        int totalCacheHits = cacheHitsAndMisses.getFirst();
-        int totalCacheMisses = cacheHitsAndMisses.getSecond();
-
-        double durationSeconds = (end - start) / 1.0e3;
-
-        // TODO: Verify that I've calculated the total number of operations correctly.
-        int numSuccess = numSuccessfulOps.get();
-        int totalOperations = numOps.get();
-        LOG.info("Finished performing all " + totalOperations + " operations in " + durationSeconds + " sec.");
-        double totalThroughput = (double)totalOperations / durationSeconds;
-        double successThroughput = (double)numSuccess / durationSeconds;
-        LOG.info("Number of successful operations: " + numSuccess);
-        LOG.info("Number of failed operations: " + (totalOperations - numSuccess));
-
-        printLatencyStatistics(latencyBoth, latencyTcp, latencyHttp);
-        sharedHdfs.addLatencies(latencyTcp.getValues(), latencyHttp.getValues());
-        LOG.info("Total Throughput: " + totalThroughput + " ops/sec.");
-        LOG.info("Successful Throughput: " + successThroughput + " ops/sec.");
-
-        if (LOG.isDebugEnabled())
-            LOG.debug("At end of benchmark, the HDFS Clients Cache has " + hdfsClients.size() + " clients.");
-
-        return new DistributedBenchmarkResult(null, opCode, numSuccess,
-                durationSeconds, start, end, totalCacheHits, totalCacheMisses,
-                TRACK_OP_PERFORMED ? allOperationsPerformed.toArray(new OperationPerformed[0]) : null,
-                TRACK_OP_PERFORMED ? sharedHdfs.getTransactionEvents() : null,
-                latencyTcp, latencyHttp, totalOperations - numSuccess);
+        return benchmarkExecutor.execute(sharedHdfs, numThreads, fileBatches, operationsPerFile, opCode, operation,
+                opsInFlight);
     }
 
     public static DistributedBenchmarkResult writeFilesToDirectories(DistributedFileSystem hdfs)
@@ -404,7 +350,7 @@ public class Commands {
         if (input.equalsIgnoreCase("y")) {
             clearMetricDataNoPrompt(hdfs);
 
-            for (DistributedFileSystem otherHdfs : hdfsClients) {
+            for (DistributedFileSystem otherHdfs : clientPool.getClients()) {
                 clearMetricDataNoPrompt(otherHdfs);
             }
 
@@ -449,17 +395,46 @@ public class Commands {
         return success;
     }
 
+    /**
+     * Map and index a local file containing HopsFS paths, one per line.
+     */
+    private static PathList getPathList(String inputPath) throws FileNotFoundException {
+        try {
+            return PathList.open(inputPath);
+        } catch (IOException ex) {
+            FileNotFoundException notFound = new FileNotFoundException("Could not read paths from '" + inputPath +
+                    "': " + ex.getMessage());
+            notFound.initCause(ex);
+            throw notFound;
+        }
+    }
+
+    /**
+     * Assign one path to each thread: distinct, randomly-selected paths if {@code shuffle} is true, and the first
+     * {@code numThreads} paths otherwise.
+     */
+    private static String[][] getOnePathPerThread(PathList paths, int numThreads, boolean shuffle) {
+        String[] selected;
+        if (shuffle) {
+            LOG.debug("Selecting " + numThreads + " random path(s).");
+            selected = paths.sampleWithoutReplacement(numThreads, new Random());
+        } else {
+            selected = paths.subList(0, numThreads).toArray(new String[0]);
+        }
+
+        String[][] pathsPerThread = new String[numThreads][1];
+        for (int i = 0; i < numThreads; i++) {
+            pathsPerThread[i][0] = selected[i];
+        }
+        return pathsPerThread;
+    }
+
     public static DistributedBenchmarkResult listDirectoryWeakScaling(final DistributedFileSystem sharedHdfs,
                                                                       int numThreads,
                                                                       int readsPerFile, String inputPath, boolean shuffle,
                                                                       int opCode)
             throws InterruptedException, FileNotFoundException {
-        List<String> paths = Utils.getFilePathsFromFile(inputPath);
-
-        if (shuffle) {
-            LOG.debug("Shuffling paths.");
-            Collections.shuffle(paths);
-        }
+        PathList paths = getPathList(inputPath);
 
         if (paths.size() < numThreads) {
             LOG.error("ERROR: The file should contain at least " + numThreads +
@@ -469,10 +444,7 @@ public class Commands {
             return null;
         }
 
-        String[][] pathsPerThread = new String[numThreads][1];
-        for (int i = 0; i < numThreads; i++) {
-            pathsPerThread[i][0] = paths.get(i);
-        }
+        String[][] pathsPerThread = getOnePathPerThread(paths, numThreads, shuffle);
 
         return executeBenchmark(sharedHdfs, numThreads, pathsPerThread, readsPerFile,
                 opCode, FSOperation.LIST_DIR_NO_PRINT);
@@ -493,12 +465,7 @@ public class Commands {
                                                                   final int filesPerThread, String inputPath,
                                                                   boolean shuffle, int opCode)
             throws InterruptedException, FileNotFoundException {
-        List<String> paths = Utils.getFilePathsFromFile(inputPath);
-
-        if (shuffle) {
-            LOG.debug("Shuffling paths.");
-            Collections.shuffle(paths);
-        }
+        PathList paths = getPathList(inputPath);
 
         if (paths.size() < numThreads) {
             LOG.error("ERROR: The file should contain at least " + numThreads +
@@ -509,21 +476,17 @@ public class Commands {
 
         Random rng = new Random(); // TODO: Optionally seed this?
 
-        final String[][] fileBatches = new String[numThreads][filesPerThread];
-        int counter = 0;
+        // With shuffling, each thread samples its files (with replacement) from the whole list.
+        // Otherwise, every thread uses the first filesPerThread files.
+        final String[][] fileBatches = new String[numThreads][];
         for (int i = 0; i < numThreads; i++) {
-            for (int j = 0; j < filesPerThread; j++) {
-                int filePathIndex;
-                if (shuffle)
-                    filePathIndex = rng.nextInt(paths.size());
-                else
-                    filePathIndex = counter++;
-                fileBatches[i][j] = paths.get(filePathIndex);
+            if (shuffle) {
+                fileBatches[i] = paths.sample(filesPerThread, rng);
+            } else {
+                fileBatches[i] = new String[filesPerThread];
+                for (int j = 0; j < filesPerThread; j++)
+                    fileBatches[i][j] = paths.get(j);
             }
-            counter = 0;
-
-            if (shuffle)
-                Collections.shuffle(paths);
         }
 
         return executeBenchmark(sharedHdfs, numThreads, fileBatches, 1, opCode, FSOperation.FILE_INFO);
@@ -595,7 +558,7 @@ public class Commands {
                                                                     int numFilesPerThread, int readsPerFile,
                                                                     int numThreads, String inputPath)
             throws FileNotFoundException, InterruptedException {
-        List<String> paths = Utils.getFilePathsFromFile(inputPath);
+        PathList paths = getPathList(inputPath);
 
         if (paths.size() < numFilesPerThread) {
             LOG.error("ERROR: The file should contain at least " + numFilesPerThread +
@@ -604,21 +567,12 @@ public class Commands {
             return null;
         }
 
-        // Select a random subset of size n, where n is the number of files each thread should read.
-        Collections.shuffle(paths);
-
-        String[][] filesPerThread = new String[numThreads][numFilesPerThread];
-        int counter = 0;
-        for (int i = 0; i < numThreads; i++) {
-            for (int j = 0; j < numFilesPerThread; j++) {
-                // Select the first j files for thread i.
-                filesPerThread[i][j] = paths.get(counter);
-            }
-
-            // Each thread receives a random subset of files.
-            // So, we shuffle the paths each time to ensure each thread gets a random subset.
-            Collections.shuffle(paths);
-        }
+        // Each thread receives its own random subset of n distinct files, where n is the number of files each
+        // thread should read.
+        Random rng = new Random();
+        String[][] filesPerThread = new String[numThreads][];
+        for (int i = 0; i < numThreads; i++)
+            filesPerThread[i] = paths.sampleWithoutReplacement(numFilesPerThread, rng);
 
         LOG.debug("Each of the " + numThreads + " thread(s) will read " + numFilesPerThread + " random file(s).");
 
@@ -641,12 +595,7 @@ public class Commands {
                                                                     final int filesPerThread, String inputPath,
                                                                     boolean shuffle, int opCode)
             throws InterruptedException, FileNotFoundException {
-        List<String> paths = Utils.getFilePathsFromFile(inputPath);
-
-        if (shuffle) {
-            LOG.debug("Shuffling paths.");
-            Collections.shuffle(paths);
-        }
+        PathList paths = getPathList(inputPath);
 
         if (paths.size() < numThreads) {
             LOG.error("ERROR: The file should contain at least " + numThreads +
@@ -657,21 +606,17 @@ public class Commands {
 
         Random rng = new Random(); // TODO: Optionally seed this?
 
-        final String[][] fileBatches = new String[numThreads][filesPerThread];
-        int counter = 0;
+        // With shuffling, each thread samples its files (with replacement) from the whole list.
+        // Otherwise, every thread uses the first filesPerThread files.
+        final String[][] fileBatches = new String[numThreads][];
         for (int i = 0; i < numThreads; i++) {
-            for (int j = 0; j < filesPerThread; j++) {
-                int filePathIndex;
-                if (shuffle)
-                    filePathIndex = rng.nextInt(paths.size());
-                else
-                    filePathIndex = counter++;
-                fileBatches[i][j] = paths.get(filePathIndex);
+            if (shuffle) {
+                fileBatches[i] = paths.sample(filesPerThread, rng);
+            } else {
+                fileBatches[i] = new String[filesPerThread];
+                for (int j = 0; j < filesPerThread; j++)
+                    fileBatches[i][j] = paths.get(j);
             }
-            counter = 0;
-
-            if (shuffle)
-                Collections.shuffle(paths);
         }
 
         return executeBenchmark(
@@ -692,12 +637,7 @@ public class Commands {
                                                                 int readsPerFile, String inputPath, boolean shuffle,
                                                                 int opCode)
             throws InterruptedException, FileNotFoundException {
-        List<String> paths = Utils.getFilePathsFromFile(inputPath);
-
-        if (shuffle) {
-            LOG.debug("Shuffling paths.");
-            Collections.shuffle(paths);
-        }
+        PathList paths = getPathList(inputPath);
 
         if (paths.size() < numThreads) {
             LOG.error("ERROR: The file should contain at least " + numThreads +
@@ -706,10 +646,7 @@ public class Commands {
             return null;
         }
 
-        String[][] pathsPerThread = new String[numThreads][1];
-        for (int i = 0; i < numThreads; i++) {
-            pathsPerThread[i][0] = paths.get(i);
-        }
+        String[][] pathsPerThread = getOnePathPerThread(paths, numThreads, shuffle);
 
         return executeBenchmark(
                 sharedHdfs, numThreads, pathsPerThread, readsPerFile, opCode, FSOperation.READ_FILE);
@@ -1139,87 +1076,134 @@ public class Commands {
         LOG.info("Throughput: " + throughput + " ops/sec.");
     }
 
-    public static void createSubtree(DistributedFileSystem hdfs) throws IOException {
-        System.out.print("Subtree root directory:\n> ");
-        String subtreeRootPath = scanner.nextLine();
+    /**
+     * Create a complete subtree (or this VM's partition of one) with a {@link SubtreeBuilder}, then write the
+     * directories that it contains to a text file, and its directories and files to a {@link NamespaceSnapshot}, in
+     * the output directory.
+     *
+     * @param subtreeDepth The depth of the deepest directories below the root, starting from zero.
+     * @param checkpointPath Local file used to resume an interrupted build. May be null. If the subtree is split
+     *                       into several partitions, the partition is added to the name of the file, so that
+     *                       partitions created on the same host do not share a checkpoint.
+     *
+     * @return A result whose {@code subtreeLevels} holds the result of each level of the partition.
+     */
+    public static DistributedBenchmarkResult createSubtree(DistributedFileSystem hdfs, String subtreeRootPath,
+                                                           int subtreeDepth, int maxSubDirs, int filesPerDir,
+                                                           int numThreads, int partition, int numPartitions,
+                                                           String checkpointPath)
+            throws IOException, InterruptedException {
+        if (checkpointPath != null && numPartitions > 1)
+            checkpointPath = getPartitionPath(checkpointPath, partition);
 
-        System.out.print("Subtree depth:\n> ");
-        int subtreeDepth = Integer.parseInt(scanner.nextLine());
+        LOG.info("Creating partition " + partition + "/" + numPartitions + " of subtree " + subtreeRootPath +
+                " (depth=" + subtreeDepth + ", maxSubDirs=" + maxSubDirs + ", filesPerDir=" + filesPerDir +
+                ") with " + numThreads + " thread(s).");
 
-        System.out.print("Max subdirs:\n> ");
-        int maxSubDirs = Integer.parseInt(scanner.nextLine());
+        Instant start = Instant.now();
+        long startTime = start.toEpochMilli();
 
-        int height = subtreeDepth + 1;
-        double totalPossibleDirectories = (Math.pow(maxSubDirs, height + 1) - 1) / (maxSubDirs - 1);
-        LOG.info("\nThis could create a maximum of " + totalPossibleDirectories + " directories.");
-        System.out.print("Is this okay? [y/N]\n >");
+        SubtreeBuilder builder = new SubtreeBuilder(hdfs, subtreeRootPath, subtreeDepth + 1, maxSubDirs,
+                filesPerDir, numThreads, partition, numPartitions, checkpointPath);
+        List<SubtreeBuilder.LevelResult> levelResults = builder.build();
 
-        String resp = scanner.nextLine();
-
-        // If they answered anything other than 'y', then abort.
-        if (!resp.equalsIgnoreCase("y")) {
-            LOG.info("\nAborting.");
-            return;
-        }
+        Duration subtreeCreationDuration = Duration.between(start, Instant.now());
 
         int numDirectoriesCreated = 0;
-        int filesCreated = 0;
+        int numFilesCreated = 0;
+        int numFailures = 0;
+        for (SubtreeBuilder.LevelResult result : levelResults) {
+            numDirectoriesCreated += result.getDirsCreated();
+            numFilesCreated += result.getFilesCreated();
+            numFailures += result.getFailures();
+        }
 
-        Instant start = Instant.now();
+        LOG.info("=== Subtree Creation Completed ===");
+        LOG.info("Time elapsed: " + subtreeCreationDuration.toString());
+        LOG.info("Directories created: " + numDirectoriesCreated);
+        LOG.info("Files created: " + numFilesCreated);
+        LOG.info("Failures: " + numFailures);
+        for (SubtreeBuilder.LevelResult result : levelResults)
+            LOG.info(result.toString());
+        LOG.info("Directories in subtree: " + builder.getDirectories().size() + "\n");
+
+        String outputPrefix = "./output/createSubtree-" + Instant.now().toEpochMilli() +
+                (numPartitions > 1 ? "-part" + partition : "");
+        Utils.write(outputPrefix + ".txt", builder.getDirectories().toArray(new String[0]));
+
+        // The snapshot can be used as the existing subtree in place of the text file, and loads much faster. Unlike
+        // the text file, it also holds the files, so that workloads can operate on them.
+        NamespaceSnapshot.build(builder.getDirectories(), builder.getFiles()).writeTo(outputPrefix + ".snapshot");
+        LOG.info("Wrote the directories of the subtree to '" + outputPrefix + ".txt', and its directories and " +
+                "files to '" + outputPrefix + ".snapshot'");
 
-        int currentDepth = 0;
+        LOG.info("==================================");
 
-        mkdir(subtreeRootPath, hdfs);
-        numDirectoriesCreated++;
+        DistributedBenchmarkResult result = new DistributedBenchmarkResult(null, OP_CREATE_SUBTREE,
+                numDirectoriesCreated + numFilesCreated, subtreeCreationDuration.toMillis() / 1.0e3, startTime,
+                startTime + subtreeCreationDuration.toMillis(), 0, 0, null, null, null, null, numFailures);
+        result.subtreeLevels = new ArrayList<>(levelResults);
+        return result;
+    }
 
-        Set<String> directoriesCreated = new HashSet<>();
-        Stack<TreeNode> directoryStack = new Stack<>();
-        TreeNode subtreeRoot = new TreeNode(subtreeRootPath, new ArrayList<>());
-        directoryStack.push(subtreeRoot);
+    /**
+     * Add the given partition to a local path, before its extension (if any).
+     */
+    private static String getPartitionPath(String path, int partition) {
+        int extensionIndex = path.lastIndexOf('.');
+        if (extensionIndex <= path.lastIndexOf('/') + 1)
+            return path + "-part" + partition;
+        return path.substring(0, extensionIndex) + "-part" + partition + path.substring(extensionIndex);
+    }
 
-        while (currentDepth <= subtreeDepth) {
-            LOG.info("=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=");
-            LOG.info("CURRENT DEPTH: " + currentDepth);
-            LOG.info("DIRECTORIES CREATED: " + numDirectoriesCreated);
-            LOG.info("=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=-=");
-            List<Stack<TreeNode>> currentDepthStacks = new ArrayList<>();
-            while (!directoryStack.empty()) {
-                TreeNode directory = directoryStack.pop();
+    /**
+     * Crawl a directory of the file system and write a {@link NamespaceSnapshot} of every directory and file
+     * beneath it (including the directory itself), which can then be used as an existing subtree.
+     */
+    public static void snapshotNamespace(DistributedFileSystem hdfs) throws IOException {
+        System.out.print("Root directory to crawl:\n> ");
+        String rootPath = scanner.nextLine().trim();
 
-                String basePath = directory.getPath() + "/dir";
+        System.out.print("Local path for the snapshot (default: ./output/namespace-<timestamp>.snapshot):\n> ");
+        String snapshotPath = scanner.nextLine().trim();
+        if (snapshotPath.isEmpty())
+            snapshotPath = "./output/namespace-" + Instant.now().toEpochMilli() + ".snapshot";
 
-                Stack<TreeNode> stack = createChildDirectories(basePath, maxSubDirs, hdfs, directoriesCreated);
-                directory.addChildren(stack);
-                numDirectoriesCreated += stack.size();
-                currentDepthStacks.add(stack);
-            }
+        Instant start = Instant.now();
 
-            for (Stack<TreeNode> stack : currentDepthStacks) {
-                directoryStack.addAll(stack);
+        List<String> directories = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        ArrayDeque<Path> toCrawl = new ArrayDeque<>();
+        toCrawl.add(new Path(rootPath));
+        directories.add(rootPath);
+
+        int numCrawled = 0;
+        while (!toCrawl.isEmpty()) {
+            Path directory = toCrawl.poll();
+            for (FileStatus status : hdfs.listStatus(directory)) {
+                String path = status.getPath().toUri().getPath();
+                if (status.isDirectory()) {
+                    directories.add(path);
+                    toCrawl.add(status.getPath());
+                } else {
+                    files.add(path);
+                }
             }
 
-            currentDepth++;
+            if (++numCrawled % 10000 == 0 && LOG.isDebugEnabled())
+                LOG.debug("Crawled " + directories.size() + " directories and " + files.size() + " files so far.");
         }
 
-        Instant end = Instant.now();
-        Duration subtreeCreationDuration = Duration.between(start, end);
-
-        LOG.info("=== Subtree Creation Completed ===");
-        LOG.info("Time elapsed: " + subtreeCreationDuration.toString());
-        LOG.info("Directories created: " + numDirectoriesCreated);
-        LOG.info("Files created: " + filesCreated + "\n");
-
-        LOG.info("subtreeRoot children: " + subtreeRoot.getChildren().size());
-        LOG.info("directoriesCreated.size(): " + directoriesCreated.size());
-        LOG.info(subtreeRoot.toString());
-
-//        for (String path : directoriesCreated) {
-//            System.out.println(path);
-//        }
-
-        Utils.write("./output/createSubtree-" + Instant.now().toEpochMilli()+ ".txt", directoriesCreated.toArray(new String[0]));
+        Instant crawled = Instant.now();
+        NamespaceSnapshot snapshot = NamespaceSnapshot.build(directories, files);
+        snapshot.writeTo(snapshotPath);
 
-        LOG.info("==================================");
+        LOG.info("=== Namespace Snapshot Completed ===");
+        LOG.info("Crawled " + directories.size() + " directories and " + files.size() + " files in " +
+                Duration.between(start, crawled).toString() + ".");
+        LOG.info("Wrote " + snapshot + " to '" + snapshotPath + "' in " +
+                Duration.between(crawled, Instant.now()).toString() + ".");
+        LOG.info("====================================");
     }
 
     public static DistributedBenchmarkResult mkdirWeakScaling(DistributedFileSystem sharedHdfs, int mkdirsPerDirectory,
@@ -1281,21 +1265,6 @@ public class Commands {
                 targetPathsPerThread, 1, opCode, FSOperation.MKDIRS);
     }
 
-    public static Stack<TreeNode> createChildDirectories(String basePath, int subDirs,
-                                                         DistributedFileSystem hdfs,
-                                                         Collection<String> directoriesCreated) {
-        Stack<TreeNode> directoryStack = new Stack<>();
-        for (int i = 0; i < subDirs; i++) {
-            String path = basePath + i;
-            mkdir(path, hdfs);
-            directoriesCreated.add(path);
-            TreeNode node = new TreeNode(path, new ArrayList<>());
-            directoryStack.push(node);
-        }
-
-        return directoryStack;
-    }
-
     public static void createFileOperation(DistributedFileSystem hdfs) {
         System.out.print("File path:\n> ");
         String fileName = scanner.nextLine();
@@ -1316,7 +1285,8 @@ public class Commands {
     /**
      * Create a new file with the given name and contents.
      * @param name The name of the file.
-     * @param contents The content to be written to the file.
+     * @param contents The content to be written to the file. If empty, the size of the file is drawn from
+     *                 {@link Commands#FILE_SIZES} (if set), and that many bytes of {@link FileData} are written.
      *
      * @return True if the create operation succeeds, otherwise false.
      */
@@ -1333,7 +1303,13 @@ public class Commands {
                 br.write(contents);
                 br.close();
             } else {
-                outputStream.close();
+                FileSizeMultiFaceCoin fileSizes = FILE_SIZES;
+                try {
+                    if (fileSizes != null)
+                        FileData.write(outputStream, fileSizes.getFileSize());
+                } finally {
+                    outputStream.close();
+                }
             }
 
             return true;
@@ -1529,29 +1505,27 @@ public class Commands {
         String fileName = scanner.nextLine();
 
         long start = System.currentTimeMillis();
-        readFile(fileName, hdfs);
-        LOG.info("Completed READ operation for target '" + fileName + "' in " +
-                (System.currentTimeMillis() - start) + " ms.");
+        if (readFile(fileName, hdfs)) {
+            FileData.ReadStats stats = FileData.getLastRead();
+            LOG.info("Completed READ operation for target '" + fileName + "' in " +
+                    (System.currentTimeMillis() - start) + " ms. Read " + stats.bytesRead + " byte(s). Time to " +
+                    "first byte: " + (stats.timeToFirstByteNanos / 1.0e6) + " ms.");
+        }
     }
 
     /**
-     * Read the HopsFS/HDFS file at the given path.
+     * Read the HopsFS/HDFS file at the given path. The contents are read into the calling thread's
+     * {@link FileData} read buffer and discarded. The number of bytes read and the time to the first byte (measured
+     * from before the file is opened) are then available from {@link FileData#getLastRead()}.
      * @param fileName The path to the file to read.
-     * @return The latency of the operation in nanoseconds.
+     * @return True if the read operation succeeds, otherwise false.
      */
     public static boolean readFile(String fileName, DistributedFileSystem hdfs) {
         Path filePath = new Path(Commander.NAME_NODE_ENDPOINT + fileName);
 
-        try {
-            FSDataInputStream inputStream = hdfs.open(filePath);
-
-            BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-
-            while ((line = br.readLine()) != null)
-                LOG.info(line);
-            inputStream.close();
-            br.close();
+        long start = System.nanoTime();
+        try (FSDataInputStream inputStream = hdfs.open(filePath)) {
+            FileData.drain(inputStream, start);
             return true;
         } catch (IOException ex) {
             ex.printStackTrace();
@@ -1587,4 +1561,85 @@ public class Commands {
 
         return false;
     }
+
+    /**
+     * Append the given contents to the file at the given path.
+     *
+     * @param contents The content to be appended to the file. If empty, the number of bytes to append is drawn from
+     *                 {@link Commands#FILE_SIZES} (if set), and that many bytes of {@link FileData} are written, as
+     *                 in {@link Commands#createFile(String, String, DistributedFileSystem)}.
+     */
+    public static boolean append(String targetPath, String contents, DistributedFileSystem hdfs) {
+        Path filePath = new Path(Commander.NAME_NODE_ENDPOINT + targetPath);
+
+        try {
+            FSDataOutputStream outputStream = hdfs.append(filePath);
+
+            try {
+                if (contents != null && !contents.isEmpty()) {
+                    outputStream.write(contents.getBytes(StandardCharsets.UTF_8));
+                } else {
+                    FileSizeMultiFaceCoin fileSizes = FILE_SIZES;
+                    if (fileSizes != null)
+                        FileData.write(outputStream, fileSizes.getFileSize());
+                }
+            } finally {
+                outputStream.close();
+            }
+
+            return true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the permissions of the file or directory at the given path to {@link Commands#BENCHMARK_PERMISSION}.
+     */
+    public static boolean setPermission(String targetPath, DistributedFileSystem hdfs) {
+        Path filePath = new Path(Commander.NAME_NODE_ENDPOINT + targetPath);
+
+        try {
+            hdfs.setPermission(filePath, BENCHMARK_PERMISSION);
+            return true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the owner of the file or directory at the given path to the current user. This leaves the owner
+     * unchanged, so the file remains usable by the rest of the workload, but is still a full metadata write.
+     */
+    public static boolean setOwner(String targetPath, DistributedFileSystem hdfs) {
+        Path filePath = new Path(Commander.NAME_NODE_ENDPOINT + targetPath);
+
+        try {
+            hdfs.setOwner(filePath, BENCHMARK_USER, null);
+            return true;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Set the replication factor of the file at the given path to {@link Commands#BENCHMARK_REPLICATION}.
+     */
+    public static boolean setReplication(String targetPath, DistributedFileSystem hdfs) {
+        Path filePath = new Path(Commander.NAME_NODE_ENDPOINT + targetPath);
+
+        try {
+            return hdfs.setReplication(filePath, BENCHMARK_REPLICATION);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+
+        return false;
+    }
 }
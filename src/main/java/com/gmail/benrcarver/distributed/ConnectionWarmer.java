@@ -0,0 +1,186 @@
+package com.gmail.benrcarver.distributed;
+
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
+import com.gmail.benrcarver.distributed.util.VirtualThreads;
+import io.hops.leader_election.node.SortedActiveNodeList;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.serverless.consistency.ActiveServerlessNameNodeList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.gmail.benrcarver.distributed.Commands.clientPool;
+import static com.gmail.benrcarver.distributed.Constants.OP_ESTABLISH_CONNECTIONS;
+
+/**
+ * Establishes TCP connections between HDFS clients and the serverless NameNodes ahead of a benchmark.
+ *
+ * A number of clients are obtained from the {@link Commands#clientPool} in parallel (creating them if necessary),
+ * and each one is driven by its own thread, which repeatedly pings a NameNode deployment until one of the client's
+ * requests is served over TCP. (The first requests of a client are issued over HTTP; the NameNode that serves them
+ * then connects back to the client, after which requests go over TCP.) The clients are assigned to the deployments
+ * round-robin. Warm-up stops as soon as the target number of clients are connected, or when the timeout expires.
+ *
+ * The clients are returned to the pool afterwards, so subsequent benchmarks reuse the connected clients. This
+ * replaces the old approach of running a read benchmark at a hard-coded ladder of client counts with hand-tuned
+ * sleeps in between.
+ */
+public class ConnectionWarmer {
+    public static final Logger LOG = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+    /**
+     * How long a client waits between two consecutive probes. The NameNode connects back to the client
+     * asynchronously, so probing in a tight loop would only produce more HTTP requests.
+     */
+    public static final long PROBE_INTERVAL_MILLIS = 25;
+
+    /**
+     * Warm up the given number of clients.
+     *
+     * @param sharedHdfs The shared/primary HDFS client, used to configure new clients.
+     * @param numClients The number of clients to warm up in parallel.
+     * @param targetConnections Warm-up stops once this many clients are connected. Must be at most numClients.
+     * @param timeoutMillis Warm-up stops after this long, even if the target has not been reached.
+     *
+     * @return A result whose {@code numOpsPerformed} is the number of connected clients and whose
+     * {@code timeToConnected} holds the time it took each of them to connect, measured from the start of warm-up.
+     * Its {@code numClients} is the number of clients that were warmed up.
+     */
+    public static DistributedBenchmarkResult warmUp(DistributedFileSystem sharedHdfs, int numClients,
+                                                    int targetConnections, long timeoutMillis)
+            throws InterruptedException {
+        if (numClients <= 0)
+            throw new IllegalArgumentException("The number of clients must be positive. Got: " + numClients);
+        if (targetConnections <= 0 || targetConnections > numClients)
+            throw new IllegalArgumentException("The target number of connections must be between 1 and the number " +
+                    "of clients (" + numClients + "). Got: " + targetConnections);
+
+        if (numClients > clientPool.getMaxSize())
+            LOG.warn("Warming up " + numClients + " clients, but the client pool only retains " +
+                    clientPool.getMaxSize() + ". The extra clients will be closed once warm-up is done.");
+
+        int numDeployments = getNumDeployments(sharedHdfs);
+        LOG.info("Warming up " + numClients + " client(s) across " + numDeployments + " deployment(s). Target: " +
+                targetConnections + " connection(s). Timeout: " + timeoutMillis + " ms.");
+
+        AtomicInteger numConnected = new AtomicInteger(0);
+        CountDownLatch targetReached = new CountDownLatch(1);
+        long[] timesToConnectNanos = new long[numClients];
+        Arrays.fill(timesToConnectNanos, -1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numClients,
+                VirtualThreads.newThreadFactory("warm-up-", false));
+
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        for (int i = 0; i < numClients; i++) {
+            final int clientId = i;
+            executor.execute(() -> {
+                DistributedFileSystem hdfs = Commands.getHdfsClient(sharedHdfs, true);
+                try {
+                    if (warmUpClient(hdfs, clientId, numDeployments, numConnected, targetConnections,
+                            deadlineNanos)) {
+                        timesToConnectNanos[clientId] = System.nanoTime() - startNanos;
+
+                        if (numConnected.incrementAndGet() == targetConnections)
+                            targetReached.countDown();
+                    }
+                } finally {
+                    // Don't let the warm-up requests show up in the latencies of the next benchmark.
+                    hdfs.clearLatencyValues();
+                    Commands.returnHdfsClient(hdfs);
+                }
+            });
+        }
+
+        executor.shutdown();
+        if (!targetReached.await(timeoutMillis, TimeUnit.MILLISECONDS))
+            LOG.warn("Timed out after " + timeoutMillis + " ms with " + numConnected.get() + "/" +
+                    targetConnections + " connection(s) established.");
+
+        // The remaining clients give up on their own once the target has been reached or the deadline has passed.
+        executor.awaitTermination(timeoutMillis + 1000, TimeUnit.MILLISECONDS);
+        long stopTime = System.currentTimeMillis();
+
+        LatencyHistogram timeToConnected = new LatencyHistogram();
+        int connected = 0;
+        for (long timeToConnectNanos : timesToConnectNanos) {
+            if (timeToConnectNanos >= 0) {
+                timeToConnected.recordNanos(timeToConnectNanos);
+                connected++;
+            }
+        }
+
+        double durationSeconds = (stopTime - startTime) / 1.0e3;
+        LOG.info("Established " + connected + "/" + numClients + " connection(s) in " + durationSeconds +
+                " seconds. Time-to-connected (ms) " + timeToConnected.toSummaryString());
+
+        DistributedBenchmarkResult result = new DistributedBenchmarkResult(null, OP_ESTABLISH_CONNECTIONS,
+                connected, durationSeconds, startTime, stopTime, 0, 0);
+        result.timeToConnected = timeToConnected;
+        result.numClients = numClients;
+        return result;
+    }
+
+    /**
+     * Probe the NameNodes with the given client until one of its requests is served over TCP.
+     *
+     * @return True if the client connected, or false if warm-up ended first.
+     */
+    private static boolean warmUpClient(DistributedFileSystem hdfs, int clientId, int numDeployments,
+                                        AtomicInteger numConnected, int targetConnections, long deadlineNanos) {
+        long numTcpRequests = hdfs.getLatencyTcpStatistics().getN();
+
+        while (numConnected.get() < targetConnections && System.nanoTime() < deadlineNanos) {
+            try {
+                if (numDeployments > 0)
+                    hdfs.ping(clientId % numDeployments);
+                else
+                    hdfs.exists(new Path(Commander.NAME_NODE_ENDPOINT + "/"));
+            } catch (IOException ex) {
+                LOG.debug("Warm-up probe of client " + clientId + " failed: " + ex.getMessage());
+            }
+
+            if (hdfs.getLatencyTcpStatistics().getN() > numTcpRequests)
+                return true;
+
+            try {
+                Thread.sleep(PROBE_INTERVAL_MILLIS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the number of serverless NameNode deployments, or 0 if it cannot be determined (e.g., with
+     * Vanilla HopsFS), in which case clients probe the root directory instead of pinging a deployment.
+     */
+    private static int getNumDeployments(DistributedFileSystem hdfs) {
+        if (!Commands.IS_SERVERLESS)
+            return 0;
+
+        try {
+            SortedActiveNodeList activeNameNodes = hdfs.getActiveNamenodesForClient();
+            if (activeNameNodes instanceof ActiveServerlessNameNodeList)
+                return ((ActiveServerlessNameNodeList) activeNameNodes).getNumDeployments();
+        } catch (IOException ex) {
+            LOG.warn("Could not determine the number of NameNode deployments:", ex);
+        }
+
+        return 0;
+    }
+}
@@ -8,12 +8,26 @@ public class Constants {
     public static final String HDFS_CONFIG_PATH = "HDFS_CONFIG_PATH";
     public static final String TRACK_OP_PERFORMED = "TRACK_OP_PERFORMED";
     public static final String BENCHMARK_MODE = "BENCHMARK_MODE";
+    public static final String VIRTUAL_THREADS = "VIRTUAL_THREADS";
+    public static final String RAW_LATENCIES = "RAW_LATENCIES";
+    public static final String LATENCY_HISTOGRAM_PRECISION = "LATENCY_HISTOGRAM_PRECISION";
+    public static final String TIMELINE_INTERVAL = "TIMELINE_INTERVAL";
+    public static final String OPS_IN_FLIGHT = "OPS_IN_FLIGHT";
+    public static final String FILE_SIZE_DISTRIBUTION = "FILE_SIZE_DISTRIBUTION";
+    public static final String CLIENT_POOL_MIN_SIZE = "CLIENT_POOL_MIN_SIZE";
+    public static final String CLIENT_POOL_MAX_SIZE = "CLIENT_POOL_MAX_SIZE";
+    public static final String CLIENT_POOL_IDLE_TIMEOUT = "CLIENT_POOL_IDLE_TIMEOUT";
+    public static final String CLIENT_POOL_HEALTH_CHECK_INTERVAL = "CLIENT_POOL_HEALTH_CHECK_INTERVAL";
 
     ////////////////
     // OPERATIONS //
     ////////////////
     public static final int OP_RESULT = -101;
     public static final int OP_REGISTRATION = -100;
+    public static final int OP_SET_OPS_IN_FLIGHT = -19;
+    public static final int OP_PRINT_CLIENT_POOL_METRICS = -18;
+    public static final int OP_TOGGLE_RAW_LATENCIES = -17;
+    public static final int OP_TOGGLE_VIRTUAL_THREADS = -16;
     public static final int OP_SET_COMMANDER_EXECUTES_TOO = -15;
     public static final int OP_SET_HTTP_TCP_REPLACEMENT_CHANCE = -14;
     public static final int OP_ESTABLISH_CONNECTIONS = -13;
@@ -60,6 +74,9 @@ public class Constants {
     public static final int OP_ABORT_RANDOM_WORKLOAD = 29;
     public static final int OP_CREATE_FROM_FILE = 30;
     public static final int OP_READER_WRITER_TEST_1 = 31;
+    public static final int OP_SNAPSHOT_NAMESPACE = 32;
+    public static final int OP_PREPOPULATE_RANDOM_WORKLOAD = 33;
+    public static final int OP_SET_PREPOPULATED_NAMESPACE = 34;
 
     ///////////////////////////////////
     // GENERAL INTERLEAVED BENCHMARK //
@@ -89,6 +106,24 @@ public class Constants {
     public static String INTERLEAVED_BM_IAT_SKIPUNIT_KEY = "interleaved.bm.iat.skipunit";
     public static int INTERLEAVED_BM_IAT_SKIPUNIT_DEFAULT = 0;
 
+    // If true, operations are issued at the times dictated by the arrival process (POISSON/PARETO) regardless of
+    // whether previous operations have completed, and latency is measured from those intended start times.
+    public static String INTERLEAVED_BM_OPEN_LOOP_KEY = "interleaved.bm.open.loop";
+    public static boolean INTERLEAVED_BM_OPEN_LOOP_DEFAULT = false;
+
+    // Used when interleaved.bm.iat.distribution is TRACE. The trace holds the global request rate of every second,
+    // and the rates are multiplied by the scale.
+    public static String INTERLEAVED_BM_IAT_TRACE_FILE_KEY = "interleaved.bm.iat.trace.file";
+    public static String INTERLEAVED_BM_IAT_TRACE_FILE_DEFAULT = "";
+
+    public static String INTERLEAVED_BM_IAT_TRACE_SCALE_KEY = "interleaved.bm.iat.trace.scale";
+    public static double INTERLEAVED_BM_IAT_TRACE_SCALE_DEFAULT = 1.0;
+
+    // Used when interleaved.bm.iat.distribution is SCHEDULE. A list of phases, such as
+    // "constant(500, 30s); ramp(500, 5000, 2m)". See ScheduleGenerator for the syntax.
+    public static String INTERLEAVED_BM_IAT_SCHEDULE_KEY = "interleaved.bm.iat.schedule";
+    public static String INTERLEAVED_BM_IAT_SCHEDULE_DEFAULT = "";
+
     ///////////////////////////////
     // WORKER Type 1 PERCENTAGES //
     ///////////////////////////////
@@ -263,7 +298,8 @@ public class Constants {
     public static boolean  ENABLE_EXISTING_SUBTREE_DEFAULT   = false;
 
     /**
-     * Path to file containing list of HopsFS file paths (for the existing subtree).
+     * Path to file containing list of HopsFS file paths (for the existing subtree). This is either a plain-text
+     * file with one directory per line, or a {@link com.gmail.benrcarver.distributed.util.NamespaceSnapshot}.
      */
     public static String    EXISTING_SUBTREE_PATH_KEY = "existing.subtree.path";
     public static String    EXISTING_SUBTREE_PATH_DEFAULT = "./existing_subtree.txt";
@@ -286,6 +322,61 @@ public class Constants {
     public static String FILES_PER_DIR_KEY= "files.per.dir";
     public static int    FILES_PER_DIR_DEFAULT = 16;
 
+    /**
+     * If true, all the worker threads of a VM select files from a single, shared file pool.
+     * Otherwise, each thread only selects from the files that it created itself.
+     */
+    public static String  SHARED_FILE_POOL_KEY = "shared.file.pool";
+    public static boolean SHARED_FILE_POOL_DEFAULT = true;
+
+    /**
+     * The distribution with which the file pools select the targets of each class of operation.
+     * One of UNIFORM, ZIPFIAN, SCRAMBLED_ZIPFIAN, HOTSPOT, or LATEST.
+     */
+    public static String READ_KEY_DISTRIBUTION_KEY = "key.distribution.read";
+    public static String READ_KEY_DISTRIBUTION_DEFAULT = "UNIFORM";
+
+    public static String STAT_KEY_DISTRIBUTION_KEY = "key.distribution.stat";
+    public static String STAT_KEY_DISTRIBUTION_DEFAULT = "UNIFORM";
+
+    public static String LIST_KEY_DISTRIBUTION_KEY = "key.distribution.list";
+    public static String LIST_KEY_DISTRIBUTION_DEFAULT = "UNIFORM";
+
+    public static String MUTATE_KEY_DISTRIBUTION_KEY = "key.distribution.mutate";
+    public static String MUTATE_KEY_DISTRIBUTION_DEFAULT = "UNIFORM";
+
+    public static String KEY_DISTRIBUTION_ZIPFIAN_THETA_KEY = "key.distribution.zipfian.theta";
+    public static double KEY_DISTRIBUTION_ZIPFIAN_THETA_DEFAULT = 0.99;
+
+    /**
+     * For the HOTSPOT key distribution: the fraction of files/directories that are hot, and the fraction of
+     * operations that target them.
+     */
+    public static String KEY_DISTRIBUTION_HOTSPOT_DATA_FRACTION_KEY = "key.distribution.hotspot.data.fraction";
+    public static double KEY_DISTRIBUTION_HOTSPOT_DATA_FRACTION_DEFAULT = 0.2;
+
+    public static String KEY_DISTRIBUTION_HOTSPOT_OP_FRACTION_KEY = "key.distribution.hotspot.op.fraction";
+    public static double KEY_DISTRIBUTION_HOTSPOT_OP_FRACTION_DEFAULT = 0.8;
+
+    /**
+     * Distributions from which the shape of the generated namespace is drawn, as lists of (value, weight) pairs
+     * (e.g., "[(1,50),(2,30),(8,20)]") or single values. If any of them is set, new files and directories are
+     * generated by a {@link com.gmail.benrcarver.distributed.workload.files.SampledNameSpaceGenerator}, and those that
+     * are not set default to dir.per.dir, files.per.dir, tree.depth and names of 10 characters. Otherwise, the
+     * namespace is a tree with a fixed fan-out.
+     */
+    public static String NAMESPACE_DIRS_PER_DIR_DISTRIBUTION_KEY = "namespace.dirs.per.dir.distribution";
+    public static String NAMESPACE_DIRS_PER_DIR_DISTRIBUTION_DEFAULT = "";
+
+    public static String NAMESPACE_FILES_PER_DIR_DISTRIBUTION_KEY = "namespace.files.per.dir.distribution";
+    public static String NAMESPACE_FILES_PER_DIR_DISTRIBUTION_DEFAULT = "";
+
+    public static String NAMESPACE_DEPTH_DISTRIBUTION_KEY = "namespace.depth.distribution";
+    public static String NAMESPACE_DEPTH_DISTRIBUTION_DEFAULT = "";
+
+    public static String NAMESPACE_NAME_LENGTH_DISTRIBUTION_KEY = "namespace.name.length.distribution";
+    public static String NAMESPACE_NAME_LENGTH_DISTRIBUTION_DEFAULT = "";
+
     public static String  READ_FILES_FROM_DISK= "read.files.from.disk";
     public static boolean READ_FILES_FROM_DISK_DEFAULT=false;
 
@@ -304,4 +395,23 @@ public class Constants {
 
     public static final String LEADER_WORKER_WARMUP_DELAY_KEY= "leader.worker.warmup.delay";
     public static final int    LEADER_WORKER_WARMUP_DELAY_KEY_DEFAULT = 0;
+
+    ////////////////////
+    // PRE-POPULATION //
+    ////////////////////
+
+    /**
+     * The total number of files (across all VMs) to create before the warm-up phase. If zero, nothing is created.
+     */
+    public static String PREPOPULATE_NUM_FILES_KEY = "prepopulate.num.files";
+    public static int    PREPOPULATE_NUM_FILES_DEFAULT = 0;
+
+    public static String PREPOPULATE_ROOT_DIR_KEY = "prepopulate.root.dir";
+    public static String PREPOPULATE_ROOT_DIR_DEFAULT = "/prepopulated";
+
+    public static String PREPOPULATE_DIRS_PER_DIR_KEY = "prepopulate.dirs.per.dir";
+    public static int    PREPOPULATE_DIRS_PER_DIR_DEFAULT = 16;
+
+    public static String PREPOPULATE_FILES_PER_DIR_KEY = "prepopulate.files.per.dir";
+    public static int    PREPOPULATE_FILES_PER_DIR_DEFAULT = 64;
 }
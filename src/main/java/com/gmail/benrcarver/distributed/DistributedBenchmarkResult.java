@@ -6,6 +6,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.SubtreeBuilder;
+import com.gmail.benrcarver.distributed.util.Timeline;
 import io.hops.metrics.TransactionEvent;
 
 import io.hops.metrics.OperationPerformed;
@@ -65,16 +69,62 @@ public class DistributedBenchmarkResult implements Serializable {
      */
     public int numGCs;
 
+    /**
+     * The number of distinct carrier threads observed while running the benchmark on virtual threads.
+     * When running on platform threads, this is simply the number of platform threads that were used.
+     * This is -1 if the benchmark did not record it.
+     */
+    public int numCarrierThreads = -1;
+
+    /**
+     * The number of operations each client kept in flight. This is 1 unless the benchmark was pipelined.
+     */
+    public int opsInFlightPerClient = 1;
+
     /**
      * TCP latencies obtained during the workload whose result is encapsulated by this DistributedBenchmarkResult instance.
+     *
+     * Only populated if {@link Commands#SEND_RAW_LATENCIES} is enabled. Otherwise, it is null and the
+     * latencies are available in {@link DistributedBenchmarkResult#latencyHistograms}.
      */
     public DescriptiveStatistics tcpLatencyStatistics;
 
     /**
      * HTTP latencies obtained during the workload whose result is encapsulated by this DistributedBenchmarkResult instance.
+     *
+     * Only populated if {@link Commands#SEND_RAW_LATENCIES} is enabled. Otherwise, it is null and the
+     * latencies are available in {@link DistributedBenchmarkResult#latencyHistograms}.
      */
     public DescriptiveStatistics httpLatencyStatistics;
 
+    /**
+     * Compact, mergeable histograms of the TCP, HTTP, and per-operation latencies. These are always populated
+     * (by benchmarks that support them), regardless of whether the raw latencies are included in the result.
+     */
+    public LatencyRecorder latencyHistograms;
+
+    /**
+     * Per-interval throughput and latency of each type of operation, keyed by wall-clock interval so that the
+     * timelines of all the clients can be merged.
+     */
+    public Timeline timeline;
+
+    /**
+     * Only used by connection warm-up: the time it took each client to establish a TCP connection to a NameNode.
+     */
+    public LatencyHistogram timeToConnected;
+
+    /**
+     * Only used by connection warm-up: the number of clients that were warmed up.
+     */
+    public int numClients;
+
+    /**
+     * Only used by subtree creation: the result of each level of the partition that was created. Null if the
+     * partition could not be created.
+     */
+    public List<SubtreeBuilder.LevelResult> subtreeLevels;
+
     public static DistributedBenchmarkResult FAILED_RESULT = new DistributedBenchmarkResult(
             "FAILED", -1, -1, -1, -1, -1);
 
@@ -155,13 +205,19 @@ public class DistributedBenchmarkResult implements Serializable {
                 numOpsPerformed + ", duration=" + durationSeconds + "sec, throughput=" + getOpsPerSecond() +
                 " ops/sec, startTime=" + startTime + ", stopTime=" + stopTime + ", cacheHits=" + cacheHits +
                 ", cacheMisses=" + cacheMisses + ", numFailures=" + numFailures +
-                ", gcTime(Seconds)=" + gcTimeMs + ", numGCs=" + numGCs;
-
-        if (tcpLatencyStatistics != null)
-            str += ", avgTcpLatency=" + (tcpLatencyStatistics.getN() > 0 ? tcpLatencyStatistics.getMean() : 0);
-
-        if (httpLatencyStatistics != null)
-            str += ", avgHttpLatency=" + (httpLatencyStatistics.getN() > 0 ? httpLatencyStatistics.getMean() : 0);
+                ", gcTime(Seconds)=" + gcTimeMs + ", numGCs=" + numGCs + ", numCarrierThreads=" + numCarrierThreads +
+                ", opsInFlightPerClient=" + opsInFlightPerClient;
+
+        if (latencyHistograms != null) {
+            str += ", avgTcpLatency=" + latencyHistograms.getTcpLatency().getMean();
+            str += ", avgHttpLatency=" + latencyHistograms.getHttpLatency().getMean();
+        } else {
+            if (tcpLatencyStatistics != null)
+                str += ", avgTcpLatency=" + (tcpLatencyStatistics.getN() > 0 ? tcpLatencyStatistics.getMean() : 0);
+
+            if (httpLatencyStatistics != null)
+                str += ", avgHttpLatency=" + (httpLatencyStatistics.getN() > 0 ? httpLatencyStatistics.getMean() : 0);
+        }
 
         return str + ")";
     }
@@ -1,8 +1,15 @@
 package com.gmail.benrcarver.distributed;
 
+import com.gmail.benrcarver.distributed.workload.files.FilePool;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
 import static com.gmail.benrcarver.distributed.Commands.*;
 
 /**
@@ -11,14 +18,36 @@ import static com.gmail.benrcarver.distributed.Commands.*;
  * Every function that calls {@link Commands#executeBenchmark} passes in an instance of {@link FSOperation}.
  * This enables the {@link Commands#executeBenchmark} to be used generically regardless of the actual
  * operation being performed.
+ *
+ * The operations used by the randomly-generated workload are kept in a registry, keyed by name. Each registered
+ * operation carries its write flag and the {@link FilePool} method used to select its target, so both the
+ * {@link com.gmail.benrcarver.distributed.coin.InterleavedMultiFaceCoin} and
+ * {@link com.gmail.benrcarver.distributed.workload.files.FilePoolUtils#getPath} dispatch through it. Additional
+ * operations can be plugged in via {@link FSOperation#register(FSOperation)}.
  */
 public abstract class FSOperation {
+    /**
+     * All registered operations, keyed by name. Must be initialized before the operations below register themselves.
+     */
+    private static final Map<String, FSOperation> REGISTRY = new LinkedHashMap<>();
+
     private final String name;
     private final boolean isWrite;
 
-    public FSOperation(String name, boolean isWrite) {
+    /**
+     * Selects the target of this operation from a {@link FilePool}. Null for operations that are not used by the
+     * randomly-generated workload.
+     */
+    private final Function<FilePool, String> pathSelector;
+
+    public FSOperation(String name, boolean isWrite, Function<FilePool, String> pathSelector) {
         this.name = name;
         this.isWrite = isWrite;
+        this.pathSelector = pathSelector;
+    }
+
+    public FSOperation(String name, boolean isWrite) {
+        this(name, isWrite, null);
     }
 
     public FSOperation(String name) {
@@ -35,6 +64,57 @@ public abstract class FSOperation {
      */
     public abstract boolean call(final DistributedFileSystem hdfs, String path, String content);
 
+    /**
+     * Select the target of this operation from the given {@link FilePool}. Used by the randomly-generated workload.
+     *
+     * @return The path to operate on, or null if the pool has no suitable path.
+     */
+    public String selectPath(FilePool filePool) {
+        if (pathSelector == null)
+            throw new IllegalStateException("Unexpected/unsupported FSOperation specified: " + name);
+
+        return pathSelector.apply(filePool);
+    }
+
+    /**
+     * Add an operation to the registry.
+     *
+     * @throws IllegalArgumentException If an operation with the same name is already registered.
+     */
+    public static synchronized <T extends FSOperation> T register(T operation) {
+        if (REGISTRY.containsKey(operation.getName()))
+            throw new IllegalArgumentException("An operation named '" + operation.getName() +
+                    "' is already registered.");
+
+        REGISTRY.put(operation.getName(), operation);
+        return operation;
+    }
+
+    /**
+     * Return the registered operation with the given name.
+     *
+     * @throws IllegalArgumentException If there is no such operation.
+     */
+    public static synchronized FSOperation forName(String name) {
+        FSOperation operation = REGISTRY.get(name);
+        if (operation == null)
+            throw new IllegalArgumentException("Unknown operation '" + name + "'. Registered operations: " +
+                    REGISTRY.keySet());
+        return operation;
+    }
+
+    /**
+     * Return all registered operations, in registration order.
+     */
+    public static synchronized Collection<FSOperation> getRegisteredOperations() {
+        return Collections.unmodifiableCollection(REGISTRY.values());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
     public static FSOperation NOT_SUPPORTED = new FSOperation("NOT SUPPORTED", false) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
@@ -42,67 +122,123 @@ public abstract class FSOperation {
         }
     };
 
-    public static FSOperation CREATE_FILE = new FSOperation("CREATE FILE", true) {
+    public static FSOperation CREATE_FILE = register(new FSOperation("CREATE FILE", true,
+            FilePool::getFileToCreate) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return createFile(path, content, hdfs);
         }
-    };
+    });
 
-    public static FSOperation LIST_DIR_NO_PRINT = new FSOperation("LS DIR") {
+    public static FSOperation LIST_DIR_NO_PRINT = register(new FSOperation("LS DIR", false,
+            FilePool::getDirToStat) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return listDirectoryNoPrint(hdfs, path);
         }
-    };
+    });
 
-    public static FSOperation LIST_FILE_NO_PRINT = new FSOperation("LS FILE") {
+    public static FSOperation LIST_FILE_NO_PRINT = register(new FSOperation("LS FILE", false,
+            FilePool::getFileToStat) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return listDirectoryNoPrint(hdfs, path);
         }
-    };
+    });
 
-    public static FSOperation READ_FILE = new FSOperation("READ") {
+    public static FSOperation READ_FILE = register(new FSOperation("READ", false,
+            FilePool::getFileToRead) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return readFile(path, hdfs);
         }
-    };
+    });
 
-    public static FSOperation DIR_INFO = new FSOperation("STAT DIR") {
+    public static FSOperation DIR_INFO = register(new FSOperation("STAT DIR", false,
+            FilePool::getDirToInfo) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return getFileStatus(path, hdfs);
         }
-    };
+    });
 
-    public static FSOperation FILE_INFO = new FSOperation("STAT FILE") {
+    public static FSOperation FILE_INFO = register(new FSOperation("STAT FILE", false,
+            FilePool::getFileToInfo) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return getFileStatus(path, hdfs);
         }
-    };
+    });
 
-    public static FSOperation MKDIRS = new FSOperation("MKDIR", true) {
+    public static FSOperation MKDIRS = register(new FSOperation("MKDIR", true,
+            FilePool::getDirToCreate) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return mkdir(path, hdfs);
         }
-    };
+    });
 
-    public static FSOperation DELETE_FILE = new FSOperation("DELETE", true) {
+    public static FSOperation DELETE_FILE = register(new FSOperation("DELETE", true,
+            FilePool::getFileToDelete) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) {
             return delete(path, hdfs);
         }
-    };
+    });
 
-    public static FSOperation RENAME_FILE = new FSOperation("RENAME", true) {
+    public static FSOperation RENAME_FILE = register(new FSOperation("RENAME", true,
+            FilePool::getFileToRename) {
         @Override
         public boolean call(DistributedFileSystem hdfs, String path, String content) { // content is the 'to path'
             return Commands.rename(hdfs, path, content);
         }
-    };
+    });
+
+    public static FSOperation APPEND = register(new FSOperation("APPEND", true,
+            FilePool::getFileToAppend) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return append(path, content, hdfs);
+        }
+    });
+
+    public static FSOperation CHMOD_FILE = register(new FSOperation("CHMOD FILE", true,
+            FilePool::getFileToChmod) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return setPermission(path, hdfs);
+        }
+    });
+
+    public static FSOperation CHMOD_DIR = register(new FSOperation("CHMOD DIR", true,
+            FilePool::getDirToChmod) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return setPermission(path, hdfs);
+        }
+    });
+
+    public static FSOperation CHOWN_FILE = register(new FSOperation("CHOWN FILE", true,
+            FilePool::getFileToChown) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return setOwner(path, hdfs);
+        }
+    });
+
+    public static FSOperation CHOWN_DIR = register(new FSOperation("CHOWN DIR", true,
+            FilePool::getDirToChown) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return setOwner(path, hdfs);
+        }
+    });
 
+    public static FSOperation SET_REPLICATION = register(new FSOperation("SET REPLICATION", true,
+            FilePool::getFileToSetReplication) {
+        @Override
+        public boolean call(DistributedFileSystem hdfs, String path, String content) {
+            return setReplication(path, hdfs);
+        }
+    });
 }
@@ -23,7 +23,7 @@ import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
-import static com.gmail.benrcarver.distributed.Commands.hdfsClients;
+import static com.gmail.benrcarver.distributed.Commands.clientPool;
 import static com.gmail.benrcarver.distributed.Constants.*;
 
 /**
@@ -183,7 +183,7 @@ public class Follower {
 
                 hdfs.setHttpTcpReplacementChance(chance);
 
-                for (DistributedFileSystem dfs : hdfsClients) {
+                for (DistributedFileSystem dfs : clientPool.getClients()) {
                     dfs.setHttpTcpReplacementChance(chance);
                 }
                 break;
@@ -192,7 +192,7 @@ public class Follower {
 
                 hdfs.setConsistencyProtocolEnabled(toggle);
 
-                for (DistributedFileSystem dfs : hdfsClients) {
+                for (DistributedFileSystem dfs : clientPool.getClients()) {
                     dfs.setConsistencyProtocolEnabled(toggle);
                 }
                 break;
@@ -200,7 +200,7 @@ public class Follower {
                 String newLogLevel = message.getAsJsonPrimitive("LOG_LEVEL").getAsString();
                 hdfs.setServerlessFunctionLogLevel(newLogLevel);
 
-                for (DistributedFileSystem dfs : hdfsClients) {
+                for (DistributedFileSystem dfs : clientPool.getClients()) {
                     dfs.setServerlessFunctionLogLevel(newLogLevel);
                 }
                 break;
@@ -218,6 +218,29 @@ public class Follower {
                 if (benchmarkModeEnabled)
                     Commands.TRACK_OP_PERFORMED = false;
 
+                break;
+            case OP_SET_OPS_IN_FLIGHT:
+                Commands.OPS_IN_FLIGHT_PER_CLIENT = message.getAsJsonPrimitive(OPS_IN_FLIGHT).getAsInt();
+                LOG.debug("Benchmark clients will keep " + Commands.OPS_IN_FLIGHT_PER_CLIENT +
+                        " operation(s) in flight.");
+                break;
+            case OP_TOGGLE_RAW_LATENCIES:
+                Commands.SEND_RAW_LATENCIES = message.getAsJsonPrimitive(RAW_LATENCIES).getAsBoolean();
+
+                if (Commands.SEND_RAW_LATENCIES)
+                    LOG.debug("ENABLING raw latency samples in results.");
+                else
+                    LOG.debug("DISABLING raw latency samples in results.");
+
+                break;
+            case OP_TOGGLE_VIRTUAL_THREADS:
+                Commands.USE_VIRTUAL_THREADS = message.getAsJsonPrimitive(VIRTUAL_THREADS).getAsBoolean();
+
+                if (Commands.USE_VIRTUAL_THREADS)
+                    LOG.debug("ENABLING virtual threads.");
+                else
+                    LOG.debug("DISABLING virtual threads.");
+
                 break;
             case OP_TOGGLE_OPS_PERFORMED_FOLLOWERS:
                 toggle = message.getAsJsonPrimitive(TRACK_OP_PERFORMED).getAsBoolean();
@@ -304,7 +327,24 @@ public class Follower {
                 break;
             case OP_CREATE_SUBTREE:
                 LOG.info("CREATE SUBTREE selected!");
-                Commands.createSubtree(hdfs);
+                DistributedBenchmarkResult subtreeResult;
+                try {
+                    subtreeResult = Commands.createSubtree(hdfs,
+                            message.getAsJsonPrimitive("subtreeRoot").getAsString(),
+                            message.getAsJsonPrimitive("subtreeDepth").getAsInt(),
+                            message.getAsJsonPrimitive("maxSubDirs").getAsInt(),
+                            message.getAsJsonPrimitive("filesPerDir").getAsInt(),
+                            message.getAsJsonPrimitive("numberOfThreads").getAsInt(),
+                            message.getAsJsonPrimitive("partition").getAsInt(),
+                            message.getAsJsonPrimitive("numPartitions").getAsInt(),
+                            message.getAsJsonPrimitive("checkpointPath").getAsString());
+                } catch (IOException | RuntimeException ex) {
+                    // Still respond, so that the Commander does not wait for this partition.
+                    LOG.error("Failed to create partition of subtree:", ex);
+                    subtreeResult = new DistributedBenchmarkResult(null, OP_CREATE_SUBTREE, 0, 0, 0, 0, 0, 0);
+                }
+                subtreeResult.setOperationId(operationId);
+                sendResultToLeader(subtreeResult);
                 break;
             case OP_PING:
                 LOG.info("PING selected!");
@@ -404,6 +444,15 @@ public class Follower {
                     sendResultToLeader(result);
                 }
 
+                break;
+            case OP_ESTABLISH_CONNECTIONS:
+                LOG.info("ESTABLISH CONNECTIONS selected!");
+                result = ConnectionWarmer.warmUp(hdfs,
+                        message.getAsJsonPrimitive("numClients").getAsInt(),
+                        message.getAsJsonPrimitive("targetConnections").getAsInt(),
+                        message.getAsJsonPrimitive("timeoutMillis").getAsLong());
+                result.setOperationId(operationId);
+                sendResultToLeader(result);
                 break;
             case OP_GET_FILE_STATUS:
                 LOG.info("OP_GET_FILE_STATUS selected!");
@@ -480,12 +529,48 @@ public class Follower {
                 }
 
                 int numFollowers = message.getAsJsonPrimitive("NUM_FOLLOWERS").getAsInt();
+                int workerIndex = message.has("WORKER_INDEX") ? message.getAsJsonPrimitive("WORKER_INDEX").getAsInt() : 0;
 
                 if (configuration == null) {
                     LOG.error("ERROR: Could not deserialize BMConfiguration object.");
                     sendResultToLeader(new WorkloadResponse(true, null), operationId);
                 } else {
-                    activeWorkload = new RandomlyGeneratedWorkload(configuration, hdfs, numFollowers, operationId);
+                    try {
+                        activeWorkload = new RandomlyGeneratedWorkload(configuration, hdfs, numFollowers, workerIndex, operationId);
+                    } catch (RuntimeException ex) {
+                        // E.g., the IAT trace file does not exist on this VM. Tell the Leader so that it stops waiting.
+                        LOG.error("ERROR: Failed to create Random Workload " + operationId + ".", ex);
+                        activeWorkload = null;
+                        sendResultToLeader(new WorkloadResponse(true, null), operationId);
+                        break;
+                    }
+                    sendResultToLeader(new WorkloadResponse(false, null), operationId);
+                }
+                break;
+            case OP_PREPOPULATE_RANDOM_WORKLOAD:
+                if (activeWorkload == null || activeWorkload.getCurrentState() != RandomlyGeneratedWorkload.WorkloadState.CREATED ||
+                        !activeWorkload.hasPrepopulatedNamespace()) {
+                    LOG.error("We do not have an already-created workload with a namespace to pre-populate.");
+                    sendResultToLeader(new WorkloadResponse(true, null), operationId);
+                } else {
+                    WorkloadResponse response = new WorkloadResponse(false, null);
+                    response.failedFiles = activeWorkload.doPrepopulate(
+                            message.getAsJsonPrimitive("partition").getAsInt(),
+                            message.getAsJsonPrimitive("numPartitions").getAsInt());
+                    sendResultToLeader(response, operationId);
+                }
+                break;
+            case OP_SET_PREPOPULATED_NAMESPACE:
+                if (activeWorkload == null || !activeWorkload.hasPrepopulatedNamespace()) {
+                    LOG.error("We do not have an already-created workload with a pre-populated namespace.");
+                    sendResultToLeader(new WorkloadResponse(true, null), operationId);
+                } else {
+                    JsonArray failedFilesJson = message.getAsJsonArray("failedFiles");
+                    int[] failedFiles = new int[failedFilesJson.size()];
+                    for (int i = 0; i < failedFiles.length; i++)
+                        failedFiles[i] = failedFilesJson.get(i).getAsInt();
+
+                    activeWorkload.setPrepopulatedNamespace(failedFiles);
                     sendResultToLeader(new WorkloadResponse(false, null), operationId);
                 }
                 break;
@@ -542,6 +627,7 @@ public class Follower {
                     sendResultToLeader(new WorkloadResponse(true, null), operationId);
                 } else {
                     LOG.warn("Aborting randomly-generated workload.");
+                    activeWorkload.closeGenerator();
                     activeWorkload = null;
                     sendResultToLeader(new WorkloadResponse(false, null), operationId);
                 }
@@ -584,6 +670,33 @@ public class Follower {
         else
             LOG.debug("DISABLING OperationPerformed tracking.");
 
+        if (message.has(VIRTUAL_THREADS))
+            Commands.USE_VIRTUAL_THREADS = message.getAsJsonPrimitive(VIRTUAL_THREADS).getAsBoolean();
+
+        if (message.has(RAW_LATENCIES))
+            Commands.SEND_RAW_LATENCIES = message.getAsJsonPrimitive(RAW_LATENCIES).getAsBoolean();
+
+        if (message.has(OPS_IN_FLIGHT))
+            Commands.OPS_IN_FLIGHT_PER_CLIENT = message.getAsJsonPrimitive(OPS_IN_FLIGHT).getAsInt();
+
+        // Timelines can only be merged if they use the same interval length as the Commander's.
+        if (message.has(TIMELINE_INTERVAL))
+            Commands.TIMELINE_INTERVAL_MILLIS = message.getAsJsonPrimitive(TIMELINE_INTERVAL).getAsLong();
+
+        if (message.has(FILE_SIZE_DISTRIBUTION))
+            Commands.setFileSizeDistribution(message.getAsJsonPrimitive(FILE_SIZE_DISTRIBUTION).getAsString());
+
+        if (message.has(CLIENT_POOL_MIN_SIZE) && message.has(CLIENT_POOL_MAX_SIZE))
+            clientPool.configure(message.getAsJsonPrimitive(CLIENT_POOL_MIN_SIZE).getAsInt(),
+                    message.getAsJsonPrimitive(CLIENT_POOL_MAX_SIZE).getAsInt(),
+                    message.getAsJsonPrimitive(CLIENT_POOL_IDLE_TIMEOUT).getAsLong(),
+                    message.getAsJsonPrimitive(CLIENT_POOL_HEALTH_CHECK_INTERVAL).getAsLong());
+
+        // Histograms can only be merged if they were created with the same precision as the Commander's.
+        if (message.has(LATENCY_HISTOGRAM_PRECISION))
+            Commands.LATENCY_HISTOGRAM_PRECISION_BITS =
+                    message.getAsJsonPrimitive(LATENCY_HISTOGRAM_PRECISION).getAsInt();
+
         // The initDfsClient() function in the Commander file uses the Commander's static 'hdfsConfigFilePath'
         // variable. This is basically a hack, pretty gross.
         Commander.hdfsConfigFilePath = hdfsConfigFilePath;
@@ -593,6 +706,12 @@ public class Follower {
         hdfs = initDfsClient();
         serverlessLogLevel = "INFO";
         hdfs.setServerlessFunctionLogLevel(serverlessLogLevel);
+
+        try {
+            clientPool.prewarm(hdfs, clientPool.getMinSize());
+        } catch (InterruptedException ex) {
+            LOG.error("Interrupted while pre-creating HDFS clients:", ex);
+        }
     }
 
     public void connect() {
@@ -0,0 +1,409 @@
+package com.gmail.benrcarver.distributed;
+
+import com.gmail.benrcarver.distributed.util.VirtualThreads;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Pool of {@link DistributedFileSystem} clients used by the benchmarks. Replaces the old fixed-capacity
+ * {@code Commands.hdfsClients} queue, which was accessed via a {@code static synchronized} method that also
+ * created new clients while holding the lock.
+ *
+ * Acquiring and releasing clients is lock-free. Idle clients are kept in a {@link ConcurrentLinkedDeque} that is
+ * used as a stack, so the most recently used (i.e., warmest) clients are handed out first and the coldest clients
+ * age at the bottom, where idle eviction finds them. When there are no idle clients, a new one is created by the
+ * calling thread without blocking any other thread.
+ *
+ * The pool retains at most {@code maxSize} clients. Acquiring a client never blocks: if the pool is already at
+ * its maximum size, a temporary client is created, and it is closed once it is released. The pool tries to keep at
+ * least {@code minSize} clients around: they can be created in parallel ahead of time via
+ * {@link HdfsClientPool#prewarm(DistributedFileSystem, int)}, and idle eviction never goes below this number.
+ *
+ * Optionally, a background thread periodically evicts clients that have been idle for too long and runs a
+ * health check against the remaining idle clients. Clients that fail the health check are closed and removed.
+ * Both are disabled by default, as the health check issues file system operations that would otherwise interfere
+ * with running benchmarks.
+ */
+public class HdfsClientPool {
+    public static final Logger LOG = LoggerFactory.getLogger(HdfsClientPool.class);
+
+    public static final int DEFAULT_MIN_SIZE = 0;
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * An idle client along with the time at which it was returned to the pool.
+     */
+    private static class IdleClient {
+        final DistributedFileSystem hdfs;
+        final long idleSince;
+
+        IdleClient(DistributedFileSystem hdfs) {
+            this.hdfs = hdfs;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    private final ConcurrentLinkedDeque<IdleClient> idleClients = new ConcurrentLinkedDeque<>();
+
+    /**
+     * All the clients that belong to the pool, whether they're idle or in use. Temporary clients are not included.
+     */
+    private final Collection<DistributedFileSystem> clients = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger numClients = new AtomicInteger(0);
+    private final AtomicInteger numIdle = new AtomicInteger(0);
+
+    private volatile int minSize = DEFAULT_MIN_SIZE;
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile long idleTimeoutMillis = 0;
+    private volatile long healthCheckIntervalMillis = 0;
+
+    /**
+     * Returns true if the given client is healthy. Only used by the background maintenance thread.
+     */
+    private volatile Predicate<DistributedFileSystem> healthCheck = hdfs -> Commands.exists(hdfs, "/");
+
+    // Metrics.
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder temporaryClients = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder healthCheckFailures = new LongAdder();
+    private final LongAdder clientsCreated = new LongAdder();
+    private final LongAdder creationTimeNanos = new LongAdder();
+    private final AtomicLong maxCreationTimeNanos = new AtomicLong(0);
+
+    private ScheduledExecutorService maintenanceExecutor;
+    private ScheduledFuture<?> maintenanceTask;
+
+    /**
+     * Update the configuration of the pool. If idle eviction or health checks are enabled, then the background
+     * maintenance thread is (re)started.
+     *
+     * @param minSize Minimum number of clients to keep around.
+     * @param maxSize Maximum number of clients retained by the pool.
+     * @param idleTimeoutMillis Clients idle for longer than this are closed (as long as the pool has more than
+     *                          {@code minSize} clients). Zero or less disables idle eviction.
+     * @param healthCheckIntervalMillis How often to health check the idle clients. Zero or less disables health
+     *                                  checks.
+     */
+    public synchronized void configure(int minSize, int maxSize, long idleTimeoutMillis,
+                                       long healthCheckIntervalMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid client pool size. Min: " + minSize + ", max: " + maxSize);
+
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.healthCheckIntervalMillis = healthCheckIntervalMillis;
+
+        LOG.info("Configured HDFS client pool. Min size: " + minSize + ", max size: " + maxSize +
+                ", idle timeout: " + (idleTimeoutMillis > 0 ? idleTimeoutMillis + " ms" : "disabled") +
+                ", health check interval: " +
+                (healthCheckIntervalMillis > 0 ? healthCheckIntervalMillis + " ms" : "disabled") + ".");
+
+        scheduleMaintenance();
+    }
+
+    public void setHealthCheck(Predicate<DistributedFileSystem> healthCheck) {
+        this.healthCheck = healthCheck;
+    }
+
+    public int getMinSize() { return minSize; }
+
+    public int getMaxSize() { return maxSize; }
+
+    public long getIdleTimeoutMillis() { return idleTimeoutMillis; }
+
+    public long getHealthCheckIntervalMillis() { return healthCheckIntervalMillis; }
+
+    /**
+     * Return the number of clients that belong to the pool (idle or in use).
+     */
+    public int size() { return numClients.get(); }
+
+    /**
+     * Return the number of idle clients.
+     */
+    public int getNumIdle() { return numIdle.get(); }
+
+    /**
+     * Return all the clients that belong to the pool, whether they're idle or in use. This is used to apply
+     * setting changes (e.g., the log level) to every client.
+     */
+    public Collection<DistributedFileSystem> getClients() { return clients; }
+
+    /**
+     * Acquire a client. This reuses an idle client if possible and creates a new one otherwise.
+     * This never blocks on other threads.
+     *
+     * @param sharedHdfs The primary/shared HDFS instance. New clients copy its settings.
+     */
+    public DistributedFileSystem acquire(DistributedFileSystem sharedHdfs) {
+        IdleClient idleClient = idleClients.pollFirst();
+        if (idleClient != null) {
+            numIdle.decrementAndGet();
+            hits.increment();
+            return idleClient.hdfs;
+        }
+
+        misses.increment();
+
+        DistributedFileSystem hdfs = createPooledClient(sharedHdfs);
+        if (hdfs != null)
+            return hdfs;
+
+        temporaryClients.increment();
+        LOG.warn("HDFS client pool is at its maximum size (" + maxSize + "). Creating a temporary client, " +
+                "which will be closed once it is released.");
+        return createClient(sharedHdfs);
+    }
+
+    /**
+     * Create a new client that belongs to the pool, or return null if the pool is already at its maximum size.
+     */
+    private DistributedFileSystem createPooledClient(DistributedFileSystem sharedHdfs) {
+        // Reserve a spot in the pool before creating the client, so that concurrent callers cannot exceed the maximum.
+        int current;
+        do {
+            current = numClients.get();
+            if (current >= maxSize)
+                return null;
+        } while (!numClients.compareAndSet(current, current + 1));
+
+        DistributedFileSystem hdfs;
+        try {
+            hdfs = createClient(sharedHdfs);
+        } catch (RuntimeException ex) {
+            numClients.decrementAndGet();
+            throw ex;
+        }
+        clients.add(hdfs);
+        return hdfs;
+    }
+
+    /**
+     * Return a client to the pool. Temporary clients are closed.
+     */
+    public void release(DistributedFileSystem hdfs) {
+        if (hdfs == null)
+            return;
+
+        if (!clients.contains(hdfs)) {
+            closeClient(hdfs);
+            return;
+        }
+
+        idleClients.offerFirst(new IdleClient(hdfs));
+        numIdle.incrementAndGet();
+    }
+
+    /**
+     * Remove a client that is known to be broken from the pool and close it. The client must not be idle.
+     */
+    public void invalidate(DistributedFileSystem hdfs) {
+        if (clients.remove(hdfs))
+            numClients.decrementAndGet();
+
+        closeClient(hdfs);
+    }
+
+    /**
+     * Create clients in parallel until the pool holds at least {@code targetSize} of them (capped at the
+     * maximum size of the pool). The new clients are idle. This blocks until the clients have been created.
+     *
+     * @param sharedHdfs The primary/shared HDFS instance. New clients copy its settings.
+     * @param targetSize The number of clients that the pool should hold.
+     *
+     * @return The number of clients that were created.
+     */
+    public int prewarm(DistributedFileSystem sharedHdfs, int targetSize) throws InterruptedException {
+        int numToCreate = Math.min(targetSize, maxSize) - numClients.get();
+        if (numToCreate <= 0)
+            return 0;
+
+        LOG.info("Pre-creating " + numToCreate + " HDFS client(s) in parallel.");
+        long start = System.currentTimeMillis();
+
+        ExecutorService creators = Executors.newFixedThreadPool(Math.min(numToCreate, 64),
+                VirtualThreads.newThreadFactory("hdfs-client-creator-", false));
+        List<Future<DistributedFileSystem>> futures = new ArrayList<>(numToCreate);
+        try {
+            for (int i = 0; i < numToCreate; i++)
+                futures.add(creators.submit(() -> createPooledClient(sharedHdfs)));
+
+            int numCreated = 0;
+            for (Future<DistributedFileSystem> future : futures) {
+                try {
+                    DistributedFileSystem hdfs = future.get();
+                    if (hdfs != null) {
+                        release(hdfs);
+                        numCreated++;
+                    }
+                } catch (ExecutionException ex) {
+                    LOG.error("Failed to pre-create HDFS client:", ex.getCause());
+                }
+            }
+
+            LOG.info("Pre-created " + numCreated + " HDFS client(s) in " + (System.currentTimeMillis() - start) +
+                    " ms. " + getMetricsString());
+            return numCreated;
+        } finally {
+            creators.shutdown();
+        }
+    }
+
+    private DistributedFileSystem createClient(DistributedFileSystem sharedHdfs) {
+        long start = System.nanoTime();
+        DistributedFileSystem hdfs = Commander.initDfsClient(sharedHdfs, false);
+        long elapsed = System.nanoTime() - start;
+
+        clientsCreated.increment();
+        creationTimeNanos.add(elapsed);
+        long currentMax;
+        while (elapsed > (currentMax = maxCreationTimeNanos.get()) &&
+                !maxCreationTimeNanos.compareAndSet(currentMax, elapsed)) { }
+
+        return hdfs;
+    }
+
+    private void closeClient(DistributedFileSystem hdfs) {
+        try {
+            hdfs.close();
+        } catch (IOException ex) {
+            LOG.error("Encountered IOException while closing DistributedFileSystem object:", ex);
+        }
+    }
+
+    private synchronized void scheduleMaintenance() {
+        if (maintenanceTask != null) {
+            maintenanceTask.cancel(false);
+            maintenanceTask = null;
+        }
+
+        long period;
+        if (idleTimeoutMillis > 0 && healthCheckIntervalMillis > 0)
+            period = Math.min(idleTimeoutMillis, healthCheckIntervalMillis);
+        else
+            period = Math.max(idleTimeoutMillis, healthCheckIntervalMillis);
+
+        if (period <= 0)
+            return;
+
+        if (maintenanceExecutor == null)
+            maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                    VirtualThreads.newThreadFactory("hdfs-client-pool-maintenance-", false));
+
+        maintenanceTask = maintenanceExecutor.scheduleWithFixedDelay(this::performMaintenance, period, period,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Evict clients that have been idle for too long and health check the rest of the idle clients.
+     * Clients that are removed from the idle stack while being checked simply cannot be acquired during that time.
+     */
+    private void performMaintenance() {
+        try {
+            long now = System.currentTimeMillis();
+            boolean checkHealth = healthCheckIntervalMillis > 0;
+
+            // Drain the idle clients, oldest first. Any client that is released concurrently goes on top of the
+            // stack and is left alone until the next round.
+            List<IdleClient> retained = new ArrayList<>();
+            int numToCheck = numIdle.get();
+            for (int i = 0; i < numToCheck; i++) {
+                IdleClient idleClient = idleClients.pollLast();
+                if (idleClient == null)
+                    break;
+                numIdle.decrementAndGet();
+
+                if (idleTimeoutMillis > 0 && now - idleClient.idleSince > idleTimeoutMillis &&
+                        numClients.get() > minSize) {
+                    evictions.increment();
+                    invalidate(idleClient.hdfs);
+                    continue;
+                }
+
+                if (checkHealth && !isHealthy(idleClient.hdfs)) {
+                    healthCheckFailures.increment();
+                    LOG.warn("Idle HDFS client failed its health check. Closing it.");
+                    invalidate(idleClient.hdfs);
+                    continue;
+                }
+
+                retained.add(idleClient);
+            }
+
+            // Put the retained clients back at the bottom of the stack, keeping their original order.
+            for (IdleClient idleClient : retained) {
+                idleClients.offerLast(idleClient);
+                numIdle.incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            LOG.error("Encountered exception while performing HDFS client pool maintenance:", ex);
+        }
+    }
+
+    private boolean isHealthy(DistributedFileSystem hdfs) {
+        try {
+            return healthCheck.test(hdfs);
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Close all the idle clients and stop the maintenance thread. Clients that are currently in use are closed
+     * when they are released.
+     */
+    public synchronized void shutdown() {
+        if (maintenanceExecutor != null) {
+            maintenanceExecutor.shutdownNow();
+            maintenanceExecutor = null;
+            maintenanceTask = null;
+        }
+
+        IdleClient idleClient;
+        while ((idleClient = idleClients.pollFirst()) != null) {
+            numIdle.decrementAndGet();
+            invalidate(idleClient.hdfs);
+        }
+    }
+
+    /**
+     * Return a human-readable summary of the pool's metrics.
+     */
+    public String getMetricsString() {
+        long numCreated = clientsCreated.sum();
+        return "HDFS client pool [size: " + numClients.get() + ", idle: " + numIdle.get() + ", hits: " + hits.sum() +
+                ", misses: " + misses.sum() + ", temporary clients: " + temporaryClients.sum() + ", created: " +
+                numCreated + ", avg creation time: " +
+                (numCreated > 0 ? (creationTimeNanos.sum() / numCreated) / 1.0e6 : 0) + " ms, max creation time: " +
+                maxCreationTimeNanos.get() / 1.0e6 + " ms, evictions: " + evictions.sum() +
+                ", failed health checks: " + healthCheckFailures.sum() + "]";
+    }
+
+    @Override
+    public String toString() {
+        return getMetricsString();
+    }
+}
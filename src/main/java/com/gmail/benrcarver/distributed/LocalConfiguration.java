@@ -1,5 +1,6 @@
 package com.gmail.benrcarver.distributed;
 
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.List;
@@ -13,6 +14,16 @@ public class LocalConfiguration {
     private String hdfsConfigFile;
     private boolean isServerless = true;
     private boolean commanderExecutesToo = true;
+    private boolean useVirtualThreads = false;
+    private boolean sendRawLatencies = false;
+    private int latencyHistogramPrecisionBits = LatencyHistogram.DEFAULT_PRECISION_BITS;
+    private long timelineIntervalMillis = 100;
+    private int opsInFlightPerClient = 1;
+    private String fileSizeDistribution = "";
+    private int clientPoolMinSize = HdfsClientPool.DEFAULT_MIN_SIZE;
+    private int clientPoolMaxSize = HdfsClientPool.DEFAULT_MAX_SIZE;
+    private long clientPoolIdleTimeoutMillis = 0;
+    private long clientPoolHealthCheckIntervalMillis = 0;
     private int maxNewSizeMb = 64000;
     private int maxHeapSizeGb = 96;
     private int minHeapSizeGb = 96;
@@ -58,6 +69,86 @@ public class LocalConfiguration {
         this.commanderExecutesToo = commanderExecutesToo;
     }
 
+    public boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public boolean getSendRawLatencies() {
+        return sendRawLatencies;
+    }
+
+    public void setSendRawLatencies(boolean sendRawLatencies) {
+        this.sendRawLatencies = sendRawLatencies;
+    }
+
+    public int getLatencyHistogramPrecisionBits() {
+        return latencyHistogramPrecisionBits;
+    }
+
+    public void setLatencyHistogramPrecisionBits(int latencyHistogramPrecisionBits) {
+        this.latencyHistogramPrecisionBits = latencyHistogramPrecisionBits;
+    }
+
+    public long getTimelineIntervalMillis() {
+        return timelineIntervalMillis;
+    }
+
+    public void setTimelineIntervalMillis(long timelineIntervalMillis) {
+        this.timelineIntervalMillis = timelineIntervalMillis;
+    }
+
+    public int getOpsInFlightPerClient() {
+        return opsInFlightPerClient;
+    }
+
+    public void setOpsInFlightPerClient(int opsInFlightPerClient) {
+        this.opsInFlightPerClient = opsInFlightPerClient;
+    }
+
+    public String getFileSizeDistribution() {
+        return fileSizeDistribution;
+    }
+
+    public void setFileSizeDistribution(String fileSizeDistribution) {
+        this.fileSizeDistribution = fileSizeDistribution;
+    }
+
+    public int getClientPoolMinSize() {
+        return clientPoolMinSize;
+    }
+
+    public void setClientPoolMinSize(int clientPoolMinSize) {
+        this.clientPoolMinSize = clientPoolMinSize;
+    }
+
+    public int getClientPoolMaxSize() {
+        return clientPoolMaxSize;
+    }
+
+    public void setClientPoolMaxSize(int clientPoolMaxSize) {
+        this.clientPoolMaxSize = clientPoolMaxSize;
+    }
+
+    public long getClientPoolIdleTimeoutMillis() {
+        return clientPoolIdleTimeoutMillis;
+    }
+
+    public void setClientPoolIdleTimeoutMillis(long clientPoolIdleTimeoutMillis) {
+        this.clientPoolIdleTimeoutMillis = clientPoolIdleTimeoutMillis;
+    }
+
+    public long getClientPoolHealthCheckIntervalMillis() {
+        return clientPoolHealthCheckIntervalMillis;
+    }
+
+    public void setClientPoolHealthCheckIntervalMillis(long clientPoolHealthCheckIntervalMillis) {
+        this.clientPoolHealthCheckIntervalMillis = clientPoolHealthCheckIntervalMillis;
+    }
+
     public int getMinHeapSizeGb() {
         return minHeapSizeGb;
     }
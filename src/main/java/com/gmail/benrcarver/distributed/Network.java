@@ -2,6 +2,10 @@ package com.gmail.benrcarver.distributed;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.EndPoint;
+import com.gmail.benrcarver.distributed.util.LatencyHistogram;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.SubtreeBuilder;
+import com.gmail.benrcarver.distributed.util.Timeline;
 import com.gmail.benrcarver.distributed.workload.WorkloadResponse;
 import io.hops.metrics.OperationPerformed;
 import io.hops.metrics.TransactionAttempt;
@@ -36,6 +40,14 @@ public class Network {
         kryo.register(byte[].class);
         kryo.register(OperationPerformed[].class);
         kryo.register(java.util.HashMap[].class);
+        kryo.register(java.util.TreeMap.class);
+        kryo.register(long[].class);
+        kryo.register(LatencyHistogram.class);
+        kryo.register(LatencyRecorder.class);
+        kryo.register(Timeline.class);
+        kryo.register(Timeline.Interval.class);
+        kryo.register(int[].class);
+        kryo.register(SubtreeBuilder.LevelResult.class);
 
 //        kryo.register(org.apache.commons.math3.stat.descriptive.SynchronizedDescriptiveStatistics.class);
 //        kryo.register(org.apache.commons.math3.util.ResizableDoubleArray.class);
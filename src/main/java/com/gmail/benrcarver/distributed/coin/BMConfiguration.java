@@ -1,7 +1,9 @@
 package com.gmail.benrcarver.distributed.coin;
 
 import com.gmail.benrcarver.distributed.Constants;
+import com.gmail.benrcarver.distributed.FSOperation;
 import com.gmail.benrcarver.distributed.workload.BenchmarkDistribution;
+import com.gmail.benrcarver.distributed.workload.random.KeyDistribution;
 
 import java.io.*;
 import java.math.BigDecimal;
@@ -81,6 +83,10 @@ public class BMConfiguration implements Serializable {
         return getInt(Constants.INTERLEAVED_BM_IAT_SKIPUNIT_KEY, Constants.INTERLEAVED_BM_IAT_SKIPUNIT_DEFAULT);
     }
 
+    public boolean isInterleavedBmOpenLoop() {
+        return getBoolean(Constants.INTERLEAVED_BM_OPEN_LOOP_KEY, Constants.INTERLEAVED_BM_OPEN_LOOP_DEFAULT);
+    }
+
     public long getInterleavedBmDuration() {
         return getLong(Constants.INTERLEAVED_BM_DURATION_KEY, Constants.INTERLEAVED_BM_DURATION_DEFAULT);
     }
@@ -102,6 +108,70 @@ public class BMConfiguration implements Serializable {
         return getDouble(Constants.INTERLEAVED_BM_IAT_PARETO_LOCATION_KEY, Constants.INTERLEAVED_BM_IAT_PARETO_LOCATION_DEFAULT);
     }
 
+    public String getInterleavedBMIaTTraceFile() {
+        return getString(Constants.INTERLEAVED_BM_IAT_TRACE_FILE_KEY, Constants.INTERLEAVED_BM_IAT_TRACE_FILE_DEFAULT).trim();
+    }
+
+    public double getInterleavedBMIaTTraceScale() {
+        return getDouble(Constants.INTERLEAVED_BM_IAT_TRACE_SCALE_KEY, Constants.INTERLEAVED_BM_IAT_TRACE_SCALE_DEFAULT);
+    }
+
+    public String getInterleavedBMIaTSchedule() {
+        return getString(Constants.INTERLEAVED_BM_IAT_SCHEDULE_KEY, Constants.INTERLEAVED_BM_IAT_SCHEDULE_DEFAULT).trim();
+    }
+
+    /**
+     * The key of the Type 1 percentage of each built-in operation, keyed by operation name. The key of the Type 2
+     * percentage is the same, followed by "2".
+     */
+    private static final Map<String, String> PERCENTAGE_KEYS = new HashMap<>();
+    static {
+        PERCENTAGE_KEYS.put(FSOperation.CREATE_FILE.getName(), Constants.INTLVD_CREATE_FILES_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.APPEND.getName(), Constants.INTLVD_APPEND_FILE_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.READ_FILE.getName(), Constants.INTLVD_READ_FILES_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.RENAME_FILE.getName(), Constants.INTLVD_RENAME_FILES_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.DELETE_FILE.getName(), Constants.INTLVD_DELETE_FILES_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.LIST_FILE_NO_PRINT.getName(), Constants.INTLVD_LS_FILE_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.LIST_DIR_NO_PRINT.getName(), Constants.INTLVD_LS_DIR_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.CHMOD_FILE.getName(), Constants.INTLVD_CHMOD_FILES_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.CHMOD_DIR.getName(), Constants.INTLVD_CHMOD_DIRS_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.MKDIRS.getName(), Constants.INTLVD_MKDIR_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.SET_REPLICATION.getName(), Constants.INTLVD_SETREPLICATION_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.FILE_INFO.getName(), Constants.INTLVD_GET_FILE_INFO_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.DIR_INFO.getName(), Constants.INTLVD_GET_DIR_INFO_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.CHOWN_FILE.getName(), Constants.INTLVD_FILE_CHANGE_USER_PERCENTAGE_KEY);
+        PERCENTAGE_KEYS.put(FSOperation.CHOWN_DIR.getName(), Constants.INTLVD_DIR_CHANGE_USER_PERCENTAGE_KEY);
+    }
+
+    /**
+     * Return the percentage of each operation of the {@link FSOperation} registry performed by Type 1 workers,
+     * keyed by operation name, in registration order. The built-in operations use the keys below. Any other
+     * registered operation uses the key "interleaved.op.&lt;name&gt;.percentage", where the name is in lower case
+     * and its spaces are replaced by dots (e.g., "interleaved.op.get.acl.percentage" for "GET ACL").
+     */
+    public Map<String, BigDecimal> getInterleavedBmOperationPercentages() {
+        return getOperationPercentages("");
+    }
+
+    /**
+     * Like {@link BMConfiguration#getInterleavedBmOperationPercentages()}, but for Type 2 workers, whose keys are
+     * followed by "2".
+     */
+    public Map<String, BigDecimal> getInterleavedBmOperationPercentages2() {
+        return getOperationPercentages("2");
+    }
+
+    private Map<String, BigDecimal> getOperationPercentages(String keySuffix) {
+        Map<String, BigDecimal> percentages = new LinkedHashMap<>();
+        for (FSOperation operation : FSOperation.getRegisteredOperations()) {
+            String key = PERCENTAGE_KEYS.get(operation.getName());
+            if (key == null)
+                key = "interleaved.op." + operation.getName().toLowerCase().replace(' ', '.') + ".percentage";
+            percentages.put(operation.getName(), getBigDecimal(key + keySuffix, 0));
+        }
+        return percentages;
+    }
+
     ///////////////////////////////
     // WORKER Type 1 PERCENTAGES //
     ///////////////////////////////
@@ -302,6 +372,29 @@ public class BMConfiguration implements Serializable {
         return getInt(Constants.WARM_UP_PHASE_WAIT_TIME_KEY, Constants.WARM_UP_PHASE_WAIT_TIME_DEFAULT);
     }
 
+    ////////////////////
+    // PRE-POPULATION //
+    ////////////////////
+
+    /**
+     * Return the total number of files to create (across all VMs) before the warm-up phase.
+     */
+    public int getPrepopulateNumFiles() {
+        return getInt(Constants.PREPOPULATE_NUM_FILES_KEY, Constants.PREPOPULATE_NUM_FILES_DEFAULT);
+    }
+
+    public String getPrepopulateRootDir() {
+        return getString(Constants.PREPOPULATE_ROOT_DIR_KEY, Constants.PREPOPULATE_ROOT_DIR_DEFAULT);
+    }
+
+    public int getPrepopulateDirsPerDir() {
+        return getInt(Constants.PREPOPULATE_DIRS_PER_DIR_KEY, Constants.PREPOPULATE_DIRS_PER_DIR_DEFAULT);
+    }
+
+    public int getPrepopulateFilesPerDir() {
+        return getInt(Constants.PREPOPULATE_FILES_PER_DIR_KEY, Constants.PREPOPULATE_FILES_PER_DIR_DEFAULT);
+    }
+
     ///////////////////////////
     // FILE TREE & FILE POOL //
     ///////////////////////////
@@ -337,6 +430,68 @@ public class BMConfiguration implements Serializable {
         return getInt(Constants.FILES_PER_DIR_KEY, Constants.FILES_PER_DIR_DEFAULT);
     }
 
+    /**
+     * Return true if the worker threads of a VM should all select files from a single, shared file pool.
+     */
+    public boolean isSharedFilePool() {
+        return getBoolean(Constants.SHARED_FILE_POOL_KEY, Constants.SHARED_FILE_POOL_DEFAULT);
+    }
+
+    public KeyDistribution getReadKeyDistribution() {
+        return KeyDistribution.valueOf(getString(Constants.READ_KEY_DISTRIBUTION_KEY,
+                Constants.READ_KEY_DISTRIBUTION_DEFAULT));
+    }
+
+    public KeyDistribution getStatKeyDistribution() {
+        return KeyDistribution.valueOf(getString(Constants.STAT_KEY_DISTRIBUTION_KEY,
+                Constants.STAT_KEY_DISTRIBUTION_DEFAULT));
+    }
+
+    public KeyDistribution getListKeyDistribution() {
+        return KeyDistribution.valueOf(getString(Constants.LIST_KEY_DISTRIBUTION_KEY,
+                Constants.LIST_KEY_DISTRIBUTION_DEFAULT));
+    }
+
+    public KeyDistribution getMutateKeyDistribution() {
+        return KeyDistribution.valueOf(getString(Constants.MUTATE_KEY_DISTRIBUTION_KEY,
+                Constants.MUTATE_KEY_DISTRIBUTION_DEFAULT));
+    }
+
+    public double getKeyDistributionZipfianTheta() {
+        return getDouble(Constants.KEY_DISTRIBUTION_ZIPFIAN_THETA_KEY,
+                Constants.KEY_DISTRIBUTION_ZIPFIAN_THETA_DEFAULT);
+    }
+
+    public double getKeyDistributionHotspotDataFraction() {
+        return getDouble(Constants.KEY_DISTRIBUTION_HOTSPOT_DATA_FRACTION_KEY,
+                Constants.KEY_DISTRIBUTION_HOTSPOT_DATA_FRACTION_DEFAULT);
+    }
+
+    public double getKeyDistributionHotspotOpFraction() {
+        return getDouble(Constants.KEY_DISTRIBUTION_HOTSPOT_OP_FRACTION_KEY,
+                Constants.KEY_DISTRIBUTION_HOTSPOT_OP_FRACTION_DEFAULT);
+    }
+
+    public String getNamespaceDirsPerDirDistribution() {
+        return getString(Constants.NAMESPACE_DIRS_PER_DIR_DISTRIBUTION_KEY,
+                Constants.NAMESPACE_DIRS_PER_DIR_DISTRIBUTION_DEFAULT).trim();
+    }
+
+    public String getNamespaceFilesPerDirDistribution() {
+        return getString(Constants.NAMESPACE_FILES_PER_DIR_DISTRIBUTION_KEY,
+                Constants.NAMESPACE_FILES_PER_DIR_DISTRIBUTION_DEFAULT).trim();
+    }
+
+    public String getNamespaceDepthDistribution() {
+        return getString(Constants.NAMESPACE_DEPTH_DISTRIBUTION_KEY,
+                Constants.NAMESPACE_DEPTH_DISTRIBUTION_DEFAULT).trim();
+    }
+
+    public String getNamespaceNameLengthDistribution() {
+        return getString(Constants.NAMESPACE_NAME_LENGTH_DISTRIBUTION_KEY,
+                Constants.NAMESPACE_NAME_LENGTH_DISTRIBUTION_DEFAULT).trim();
+    }
+
     public boolean getReadFilesFromDisk(){
         return getBoolean(Constants.READ_FILES_FROM_DISK, Constants.READ_FILES_FROM_DISK_DEFAULT);
     }
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Originally written by Salman Niazi, the author of HopsFS.
@@ -20,13 +21,11 @@ public class FileSizeMultiFaceCoin {
     }
 
     //private BigDecimal
-    private final Random rand;
     private final BigDecimal expansion = new BigDecimal("100.00", new MathContext(4,RoundingMode.HALF_UP));
     //1000 face dice
     ArrayList<Long> dice = new ArrayList<>();
 
     public FileSizeMultiFaceCoin(String str) {
-        this.rand = new Random(System.currentTimeMillis());
         createCoin(parse(str));
     }
 
@@ -103,8 +102,12 @@ public class FileSizeMultiFaceCoin {
         return points;
     }
 
-    public Long getFileSize() {
-        int choice = rand.nextInt(100 * expansion.intValueExact());
+    /**
+     * Draw a file size. Called by every thread that creates files, so this uses {@link ThreadLocalRandom} rather
+     * than a shared {@link Random}, whose seed would be contended.
+     */
+    public long getFileSize() {
+        int choice = ThreadLocalRandom.current().nextInt(dice.size());
         return dice.get(choice);
     }
 
@@ -112,7 +115,7 @@ public class FileSizeMultiFaceCoin {
         Map<Long, Integer> counts = new HashMap<>();
         BigDecimal times = new BigDecimal(100000);
         for (int i = 0; i < times.intValueExact(); i++) {
-            Long size = getFileSize();
+            long size = getFileSize();
             Integer opCount = counts.get(size);
             if (opCount == null) {
                 opCount = 0;
@@ -3,184 +3,105 @@ package com.gmail.benrcarver.distributed.coin;
 import com.gmail.benrcarver.distributed.FSOperation;
 
 import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
 import java.util.*;
 
-import static com.gmail.benrcarver.distributed.coin.FileSizeMultiFaceCoin.round;
-
 /**
  * Originally written by Salman Niazi, the author of HopsFS.
+ *
+ * Flips between the operations of the {@link FSOperation} registry, each with the percentage given to it. Operations
+ * registered via {@link FSOperation#register(FSOperation)} can be flipped like the built-in ones, as long as they
+ * are given a percentage (see {@link BMConfiguration#getInterleavedBmOperationPercentages()}).
  */
 public class InterleavedMultiFaceCoin {
-
-    private final BigDecimal create;
-    private final BigDecimal append;
-    private final BigDecimal read;
-    private final BigDecimal rename;
-    private final BigDecimal delete;
-    private final BigDecimal lsFile;
-    private final BigDecimal lsDir;
-    private final BigDecimal chmodFiles;
-    private final BigDecimal chmodDirs;
-    private final BigDecimal mkdirs;
-    private final BigDecimal setReplication;
-    private final BigDecimal fileInfo;
-    private final BigDecimal dirInfo;
-    private final BigDecimal fileChown;
-    private final BigDecimal dirChown;
-    //private BigDecimal
-    private final Random rand;
-    private final BigDecimal expansion = new BigDecimal("100.00", new MathContext(4, RoundingMode.HALF_UP));
-    //1000 face dice
-    ArrayList<FSOperation> dice = new ArrayList<>();
-
-    public InterleavedMultiFaceCoin(BigDecimal create, BigDecimal append, BigDecimal read, BigDecimal rename, BigDecimal delete, BigDecimal lsFile,
-                                    BigDecimal lsDir, BigDecimal chmodFiles, BigDecimal chmodDirs, BigDecimal mkdirs,
-                                    BigDecimal setReplication, BigDecimal fileInfo, BigDecimal dirInfo,
-                                    BigDecimal fileChown, BigDecimal dirChown) {
-        this.create = create;
-        this.append = append;
-        this.read = read;
-        this.rename = rename;
-        this.delete = delete;
-        this.chmodFiles = chmodFiles;
-        this.chmodDirs = chmodDirs;
-        this.mkdirs = mkdirs;
-        this.lsFile = lsFile;
-        this.lsDir = lsDir;
-        this.setReplication = setReplication;
-        this.fileInfo = fileInfo;
-        this.dirInfo = dirInfo;
-        this.fileChown = fileChown;
-        this.dirChown = dirChown;
-
-        this.rand = new Random(System.currentTimeMillis());
-
-        createCoin();
-    }
-
-    private void createCoin() {
-
-        // System.out.println("Percentages create: " + create + " append: " + append + " read: " + read + " mkdir: "
-        //         + mkdirs + " rename: " + rename + " delete: " + delete + " lsFile: "
-        //         + lsFile + " lsDir: " + lsDir + " chmod files: " + chmodFiles + " chmod dirs: " + chmodDirs
-        //         + " setReplication: " + setReplication + " fileInfo: " + fileInfo + " dirInfo: " + dirInfo
-        //         + " fileChown: "+fileChown+" dirChown: "+dirChown);
-
-        BigDecimal total = create.add(append).add(read).add(rename).add(delete).add(lsFile).add(lsDir)
-                .add(chmodFiles).add(chmodDirs).add(mkdirs).add(setReplication).add(fileInfo).
-                add(dirInfo).add(fileChown).add(dirChown);
+    /**
+     * Source of randomness for {@link InterleavedMultiFaceCoin#flip()}. Each coin is used by a single worker
+     * thread, so it has its own generator.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Alias table over the operations of the {@link FSOperation} registry, built from the percentages.
+     */
+    private final OperationSampler sampler;
+
+    /**
+     * @param percentages The percentage of each operation, keyed by the name of the operation in the
+     *                    {@link FSOperation} registry. Must add up to 100. Registered operations that are not in the
+     *                    map are never flipped.
+     * @param random Used to flip the coin. Pass a generator derived from
+     *               {@link BMConfiguration#getBenchMarkRandomSeed()} for reproducible runs.
+     *
+     * @throws IllegalArgumentException If the percentages do not add up to 100, or if one of the names does not
+     * belong to a registered operation.
+     */
+    public InterleavedMultiFaceCoin(Map<String, BigDecimal> percentages, SplittableRandom random) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, BigDecimal> entry : percentages.entrySet()) {
+            FSOperation.forName(entry.getKey());
+            total = total.add(entry.getValue());
+        }
 
         if (total.compareTo(new BigDecimal(100))!=0) {
             throw new IllegalArgumentException("All probabilities should add to 100. Got: " + total);
         }
 
+        Map<FSOperation, BigDecimal> weights = new LinkedHashMap<>();
+        for (FSOperation operation : FSOperation.getRegisteredOperations())
+            weights.put(operation, percentages.getOrDefault(operation.getName(), BigDecimal.ZERO));
 
-        for (int i = 0; i < create.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.CREATE_FILE);
-        }
-
-        for (int i = 0; i < append.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        for (int i = 0; i < read.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.READ_FILE);
-        }
-
-        for (int i = 0; i < rename.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.RENAME_FILE);
-        }
-
-        for (int i = 0; i < delete.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.DELETE_FILE);
-        }
-
-        for (int i = 0; i < lsFile.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.LIST_DIR_NO_PRINT);
-        }
-
-        for (int i = 0; i < lsDir.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.LIST_DIR_NO_PRINT);
-        }
-
-        for (int i = 0; i < chmodFiles.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        for (int i = 0; i < chmodDirs.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        for (int i = 0; i < mkdirs.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.MKDIRS);
-        }
-
-        for (int i = 0; i < setReplication.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        for (int i = 0; i < fileInfo.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.FILE_INFO);
-        }
-
-        for (int i = 0; i < dirInfo.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.DIR_INFO);
-        }
-
-        for (int i = 0; i < fileChown.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        for (int i = 0; i < dirChown.multiply(expansion).intValueExact(); i++) {
-            dice.add(FSOperation.NOT_SUPPORTED);
-        }
-
-        double expectedSize = expansion.multiply(new BigDecimal(100)).intValueExact();
-        if (dice.size() != expectedSize) {
-            Map<FSOperation, Integer> counts = new HashMap<>();
-            for (FSOperation op : dice) {
-                Integer opCount = counts.get(op);
-                if (opCount == null) {
-                    opCount = 0;
-                }
-                opCount++;
-                counts.put(op, opCount);
-            }
-            for (FSOperation op : counts.keySet()) {
-                double percent = ((double) counts.get(op) / (expectedSize) * 100);
-
-                System.out.println(op + " count " + counts.get(op) + ",  " + round(percent) + "%");
-            }
-            throw new IllegalStateException("Dice is not properly created. Dice should have  " + expectedSize + " faces. Found " + dice.size());
-        }
-
-        Collections.shuffle(dice);
+        this.random = random;
+        this.sampler = new OperationSampler(weights);
     }
 
-    public FSOperation flip() {
-        int choice = rand.nextInt(100 * expansion.intValueExact());
-        return dice.get(choice);
+    public InterleavedMultiFaceCoin(BigDecimal create, BigDecimal append, BigDecimal read, BigDecimal rename, BigDecimal delete, BigDecimal lsFile,
+                                    BigDecimal lsDir, BigDecimal chmodFiles, BigDecimal chmodDirs, BigDecimal mkdirs,
+                                    BigDecimal setReplication, BigDecimal fileInfo, BigDecimal dirInfo,
+                                    BigDecimal fileChown, BigDecimal dirChown) {
+        this(create, append, read, rename, delete, lsFile, lsDir, chmodFiles, chmodDirs, mkdirs, setReplication,
+                fileInfo, dirInfo, fileChown, dirChown, new SplittableRandom());
     }
 
-    public void testFlip() {
-        Map<FSOperation, Integer> counts = new HashMap<>();
-        BigDecimal times = new BigDecimal(100000);
-        for (int i = 0; i < times.intValueExact(); i++) {
-            FSOperation op = flip();
-            Integer opCount = counts.get(op);
-            if (opCount == null) {
-                opCount = 0;
-            }
-            opCount++;
-            counts.put(op, opCount);
-        }
+    /**
+     * Flip between the built-in operations only.
+     *
+     * @param random Used to flip the coin. Pass a generator derived from
+     *               {@link BMConfiguration#getBenchMarkRandomSeed()} for reproducible runs.
+     */
+    public InterleavedMultiFaceCoin(BigDecimal create, BigDecimal append, BigDecimal read, BigDecimal rename, BigDecimal delete, BigDecimal lsFile,
+                                    BigDecimal lsDir, BigDecimal chmodFiles, BigDecimal chmodDirs, BigDecimal mkdirs,
+                                    BigDecimal setReplication, BigDecimal fileInfo, BigDecimal dirInfo,
+                                    BigDecimal fileChown, BigDecimal dirChown, SplittableRandom random) {
+        this(toPercentages(create, append, read, rename, delete, lsFile, lsDir, chmodFiles, chmodDirs, mkdirs,
+                setReplication, fileInfo, dirInfo, fileChown, dirChown), random);
+    }
 
+    private static Map<String, BigDecimal> toPercentages(BigDecimal create, BigDecimal append, BigDecimal read,
+                                                         BigDecimal rename, BigDecimal delete, BigDecimal lsFile,
+                                                         BigDecimal lsDir, BigDecimal chmodFiles,
+                                                         BigDecimal chmodDirs, BigDecimal mkdirs,
+                                                         BigDecimal setReplication, BigDecimal fileInfo,
+                                                         BigDecimal dirInfo, BigDecimal fileChown,
+                                                         BigDecimal dirChown) {
+        Map<String, BigDecimal> percentages = new LinkedHashMap<>();
+        percentages.put(FSOperation.CREATE_FILE.getName(), create);
+        percentages.put(FSOperation.APPEND.getName(), append);
+        percentages.put(FSOperation.READ_FILE.getName(), read);
+        percentages.put(FSOperation.RENAME_FILE.getName(), rename);
+        percentages.put(FSOperation.DELETE_FILE.getName(), delete);
+        percentages.put(FSOperation.LIST_FILE_NO_PRINT.getName(), lsFile);
+        percentages.put(FSOperation.LIST_DIR_NO_PRINT.getName(), lsDir);
+        percentages.put(FSOperation.CHMOD_FILE.getName(), chmodFiles);
+        percentages.put(FSOperation.CHMOD_DIR.getName(), chmodDirs);
+        percentages.put(FSOperation.MKDIRS.getName(), mkdirs);
+        percentages.put(FSOperation.SET_REPLICATION.getName(), setReplication);
+        percentages.put(FSOperation.FILE_INFO.getName(), fileInfo);
+        percentages.put(FSOperation.DIR_INFO.getName(), dirInfo);
+        percentages.put(FSOperation.CHOWN_FILE.getName(), fileChown);
+        percentages.put(FSOperation.CHOWN_DIR.getName(), dirChown);
+        return percentages;
+    }
 
-        for (FSOperation op : counts.keySet()) {
-            double percent = (double) counts.get(op) / ( times.doubleValue()) * (double) 100;
-            System.out.println(op + ": count: "+counts.get(op)+"        " + round(percent)+"%");
-        }
+    public FSOperation flip() {
+        return sampler.sample(random);
     }
 }
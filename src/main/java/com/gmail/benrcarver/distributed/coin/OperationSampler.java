@@ -0,0 +1,119 @@
+package com.gmail.benrcarver.distributed.coin;
+
+import com.gmail.benrcarver.distributed.FSOperation;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Samples {@link FSOperation}s according to a set of weights in constant time, using Vose's variant of Walker's
+ * alias method.
+ *
+ * The table is built once from arbitrary-precision weights (which need not add up to any particular total), and is
+ * stored in primitive arrays: drawing a sample takes one random index and one random double, no matter how many
+ * operation types there are. Operations with a weight of zero are never sampled.
+ *
+ * Instances are immutable and may be shared. The source of randomness is supplied by the caller, so that each
+ * thread can use its own {@link SplittableRandom}.
+ */
+public class OperationSampler {
+    private final FSOperation[] operations;
+
+    /**
+     * The probability of keeping column i, rather than using its alias.
+     */
+    private final double[] probability;
+
+    /**
+     * The other operation in column i.
+     */
+    private final int[] alias;
+
+    /**
+     * @param weights The (non-negative) weight of each operation.
+     */
+    public OperationSampler(Map<FSOperation, BigDecimal> weights) {
+        List<FSOperation> nonZero = new ArrayList<>(weights.size());
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<FSOperation, BigDecimal> entry : weights.entrySet()) {
+            if (entry.getValue().signum() < 0)
+                throw new IllegalArgumentException("The weight of " + entry.getKey() + " is negative: " +
+                        entry.getValue());
+            if (entry.getValue().signum() > 0) {
+                nonZero.add(entry.getKey());
+                total = total.add(entry.getValue());
+            }
+        }
+
+        if (nonZero.isEmpty())
+            throw new IllegalArgumentException("At least one operation must have a positive weight.");
+
+        int n = nonZero.size();
+        this.operations = nonZero.toArray(new FSOperation[0]);
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        // Scale the weights so that they average 1. The division is done at high precision, and only the
+        // final result is rounded to a double.
+        BigDecimal scale = BigDecimal.valueOf(n);
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++)
+            scaled[i] = weights.get(operations[i]).multiply(scale).divide(total, MathContext.DECIMAL128).doubleValue();
+
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0)
+                small[numSmall++] = i;
+            else
+                large[numLarge++] = i;
+        }
+
+        while (numSmall > 0 && numLarge > 0) {
+            int less = small[--numSmall];
+            int more = large[--numLarge];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0)
+                small[numSmall++] = more;
+            else
+                large[numLarge++] = more;
+        }
+
+        // Whatever is left over is (up to rounding error) exactly 1.
+        while (numLarge > 0) {
+            int i = large[--numLarge];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+        while (numSmall > 0) {
+            int i = small[--numSmall];
+            probability[i] = 1.0;
+            alias[i] = i;
+        }
+    }
+
+    /**
+     * Draw an operation.
+     */
+    public FSOperation sample(SplittableRandom random) {
+        int column = random.nextInt(operations.length);
+        return random.nextDouble() < probability[column] ? operations[column] : operations[alias[column]];
+    }
+
+    /**
+     * Return the number of operations that can be sampled (i.e., those with a positive weight).
+     */
+    public int getNumOperations() {
+        return operations.length;
+    }
+}
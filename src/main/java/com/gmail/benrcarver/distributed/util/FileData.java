@@ -0,0 +1,132 @@
+package com.gmail.benrcarver.distributed.util;
+
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * The data written to and read from the files of benchmarks, without allocating anything per operation.
+ *
+ * Files are written from a single slab of random bytes, which is generated once per VM and shared by every thread.
+ * The slab is never modified after it is generated, so no synchronization is needed. Files larger than the slab are
+ * written by writing (parts of) it several times. Reads drain the file into a buffer that is reused by all the reads
+ * of a thread, and discard the data. The number of bytes read and the time to the first byte of the last read of
+ * each thread are kept in that thread's {@link ReadStats}, so that benchmarks can record them separately from the
+ * latency of the operation.
+ */
+public class FileData {
+    /**
+     * The size of the shared slab of data.
+     */
+    public static final int SLAB_SIZE = 1 << 20;
+
+    /**
+     * The size of the buffer that each thread reads into.
+     */
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] SLAB = createSlab();
+
+    private static final ThreadLocal<byte[]> readBuffers = ThreadLocal.withInitial(() -> new byte[READ_BUFFER_SIZE]);
+
+    /**
+     * Used instead of the read buffers by streams that can read into a {@link ByteBuffer}, which avoids copying the
+     * data into a byte array.
+     */
+    private static final ThreadLocal<ByteBuffer> directReadBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    private static final ThreadLocal<ReadStats> lastReads = ThreadLocal.withInitial(ReadStats::new);
+
+    private static byte[] createSlab() {
+        byte[] slab = new byte[SLAB_SIZE];
+        // Random bytes, in case the file system compresses data. The seed makes the contents of the files
+        // reproducible.
+        new Random(0).nextBytes(slab);
+        return slab;
+    }
+
+    /**
+     * Write the given number of bytes to the given stream.
+     */
+    public static void write(OutputStream out, long numBytes) throws IOException {
+        while (numBytes > 0) {
+            int length = (int) Math.min(numBytes, SLAB.length);
+            out.write(SLAB, 0, length);
+            numBytes -= length;
+        }
+    }
+
+    /**
+     * Read the given stream until its end, discarding the data, and record the number of bytes and the time to the
+     * first byte in the calling thread's {@link ReadStats}. If the stream supports it, the data is read into a direct
+     * {@link ByteBuffer} ({@link ByteBufferReadable}) rather than copied into a byte array.
+     *
+     * @param startNanos When the read started (e.g., before the file was opened), in terms of
+     *                   {@link System#nanoTime()}. The time to the first byte is measured from then.
+     *
+     * @return The number of bytes that were read.
+     */
+    public static long drain(FSDataInputStream in, long startNanos) throws IOException {
+        ReadStats stats = lastReads.get();
+        stats.reset();
+
+        long numBytes = 0;
+        int numRead;
+        if (in.getWrappedStream() instanceof ByteBufferReadable) {
+            ByteBuffer buffer = directReadBuffers.get();
+            buffer.clear();
+            numRead = in.read(buffer);
+            stats.timeToFirstByteNanos = System.nanoTime() - startNanos;
+            while (numRead >= 0) {
+                numBytes += numRead;
+                buffer.clear();
+                numRead = in.read(buffer);
+            }
+        } else {
+            byte[] buffer = readBuffers.get();
+            numRead = in.read(buffer, 0, buffer.length);
+            stats.timeToFirstByteNanos = System.nanoTime() - startNanos;
+            while (numRead >= 0) {
+                numBytes += numRead;
+                numRead = in.read(buffer, 0, buffer.length);
+            }
+        }
+
+        stats.bytesRead = numBytes;
+        return numBytes;
+    }
+
+    /**
+     * Return the statistics of the calling thread's last call to {@link FileData#drain(FSDataInputStream, long)}.
+     * The returned object is reused by the next read of the thread.
+     */
+    public static ReadStats getLastRead() {
+        return lastReads.get();
+    }
+
+    /**
+     * The statistics of a single read.
+     */
+    public static class ReadStats {
+        /**
+         * The number of bytes read, or -1 if the read did not complete.
+         */
+        public long bytesRead = -1;
+
+        /**
+         * The time between the start of the read and the first byte (or the end of the file, if it is empty), in
+         * nanoseconds, or -1 if no data was received.
+         */
+        public long timeToFirstByteNanos = -1;
+
+        void reset() {
+            bytesRead = -1;
+            timeToFirstByteNanos = -1;
+        }
+    }
+}
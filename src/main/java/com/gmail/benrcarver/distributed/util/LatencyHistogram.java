@@ -0,0 +1,257 @@
+package com.gmail.benrcarver.distributed.util;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-size, log-bucketed latency histogram.
+ *
+ * Values are stored in microseconds. Each power-of-two range of values is split into a fixed number of linear
+ * sub-buckets (2^precisionBits of them for the first range and 2^(precisionBits - 1) for each range after that),
+ * so the relative error of any recorded value is bounded by roughly 2^-(precisionBits - 1). The memory used by
+ * a histogram is fixed when it is created and does not grow with the number of values recorded.
+ *
+ * Instances are NOT thread-safe. The intended usage is that each thread records into its own histogram
+ * (i.e., a single writer), and the histograms are merged via {@link LatencyHistogram#add(LatencyHistogram)}
+ * once the writers are done.
+ */
+public class LatencyHistogram implements Serializable {
+    private static final long serialVersionUID = -4326188720531496524L;
+
+    /**
+     * Default precision. 7 bits of precision bounds the relative error of each value to ~1.6%.
+     */
+    public static final int DEFAULT_PRECISION_BITS = 7;
+
+    /**
+     * Default highest trackable value in microseconds (2^32 microseconds is roughly 71 minutes).
+     * Larger values are recorded as this value.
+     */
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 1L << 32;
+
+    private final int precisionBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final long highestTrackableValue;
+
+    private final long[] counts;
+
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_PRECISION_BITS, DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * @param precisionBits Number of bits of precision for each power-of-two range. Must be in the range [2, 16].
+     * @param highestTrackableValue The highest value (in microseconds) that can be recorded exactly. Larger
+     *                              values are clamped to this value.
+     */
+    public LatencyHistogram(int precisionBits, long highestTrackableValue) {
+        if (precisionBits < 2 || precisionBits > 16)
+            throw new IllegalArgumentException("Precision bits must be in the range [2, 16]. Got: " + precisionBits);
+
+        if (highestTrackableValue < 2)
+            throw new IllegalArgumentException("Highest trackable value must be at least 2. Got: " +
+                    highestTrackableValue);
+
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.subBucketHalfCount = subBucketCount >> 1;
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts = new long[indexOf(highestTrackableValue) + 1];
+    }
+
+    /**
+     * Create an empty histogram with the same configuration as this one.
+     */
+    public LatencyHistogram copyEmpty() {
+        return new LatencyHistogram(precisionBits, highestTrackableValue);
+    }
+
+    private int indexOf(long value) {
+        if (value < subBucketCount)
+            return (int) value;
+
+        // Position of the highest set bit, shifted so that the sub-bucket is in [subBucketHalfCount, subBucketCount).
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - (precisionBits - 1);
+        int subBucket = (int) (value >>> exponent);
+        return exponent * subBucketHalfCount + subBucket;
+    }
+
+    /**
+     * Return a value representative of the values in the bucket at the given index (the middle of the bucket).
+     */
+    private long valueAt(int index) {
+        if (index < subBucketCount)
+            return index;
+
+        int exponent = index / subBucketHalfCount - 1;
+        long subBucket = index - (long) exponent * subBucketHalfCount;
+        long lowestEquivalentValue = subBucket << exponent;
+        return lowestEquivalentValue + ((1L << exponent) >> 1);
+    }
+
+    /**
+     * Return the index of the bucket in which the given value (in microseconds) is recorded.
+     */
+    public int getBucketIndex(long valueMicros) {
+        if (valueMicros < 0)
+            valueMicros = 0;
+        else if (valueMicros > highestTrackableValue)
+            valueMicros = highestTrackableValue;
+
+        return indexOf(valueMicros);
+    }
+
+    public int getNumBuckets() { return counts.length; }
+
+    /**
+     * Add values that were bucketed elsewhere using {@link LatencyHistogram#getBucketIndex(long)} of a histogram
+     * with the same configuration as this one. All values are in microseconds.
+     */
+    void addBucketCounts(long[] bucketCounts, long totalCount, long sum, long min, long max) {
+        if (totalCount == 0)
+            return;
+
+        if (bucketCounts.length != counts.length)
+            throw new IllegalArgumentException("Expected " + counts.length + " buckets. Got: " + bucketCounts.length);
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += bucketCounts[i];
+        }
+
+        this.totalCount += totalCount;
+        this.sum += sum;
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+    }
+
+    /**
+     * Record a latency, in microseconds.
+     */
+    public void recordMicros(long latencyMicros) {
+        if (latencyMicros < 0)
+            latencyMicros = 0;
+        else if (latencyMicros > highestTrackableValue)
+            latencyMicros = highestTrackableValue;
+
+        counts[indexOf(latencyMicros)]++;
+        totalCount++;
+        sum += latencyMicros;
+
+        if (latencyMicros < min)
+            min = latencyMicros;
+        if (latencyMicros > max)
+            max = latencyMicros;
+    }
+
+    /**
+     * Record a latency, in milliseconds.
+     */
+    public void recordMillis(double latencyMillis) {
+        recordMicros((long) (latencyMillis * 1.0e3));
+    }
+
+    /**
+     * Record a latency, in nanoseconds.
+     */
+    public void recordNanos(long latencyNanos) {
+        recordMicros(latencyNanos / 1000L);
+    }
+
+    /**
+     * Add all the values recorded by another histogram to this one. This is O(number of buckets).
+     */
+    public void add(LatencyHistogram other) {
+        if (other == null || other.totalCount == 0)
+            return;
+
+        if (other.precisionBits != precisionBits || other.highestTrackableValue != highestTrackableValue)
+            throw new IllegalArgumentException("Cannot merge histograms with different configurations.");
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Return the value (in microseconds) at the given percentile, which should be in the range [0, 100].
+     */
+    public long getValueAtPercentileMicros(double percentile) {
+        if (totalCount == 0)
+            return 0;
+
+        if (percentile >= 100.0)
+            return max;
+
+        long countAtPercentile = (long) Math.ceil((percentile / 100.0) * totalCount);
+        if (countAtPercentile < 1)
+            countAtPercentile = 1;
+
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= countAtPercentile)
+                return Math.max(min, Math.min(max, valueAt(i)));
+        }
+
+        return max;
+    }
+
+    /**
+     * Return the value (in milliseconds) at the given percentile, which should be in the range [0, 100].
+     */
+    public double getValueAtPercentile(double percentile) {
+        return getValueAtPercentileMicros(percentile) / 1.0e3;
+    }
+
+    public long getTotalCount() { return totalCount; }
+
+    /**
+     * Return the mean in milliseconds.
+     */
+    public double getMean() {
+        return totalCount == 0 ? 0 : (sum / (double) totalCount) / 1.0e3;
+    }
+
+    /**
+     * Return the minimum in milliseconds.
+     */
+    public double getMin() {
+        return totalCount == 0 ? 0 : min / 1.0e3;
+    }
+
+    /**
+     * Return the maximum in milliseconds.
+     */
+    public double getMax() {
+        return max / 1.0e3;
+    }
+
+    public int getPrecisionBits() { return precisionBits; }
+
+    public long getHighestTrackableValue() { return highestTrackableValue; }
+
+    /**
+     * Return a summary of the form "[N: ..., avg: ..., p50: ..., p90: ..., p99: ..., p99.9: ..., max: ...]".
+     * All values are in milliseconds.
+     */
+    public String toSummaryString() {
+        return "[N: " + totalCount + ", avg: " + getMean() + ", p50: " + getValueAtPercentile(50) +
+                ", p90: " + getValueAtPercentile(90) + ", p99: " + getValueAtPercentile(99) +
+                ", p99.9: " + getValueAtPercentile(99.9) + ", max: " + getMax() + "]";
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram" + toSummaryString();
+    }
+}
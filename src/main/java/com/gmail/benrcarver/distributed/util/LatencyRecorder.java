@@ -0,0 +1,166 @@
+package com.gmail.benrcarver.distributed.util;
+
+import com.gmail.benrcarver.distributed.Commands;
+import org.slf4j.Logger;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-thread collection of {@link LatencyHistogram} instances: one for the end-to-end latency of each type of
+ * operation, plus one each for the TCP and HTTP request latencies reported by the HDFS client. Reads also record
+ * their time to first byte and the number of bytes they read, separately from their end-to-end latency.
+ *
+ * A recorder has a single writer (the benchmark thread that owns it) and is therefore not thread-safe. Once the
+ * writer is done (which the benchmarks already establish via their end latch), the recorders of all threads are
+ * merged via {@link LatencyRecorder#merge(LatencyRecorder)}. Merging is O(number of buckets) and takes no locks.
+ */
+public class LatencyRecorder implements Serializable {
+    private static final long serialVersionUID = 5806426002415929043L;
+
+    /**
+     * End-to-end latency of each operation type, keyed by {@link com.gmail.benrcarver.distributed.FSOperation} name.
+     */
+    private final TreeMap<String, LatencyHistogram> operationLatencies = new TreeMap<>();
+
+    private final LatencyHistogram tcpLatency;
+    private final LatencyHistogram httpLatency;
+
+    /**
+     * The time between the start of each read and its first byte.
+     */
+    private final LatencyHistogram timeToFirstByte;
+
+    private long numReads = 0;
+    private long bytesRead = 0;
+
+    private final int precisionBits;
+
+    /**
+     * Create a recorder using the precision configured in {@link Commands#LATENCY_HISTOGRAM_PRECISION_BITS}.
+     */
+    public LatencyRecorder() {
+        this(Commands.LATENCY_HISTOGRAM_PRECISION_BITS);
+    }
+
+    public LatencyRecorder(int precisionBits) {
+        this.precisionBits = precisionBits;
+        this.tcpLatency = newHistogram();
+        this.httpLatency = newHistogram();
+        this.timeToFirstByte = newHistogram();
+    }
+
+    private LatencyHistogram newHistogram() {
+        return new LatencyHistogram(precisionBits, LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * Record the end-to-end latency of a single operation.
+     *
+     * @param operationName The name of the operation's type.
+     * @param latencyNanos The latency in nanoseconds.
+     */
+    public void recordOperation(String operationName, long latencyNanos) {
+        LatencyHistogram histogram = operationLatencies.get(operationName);
+        if (histogram == null) {
+            histogram = newHistogram();
+            operationLatencies.put(operationName, histogram);
+        }
+        histogram.recordNanos(latencyNanos);
+    }
+
+    /**
+     * Record the time to first byte and the size of a single (successful) read.
+     */
+    public void recordRead(long timeToFirstByteNanos, long numBytes) {
+        timeToFirstByte.recordNanos(timeToFirstByteNanos);
+        numReads++;
+        bytesRead += numBytes;
+    }
+
+    /**
+     * Record TCP request latencies, in milliseconds (as reported by the HDFS client).
+     */
+    public void recordTcpLatencies(double[] latenciesMillis) {
+        for (double latency : latenciesMillis)
+            tcpLatency.recordMillis(latency);
+    }
+
+    /**
+     * Record HTTP request latencies, in milliseconds (as reported by the HDFS client).
+     */
+    public void recordHttpLatencies(double[] latenciesMillis) {
+        for (double latency : latenciesMillis)
+            httpLatency.recordMillis(latency);
+    }
+
+    /**
+     * Merge all the histograms of another recorder into this one.
+     */
+    public void merge(LatencyRecorder other) {
+        if (other == null)
+            return;
+
+        for (Map.Entry<String, LatencyHistogram> entry : other.operationLatencies.entrySet()) {
+            LatencyHistogram histogram = operationLatencies.get(entry.getKey());
+            if (histogram == null) {
+                histogram = entry.getValue().copyEmpty();
+                operationLatencies.put(entry.getKey(), histogram);
+            }
+            histogram.add(entry.getValue());
+        }
+
+        tcpLatency.add(other.tcpLatency);
+        httpLatency.add(other.httpLatency);
+        timeToFirstByte.add(other.timeToFirstByte);
+        numReads += other.numReads;
+        bytesRead += other.bytesRead;
+    }
+
+    /**
+     * Return the end-to-end latency histogram of each operation type, keyed by operation name.
+     */
+    public Map<String, LatencyHistogram> getOperationLatencies() {
+        return operationLatencies;
+    }
+
+    public LatencyHistogram getTcpLatency() { return tcpLatency; }
+
+    public LatencyHistogram getHttpLatency() { return httpLatency; }
+
+    public LatencyHistogram getTimeToFirstByte() { return timeToFirstByte; }
+
+    public long getNumReads() { return numReads; }
+
+    public long getBytesRead() { return bytesRead; }
+
+    /**
+     * Return a histogram of the TCP and HTTP latencies combined.
+     */
+    public LatencyHistogram getCombinedLatency() {
+        LatencyHistogram combined = tcpLatency.copyEmpty();
+        combined.add(tcpLatency);
+        combined.add(httpLatency);
+        return combined;
+    }
+
+    /**
+     * Log the p50/p90/p99/p99.9/max latencies of each operation type as well as the TCP and HTTP latencies.
+     */
+    public void logSummary(Logger log) {
+        for (Map.Entry<String, LatencyHistogram> entry : operationLatencies.entrySet()) {
+            log.info("Latency " + entry.getKey() + " (ms) " + entry.getValue().toSummaryString());
+        }
+
+        log.info("Latency TCP & HTTP (ms) " + getCombinedLatency().toSummaryString());
+        log.info("Latency TCP (ms) " + tcpLatency.toSummaryString());
+        log.info("Latency HTTP (ms) " + httpLatency.toSummaryString());
+
+        if (numReads > 0) {
+            log.info("Time to first byte READ (ms) " + timeToFirstByte.toSummaryString());
+            log.info("Bytes read: " + bytesRead + " in " + numReads + " read(s) (" +
+                    String.format("%.1f", (double) bytesRead / numReads) + " bytes/read).");
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package com.gmail.benrcarver.distributed.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+
+/**
+ * A read-only snapshot of a namespace (e.g., an existing subtree): a set of directory and file paths, along with the
+ * depth of each path and the number of its children that are also in the snapshot (its fan-out).
+ *
+ * The paths are sorted and front-coded: each path is stored as the length of the prefix it shares with the previous
+ * path, followed by the rest of the path. Every {@link #RESTART_INTERVAL}-th path is stored in full, so any path can
+ * be decoded by reading at most that many entries. Everything else (the kind and depth of each entry, its fan-out,
+ * and the indexes of the directories and files) is stored in fixed-width sections.
+ *
+ * Snapshots are written to disk with {@link #writeTo(String)} and loaded with {@link #open(String)}, which
+ * memory-maps the file instead of parsing it. Opening a snapshot therefore takes about the same time regardless of
+ * its size, and the followers on a VM share the same physical pages. {@link #load(String)} also accepts the
+ * plain-text format (one directory per line) that is used by older existing subtrees.
+ *
+ * Layout (big-endian):
+ *
+ *   header:   magic (8 bytes), version, restart interval, # entries, # directories, # files, max depth (ints),
+ *             length of the entries section (long), padding to {@link #HEADER_SIZE} bytes.
+ *   restarts: int offset (into the entries section) of every {@link #RESTART_INTERVAL}-th entry.
+ *   dirs:     int index of every directory entry.
+ *   files:    int index of every file entry.
+ *   fan-out:  int fan-out of every entry.
+ *   kinds:    short for every entry: the depth, with {@link #DIRECTORY_FLAG} set for directories. Padded to 4 bytes.
+ *   entries:  for every entry, varint shared prefix length, varint suffix length, suffix (UTF-8).
+ *
+ * Snapshots must be smaller than 2 GB. Instances are immutable (apart from the cache of decoded directories) and may
+ * be shared by any number of threads.
+ */
+public class NamespaceSnapshot {
+    public static final Logger LOG = LoggerFactory.getLogger(NamespaceSnapshot.class);
+
+    private static final byte[] MAGIC = "LFSSNAP\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+
+    /**
+     * One in this many entries is stored without front-coding.
+     */
+    public static final int RESTART_INTERVAL = 16;
+
+    private static final int DIRECTORY_FLAG = 0x8000;
+    private static final int DEPTH_MASK = 0x7FFF;
+
+    /**
+     * The whole snapshot. The sections below are views of it.
+     */
+    private final ByteBuffer buffer;
+
+    private final String sourcePath;
+    private final int numEntries;
+    private final int maxDepth;
+
+    private final IntBuffer restarts;
+    private final IntBuffer dirIndex;
+    private final IntBuffer fileIndex;
+    private final IntBuffer fanOuts;
+    private final ShortBuffer kinds;
+    private final ByteBuffer entries;
+
+    /**
+     * The paths of the directories, decoded by the first call to {@link #getDecodedDirectories()}.
+     */
+    private volatile List<String> decodedDirectories;
+
+    /**
+     * Parse the header and create views of each section of the given snapshot.
+     *
+     * @param sourcePath Where the snapshot came from, for logging. May be null.
+     */
+    private NamespaceSnapshot(ByteBuffer buffer, String sourcePath) throws IOException {
+        this.buffer = buffer;
+        this.sourcePath = sourcePath;
+
+        if (buffer.capacity() < HEADER_SIZE || !hasMagic(buffer))
+            throw new IOException("Not a namespace snapshot: " + sourcePath);
+
+        int version = buffer.getInt(8);
+        if (version != VERSION)
+            throw new IOException("Unsupported namespace snapshot version " + version + ": " + sourcePath);
+
+        int restartInterval = buffer.getInt(12);
+        if (restartInterval != RESTART_INTERVAL)
+            throw new IOException("Unsupported restart interval " + restartInterval + ": " + sourcePath);
+
+        this.numEntries = buffer.getInt(16);
+        int numDirectories = buffer.getInt(20);
+        int numFiles = buffer.getInt(24);
+        this.maxDepth = buffer.getInt(28);
+        long entriesLength = buffer.getLong(32);
+
+        int numRestarts = (numEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        long expectedLength = HEADER_SIZE + 4L * numRestarts + 4L * numDirectories + 4L * numFiles +
+                4L * numEntries + align4(2L * numEntries) + entriesLength;
+        if (numEntries < 0 || numDirectories + numFiles != numEntries || expectedLength != buffer.capacity())
+            throw new IOException("Corrupt namespace snapshot (expected " + expectedLength + " bytes, found " +
+                    buffer.capacity() + "): " + sourcePath);
+
+        int position = HEADER_SIZE;
+        this.restarts = slice(buffer, position, 4 * numRestarts).asIntBuffer();
+        position += 4 * numRestarts;
+        this.dirIndex = slice(buffer, position, 4 * numDirectories).asIntBuffer();
+        position += 4 * numDirectories;
+        this.fileIndex = slice(buffer, position, 4 * numFiles).asIntBuffer();
+        position += 4 * numFiles;
+        this.fanOuts = slice(buffer, position, 4 * numEntries).asIntBuffer();
+        position += 4 * numEntries;
+        this.kinds = slice(buffer, position, 2 * numEntries).asShortBuffer();
+        position += (int) align4(2L * numEntries);
+        this.entries = slice(buffer, position, (int) entriesLength);
+    }
+
+    /**
+     * Memory-map the given snapshot.
+     *
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    public static NamespaceSnapshot open(String path) throws IOException {
+        long start = System.currentTimeMillis();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Namespace snapshot is too large (" + channel.size() + " bytes): " + path);
+
+            NamespaceSnapshot snapshot = new NamespaceSnapshot(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+
+            LOG.debug("Opened namespace snapshot " + snapshot + " in " + (System.currentTimeMillis() - start) +
+                    " ms.");
+            return snapshot;
+        }
+    }
+
+    /**
+     * Load the given existing subtree, which is either a snapshot (see {@link #open(String)}) or a plain-text file
+     * containing one directory per line.
+     */
+    public static NamespaceSnapshot load(String path) throws IOException {
+        if (isSnapshot(path))
+            return open(path);
+
+        long start = System.currentTimeMillis();
+        List<String> directories = Utils.getFilePathsFromFile(path);
+        NamespaceSnapshot snapshot = build(directories, null, path);
+        LOG.debug("Built namespace snapshot " + snapshot + " from plain-text file in " +
+                (System.currentTimeMillis() - start) + " ms.");
+        return snapshot;
+    }
+
+    /**
+     * Return true if the given file starts with the snapshot header.
+     */
+    public static boolean isSnapshot(String path) throws FileNotFoundException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        } catch (FileNotFoundException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            // Too short to be a snapshot.
+            return false;
+        }
+    }
+
+    /**
+     * Create an in-memory snapshot of the given directories and files. Trailing slashes are removed, and duplicates
+     * are dropped. A path that appears as both a directory and a file is treated as a directory.
+     *
+     * @param directories The directories to include. May be null.
+     * @param files The files to include. May be null.
+     */
+    public static NamespaceSnapshot build(Collection<String> directories, Collection<String> files) {
+        return build(directories, files, null);
+    }
+
+    private static NamespaceSnapshot build(Collection<String> directories, Collection<String> files,
+                                           String sourcePath) {
+        // Sorting the paths maximizes the length of the prefixes that consecutive paths share.
+        TreeMap<String, Boolean> sorted = new TreeMap<>();
+        if (files != null) {
+            for (String file : files)
+                sorted.put(normalize(file), false);
+        }
+        if (directories != null) {
+            for (String directory : directories)
+                sorted.put(normalize(directory), true);
+        }
+        sorted.remove("");
+
+        int numEntries = sorted.size();
+        int numDirectories = 0;
+        for (Boolean isDirectory : sorted.values()) {
+            if (isDirectory)
+                numDirectories++;
+        }
+        int numFiles = numEntries - numDirectories;
+
+        // Count the children of each directory in the snapshot.
+        Map<String, Integer> fanOuts = new HashMap<>();
+        for (String path : sorted.keySet()) {
+            String parent = getParent(path);
+            if (parent != null && Boolean.TRUE.equals(sorted.get(parent)))
+                fanOuts.merge(parent, 1, Integer::sum);
+        }
+
+        int numRestarts = (numEntries + RESTART_INTERVAL - 1) / RESTART_INTERVAL;
+        int[] restarts = new int[numRestarts];
+        int[] dirIndex = new int[numDirectories];
+        int[] fileIndex = new int[numFiles];
+        int[] entryFanOuts = new int[numEntries];
+        short[] kinds = new short[numEntries];
+        ByteArrayOutputStream entries = new ByteArrayOutputStream(Math.max(numEntries * 8, 32));
+
+        byte[] previous = new byte[0];
+        int maxDepth = 0;
+        int i = 0, d = 0, f = 0;
+        for (Map.Entry<String, Boolean> entry : sorted.entrySet()) {
+            String path = entry.getKey();
+            byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+
+            int shared = 0;
+            if (i % RESTART_INTERVAL == 0) {
+                restarts[i / RESTART_INTERVAL] = entries.size();
+            } else {
+                int limit = Math.min(previous.length, bytes.length);
+                while (shared < limit && previous[shared] == bytes[shared])
+                    shared++;
+            }
+            writeVarInt(entries, shared);
+            writeVarInt(entries, bytes.length - shared);
+            entries.write(bytes, shared, bytes.length - shared);
+            previous = bytes;
+
+            int depth = getDepth(path);
+            if (depth > DEPTH_MASK)
+                throw new IllegalArgumentException("Path is too deep (" + depth + " components): " + path);
+            maxDepth = Math.max(maxDepth, depth);
+
+            boolean isDirectory = entry.getValue();
+            kinds[i] = (short) (depth | (isDirectory ? DIRECTORY_FLAG : 0));
+            entryFanOuts[i] = fanOuts.getOrDefault(path, 0);
+            if (isDirectory)
+                dirIndex[d++] = i;
+            else
+                fileIndex[f++] = i;
+            i++;
+        }
+
+        long totalLength = HEADER_SIZE + 4L * numRestarts + 4L * numEntries + 4L * numEntries +
+                align4(2L * numEntries) + entries.size();
+        if (totalLength > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Namespace snapshot would be too large (" + totalLength + " bytes).");
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) totalLength);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(RESTART_INTERVAL);
+        buffer.putInt(numEntries);
+        buffer.putInt(numDirectories);
+        buffer.putInt(numFiles);
+        buffer.putInt(maxDepth);
+        buffer.putLong(entries.size());
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().put(restarts);
+        buffer.position(buffer.position() + 4 * numRestarts);
+        buffer.asIntBuffer().put(dirIndex);
+        buffer.position(buffer.position() + 4 * numDirectories);
+        buffer.asIntBuffer().put(fileIndex);
+        buffer.position(buffer.position() + 4 * numFiles);
+        buffer.asIntBuffer().put(entryFanOuts);
+        buffer.position(buffer.position() + 4 * numEntries);
+        buffer.asShortBuffer().put(kinds);
+        buffer.position(buffer.position() + (int) align4(2L * numEntries));
+        buffer.put(entries.toByteArray());
+        buffer.flip();
+
+        try {
+            return new NamespaceSnapshot(buffer, sourcePath);
+        } catch (IOException ex) {
+            // We just built it, so this would be a bug.
+            throw new IllegalStateException("Built an invalid namespace snapshot.", ex);
+        }
+    }
+
+    /**
+     * Write this snapshot to the given file, so that it can later be opened with {@link #open(String)}.
+     */
+    public void writeTo(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer source = buffer.duplicate();
+            source.clear();
+            while (source.hasRemaining())
+                channel.write(source);
+        }
+
+        LOG.debug("Wrote namespace snapshot " + this + " to '" + path + "' (" + buffer.capacity() + " bytes).");
+    }
+
+    /**
+     * Return the number of paths in the snapshot.
+     */
+    public int size() {
+        return numEntries;
+    }
+
+    public int getNumDirectories() {
+        return dirIndex.capacity();
+    }
+
+    public int getNumFiles() {
+        return fileIndex.capacity();
+    }
+
+    /**
+     * Return the depth of the deepest path in the snapshot.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Decode and return the given path. Paths are in lexicographic order.
+     */
+    public String getPath(int index) {
+        checkIndex(index);
+
+        ByteBuffer view = entries.duplicate();
+        int restart = index / RESTART_INTERVAL;
+        view.position(restarts.get(restart));
+
+        byte[] path = new byte[64];
+        int length = 0;
+        for (int i = restart * RESTART_INTERVAL; i <= index; i++) {
+            int shared = readVarInt(view);
+            int suffixLength = readVarInt(view);
+            length = shared + suffixLength;
+            if (length > path.length)
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+            view.get(path, shared, suffixLength);
+        }
+
+        return new String(path, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public boolean isDirectory(int index) {
+        checkIndex(index);
+        return (kinds.get(index) & DIRECTORY_FLAG) != 0;
+    }
+
+    /**
+     * Return the number of components of the given path.
+     */
+    public int getDepth(int index) {
+        checkIndex(index);
+        return kinds.get(index) & DEPTH_MASK;
+    }
+
+    /**
+     * Return the number of children of the given path that are also in the snapshot.
+     */
+    public int getFanOut(int index) {
+        checkIndex(index);
+        return fanOuts.get(index);
+    }
+
+    /**
+     * Return a view of the directories in the snapshot.
+     */
+    public List<String> getDirectories() {
+        return new IndexView(dirIndex);
+    }
+
+    /**
+     * Return the paths of the directories in the snapshot, which are decoded once (by the first call) and then kept
+     * in memory. Unlike {@link #getDirectories()}, getting a path does not decode it again, so this is meant for
+     * callers that pick directories over and over, such as file pools.
+     */
+    public List<String> getDecodedDirectories() {
+        List<String> directories = decodedDirectories;
+        if (directories == null) {
+            synchronized (this) {
+                directories = decodedDirectories;
+                if (directories == null) {
+                    directories = Collections.unmodifiableList(new ArrayList<>(getDirectories()));
+                    decodedDirectories = directories;
+                }
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Return a view of the files in the snapshot.
+     */
+    public List<String> getFiles() {
+        return new IndexView(fileIndex);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= numEntries)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + numEntries);
+    }
+
+    /**
+     * A list of the paths of some of the entries.
+     */
+    private class IndexView extends AbstractList<String> implements RandomAccess {
+        private final IntBuffer indexes;
+
+        IndexView(IntBuffer indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public String get(int i) {
+            return getPath(indexes.get(i));
+        }
+
+        @Override
+        public int size() {
+            return indexes.capacity();
+        }
+    }
+
+    /**
+     * Remove any trailing slashes from the given path, other than that of the root directory.
+     */
+    private static String normalize(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/')
+            end--;
+        return path.substring(0, end);
+    }
+
+    /**
+     * Return the parent of the given (normalized) path, or null if it has none.
+     */
+    private static String getParent(String path) {
+        int slash = path.lastIndexOf('/');
+        if (slash < 0 || path.length() == 1)
+            return null;
+        return slash == 0 ? "/" : path.substring(0, slash);
+    }
+
+    /**
+     * Return the number of components of the given path, e.g., 2 for both "/a/b" and "a/b", and 0 for "/".
+     */
+    private static int getDepth(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (path.charAt(i) != '/' && (i == 0 || path.charAt(i - 1) == '/'))
+                depth++;
+        }
+        return depth;
+    }
+
+    private static boolean hasMagic(ByteBuffer buffer) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i])
+                return false;
+        }
+        return true;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(position + length);
+        view.position(position);
+        return view.slice();
+    }
+
+    private static long align4(long length) {
+        return (length + 3) & ~3L;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NamespaceSnapshot(source=" + sourcePath + ", numDirs=" + getNumDirectories() + ", numFiles=" +
+                getNumFiles() + ", maxDepth=" + maxDepth + ")";
+    }
+}
@@ -0,0 +1,230 @@
+package com.gmail.benrcarver.distributed.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A read-only list of the paths in a local file, one per line, for inputs too large to load as a
+ * {@code List<String>} (see {@link Utils#getFilePathsFromFile(String)}).
+ *
+ * The file is memory-mapped, and a single pass builds an index of the offset at which each line starts. Paths are
+ * only decoded when they are retrieved. Benchmarks should give each thread its own sample (see
+ * {@link PathList#sample}, {@link PathList#sampleWithoutReplacement} and {@link PathList#partition}) rather than
+ * shuffling the whole list once per thread, so that set-up time depends on the number of paths the threads use,
+ * not on the size of the input times the number of threads.
+ *
+ * Lines end with '\n' or "\r\n". As with {@link java.io.BufferedReader#readLine()}, a trailing line terminator does
+ * not produce an empty last line. Instances are immutable and may be shared by any number of threads.
+ */
+public class PathList extends AbstractList<String> implements RandomAccess {
+    public static final Logger LOG = LoggerFactory.getLogger(PathList.class);
+
+    /**
+     * Files are mapped in segments of this size, as a single mapping cannot exceed 2 GB.
+     */
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private final String sourcePath;
+    private final MappedByteBuffer[] segments;
+    private final int numLines;
+
+    /**
+     * The offset at which each line starts, followed by one past the end of the last line's terminator (real or
+     * implied). Only one of the two is used: the int version whenever the file is smaller than 2 GB.
+     */
+    private final int[] intStarts;
+    private final long[] longStarts;
+
+    private PathList(String sourcePath, MappedByteBuffer[] segments, long[] starts, int numLines, long length) {
+        this.sourcePath = sourcePath;
+        this.segments = segments;
+        this.numLines = numLines;
+
+        if (length < Integer.MAX_VALUE) {
+            this.intStarts = new int[numLines + 1];
+            for (int i = 0; i <= numLines; i++)
+                this.intStarts[i] = (int) starts[i];
+            this.longStarts = null;
+        } else {
+            this.intStarts = null;
+            this.longStarts = starts;
+        }
+    }
+
+    /**
+     * Map the given file and index its lines.
+     *
+     * @param path Path to a file on the local FS that contains one HopsFS path per line.
+     */
+    public static PathList open(String path) throws IOException {
+        long start = System.currentTimeMillis();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long length = channel.size();
+            int numSegments = (int) ((length + SEGMENT_MASK) >>> SEGMENT_BITS);
+            MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(numSegments, 1)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = (long) i << SEGMENT_BITS;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                        Math.min(length - offset, SEGMENT_MASK + 1));
+            }
+
+            // Find the start of every line.
+            long[] starts = new long[1024];
+            int numStarts = 1; // The first line starts at offset 0.
+            byte[] scanBuffer = new byte[SCAN_BUFFER_SIZE];
+            long position = 0;
+            for (MappedByteBuffer segment : segments) {
+                ByteBuffer view = segment.duplicate();
+                while (view.hasRemaining()) {
+                    int n = Math.min(view.remaining(), scanBuffer.length);
+                    view.get(scanBuffer, 0, n);
+                    for (int i = 0; i < n; i++) {
+                        if (scanBuffer[i] == '\n') {
+                            if (numStarts == starts.length)
+                                starts = Arrays.copyOf(starts, numStarts * 2);
+                            starts[numStarts++] = position + i + 1;
+                        }
+                    }
+                    position += n;
+                }
+            }
+
+            int numLines;
+            if (starts[numStarts - 1] == length) {
+                // The file is empty or ends with a line terminator, so the last start is the end sentinel.
+                numLines = numStarts - 1;
+            } else {
+                // Pretend that the last line has a terminator.
+                if (numStarts == starts.length)
+                    starts = Arrays.copyOf(starts, numStarts + 1);
+                starts[numStarts] = length + 1;
+                numLines = numStarts;
+            }
+
+            LOG.debug("Indexed " + numLines + " path(s) in '" + path + "' (" + length + " bytes) in " +
+                    (System.currentTimeMillis() - start) + " ms.");
+            return new PathList(path, segments, starts, numLines, length);
+        }
+    }
+
+    @Override
+    public int size() {
+        return numLines;
+    }
+
+    /**
+     * Decode and return the path on the given line.
+     */
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= numLines)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + numLines);
+
+        long start = getStart(index);
+        long end = getStart(index + 1) - 1; // Exclude the '\n'.
+        if (end > start && byteAt(end - 1) == '\r')
+            end--;
+
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = byteAt(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return {@code count} paths selected uniformly at random, with replacement.
+     */
+    public String[] sample(int count, Random rng) {
+        if (numLines == 0 && count > 0)
+            throw new IllegalStateException("Cannot sample from an empty path list: " + sourcePath);
+
+        String[] sample = new String[count];
+        for (int i = 0; i < count; i++)
+            sample[i] = get(rng.nextInt(numLines));
+        return sample;
+    }
+
+    /**
+     * Return {@code count} distinct lines selected uniformly at random, in random order. Takes O(count) time and
+     * space, regardless of the size of the list (Floyd's algorithm).
+     */
+    public String[] sampleWithoutReplacement(int count, Random rng) {
+        if (count > numLines)
+            throw new IllegalArgumentException("Cannot select " + count + " distinct path(s) from " + numLines +
+                    " path(s) in " + sourcePath);
+
+        Set<Integer> selected = new HashSet<>(count * 2);
+        int[] indices = new int[count];
+        int n = 0;
+        for (int j = numLines - count; j < numLines; j++) {
+            int t = rng.nextInt(j + 1);
+            int index = selected.add(t) ? t : j;
+            if (index == j)
+                selected.add(j);
+            indices[n++] = index;
+        }
+
+        // Floyd's algorithm selects a uniformly random set, but not in a uniformly random order.
+        String[] sample = new String[count];
+        for (int i = count - 1; i >= 0; i--) {
+            int k = rng.nextInt(i + 1);
+            int tmp = indices[k];
+            indices[k] = indices[i];
+            indices[i] = tmp;
+            sample[i] = get(indices[i]);
+        }
+        return sample;
+    }
+
+    /**
+     * Return the given part of the list, when the list is split into {@code numParts} contiguous parts whose sizes
+     * differ by at most one.
+     */
+    public List<String> partition(int part, int numParts) {
+        if (numParts <= 0 || part < 0 || part >= numParts)
+            throw new IllegalArgumentException("Invalid partition " + part + " of " + numParts + ".");
+
+        int from = (int) ((long) numLines * part / numParts);
+        int to = (int) ((long) numLines * (part + 1) / numParts);
+        return subList(from, to);
+    }
+
+    /**
+     * Return the path of the local file that backs this list.
+     */
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    private long getStart(int line) {
+        return intStarts != null ? intStarts[line] : longStarts[line];
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    @Override
+    public String toString() {
+        return "PathList(source=" + sourcePath + ", size=" + numLines + ")";
+    }
+}
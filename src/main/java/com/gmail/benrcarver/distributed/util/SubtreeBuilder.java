@@ -1,7 +1,390 @@
 package com.gmail.benrcarver.distributed.util;
 
+import com.gmail.benrcarver.distributed.Commands;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates a complete subtree (every directory has the same number of subdirectories and files) using many clients
+ * at once.
+ *
+ * The subtree is built one level at a time. The directories of a level are split into batches, which are created
+ * in parallel by a pool of threads, each using a client from {@link Commands#getHdfsClient}. A level is only started
+ * once every directory of the previous level exists, so parents are always created before their children. Each
+ * directory's files are created by the same task, right after the directory itself.
+ *
+ * The names are deterministic: the i-th subdirectory of {@code parent} is {@code parent/dir<i>}, and the i-th file
+ * is {@code parent/file<i>}. So, the subtree can be split across several builders (e.g., one per follower) by
+ * assigning each of them some of the root's subdirectories (see {@code partition}), and an interrupted build can be
+ * resumed from a checkpoint file that only records which batches have been completed.
+ */
 public class SubtreeBuilder {
-    public static void main(String[] args) {
+    public static final Logger LOG = LoggerFactory.getLogger(SubtreeBuilder.class);
+
+    /**
+     * The number of directories created by each task.
+     */
+    public static final int BATCH_SIZE = 64;
+
+    private final DistributedFileSystem sharedHdfs;
+    private final String rootPath;
+    private final int depth;
+    private final int dirsPerDir;
+    private final int filesPerDir;
+    private final int numThreads;
+    private final int partition;
+    private final int numPartitions;
+
+    /**
+     * Path to the local checkpoint file, or null if progress should not be recorded.
+     */
+    private final String checkpointPath;
+
+    /**
+     * The batches that have been completed, by level, according to the checkpoint file.
+     */
+    private final Map<Integer, Set<Integer>> completedBatches = new HashMap<>();
+
+    private BufferedWriter checkpointWriter;
+
+    /**
+     * The directories of the subtree (including those created by a previous, interrupted build), in the order in
+     * which they were created.
+     */
+    private final List<String> directories = new ArrayList<>();
+
+    private final List<LevelResult> levelResults = new ArrayList<>();
+
+    /**
+     * @param rootPath The root of the subtree. Created if it does not exist.
+     * @param depth The number of levels of directories below the root.
+     * @param dirsPerDir The number of subdirectories of every directory, other than those of the last level.
+     * @param filesPerDir The number of files in every directory, other than the root.
+     * @param numThreads The number of directories and files that are created concurrently.
+     * @param partition Which of the root's subdirectories this builder creates, along with their subtrees: those
+     *                  whose index modulo {@code numPartitions} is {@code partition}.
+     * @param numPartitions The number of builders that the subtree is split across.
+     * @param checkpointPath Local file in which progress is recorded, and from which it is restored if the file
+     *                       already exists. If null, progress is not recorded.
+     */
+    public SubtreeBuilder(DistributedFileSystem sharedHdfs, String rootPath, int depth, int dirsPerDir,
+                          int filesPerDir, int numThreads, int partition, int numPartitions,
+                          String checkpointPath) {
+        if (depth < 0 || dirsPerDir < 1 || filesPerDir < 0 || numThreads < 1)
+            throw new IllegalArgumentException("Invalid subtree: depth=" + depth + ", dirsPerDir=" + dirsPerDir +
+                    ", filesPerDir=" + filesPerDir + ", numThreads=" + numThreads);
+        if (numPartitions < 1 || partition < 0 || partition >= numPartitions)
+            throw new IllegalArgumentException("Invalid partition " + partition + " of " + numPartitions + ".");
+
+        this.sharedHdfs = sharedHdfs;
+        this.rootPath = rootPath.length() > 1 && rootPath.endsWith("/") ?
+                rootPath.substring(0, rootPath.length() - 1) : rootPath;
+        this.depth = depth;
+        this.dirsPerDir = dirsPerDir;
+        this.filesPerDir = filesPerDir;
+        this.numThreads = numThreads;
+        this.partition = partition;
+        this.numPartitions = numPartitions;
+        this.checkpointPath = checkpointPath;
+    }
+
+    /**
+     * Create the subtree, skipping any batches that the checkpoint file says have already been completed.
+     *
+     * @return The result of each level that had any work left to do.
+     */
+    public List<LevelResult> build() throws IOException, InterruptedException {
+        openCheckpoint();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            // Every builder creates the root, as mkdirs succeeds if the directory already exists.
+            Commands.mkdir(rootPath, sharedHdfs);
+            directories.add(rootPath);
+
+            List<String> level = Collections.singletonList(rootPath);
+            for (int currentLevel = 1; currentLevel <= depth; currentLevel++) {
+                level = getChildren(level, currentLevel == 1);
+                LevelResult result = buildLevel(executor, currentLevel, level);
+                if (result != null) {
+                    levelResults.add(result);
+                    LOG.info(result.toString());
+                }
+                directories.addAll(level);
+            }
+        } finally {
+            executor.shutdownNow();
+            closeCheckpoint();
+        }
+
+        return levelResults;
+    }
+
+    /**
+     * Create the given directories (and their files), which are all at the given level.
+     *
+     * @return The result, or null if every batch had already been completed.
+     */
+    private LevelResult buildLevel(ExecutorService executor, int level, List<String> levelDirectories)
+            throws IOException, InterruptedException {
+        Set<Integer> done = completedBatches.getOrDefault(level, Collections.emptySet());
+        int numBatches = (levelDirectories.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        if (done.size() >= numBatches)
+            return null;
+
+        AtomicInteger dirsCreated = new AtomicInteger(0);
+        AtomicInteger filesCreated = new AtomicInteger(0);
+        AtomicInteger failures = new AtomicInteger(0);
+
+        long start = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<>(numBatches);
+        for (int batch = 0; batch < numBatches; batch++) {
+            if (done.contains(batch))
+                continue;
+
+            final int batchIndex = batch;
+            final List<String> batchDirectories = levelDirectories.subList(batch * BATCH_SIZE,
+                    Math.min((batch + 1) * BATCH_SIZE, levelDirectories.size()));
+            futures.add(executor.submit(() -> {
+                DistributedFileSystem hdfs = Commands.getHdfsClient(sharedHdfs, false);
+                int batchFailures = 0;
+                try {
+                    for (String directory : batchDirectories) {
+                        if (Commands.mkdir(directory, hdfs))
+                            dirsCreated.incrementAndGet();
+                        else
+                            batchFailures++;
+
+                        for (int i = 0; i < filesPerDir; i++) {
+                            if (Commands.createFile(directory + "/file" + i, "", hdfs))
+                                filesCreated.incrementAndGet();
+                            else
+                                batchFailures++;
+                        }
+                    }
+                } finally {
+                    Commands.returnHdfsClient(hdfs);
+                }
+
+                // A batch with failures is not checkpointed, so that resuming the build retries it.
+                if (batchFailures == 0)
+                    checkpoint(level, batchIndex);
+                else
+                    failures.addAndGet(batchFailures);
+                return null;
+            }));
+        }
+
+        // Wait for the whole level, so that the next level's parents all exist.
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException ex) {
+                throw new IOException("Failed to create a batch of level " + level + " of subtree " + rootPath, ex);
+            }
+        }
+
+        return new LevelResult(level, dirsCreated.get(), filesCreated.get(), failures.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Return the subdirectories of the given directories.
+     *
+     * @param partitioned If true, only return those in this builder's partition.
+     */
+    private List<String> getChildren(List<String> parents, boolean partitioned) {
+        List<String> children = new ArrayList<>(parents.size() * dirsPerDir);
+        for (String parent : parents) {
+            String base = (parent.equals("/") ? "" : parent) + "/dir";
+            for (int i = 0; i < dirsPerDir; i++) {
+                if (!partitioned || i % numPartitions == partition)
+                    children.add(base + i);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Return every directory of the subtree (in this builder's partition), including those created by a previous
+     * build, once {@link #build()} has returned.
+     */
+    public List<String> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Return every file of the subtree (in this builder's partition), i.e., the files of every directory returned
+     * by {@link #getDirectories()} other than the root, once {@link #build()} has returned.
+     */
+    public List<String> getFiles() {
+        List<String> files = new ArrayList<>(Math.max(directories.size() - 1, 0) * filesPerDir);
+        for (String directory : directories) {
+            if (directory.equals(rootPath))
+                continue;
+
+            for (int i = 0; i < filesPerDir; i++)
+                files.add(directory + "/file" + i);
+        }
+        return files;
+    }
+
+    public List<LevelResult> getLevelResults() {
+        return levelResults;
+    }
+
+    /**
+     * Describes this subtree, so that we do not resume from the checkpoint of a different one.
+     */
+    private String getCheckpointHeader() {
+        return "subtree " + rootPath + " " + depth + " " + dirsPerDir + " " + filesPerDir + " " + partition + " " +
+                numPartitions + " " + BATCH_SIZE;
+    }
+
+    /**
+     * Read the checkpoint file (if it exists), then open it for appending.
+     */
+    private void openCheckpoint() throws IOException {
+        if (checkpointPath == null)
+            return;
+
+        File file = new File(checkpointPath);
+        boolean resuming = file.exists() && file.length() > 0;
+        if (resuming) {
+            int numCompleted = 0;
+            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+                String header = reader.readLine();
+                if (!getCheckpointHeader().equals(header))
+                    throw new IllegalArgumentException("Checkpoint file '" + checkpointPath + "' is for a different " +
+                            "subtree (" + header + "). Expected: " + getCheckpointHeader());
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.trim().split(" ");
+                    // The last line may be incomplete if we were interrupted while writing it.
+                    if (fields.length != 3 || !fields[0].equals("batch"))
+                        continue;
+
+                    completedBatches.computeIfAbsent(Integer.parseInt(fields[1]), k -> new HashSet<>())
+                            .add(Integer.parseInt(fields[2]));
+                    numCompleted++;
+                }
+            }
+
+            LOG.info("Resuming subtree " + rootPath + " from checkpoint '" + checkpointPath + "': " + numCompleted +
+                    " batch(es) already completed.");
+        }
+
+        checkpointWriter = new BufferedWriter(new FileWriter(file, true));
+        if (!resuming) {
+            checkpointWriter.write(getCheckpointHeader());
+            checkpointWriter.newLine();
+            checkpointWriter.flush();
+        }
+    }
+
+    /**
+     * Record that the given batch has been completed.
+     */
+    private synchronized void checkpoint(int level, int batch) throws IOException {
+        if (checkpointWriter == null)
+            return;
+
+        checkpointWriter.write("batch " + level + " " + batch);
+        checkpointWriter.newLine();
+        checkpointWriter.flush();
+    }
+
+    private synchronized void closeCheckpoint() throws IOException {
+        if (checkpointWriter != null) {
+            checkpointWriter.close();
+            checkpointWriter = null;
+        }
+    }
+
+    /**
+     * The directories and files created at one level of the subtree.
+     */
+    public static class LevelResult implements Serializable {
+        private static final long serialVersionUID = -4127804561923371583L;
+
+        private final int level;
+        private final int dirsCreated;
+        private final int filesCreated;
+        private final int failures;
+        private final long durationMilliseconds;
+
+        public LevelResult(int level, int dirsCreated, int filesCreated, int failures, long durationMilliseconds) {
+            this.level = level;
+            this.dirsCreated = dirsCreated;
+            this.filesCreated = filesCreated;
+            this.failures = failures;
+            this.durationMilliseconds = durationMilliseconds;
+        }
+
+        /**
+         * Used by Kryo when the result of a follower is received.
+         */
+        private LevelResult() {
+            this(0, 0, 0, 0, 0);
+        }
+
+        /**
+         * Combine the results of the same level from two builders (i.e., two partitions of the subtree), which ran
+         * concurrently. The combined duration is that of the slower builder.
+         */
+        public LevelResult combine(LevelResult other) {
+            if (other.level != level)
+                throw new IllegalArgumentException("Cannot combine the results of levels " + level + " and " +
+                        other.level + ".");
+
+            return new LevelResult(level, dirsCreated + other.dirsCreated, filesCreated + other.filesCreated,
+                    failures + other.failures, Math.max(durationMilliseconds, other.durationMilliseconds));
+        }
+
+        public int getLevel() { return level; }
+
+        public int getDirsCreated() { return dirsCreated; }
+
+        public int getFilesCreated() { return filesCreated; }
+
+        public int getFailures() { return failures; }
+
+        public long getDurationMilliseconds() { return durationMilliseconds; }
+
+        /**
+         * Return the number of successful mkdirs and creates per second.
+         */
+        public double getThroughput() {
+            return (dirsCreated + filesCreated) / Math.max(durationMilliseconds / 1000.0, 0.001);
+        }
 
+        @Override
+        public String toString() {
+            return "Level " + level + ": created " + dirsCreated + " directories and " + filesCreated + " files in " +
+                    durationMilliseconds + " ms (" + String.format("%.2f", getThroughput()) + " ops/sec), " +
+                    failures + " failure(s).";
+        }
     }
 }
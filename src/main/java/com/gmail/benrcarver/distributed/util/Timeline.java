@@ -0,0 +1,209 @@
+package com.gmail.benrcarver.distributed.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Per-interval throughput and latency of a benchmark run, broken down by operation type.
+ *
+ * Intervals are keyed by their wall-clock start time (an Epoch millisecond that is a multiple of the interval
+ * length), so the timelines of different threads, processes, and VMs can be merged bucket-by-bucket via
+ * {@link Timeline#merge(Timeline)}. A timeline is produced by a {@link TimelineRecorder} and is NOT thread-safe.
+ */
+public class Timeline implements Serializable {
+    private static final long serialVersionUID = -2140715734862395182L;
+
+    /**
+     * Name used for the row of each interval that aggregates all operation types.
+     */
+    public static final String ALL_OPERATIONS = "ALL";
+
+    private final long intervalMillis;
+
+    /**
+     * Interval start time (Epoch millisecond) -> operation name -> statistics.
+     */
+    private final TreeMap<Long, TreeMap<String, Interval>> intervals = new TreeMap<>();
+
+    /**
+     * Start time (Epoch millisecond) -> label of the phases of the workload's arrival-rate schedule, if any.
+     */
+    private final TreeMap<Long, String> phases = new TreeMap<>();
+
+    public Timeline(long intervalMillis) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("Interval length must be positive. Got: " + intervalMillis);
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * The statistics of a single operation type during a single interval.
+     */
+    public static class Interval implements Serializable {
+        private static final long serialVersionUID = 3318264094734452164L;
+
+        private long numFailed;
+
+        /**
+         * Latency of every operation that finished during the interval, whether it succeeded or failed.
+         */
+        private final LatencyHistogram latency;
+
+        Interval(LatencyHistogram latency) {
+            this.latency = latency;
+        }
+
+        /**
+         * Return the number of operations that completed successfully during the interval.
+         */
+        public long getNumCompleted() { return latency.getTotalCount() - numFailed; }
+
+        public long getNumFailed() { return numFailed; }
+
+        public LatencyHistogram getLatency() { return latency; }
+
+        void addFailures(long numFailed) {
+            this.numFailed += numFailed;
+        }
+
+        void add(Interval other) {
+            numFailed += other.numFailed;
+            latency.add(other.latency);
+        }
+    }
+
+    /**
+     * Return the statistics of the given operation during the interval starting at the given time,
+     * creating them (using the given histogram as a template) if they do not exist yet.
+     */
+    Interval getOrCreateInterval(long intervalStartMillis, String operationName, LatencyHistogram template) {
+        TreeMap<String, Interval> operations = intervals.get(intervalStartMillis);
+        if (operations == null) {
+            operations = new TreeMap<>();
+            intervals.put(intervalStartMillis, operations);
+        }
+
+        Interval interval = operations.get(operationName);
+        if (interval == null) {
+            interval = new Interval(template.copyEmpty());
+            operations.put(operationName, interval);
+        }
+
+        return interval;
+    }
+
+    /**
+     * Record that the phase with the given label (e.g., of an arrival-rate schedule) started at the given time. In
+     * the CSV output, every interval is tagged with the label of the last phase that started before its end.
+     *
+     * @param startMillis The start of the phase (Epoch millisecond).
+     */
+    public void tagPhase(long startMillis, String label) {
+        // The clocks of the VMs differ slightly, so the same phase may be tagged at slightly different times by
+        // different VMs. Keep the earliest.
+        Long existing = null;
+        for (Map.Entry<Long, String> entry : phases.entrySet()) {
+            if (entry.getValue().equals(label)) {
+                existing = entry.getKey();
+                break;
+            }
+        }
+
+        if (existing != null) {
+            if (existing <= startMillis)
+                return;
+            phases.remove(existing);
+        }
+        phases.put(startMillis, label);
+    }
+
+    /**
+     * Return the phases tagged in this timeline, keyed by their start time (Epoch millisecond).
+     */
+    public SortedMap<Long, String> getPhases() { return phases; }
+
+    /**
+     * Merge another timeline into this one. Intervals with the same start time are combined.
+     */
+    public void merge(Timeline other) {
+        if (other == null)
+            return;
+
+        if (other.intervalMillis != intervalMillis)
+            throw new IllegalArgumentException("Cannot merge a timeline with " + other.intervalMillis +
+                    " ms intervals into a timeline with " + intervalMillis + " ms intervals.");
+
+        for (Map.Entry<Long, TreeMap<String, Interval>> entry : other.intervals.entrySet()) {
+            for (Map.Entry<String, Interval> opEntry : entry.getValue().entrySet()) {
+                getOrCreateInterval(entry.getKey(), opEntry.getKey(), opEntry.getValue().latency)
+                        .add(opEntry.getValue());
+            }
+        }
+
+        for (Map.Entry<Long, String> entry : other.phases.entrySet())
+            tagPhase(entry.getKey(), entry.getValue());
+    }
+
+    public long getIntervalMillis() { return intervalMillis; }
+
+    /**
+     * Return the intervals of this timeline, keyed by their start time (Epoch millisecond) and then by operation name.
+     */
+    public SortedMap<Long, TreeMap<String, Interval>> getIntervals() { return intervals; }
+
+    public boolean isEmpty() { return intervals.isEmpty(); }
+
+    /**
+     * Write this timeline in CSV format. There is one row per operation type per interval, plus an
+     * {@link Timeline#ALL_OPERATIONS} row per interval. Latencies are in milliseconds. The last column holds the
+     * label of the interval's phase (see {@link Timeline#tagPhase(long, String)}), if any.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("interval_start_ms,elapsed_ms,operation,completed,failed,throughput_ops_per_sec," +
+                "avg_latency_ms,p50_latency_ms,p90_latency_ms,p99_latency_ms,p99.9_latency_ms,max_latency_ms,phase\n");
+
+        if (intervals.isEmpty())
+            return;
+
+        long firstIntervalStart = intervals.firstKey();
+        for (Map.Entry<Long, TreeMap<String, Interval>> entry : intervals.entrySet()) {
+            long elapsed = entry.getKey() - firstIntervalStart;
+            Map.Entry<Long, String> phase = phases.floorEntry(entry.getKey() + intervalMillis - 1);
+            String phaseLabel = phase == null ? "" : phase.getValue();
+
+            Interval all = null;
+            for (Map.Entry<String, Interval> opEntry : entry.getValue().entrySet()) {
+                Interval interval = opEntry.getValue();
+                writeCsvRow(writer, entry.getKey(), elapsed, opEntry.getKey(), interval, phaseLabel);
+
+                if (all == null)
+                    all = new Interval(interval.latency.copyEmpty());
+                all.add(interval);
+            }
+
+            if (all != null)
+                writeCsvRow(writer, entry.getKey(), elapsed, ALL_OPERATIONS, all, phaseLabel);
+        }
+    }
+
+    private void writeCsvRow(Writer writer, long intervalStart, long elapsed, String operationName,
+                             Interval interval, String phaseLabel) throws IOException {
+        LatencyHistogram latency = interval.latency;
+        writer.write(intervalStart + "," + elapsed + "," + operationName + "," + interval.getNumCompleted() + "," +
+                interval.numFailed + "," + (interval.getNumCompleted() / (intervalMillis / 1.0e3)) + "," +
+                latency.getMean() + "," + latency.getValueAtPercentile(50) + "," +
+                latency.getValueAtPercentile(90) + "," + latency.getValueAtPercentile(99) + "," +
+                latency.getValueAtPercentile(99.9) + "," + latency.getMax() + ",\"" + phaseLabel + "\"\n");
+    }
+
+    @Override
+    public String toString() {
+        return "Timeline(intervalMillis=" + intervalMillis + ", numIntervals=" + intervals.size() +
+                ", numPhases=" + phases.size() + ")";
+    }
+}
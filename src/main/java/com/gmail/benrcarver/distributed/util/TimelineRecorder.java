@@ -0,0 +1,191 @@
+package com.gmail.benrcarver.distributed.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free recorder of the per-interval throughput and latency of a benchmark run. A single recorder is shared by
+ * all the threads of a benchmark, and it is converted to a (serializable, mergeable) {@link Timeline} once the
+ * run is over.
+ *
+ * The intervals are held in a ring buffer indexed by wall-clock interval number, so finding the current interval
+ * is O(1). A thread that moves on to a new interval installs it with a single CAS. The interval it replaces is
+ * retired to a lock-free queue rather than discarded, so any thread still recording into it does not lose data.
+ * Operations recorded into an interval that has already left the ring (by a delayed thread) go to a single
+ * straggler recorder per interval, which is merged with the original when the timeline is built. Within an
+ * interval, all counters are atomics.
+ *
+ * The latency histograms of the timeline are coarser than those of {@link LatencyRecorder} to keep the memory
+ * used per interval small: 5 bits of precision (~6% relative error), up to ~134 seconds.
+ */
+public class TimelineRecorder {
+    public static final int TIMELINE_PRECISION_BITS = 5;
+    public static final long TIMELINE_HIGHEST_TRACKABLE_VALUE = 1L << 27;
+
+    /**
+     * Number of slots in the ring buffer. Only the most recent intervals need to be in the ring.
+     */
+    private static final int RING_CAPACITY = 64;
+
+    private final long intervalMillis;
+    private final AtomicReferenceArray<IntervalRecorder> ring = new AtomicReferenceArray<>(RING_CAPACITY);
+    private final ConcurrentLinkedQueue<IntervalRecorder> retired = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The recorders of the intervals that were recorded into after leaving the ring, keyed by interval number.
+     */
+    private final ConcurrentHashMap<Long, IntervalRecorder> stragglers = new ConcurrentHashMap<>();
+
+    /**
+     * Used to map latencies to buckets and to create the histograms of the resulting {@link Timeline}.
+     */
+    private final LatencyHistogram template =
+            new LatencyHistogram(TIMELINE_PRECISION_BITS, TIMELINE_HIGHEST_TRACKABLE_VALUE);
+
+    /**
+     * @param intervalMillis The length of each interval of the timeline, in milliseconds.
+     */
+    public TimelineRecorder(long intervalMillis) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("Interval length must be positive. Got: " + intervalMillis);
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long getIntervalMillis() { return intervalMillis; }
+
+    /**
+     * Record an operation that just finished, in the interval containing the current time.
+     *
+     * @param operationName The name of the operation's type.
+     * @param latencyNanos The latency of the operation in nanoseconds.
+     * @param success Whether the operation completed successfully.
+     */
+    public void record(String operationName, long latencyNanos, boolean success) {
+        record(operationName, latencyNanos, success, System.currentTimeMillis());
+    }
+
+    /**
+     * Record an operation that finished at the given time. Lets callers that already know the current time avoid
+     * reading the clock again.
+     *
+     * @param timestampMillis The time (Epoch millisecond) at which the operation finished.
+     */
+    public void record(String operationName, long latencyNanos, boolean success, long timestampMillis) {
+        long intervalNumber = timestampMillis / intervalMillis;
+        long latencyMicros = Math.max(0, Math.min(latencyNanos / 1000L, TIMELINE_HIGHEST_TRACKABLE_VALUE));
+        getInterval(intervalNumber).getOperation(operationName, template.getNumBuckets())
+                .record(template.getBucketIndex(latencyMicros), latencyMicros, success);
+    }
+
+    private IntervalRecorder getInterval(long intervalNumber) {
+        int slot = (int) (intervalNumber % RING_CAPACITY);
+
+        while (true) {
+            IntervalRecorder current = ring.get(slot);
+
+            if (current != null && current.intervalNumber == intervalNumber)
+                return current;
+
+            // The interval has already been pushed out of the ring (the thread was delayed between reading the
+            // clock and recording). Record into a separate instance, which is merged with the original later. All
+            // the stragglers of an interval share that instance.
+            if (current != null && current.intervalNumber > intervalNumber) {
+                IntervalRecorder straggler = stragglers.get(intervalNumber);
+                if (straggler == null)
+                    straggler = stragglers.computeIfAbsent(intervalNumber, IntervalRecorder::new);
+                return straggler;
+            }
+
+            IntervalRecorder next = new IntervalRecorder(intervalNumber);
+            if (ring.compareAndSet(slot, current, next)) {
+                if (current != null)
+                    retired.add(current);
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Convert everything that has been recorded into a {@link Timeline}. This should only be called once all the
+     * threads recording into this recorder are done.
+     */
+    public Timeline toTimeline() {
+        Timeline timeline = new Timeline(intervalMillis);
+
+        for (IntervalRecorder interval : retired)
+            interval.addTo(timeline, intervalMillis, template);
+
+        for (IntervalRecorder interval : stragglers.values())
+            interval.addTo(timeline, intervalMillis, template);
+
+        for (int i = 0; i < RING_CAPACITY; i++) {
+            IntervalRecorder interval = ring.get(i);
+            if (interval != null)
+                interval.addTo(timeline, intervalMillis, template);
+        }
+
+        return timeline;
+    }
+
+    private static final class IntervalRecorder {
+        final long intervalNumber;
+        final ConcurrentHashMap<String, OperationRecorder> operations = new ConcurrentHashMap<>();
+
+        IntervalRecorder(long intervalNumber) {
+            this.intervalNumber = intervalNumber;
+        }
+
+        OperationRecorder getOperation(String operationName, int numBuckets) {
+            OperationRecorder operation = operations.get(operationName);
+            if (operation == null)
+                operation = operations.computeIfAbsent(operationName, name -> new OperationRecorder(numBuckets));
+            return operation;
+        }
+
+        void addTo(Timeline timeline, long intervalMillis, LatencyHistogram template) {
+            for (Map.Entry<String, OperationRecorder> entry : operations.entrySet()) {
+                OperationRecorder operation = entry.getValue();
+                long[] counts = new long[operation.counts.length()];
+                for (int i = 0; i < counts.length; i++)
+                    counts[i] = operation.counts.get(i);
+
+                Timeline.Interval interval =
+                        timeline.getOrCreateInterval(intervalNumber * intervalMillis, entry.getKey(), template);
+                interval.getLatency().addBucketCounts(counts, operation.totalCount.sum(), operation.sum.sum(),
+                        operation.min.get(), operation.max.get());
+                interval.addFailures(operation.numFailed.sum());
+            }
+        }
+    }
+
+    private static final class OperationRecorder {
+        final AtomicLongArray counts;
+        final LongAdder totalCount = new LongAdder();
+        final LongAdder numFailed = new LongAdder();
+        final LongAdder sum = new LongAdder();
+        final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong max = new AtomicLong(0);
+
+        OperationRecorder(int numBuckets) {
+            this.counts = new AtomicLongArray(numBuckets);
+        }
+
+        void record(int bucketIndex, long latencyMicros, boolean success) {
+            counts.incrementAndGet(bucketIndex);
+            totalCount.increment();
+            sum.add(latencyMicros);
+            if (!success)
+                numFailed.increment();
+
+            long current;
+            while (latencyMicros < (current = min.get()) && !min.compareAndSet(current, latencyMicros)) { }
+            while (latencyMicros > (current = max.get()) && !max.compareAndSet(current, latencyMicros)) { }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.gmail.benrcarver.distributed.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers for running benchmark clients on virtual threads.
+ *
+ * The benchmark is compiled for Java 8, so the virtual thread API (JDK 21+) is accessed reflectively.
+ * When the running JVM does not support virtual threads, we fall back to ordinary platform threads
+ * and log a warning, so enabling the option is always safe.
+ */
+public class VirtualThreads {
+    public static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    /**
+     * The {@code Thread.Builder#factory()} of a virtual thread builder, or null if unsupported.
+     */
+    private static final ThreadFactory VIRTUAL_THREAD_FACTORY = createVirtualThreadFactory();
+
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+
+            // Look the methods up on the public Thread.Builder interface, as the builder implementation is not public.
+            Class<?> builderInterface = Class.forName("java.lang.Thread$Builder");
+            builder = builderInterface.getMethod("name", String.class, long.class)
+                    .invoke(builder, "virtual-benchmark-client-", 0L);
+            return (ThreadFactory) builderInterface.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * Return a factory for benchmark threads.
+     *
+     * @param namePrefix Prefix used to name the threads if platform threads are used.
+     * @param virtual If true, virtual threads are created (when supported by the running JVM).
+     *                Platform threads are always daemon threads.
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix, boolean virtual) {
+        if (virtual) {
+            if (isSupported())
+                return VIRTUAL_THREAD_FACTORY;
+
+            LOG.warn("Virtual threads were requested, but they are not supported by this JVM (Java " +
+                    System.getProperty("java.version") + "). Using platform threads instead.");
+        }
+
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Return the name of the carrier thread on which the calling virtual thread is currently mounted.
+     *
+     * The carrier is not exposed via a public API, but the string representation of a virtual thread is of
+     * the form "VirtualThread[#22,name]/runnable@ForkJoinPool-1-worker-3". For platform threads,
+     * we simply return the name of the thread itself (as it is its own carrier).
+     */
+    public static String getCarrierThreadName() {
+        Thread current = Thread.currentThread();
+        String str = current.toString();
+
+        if (str.startsWith("VirtualThread")) {
+            int idx = str.lastIndexOf('@');
+            if (idx >= 0)
+                return str.substring(idx + 1);
+        }
+
+        return current.getName();
+    }
+
+    /**
+     * Record the carrier thread of the calling thread in the given set.
+     */
+    public static void recordCarrierThread(Set<String> carrierThreads) {
+        carrierThreads.add(getCarrierThreadName());
+    }
+
+    /**
+     * Create a new, empty, thread-safe set for use with {@link VirtualThreads#recordCarrierThread(Set)}.
+     */
+    public static Set<String> newCarrierThreadSet() {
+        return ConcurrentHashMap.newKeySet();
+    }
+}
@@ -9,7 +9,9 @@ public enum BenchmarkDistribution {
     UNIFORM   ("UNIFORM"),
     PARETO    ("PARETO"),
     POISSON   ("POISSON"),
-    ZIPF      ("ZIPF");
+    ZIPF      ("ZIPF"),
+    TRACE     ("TRACE"),
+    SCHEDULE  ("SCHEDULE");
 
     private final String distribution;
     private BenchmarkDistribution(String distribution){
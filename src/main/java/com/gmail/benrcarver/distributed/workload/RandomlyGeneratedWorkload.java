@@ -6,10 +6,18 @@ import com.gmail.benrcarver.distributed.DistributedBenchmarkResult;
 import com.gmail.benrcarver.distributed.FSOperation;
 import com.gmail.benrcarver.distributed.coin.BMConfiguration;
 import com.gmail.benrcarver.distributed.coin.InterleavedMultiFaceCoin;
+import com.gmail.benrcarver.distributed.util.FileData;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.Timeline;
+import com.gmail.benrcarver.distributed.util.TimelineRecorder;
+import com.gmail.benrcarver.distributed.util.VirtualThreads;
 import com.gmail.benrcarver.distributed.workload.files.FilePool;
 import com.gmail.benrcarver.distributed.workload.files.FilePoolUtils;
+import com.gmail.benrcarver.distributed.workload.files.NamespaceShape;
+import com.gmail.benrcarver.distributed.workload.files.PrepopulatedNamespace;
 import com.gmail.benrcarver.distributed.workload.limiter.*;
 import io.hops.metrics.OperationPerformed;
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.stat.descriptive.SynchronizedDescriptiveStatistics;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.slf4j.Logger;
@@ -17,13 +25,15 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 // TODO: Commander actually start and drive workload.
-// TODO: Collect timeline latency & throughput data.
 
 public class RandomlyGeneratedWorkload {
     public static final Logger LOG = LoggerFactory.getLogger(RandomlyGeneratedWorkload.class);
@@ -44,10 +54,20 @@ public class RandomlyGeneratedWorkload {
     private final ExecutorService executor;
     private final double percentType2Workers;
 
+    /**
+     * Seeded with {@link BMConfiguration#getBenchMarkRandomSeed()}. Each worker's generator is split from this one
+     * when the worker is created (by the main thread, in order), so the operations drawn by the workers are the same
+     * from one run to the next.
+     */
+    private final SplittableRandom seedRandom;
+
     private WorkloadState currentState = WorkloadState.CREATED;
 
-    private final SynchronizedDescriptiveStatistics tcpLatency = new SynchronizedDescriptiveStatistics();
-    private final SynchronizedDescriptiveStatistics httpLatency = new SynchronizedDescriptiveStatistics();
+    // Each worker publishes its latencies to its own slot of these arrays once it has finished.
+    // They are merged by the main thread at the end of the workload, so no locking is required.
+    private final AtomicReferenceArray<LatencyRecorder> latencyRecorders;
+    private final AtomicReferenceArray<double[]> tcpLatencies;
+    private final AtomicReferenceArray<double[]> httpLatencies;
     protected BlockingQueue<List<OperationPerformed>> operationsPerformed;
 
     // Used to synchronize threads; they each connect to HopsFS and then
@@ -64,22 +84,79 @@ public class RandomlyGeneratedWorkload {
 
     private final String workloadId;
 
-    public RandomlyGeneratedWorkload(BMConfiguration bmConf, DistributedFileSystem sharedHdfs, int numWorkers, String id) {
+    /**
+     * If true, then the workers run on virtual threads (if supported by the JVM).
+     */
+    private final boolean useVirtualThreads;
+
+    /**
+     * The distinct carrier threads used by the workers.
+     */
+    private final Set<String> carrierThreads = VirtualThreads.newCarrierThreadSet();
+
+    /**
+     * If true, the workers issue operations at the intended start times generated by the {@link DistributionRateLimiter}
+     * rather than waiting for permits, and latency is measured from the intended start times. Each worker acts as
+     * a single in-flight slot; when all the slots are busy, scheduled operations queue up (and their latency grows)
+     * instead of the offered load silently dropping.
+     */
+    private final boolean openLoop;
+
+    /**
+     * Per-interval throughput and latency of the workload. Shared by all the workers.
+     */
+    private final TimelineRecorder timeline;
+
+    /**
+     * The namespace created (by all VMs) before the warm-up phase, or null if there is none.
+     */
+    private final PrepopulatedNamespace prepopulatedNamespace;
+
+    /**
+     * @param numWorkers The number of VMs (the Commander and its Followers) running the workload.
+     * @param workerIndex The index of this VM among them. The Commander is 0.
+     */
+    public RandomlyGeneratedWorkload(BMConfiguration bmConf, DistributedFileSystem sharedHdfs, int numWorkers,
+                                     int workerIndex, String id) {
         BenchmarkDistribution distribution = bmConf.getInterleavedBMIaTDistribution();
         if (distribution == BenchmarkDistribution.POISSON) {
-            limiter = new DistributionRateLimiter(bmConf, new PoissonGenerator(bmConf), numWorkers, id);
+            limiter = new DistributionRateLimiter(bmConf, new PoissonGenerator(bmConf), numWorkers, workerIndex, id);
         } else if (distribution == BenchmarkDistribution.PARETO) {
-            limiter = new DistributionRateLimiter(bmConf, new ParetoGenerator(bmConf), numWorkers, id);
+            limiter = new DistributionRateLimiter(bmConf, new ParetoGenerator(bmConf), numWorkers, workerIndex, id);
+        } else if (distribution == BenchmarkDistribution.TRACE) {
+            limiter = new DistributionRateLimiter(bmConf, new TraceGenerator(bmConf), numWorkers, workerIndex, id);
+        } else if (distribution == BenchmarkDistribution.SCHEDULE) {
+            limiter = new DistributionRateLimiter(bmConf, new ScheduleGenerator(bmConf), numWorkers, workerIndex, id);
         } else {
             limiter = new RateNoLimiter();
         }
 
+        if (bmConf.isInterleavedBmOpenLoop() && !(limiter instanceof DistributionRateLimiter))
+            LOG.warn("Open-loop mode requires a POISSON, PARETO, TRACE, or SCHEDULE inter-arrival distribution. " +
+                    "Running the workload closed-loop instead.");
+        this.openLoop = limiter instanceof DistributionRateLimiter && ((DistributionRateLimiter)limiter).isOpenLoop();
+
         int numThreads = bmConf.getThreadsPerWorker();
 
         this.workloadId = id;
         this.bmConf = bmConf;
-        this.executor = Executors.newFixedThreadPool(numThreads + 1);
+        this.seedRandom = new SplittableRandom(bmConf.getBenchMarkRandomSeed());
+        this.useVirtualThreads = Commands.USE_VIRTUAL_THREADS;
+        if (useVirtualThreads)
+            this.executor = Executors.newFixedThreadPool(numThreads + 1,
+                    VirtualThreads.newThreadFactory("random-workload-worker-", true));
+        else
+            this.executor = Executors.newFixedThreadPool(numThreads + 1);
         this.sharedHdfs = sharedHdfs;
+        this.timeline = new TimelineRecorder(Commands.TIMELINE_INTERVAL_MILLIS);
+        this.prepopulatedNamespace = PrepopulatedNamespace.fromConfiguration(bmConf);
+        // Do not seed this workload's file pools with the files (or namespace) of a previous workload.
+        FilePoolUtils.resetSharedPathStore();
+        FilePoolUtils.setPrepopulatedNamespace(null, 1);
+        NamespaceShape namespaceShape = NamespaceShape.fromConfiguration(bmConf);
+        if (namespaceShape != null)
+            LOG.info("Generating new files and directories with namespace shape " + namespaceShape + ".");
+        FilePoolUtils.setNamespaceShape(namespaceShape);
 
         endSemaphore = new Semaphore((numThreads * -1) + 1);
         readySemaphore = new Semaphore((numThreads * -1) + 1);
@@ -89,6 +166,10 @@ public class RandomlyGeneratedWorkload {
         percentType2Workers = bmConf.getPercentWorkersType2();
 
         operationsPerformed = new ArrayBlockingQueue<>(bmConf.getThreadsPerWorker());
+
+        latencyRecorders = new AtomicReferenceArray<>(numThreads);
+        tcpLatencies = new AtomicReferenceArray<>(numThreads);
+        httpLatencies = new AtomicReferenceArray<>(numThreads);
     }
 
     public void closeLimiterFileStream() throws IOException {
@@ -97,6 +178,50 @@ public class RandomlyGeneratedWorkload {
         }
     }
 
+    /**
+     * Close the generator of the limiter (e.g., the trace file replayed by a {@link TraceGenerator}). This is done
+     * by {@link #doWorkload(String)} once the workload has finished, and should be done by whoever aborts the
+     * workload before it is run.
+     */
+    public void closeGenerator() {
+        if (this.limiter instanceof DistributionRateLimiter) {
+            ((DistributionRateLimiter)limiter).getGenerator().close();
+        }
+    }
+
+    /**
+     * Return true if a namespace should be pre-populated (see {@link #doPrepopulate}) before the warm-up phase.
+     */
+    public boolean hasPrepopulatedNamespace() {
+        return prepopulatedNamespace != null;
+    }
+
+    /**
+     * Create this VM's partition of the pre-populated namespace, using one task per worker thread.
+     *
+     * @return The files that could not be created.
+     */
+    public int[] doPrepopulate(int partition, int numPartitions) throws InterruptedException {
+        if (prepopulatedNamespace == null)
+            throw new IllegalStateException("Workload " + workloadId + " does not have a pre-populated namespace.");
+
+        return prepopulatedNamespace.create(sharedHdfs, executor, bmConf.getThreadsPerWorker(), partition,
+                numPartitions);
+    }
+
+    /**
+     * Make the pre-populated namespace (minus the files that could not be created by any VM) available to the
+     * file pools of this VM. Must be called before the warm-up phase, which is when the file pools are created.
+     */
+    public void setPrepopulatedNamespace(int[] failedFiles) {
+        if (prepopulatedNamespace == null)
+            throw new IllegalStateException("Workload " + workloadId + " does not have a pre-populated namespace.");
+
+        prepopulatedNamespace.setFailedFiles(failedFiles);
+        FilePoolUtils.setPrepopulatedNamespace(prepopulatedNamespace, bmConf.getThreadsPerWorker());
+        LOG.info("Using pre-populated namespace " + prepopulatedNamespace + ".");
+    }
+
     public void doWarmup() throws InterruptedException {
         LOG.debug("Beginning warm-up for random workload in approximately 2 seconds.");
         TimeUnit.MILLISECONDS.sleep(2000);
@@ -162,17 +287,24 @@ public class RandomlyGeneratedWorkload {
     }
 
     public DistributedBenchmarkResult doWorkload(String opId) throws InterruptedException, ExecutionException {
+        try {
+            return doWorkloadImpl(opId);
+        } finally {
+            closeGenerator();
+        }
+    }
+
+    private DistributedBenchmarkResult doWorkloadImpl(String opId) throws InterruptedException, ExecutionException {
         currentState = WorkloadState.EXECUTING;
 
         duration = bmConf.getInterleavedBmDuration();
         LOG.info("Executing randomly-generated workload " + opId + " for duration " + duration + " ms.");
         List<Callable<Object>> workers = new ArrayList<>();
-        // Add limiter as a worker if supported
+        // The limiter is started along with the clock (below). Otherwise, operations would be scheduled while the
+        // workers are still getting ready, and they'd all start late.
         WorkerRateLimiter workerLimiter = null;
-        if (limiter instanceof WorkerRateLimiter) {
+        if (limiter instanceof WorkerRateLimiter)
             workerLimiter = (WorkerRateLimiter) limiter;
-            workers.add(workerLimiter);
-        }
 
         int numWorkerThreads = bmConf.getThreadsPerWorker();
         int numType2Workers = (int)(numWorkerThreads * percentType2Workers);
@@ -180,44 +312,35 @@ public class RandomlyGeneratedWorkload {
 
         assert(numType1Workers + numType2Workers == numWorkerThreads);
 
-        LOG.info("Creating a total of " + (numType2Workers + numType1Workers) + " worker thread(s).");
+        LOG.info("Creating a total of " + (numType2Workers + numType1Workers) +
+                (useVirtualThreads ? " virtual" : "") + " worker thread(s).");
+        if (openLoop)
+            LOG.info("Running OPEN-LOOP. Each worker is an in-flight slot, and latency is measured from the " +
+                    "intended start time of each operation.");
         LOG.info("There will be " + numType2Workers + " Type 2 workers.");
         LOG.info("There will be " + numType1Workers + " Type 1 workers.\n");
 
         LOG.info("Type 1 Worker Percentages:");
-        LOG.info("CREATE: " + bmConf.getInterleavedBmCreateFilesPercentage());
-        LOG.info("RENAME: " + bmConf.getInterleavedBmRenameFilesPercentage());
-        LOG.info("DELETE: " + bmConf.getInterleavedBmDeleteFilesPercentage());
-        LOG.info("MKDIR: " + bmConf.getInterleavedBmMkdirPercentage());
-        LOG.info("LS DIR: " + bmConf.getInterleavedBmLsDirPercentage());
-        LOG.info("LS FILE: " + bmConf.getInterleavedBmLsFilePercentage());
-        LOG.info("STAT FILE: " + bmConf.getInterleavedBmGetFileInfoPercentage());
-        LOG.info("STAT DIR: " + bmConf.getInterleavedBmGetDirInfoPercentage());
-        LOG.info("READ: " + bmConf.getInterleavedBmReadFilesPercentage() + "\n");
-
-        LOG.info("Type 2 Worker Percentages:");
-        LOG.info("CREATE2: " + bmConf.getInterleavedBmCreateFilesPercentage2());
-        LOG.info("RENAME2: " + bmConf.getInterleavedBmRenameFilesPercentage2());
-        LOG.info("DELETE2: " + bmConf.getInterleavedBmDeleteFilesPercentage2());
-        LOG.info("MKDIR2: " + bmConf.getInterleavedBmMkdirPercentage2());
-        LOG.info("LS DIR2: " + bmConf.getInterleavedBmLsDirPercentage2());
-        LOG.info("LS FILE2: " + bmConf.getInterleavedBmLsFilePercentage2());
-        LOG.info("STAT FILE2: " + bmConf.getInterleavedBmGetFileInfoPercentage2());
-        LOG.info("STAT DIR2: " + bmConf.getInterleavedBmGetDirInfoPercentage2());
-        LOG.info("READ2: " + bmConf.getInterleavedBmReadFilesPercentage2() + "\n");
+        for (Map.Entry<String, BigDecimal> entry : bmConf.getInterleavedBmOperationPercentages().entrySet())
+            LOG.info(entry.getKey() + ": " + entry.getValue());
+
+        LOG.info("\nType 2 Worker Percentages:");
+        for (Map.Entry<String, BigDecimal> entry : bmConf.getInterleavedBmOperationPercentages2().entrySet())
+            LOG.info(entry.getKey() + ": " + entry.getValue());
+        LOG.info("");
 
+        int workerId = 0;
         for (int i = 0; i < numType2Workers; i++) {
-            Callable<Object> worker = new Worker(bmConf, true);
+            Callable<Object> worker = new Worker(bmConf, true, workerId++);
             workers.add(worker);
         }
 
         for (int i = 0; i < numType1Workers; i++) {
-            Callable<Object> worker = new Worker(bmConf, false);
+            Callable<Object> worker = new Worker(bmConf, false, workerId++);
             workers.add(worker);
         }
 
         if (workerLimiter != null) {
-            workerLimiter.setStart(startTime);
             workerLimiter.setDuration(duration);
             workerLimiter.setStat("completed", operationsCompleted);
         }
@@ -235,6 +358,10 @@ public class RandomlyGeneratedWorkload {
         LOG.debug("Starting workload NOW.");
         TimeUnit.MILLISECONDS.sleep(250);
         startTime = System.currentTimeMillis();     // Start the clock.
+        if (workerLimiter != null) {
+            workerLimiter.setStart(startTime);
+            futures.add(executor.submit(workerLimiter));
+        }
         startLatch.countDown();                     // Let the threads start.
 
         boolean acquired = false;
@@ -282,14 +409,73 @@ public class RandomlyGeneratedWorkload {
 
         LOG.info("Size of opsPerformed list: " + allOpsPerformed.size());
 
+        if (openLoop) {
+            int numUnstarted = ((DistributionRateLimiter)limiter).getNumUnstarted();
+            if (numUnstarted > 0)
+                LOG.warn(numUnstarted + " scheduled operation(s) were never started, as all " + numWorkerThreads +
+                        " worker(s) were busy. Consider using more worker threads.");
+        }
+
+        // Workers that timed-out never published their latencies, so their slots will be null.
+        LatencyRecorder latencies = new LatencyRecorder();
+        for (int i = 0; i < numWorkerThreads; i++)
+            latencies.merge(latencyRecorders.get(i));
+        latencies.logSummary(LOG);
+
+        // The raw samples are only retained when they'll actually be used, as this is O(operations).
+        DescriptiveStatistics tcpLatency = null;
+        DescriptiveStatistics httpLatency = null;
+        if (Commands.keepRawLatencies()) {
+            tcpLatency = new DescriptiveStatistics();
+            httpLatency = new DescriptiveStatistics();
+            for (int i = 0; i < numWorkerThreads; i++) {
+                double[] tcp = tcpLatencies.get(i);
+                if (tcp != null)
+                    for (double latency : tcp)
+                        tcpLatency.addValue(latency);
+
+                double[] http = httpLatencies.get(i);
+                if (http != null)
+                    for (double latency : http)
+                        httpLatency.addValue(latency);
+            }
+        }
+
+        if (useVirtualThreads && VirtualThreads.isSupported())
+            LOG.info("The " + numWorkerThreads + " virtual worker thread(s) ran on " + carrierThreads.size() +
+                    " carrier thread(s).");
+
         DistributedBenchmarkResult result = new DistributedBenchmarkResult(opId, Constants.OP_PREPARE_GENERATED_WORKLOAD,
                 operationsCompleted.get(), totalTime / 1.0e3, startTime, endTime, 0, 0,
                 allOpsPerformed.toArray(new OperationPerformed[0]), null, tcpLatency, httpLatency, numFailed);
+        result.numCarrierThreads = carrierThreads.size();
+        result.latencyHistograms = latencies;
+        result.timeline = timeline.toTimeline();
+        tagSchedulePhases(result.timeline);
 
         currentState = WorkloadState.FINISHED;
         return result;
     }
 
+    /**
+     * If the workload follows an arrival-rate schedule, tag the given timeline with the start of each of its phases.
+     */
+    private void tagSchedulePhases(Timeline timeline) {
+        if (!(limiter instanceof DistributionRateLimiter))
+            return;
+
+        DistributionGenerator generator = ((DistributionRateLimiter)limiter).getGenerator();
+        if (!(generator instanceof ScheduleGenerator))
+            return;
+
+        ScheduleGenerator schedule = (ScheduleGenerator)generator;
+        for (int i = 0; i < schedule.getNumPhases(); i++) {
+            long phaseStart = schedule.getPhaseStartMillis(i);
+            if (phaseStart >= 0 && phaseStart < duration)
+                timeline.tagPhase(startTime + phaseStart, schedule.getPhaseLabel(i));
+        }
+    }
+
     public WorkloadState getCurrentState() { return this.currentState; }
 
     @Override
@@ -297,21 +483,77 @@ public class RandomlyGeneratedWorkload {
         return "RandomlyGeneratedWorkload(startTime=" + startTime + ", duration=" + duration + ")";
     }
 
+    private static final String RENAMED = "R0N0";
+    private static final String RENAMED_SUFFIX = "_Times";
+
+    /**
+     * Build the target of a RENAME operation. A file that has never been renamed gets the suffix "_R0N0_1_Times",
+     * and the counter of a file that has already been renamed is incremented. The counter is parsed in place and the
+     * target is built in the given (reused) {@link StringBuilder}, so the only allocation is the new path itself.
+     */
+    static String getRenameTarget(String path, StringBuilder builder) {
+        int currentCounter = 0;
+        int baseLength = path.length();
+
+        int renamedIndex = path.lastIndexOf(RENAMED);
+        if (renamedIndex >= 0) {
+            int counterEnd = path.lastIndexOf('_');
+            for (int i = renamedIndex + RENAMED.length() + 1; i < counterEnd; i++)
+                currentCounter = currentCounter * 10 + (path.charAt(i) - '0');
+            baseLength = renamedIndex - 1;
+        }
+
+        builder.setLength(0);
+        return builder.append(path, 0, baseLength).append('_').append(RENAMED).append('_')
+                .append(currentCounter + 1).append(RENAMED_SUFFIX).toString();
+    }
+
     public class Worker implements Callable<Object> {
         private FilePool filePool;
         private final BMConfiguration config;
         private final boolean isType2;
 
-        public Worker(BMConfiguration config) {
-            this(config, true);
+        /**
+         * Index of this worker's slot in the per-worker latency arrays.
+         */
+        private final int workerId;
+
+        /**
+         * Only ever written to by this worker's thread.
+         */
+        private final LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+        /**
+         * Reused to build the target path of every RENAME operation.
+         */
+        private final StringBuilder renameTarget = new StringBuilder(256);
+
+        /**
+         * Used to flip this worker's coin, and split to select the targets of its operations. Only ever used by
+         * this worker's thread.
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Used to convert {@link System#nanoTime()} readings into wall-clock time for the timeline, so that each
+         * operation reads the clock only when it starts and when it finishes.
+         */
+        private long clockBaseMillis;
+        private long clockBaseNanos;
+
+        public Worker(BMConfiguration config, int workerId) {
+            this(config, true, workerId);
         }
 
-        public Worker(BMConfiguration config, boolean isType2) {
+        public Worker(BMConfiguration config, boolean isType2, int workerId) {
             this.config = config;
             this.isType2 = isType2;
+            this.workerId = workerId;
+            this.random = seedRandom.split();
         }
 
         private void extractMetrics(DistributedFileSystem dfs) throws InterruptedException {
+            VirtualThreads.recordCarrierThread(carrierThreads);
             endLatch.countDown();
 
             try {
@@ -320,14 +562,16 @@ public class RandomlyGeneratedWorkload {
                 e.printStackTrace();
             }
 
-            for (double latency : dfs.getLatencyHttpStatistics().getValues()) {
-                httpLatency.addValue(latency);
-            }
+            double[] http = dfs.getLatencyHttpStatistics().getValues();
+            double[] tcp = dfs.getLatencyTcpStatistics().getValues();
+            latencyRecorder.recordHttpLatencies(http);
+            latencyRecorder.recordTcpLatencies(tcp);
 
-            //if (LOG.isDebugEnabled()) LOG.debug("[THREAD " + threadId + "] Collecting TCP latencies.");
-            for (double latency : dfs.getLatencyTcpStatistics().getValues()) {
-                tcpLatency.addValue(latency);
+            if (Commands.keepRawLatencies()) {
+                httpLatencies.set(workerId, http);
+                tcpLatencies.set(workerId, tcp);
             }
+            latencyRecorders.set(workerId, latencyRecorder);
 
             operationsPerformed.add(dfs.getOperationsPerformed());
 
@@ -342,51 +586,21 @@ public class RandomlyGeneratedWorkload {
          * Type 1 and Type 2 workers simply have different percentages for the operations they perform.
          */
         private InterleavedMultiFaceCoin getCoin() {
-            if (isType2) {
-                return new InterleavedMultiFaceCoin(config.getInterleavedBmCreateFilesPercentage2(),
-                        config.getInterleavedBmAppendFilePercentage2(),
-                        config.getInterleavedBmReadFilesPercentage2(),
-                        config.getInterleavedBmRenameFilesPercentage2(),
-                        config.getInterleavedBmDeleteFilesPercentage2(),
-                        config.getInterleavedBmLsFilePercentage2(),
-                        config.getInterleavedBmLsDirPercentage2(),
-                        config.getInterleavedBmChmodFilesPercentage2(),
-                        config.getInterleavedBmChmodDirsPercentage2(),
-                        config.getInterleavedBmMkdirPercentage2(),
-                        config.getInterleavedBmSetReplicationPercentage2(),
-                        config.getInterleavedBmGetFileInfoPercentage2(),
-                        config.getInterleavedBmGetDirInfoPercentage2(),
-                        config.getInterleavedBmFileChangeOwnerPercentage2(),
-                        config.getInterleavedBmDirChangeOwnerPercentage2()
-                );
-            } else {
-                return new InterleavedMultiFaceCoin(config.getInterleavedBmCreateFilesPercentage(),
-                        config.getInterleavedBmAppendFilePercentage(),
-                        config.getInterleavedBmReadFilesPercentage(),
-                        config.getInterleavedBmRenameFilesPercentage(),
-                        config.getInterleavedBmDeleteFilesPercentage(),
-                        config.getInterleavedBmLsFilePercentage(),
-                        config.getInterleavedBmLsDirPercentage(),
-                        config.getInterleavedBmChmodFilesPercentage(),
-                        config.getInterleavedBmChmodDirsPercentage(),
-                        config.getInterleavedBmMkdirPercentage(),
-                        config.getInterleavedBmSetReplicationPercentage(),
-                        config.getInterleavedBmGetFileInfoPercentage(),
-                        config.getInterleavedBmGetDirInfoPercentage(),
-                        config.getInterleavedBmFileChangeOwnerPercentage(),
-                        config.getInterleavedBmDirChangeOwnerPercentage()
-                );
-            }
+            return new InterleavedMultiFaceCoin(isType2 ? config.getInterleavedBmOperationPercentages2() :
+                    config.getInterleavedBmOperationPercentages(), random);
         }
 
         @Override
         public Object call() throws FileNotFoundException {
             DistributedFileSystem dfs = Commands.getHdfsClient(sharedHdfs, false);
-            filePool = FilePoolUtils.getFilePool(bmConf.getBaseDir(), bmConf.getDirPerDir(), bmConf.getFilesPerDir(),
-                    bmConf.getTreeDepth(), bmConf.isFixedDepthTree(), bmConf.isExistingSubtree(), bmConf.getExistingSubtreePath());
+            filePool = FilePoolUtils.getFilePool(bmConf);
+            // The file pool may have been created by an earlier worker of this thread, so it is (re)seeded here.
+            filePool.setRandom(random.split());
 
             InterleavedMultiFaceCoin opCoin = getCoin();
 
+            VirtualThreads.recordCarrierThread(carrierThreads);
+
             LOG.debug("Acquiring 'ready' semaphore now...");
             readySemaphore.release(); // Ready to start. Once all threads have done this, the timer begins.
 
@@ -402,11 +616,19 @@ public class RandomlyGeneratedWorkload {
 
             LOG.debug("Go go go!");
 
+            clockBaseMillis = System.currentTimeMillis();
+            clockBaseNanos = System.nanoTime();
+            final long deadlineNanos = clockBaseNanos + (startTime + duration - clockBaseMillis) * 1000000L;
+
+            // The time at which the previous operation finished (or at which the workload started) is good
+            // enough to decide whether the workload is over, and saves a clock read per operation.
+            long now = clockBaseNanos;
+
             int numOperations = 0;
             while (true) {
                 for (int i = 0; i < 5000; i++) {
                     try {
-                        if ((System.currentTimeMillis() - startTime) > duration) {
+                        if (now > deadlineNanos) {
                             // This way, we don't have to wait for all the statistics to be added to lists and whatnot.
                             // As soon as the threads finish, they call release() on the endSemaphore. Once all threads have
                             // done this, we designate the benchmark as ended and record the stop time. Then we join the threads
@@ -424,8 +646,18 @@ public class RandomlyGeneratedWorkload {
                                     (numOperations / ((System.currentTimeMillis() - startTime) / 1.0e3)));
                         }
 
+                        long intendedStartTime = 0;
+                        if (openLoop) {
+                            intendedStartTime = awaitIntendedStartTime();
+
+                            if (intendedStartTime < 0) {
+                                endSemaphore.release();
+                                extractMetrics(dfs);
+                                return null;
+                            }
+                        }
                         // Wait for the limiter to allow the operation
-                        if (!limiter.checkRate()) {
+                        else if (!limiter.checkRate()) {
                             // This way, we don't have to wait for all the statistics to be added to lists and whatnot.
                             // As soon as the threads finish, they call release() on the endSemaphore. Once all threads have
                             // done this, we designate the benchmark as ended and record the stop time. Then we join the threads
@@ -435,10 +667,11 @@ public class RandomlyGeneratedWorkload {
                             return null;
                         }
 
-                        performOperation(op, dfs);
+                        now = performOperation(op, dfs, intendedStartTime);
                         numOperations++;
                     } catch (Exception e) {
                         LOG.error("Exception encountered:", e);
+                        now = System.nanoTime();
                     }
                 }
 
@@ -449,48 +682,70 @@ public class RandomlyGeneratedWorkload {
             }
         }
 
-        private static final String RENAMED = "R0N0";
-        private void performOperation(FSOperation operation, DistributedFileSystem dfs) {
+        /**
+         * Block until the next operation scheduled by the limiter is due, and return its intended start time
+         * (in terms of {@link System#nanoTime()}), or -1 if the workload has ended.
+         */
+        private long awaitIntendedStartTime() throws InterruptedException {
+            long intendedStartTime = ((DistributionRateLimiter)limiter).acquireIntendedStartTime();
+            if (intendedStartTime < 0)
+                return -1;
+
+            long delay;
+            while ((delay = intendedStartTime - System.nanoTime()) > 0)
+                LockSupport.parkNanos(delay);
+
+            return intendedStartTime;
+        }
+
+        /**
+         * @param intendedStartTime In open-loop mode, the time (in terms of {@link System#nanoTime()}) at which the
+         *                          operation was scheduled to start. The latency is measured from this time.
+         *
+         * @return The time (in terms of {@link System#nanoTime()}) at which the operation finished.
+         */
+        private long performOperation(FSOperation operation, DistributedFileSystem dfs, long intendedStartTime) {
             if (LOG.isDebugEnabled())
                 LOG.debug("Performing operation: " + operation.getName());
             String path = FilePoolUtils.getPath(operation, filePool);
-            if (path != null) {
-                boolean retVal;
-                try {
-                    if (operation == FSOperation.RENAME_FILE) {
-                        int currentCounter = 0;
-                        String to = path;
-                        if (path.contains(RENAMED)) {
-                            int index1 = path.lastIndexOf(RENAMED);
-                            int index2 = path.lastIndexOf("_");
-                            String counter = path.substring(index1 + RENAMED.length() + 1, index2);
-                            to = path.substring(0, index1 - 1);
-                            currentCounter = Integer.parseInt(counter);
-                        }
-                        currentCounter++;
-                        to = to + "_" + RENAMED + "_" + currentCounter + "_" + "Times";
-                        retVal = operation.call(dfs, path, to);
+            if (path == null) {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Could not perform operation " + operation + ". Got Null from the file pool");
+                return System.nanoTime();
+            }
 
-                        if (retVal) {
-                            operationsCompleted.incrementAndGet();
-                            filePool.fileRenamed(path, to);
-                        }
-                    } else {
-                        retVal = operation.call(dfs, path, "");
-                        if (retVal) {
-                            operationsCompleted.incrementAndGet();
-                            if (operation == FSOperation.CREATE_FILE)
-                                filePool.fileCreationSucceeded(path);
-                        }
-                    }
-                } catch (Exception e) {
-                    LOG.error("Exception encountered:", e);
-                }
+            final String operationName = operation.getName();
+            final boolean isRename = operation == FSOperation.RENAME_FILE;
+            final String to = isRename ? getRenameTarget(path, renameTarget) : "";
 
-                // updateStats(operation, retVal, new BMOpStats(opStartTime, opExeTime));
-            } else {
-                LOG.debug("Could not perform operation " + operation + ". Got Null from the file pool");
+            long opStart = openLoop ? intendedStartTime : System.nanoTime();
+            long opEnd;
+            try {
+                boolean retVal = operation.call(dfs, path, to);
+                opEnd = System.nanoTime();
+                long latency = opEnd - opStart;
+                latencyRecorder.recordOperation(operationName, latency);
+                if (retVal && operation == FSOperation.READ_FILE) {
+                    FileData.ReadStats stats = FileData.getLastRead();
+                    latencyRecorder.recordRead(stats.timeToFirstByteNanos, stats.bytesRead);
+                }
+                timeline.record(operationName, latency, retVal,
+                        clockBaseMillis + (opEnd - clockBaseNanos) / 1000000L);
+
+                if (retVal) {
+                    operationsCompleted.incrementAndGet();
+                    if (isRename)
+                        filePool.fileRenamed(path, to);
+                    else if (operation == FSOperation.CREATE_FILE)
+                        filePool.fileCreationSucceeded(path);
+                }
+            } catch (Exception e) {
+                LOG.error("Exception encountered:", e);
+                opEnd = System.nanoTime();
             }
+
+            // updateStats(operation, retVal, new BMOpStats(opStartTime, opExeTime));
+            return opEnd;
         }
 
 //        private void updateStats(FSOperation opType, boolean success, BMOpStats stats) {
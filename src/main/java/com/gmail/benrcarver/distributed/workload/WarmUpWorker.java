@@ -42,8 +42,7 @@ public class WarmUpWorker implements Callable<Boolean> {
 
     public boolean callImpl() throws Exception {
         dfs = Commands.getHdfsClient(sharedHdfs, true);
-        filePool = FilePoolUtils.getFilePool(bmConf.getBaseDir(), bmConf.getDirPerDir(), bmConf.getFilesPerDir(),
-                bmConf.getTreeDepth(), bmConf.isFixedDepthTree(), bmConf.isExistingSubtree(), bmConf.getExistingSubtreePath());
+        filePool = FilePoolUtils.getFilePool(bmConf);
         String filePath;
 
         LOG.debug("Attempting to create a total of " + filesToCreate + " file(s).");
@@ -8,6 +8,11 @@ public class WorkloadResponse implements Serializable {
     public boolean erred;
     public DistributedBenchmarkResult result;
 
+    /**
+     * In response to pre-populating the namespace: the files that could not be created.
+     */
+    public int[] failedFiles;
+
     public WorkloadResponse() { }
 
     public WorkloadResponse(boolean erred, DistributedBenchmarkResult result) {
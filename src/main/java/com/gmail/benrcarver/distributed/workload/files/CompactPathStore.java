@@ -0,0 +1,567 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A compact, concurrent set of file paths. By default, a single instance is shared by the {@link FilePool}s of
+ * all the threads of a VM (see {@link FilePoolUtils#getSharedPathStore()}), so that reads are spread across every
+ * file created on the VM, rather than only the files created by the reading thread.
+ *
+ * Files are not stored as full path strings. Each file is a single {@code long} entry that packs the ID of its
+ * parent directory with a reference to its name. Directories are stored as (parent ID, name reference) pairs in
+ * primitive arrays, and their names are interned, as the same directory names recur throughout a generated tree.
+ * Names are kept as length-prefixed UTF-8 in an append-only arena of byte chunks. A file therefore costs about
+ * 10 bytes plus the length of its name; ten million files fit in a few hundred MB. Paths are only materialized as
+ * strings when they are handed out.
+ *
+ * Only files whose paths have at least {@code minDepth} components are stored, and the store keeps a separate,
+ * append-only index of the parent directories of those files that are at least as deep. Every entry is therefore
+ * eligible for selection, and the file pools can pick a random file or directory with a single draw, rather than
+ * retrying until they find one that is deep enough.
+ *
+ * Reading entries ({@link CompactPathStore#size()}, {@link CompactPathStore#getEntry(int)} and
+ * {@link CompactPathStore#getParentDirectory(int)}) is lock-free, so the file pools can sample random files and
+ * directories without contention. Adding and removing files takes a short lock.
+ *
+ * Files keep the order in which they were added, so that the key selectors that favor old or new files (see
+ * {@link com.gmail.benrcarver.distributed.workload.random.KeyDistribution}) can rank files by their slot. Removing a
+ * file empties its slot, and the empty slots are compacted away (in order) once they make up a sixteenth of the
+ * store, so removing is amortized O(1). Callers draw a slot from [0, {@link CompactPathStore#getNumSlots()}) and draw
+ * again if it is empty, which selects among the remaining files with the same relative probabilities. Renaming a
+ * file replaces its entry with a compare-and-set on its slot, so a renamed file keeps its rank.
+ *
+ * The arena is append-only: the names of deleted and renamed files are not reclaimed.
+ */
+public class CompactPathStore {
+    /**
+     * Marks an empty slot. This is never a valid entry, as directory IDs are non-negative.
+     */
+    public static final long EMPTY = -1L;
+
+    /**
+     * The ID of the root directory.
+     */
+    public static final int ROOT = 0;
+
+    private static final int SLOT_SEGMENT_BITS = 16;
+    private static final int SLOT_SEGMENT_SIZE = 1 << SLOT_SEGMENT_BITS;
+    private static final int SLOT_SEGMENT_MASK = SLOT_SEGMENT_SIZE - 1;
+
+    private static final int ARENA_CHUNK_BITS = 20;
+    private static final int ARENA_CHUNK_SIZE = 1 << ARENA_CHUNK_BITS;
+    private static final int ARENA_CHUNK_MASK = ARENA_CHUNK_SIZE - 1;
+
+    /**
+     * The maximum length of a name, in bytes. Lengths are stored in two bytes.
+     */
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    private static final int INITIAL_DIR_CAPACITY = 1024;
+
+    /**
+     * The empty slots are compacted away once there are more than {@code size / COMPACTION_DIVISOR +
+     * MIN_EMPTY_SLOTS} of them.
+     */
+    private static final int COMPACTION_DIVISOR = 16;
+    private static final int MIN_EMPTY_SLOTS = 8;
+
+    /**
+     * Files (and parent directories) whose paths have fewer components than this are not stored.
+     */
+    private final int minDepth;
+
+    /**
+     * The file entries, in segments that are allocated as the store grows, so that growing never copies (or blocks
+     * readers of) the existing entries.
+     */
+    private final AtomicLongArray[] slots = new AtomicLongArray[(Integer.MAX_VALUE >>> SLOT_SEGMENT_BITS) + 1];
+
+    /**
+     * The number of slots in use, including the empty slots of removed files. Written only while holding
+     * {@code fileLock}, after the slots have been written, so that a reader that reads it sees the corresponding
+     * slots.
+     */
+    private volatile int numSlots = 0;
+
+    /**
+     * The number of files. Written only while holding {@code fileLock}.
+     */
+    private volatile int size = 0;
+
+    private final Object fileLock = new Object();
+
+    /**
+     * The parent, name and depth (i.e., the number of path components) of each directory, indexed by ID. Entries
+     * never change once written. The arrays are replaced by larger copies when they fill up.
+     */
+    private volatile int[] dirParents = new int[INITIAL_DIR_CAPACITY];
+    private volatile int[] dirNames = new int[INITIAL_DIR_CAPACITY];
+    private volatile int[] dirDepths = new int[INITIAL_DIR_CAPACITY];
+
+    /**
+     * Whether each directory has been added to {@code parentDirs}. Guarded by {@code dirLock}, but may be read
+     * without it as a hint.
+     */
+    private volatile boolean[] dirIndexed = new boolean[INITIAL_DIR_CAPACITY];
+
+    /**
+     * The directories that contain (or once contained) at least one stored file, and are at least
+     * {@code minDepth} deep. Directories are never removed from this index, as the workload does not delete them.
+     * Written only while holding {@code dirLock}; {@code numParentDirs} is written last.
+     */
+    private volatile int[] parentDirs = new int[INITIAL_DIR_CAPACITY];
+    private volatile int numParentDirs = 0;
+
+    /**
+     * The number of files that were not added because they were shallower than {@code minDepth}.
+     */
+    private final AtomicLong numRejected = new AtomicLong(0);
+
+    /**
+     * Guarded by {@code dirLock}.
+     */
+    private int numDirs;
+
+    /**
+     * Map from the full path of each directory to its ID. There are far fewer directories than files.
+     */
+    private final ConcurrentHashMap<String, Integer> dirIds = new ConcurrentHashMap<>();
+
+    /**
+     * Interned directory names. Guarded by {@code dirLock}.
+     */
+    private final Map<String, Integer> internedNames = new HashMap<>();
+
+    private final Object dirLock = new Object();
+
+    /**
+     * The arena that holds the names of files and directories. A name never spans two chunks.
+     */
+    private final byte[][] chunks = new byte[(Integer.MAX_VALUE >>> ARENA_CHUNK_BITS) + 1][];
+
+    /**
+     * The offset at which the next name will be written. Guarded by {@code arenaLock}.
+     */
+    private int arenaEnd = 0;
+
+    private final Object arenaLock = new Object();
+
+    public CompactPathStore() {
+        this(0);
+    }
+
+    /**
+     * @param minDepth Files whose paths have fewer components than this are not stored. Neither are parent
+     *                 directories whose paths have fewer components than this.
+     */
+    public CompactPathStore(int minDepth) {
+        this.minDepth = minDepth;
+        dirParents[ROOT] = -1;
+        dirNames[ROOT] = -1;
+        dirDepths[ROOT] = 0;
+        numDirs = 1;
+        dirIds.put("/", ROOT);
+    }
+
+    /**
+     * Return the number of files in the store.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of slots, from oldest to newest file. Some of them may be empty, as the slots of removed
+     * files are only reclaimed from time to time.
+     */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * Return the entry in the given slot, or {@link CompactPathStore#EMPTY} if the slot is empty (i.e., its file
+     * was removed, or it is not below {@link CompactPathStore#getNumSlots()}).
+     */
+    public long getEntry(int index) {
+        AtomicLongArray segment = slots[index >>> SLOT_SEGMENT_BITS];
+        if (segment == null)
+            return EMPTY;
+        return segment.get(index & SLOT_SEGMENT_MASK);
+    }
+
+    /**
+     * Return the number of components below which files and directories are not stored.
+     */
+    public int getMinDepth() {
+        return minDepth;
+    }
+
+    /**
+     * Return the number of files that {@link CompactPathStore#addFile(String)} did not add because their paths had
+     * fewer than {@code minDepth} components.
+     */
+    public long getNumRejected() {
+        return numRejected.get();
+    }
+
+    /**
+     * Add a file, given its full path.
+     *
+     * @return False if the file was not added because its path has fewer than {@code minDepth} components.
+     */
+    public boolean addFile(String path) {
+        int dirId = getParentId(path);
+        if (dirDepths[dirId] + 1 < minDepth) {
+            numRejected.incrementAndGet();
+            return false;
+        }
+
+        long entry = toEntry(dirId, path);
+        indexParentDirectory(dirId);
+
+        synchronized (fileLock) {
+            int index = numSlots;
+            if (index == Integer.MAX_VALUE)
+                throw new IllegalStateException("The path store is full.");
+
+            int segmentIndex = index >>> SLOT_SEGMENT_BITS;
+            if (slots[segmentIndex] == null)
+                slots[segmentIndex] = new AtomicLongArray(SLOT_SEGMENT_SIZE);
+
+            slots[segmentIndex].set(index & SLOT_SEGMENT_MASK, entry);
+            numSlots = index + 1;
+            size++;
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove the file in the given slot, leaving the slot empty. The other files keep their order.
+     *
+     * @return The entry of the removed file, or {@link CompactPathStore#EMPTY} if the slot is empty (which can
+     * happen if its file was removed since the index was chosen).
+     */
+    public long removeFile(int index) {
+        synchronized (fileLock) {
+            if (index < 0 || index >= numSlots)
+                return EMPTY;
+
+            long removed = slots[index >>> SLOT_SEGMENT_BITS].getAndSet(index & SLOT_SEGMENT_MASK, EMPTY);
+            if (removed == EMPTY)
+                return EMPTY;
+
+            size--;
+            if (numSlots - size > size / COMPACTION_DIVISOR + MIN_EMPTY_SLOTS)
+                compact();
+            return removed;
+        }
+    }
+
+    /**
+     * Move the files down into the empty slots, keeping their order. Must hold {@code fileLock}.
+     *
+     * Readers are not blocked. A file is claimed from its old slot (which is left empty) before it is written to
+     * its new one, so a concurrent rename of it fails and looks for it elsewhere, rather than updating a stale copy.
+     */
+    private void compact() {
+        int to = 0;
+        for (int from = 0; from < numSlots; from++) {
+            AtomicLongArray segment = slots[from >>> SLOT_SEGMENT_BITS];
+            if (from == to) {
+                if (segment.get(from & SLOT_SEGMENT_MASK) != EMPTY)
+                    to++;
+                continue;
+            }
+
+            long entry = segment.getAndSet(from & SLOT_SEGMENT_MASK, EMPTY);
+            if (entry != EMPTY) {
+                slots[to >>> SLOT_SEGMENT_BITS].set(to & SLOT_SEGMENT_MASK, entry);
+                to++;
+            }
+        }
+        numSlots = to;
+    }
+
+    /**
+     * Replace the entry of a renamed file.
+     *
+     * @param index The slot in which the file was found.
+     * @param expected The entry of the file, as read from that slot.
+     * @param newPath The new path of the file.
+     *
+     * @return True if the entry was replaced, or false if the file is no longer in the store (i.e., it was
+     * removed concurrently).
+     */
+    public boolean replaceFile(int index, long expected, String newPath) {
+        int dirId = getParentId(newPath);
+        long updated = toEntry(dirId, newPath);
+        indexParentDirectory(dirId);
+
+        if (index >= 0) {
+            AtomicLongArray segment = slots[index >>> SLOT_SEGMENT_BITS];
+            if (segment != null && segment.compareAndSet(index & SLOT_SEGMENT_MASK, expected, updated))
+                return true;
+        }
+
+        // The file was moved by a concurrent compaction (or is gone). This is rare, so a scan is fine. Files cannot
+        // move while we hold the lock.
+        synchronized (fileLock) {
+            for (int i = 0; i < numSlots; i++) {
+                AtomicLongArray segment = slots[i >>> SLOT_SEGMENT_BITS];
+                if (segment.get(i & SLOT_SEGMENT_MASK) == expected &&
+                        segment.compareAndSet(i & SLOT_SEGMENT_MASK, expected, updated))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the number of directories in the parent directory index.
+     */
+    public int getNumParentDirectories() {
+        return numParentDirs;
+    }
+
+    /**
+     * Return the ID of the directory at the given position of the parent directory index.
+     */
+    public int getParentDirectory(int index) {
+        return parentDirs[index];
+    }
+
+    /**
+     * Return the full path of the file with the given entry.
+     */
+    public String getPath(long entry) {
+        return appendPath(new StringBuilder(64), entry).toString();
+    }
+
+    /**
+     * Append the full path of the file with the given entry to the given builder.
+     */
+    public StringBuilder appendPath(StringBuilder path, long entry) {
+        appendDirectory(path, getDirectory(entry));
+        path.append('/');
+        appendName(path, (int) entry);
+        return path;
+    }
+
+    /**
+     * Return the ID of the parent directory of the file with the given entry.
+     */
+    public int getDirectory(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    /**
+     * Return the number of components in the path of the file with the given entry.
+     */
+    public int getDepth(long entry) {
+        return dirDepths[getDirectory(entry)] + 1;
+    }
+
+    /**
+     * Return the full path of the given directory.
+     */
+    public String getDirectoryPath(int dirId) {
+        return appendDirectoryPath(new StringBuilder(64), dirId).toString();
+    }
+
+    /**
+     * Append the full path of the given directory to the given builder.
+     */
+    public StringBuilder appendDirectoryPath(StringBuilder path, int dirId) {
+        if (dirId == ROOT)
+            return path.append('/');
+
+        appendDirectory(path, dirId);
+        return path;
+    }
+
+    /**
+     * Return the number of components in the path of the given directory.
+     */
+    public int getDirectoryDepth(int dirId) {
+        return dirDepths[dirId];
+    }
+
+    /**
+     * Return the number of directories in the store, including the root directory and the ancestors of every
+     * file that has been added.
+     */
+    public int getNumDirectories() {
+        synchronized (dirLock) {
+            return numDirs;
+        }
+    }
+
+    /**
+     * Return the ID of the directory with the given (absolute) path, adding the directory and any missing
+     * ancestors if necessary.
+     */
+    public int getDirectoryId(String path) {
+        if (path.length() > 1 && path.endsWith("/"))
+            path = path.substring(0, path.length() - 1);
+
+        Integer dirId = dirIds.get(path);
+        if (dirId != null)
+            return dirId;
+
+        synchronized (dirLock) {
+            dirId = dirIds.get(path);
+            if (dirId != null)
+                return dirId;
+
+            int slash = path.lastIndexOf('/');
+            if (slash < 0)
+                throw new IllegalArgumentException("Path must be absolute: '" + path + "'");
+
+            int parent = getDirectoryId(slash == 0 ? "/" : path.substring(0, slash));
+            String name = path.substring(slash + 1);
+            Integer nameRef = internedNames.get(name);
+            if (nameRef == null) {
+                nameRef = appendName(name);
+                internedNames.put(name, nameRef);
+            }
+
+            int id = numDirs;
+            if (id == dirParents.length) {
+                int capacity = id * 2;
+                // Populate the new arrays before publishing them.
+                int[] parents = Arrays.copyOf(dirParents, capacity);
+                int[] names = Arrays.copyOf(dirNames, capacity);
+                int[] depths = Arrays.copyOf(dirDepths, capacity);
+                parents[id] = parent;
+                names[id] = nameRef;
+                depths[id] = dirDepths[parent] + 1;
+                dirParents = parents;
+                dirNames = names;
+                dirDepths = depths;
+                dirIndexed = Arrays.copyOf(dirIndexed, capacity);
+            } else {
+                dirParents[id] = parent;
+                dirNames[id] = nameRef;
+                dirDepths[id] = dirDepths[parent] + 1;
+            }
+
+            numDirs = id + 1;
+            dirIds.put(path, id);
+            return id;
+        }
+    }
+
+    /**
+     * Return the ID of the parent directory of the given file, adding it if necessary.
+     */
+    private int getParentId(String path) {
+        int slash = path.lastIndexOf('/');
+        if (slash < 0 || slash == path.length() - 1)
+            throw new IllegalArgumentException("Not an absolute file path: '" + path + "'");
+
+        return getDirectoryId(slash == 0 ? "/" : path.substring(0, slash));
+    }
+
+    private long toEntry(int dirId, String path) {
+        int nameRef = appendName(path.substring(path.lastIndexOf('/') + 1));
+        return ((long) dirId << 32) | (nameRef & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Add the given directory to the parent directory index, unless it is already there or is too shallow.
+     */
+    private void indexParentDirectory(int dirId) {
+        if (dirIndexed[dirId] || dirDepths[dirId] < minDepth)
+            return;
+
+        synchronized (dirLock) {
+            if (dirIndexed[dirId])
+                return;
+
+            int index = numParentDirs;
+            if (index == parentDirs.length)
+                parentDirs = Arrays.copyOf(parentDirs, index * 2);
+            parentDirs[index] = dirId;
+            dirIndexed[dirId] = true;
+            numParentDirs = index + 1;
+        }
+    }
+
+    private void appendDirectory(StringBuilder path, int dirId) {
+        if (dirId == ROOT)
+            return;
+
+        appendDirectory(path, dirParents[dirId]);
+        path.append('/');
+        appendName(path, dirNames[dirId]);
+    }
+
+    /**
+     * Write a name to the arena.
+     *
+     * @return The offset of the name in the arena.
+     */
+    private int appendName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("Name is too long (" + bytes.length + " bytes): '" + name + "'");
+
+        int length = bytes.length + 2;
+        synchronized (arenaLock) {
+            int offset = arenaEnd;
+            if ((offset & ARENA_CHUNK_MASK) + length > ARENA_CHUNK_SIZE)
+                offset = (offset | ARENA_CHUNK_MASK) + 1; // Skip to the start of the next chunk.
+
+            if (offset < 0 || (long) offset + length > Integer.MAX_VALUE)
+                throw new IllegalStateException("The name arena of the path store is full.");
+
+            int chunkIndex = offset >>> ARENA_CHUNK_BITS;
+            if (chunks[chunkIndex] == null)
+                chunks[chunkIndex] = new byte[ARENA_CHUNK_SIZE];
+
+            byte[] chunk = chunks[chunkIndex];
+            int position = offset & ARENA_CHUNK_MASK;
+            chunk[position] = (byte) (bytes.length >>> 8);
+            chunk[position + 1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, chunk, position + 2, bytes.length);
+
+            arenaEnd = offset + length;
+            return offset;
+        }
+    }
+
+    private void appendName(StringBuilder path, int nameRef) {
+        byte[] chunk = chunks[nameRef >>> ARENA_CHUNK_BITS];
+        int position = nameRef & ARENA_CHUNK_MASK;
+        int length = ((chunk[position] & 0xFF) << 8) | (chunk[position + 1] & 0xFF);
+        int start = position + 2;
+        int end = start + length;
+
+        // Names are almost always ASCII, which can be appended without decoding.
+        for (int i = start; i < end; i++) {
+            if (chunk[i] < 0) {
+                path.append(new String(chunk, i, end - i, StandardCharsets.UTF_8));
+                return;
+            }
+            path.append((char) chunk[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        int arenaBytes;
+        synchronized (arenaLock) {
+            arenaBytes = arenaEnd;
+        }
+        return "CompactPathStore(numFiles=" + size + ", numDirs=" + getNumDirectories() + ", nameBytes=" +
+                arenaBytes + ")";
+    }
+}
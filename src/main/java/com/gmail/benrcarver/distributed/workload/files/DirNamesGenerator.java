@@ -1,23 +1,18 @@
 package com.gmail.benrcarver.distributed.workload.files;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Scanner;
-import java.util.Set;
 
 public class DirNamesGenerator {
 
     private static final int DEFAULT_DIR_PER_DIR = 32;
-    private final int[] pathIndices = new int[40]; //level
+    /**
+     * The index of the current directory at each level, or -1 past the deepest level. Grown as the tree deepens.
+     */
+    private int[] pathIndices = new int[16];
     private final String baseDir;
     private String currentDir;
     private final int dirPerDir;
 
-    /**
-     * Set of leaf directories (i.e., directories with no child directories).
-     */
-    private final Set<String> leafDirectories;
-
     DirNamesGenerator(String baseDir) {
         this(baseDir, DEFAULT_DIR_PER_DIR);
     }
@@ -25,7 +20,6 @@ public class DirNamesGenerator {
     DirNamesGenerator(String baseDir, int dirPerDir) {
         this.baseDir = baseDir;
         this.dirPerDir = dirPerDir;
-        this.leafDirectories = new HashSet<>();
         reset();
     }
 
@@ -40,6 +34,12 @@ public class DirNamesGenerator {
             pathIndices[level] = 0;
         }
         if (level < 0) {
+            // Keep a -1 past the deepest level, so that the loops above and below terminate.
+            if (depth + 1 >= pathIndices.length) {
+                int oldLength = pathIndices.length;
+                pathIndices = Arrays.copyOf(pathIndices, oldLength * 2);
+                Arrays.fill(pathIndices, oldLength, pathIndices.length, -1);
+            }
             pathIndices[depth] = 0;
         } else {
             pathIndices[level]++;
@@ -48,26 +48,13 @@ public class DirNamesGenerator {
         StringBuilder next = new StringBuilder(baseDir);
         while (pathIndices[level] >= 0) {
             int childNum = pathIndices[level];
-
-            // The first condition checks that we're on the last iteration of the loop.
-            // The second condition checks if we're creating the first child directory or not.
-            // If we are creating the first child directory, then remove the parent from the set of leaf directories.
-            if (pathIndices[level + 1] < 0) {
-                // The parent directory will be the current form of the string in the string builder.
-                leafDirectories.remove(next.toString());
-            }
-
             next.append("/").append(prefix).append(childNum);
 
             level += 1;
         }
 
-        String newDirectory = next.toString();
-        leafDirectories.add(newDirectory);
-        return newDirectory;
+        return next.toString();
     }
-
-    protected Set<String> getLeafDirectories() { return this.leafDirectories; }
     
     private synchronized void reset() {
         Arrays.fill(pathIndices, -1);
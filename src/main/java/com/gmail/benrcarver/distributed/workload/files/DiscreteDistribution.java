@@ -0,0 +1,147 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import com.gmail.benrcarver.distributed.coin.FileSizeMultiFaceCoin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+/**
+ * A distribution over a finite set of non-negative integers, such as the number of subdirectories per directory or
+ * the length of file names, typically taken from a histogram of a real namespace.
+ *
+ * Distributions are written like file sizes (see {@link FileSizeMultiFaceCoin}), as a list of (value, weight)
+ * pairs: {@code [(1,50),(2,30),(8,20)]}. Unlike file sizes, the weights do not have to add up to 100, so the raw
+ * counts of a histogram can be used as-is. A single number (e.g., {@code 4}) is a distribution that always returns
+ * that number.
+ *
+ * Instances are immutable. The randomness comes from the caller, so that sampling can be made reproducible.
+ */
+public class DiscreteDistribution {
+    private final int[] values;
+
+    /**
+     * cumulativeWeights[i] is the sum of the weights of values[0..i].
+     */
+    private final double[] cumulativeWeights;
+
+    private DiscreteDistribution(int[] values, double[] weights) {
+        this.values = values;
+        this.cumulativeWeights = new double[weights.length];
+
+        double total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    /**
+     * Return a distribution that always returns the given value.
+     */
+    public static DiscreteDistribution fixed(int value) {
+        if (value < 0)
+            throw new IllegalArgumentException("Values must be non-negative. Got: " + value);
+
+        return new DiscreteDistribution(new int[] { value }, new double[] { 1 });
+    }
+
+    /**
+     * Parse a distribution. See the description of the class for the format.
+     */
+    public static DiscreteDistribution parse(String str) {
+        List<Integer> values = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        try {
+            StringTokenizer strTok = new StringTokenizer(str, " ,[]()");
+            if (strTok.countTokens() == 1)
+                return fixed(Integer.parseInt(strTok.nextToken()));
+
+            while (strTok.hasMoreTokens()) {
+                values.add(Integer.parseInt(strTok.nextToken()));
+                weights.add(Double.parseDouble(strTok.nextToken()));
+            }
+        } catch (IllegalArgumentException | NoSuchElementException ex) {
+            throw new IllegalArgumentException("Malformed distribution '" + str + "'. Expected a list of " +
+                    "(value, weight) pairs, e.g. [(1,50),(2,30),(8,20)]. Exception caused: " + ex);
+        }
+
+        if (values.isEmpty())
+            throw new IllegalArgumentException("Distribution '" + str + "' has no values.");
+
+        int[] valueArray = new int[values.size()];
+        double[] weightArray = new double[weights.size()];
+        double total = 0;
+        for (int i = 0; i < valueArray.length; i++) {
+            valueArray[i] = values.get(i);
+            weightArray[i] = weights.get(i);
+            if (valueArray[i] < 0 || weightArray[i] < 0 || Double.isNaN(weightArray[i]))
+                throw new IllegalArgumentException("Values and weights must be non-negative. Got (" + valueArray[i] +
+                        ", " + weightArray[i] + ") in distribution '" + str + "'.");
+            total += weightArray[i];
+        }
+
+        if (total <= 0 || Double.isInfinite(total))
+            throw new IllegalArgumentException("The weights of distribution '" + str + "' must have a positive sum.");
+
+        return new DiscreteDistribution(valueArray, weightArray);
+    }
+
+    /**
+     * Return a value drawn from this distribution.
+     */
+    public int sample(Random random) {
+        if (values.length == 1)
+            return values[0];
+
+        double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(cumulativeWeights, point);
+        // An exact match is the end of that value's range, which belongs to the next value. Skip the values with
+        // a weight of zero, whose range is empty.
+        index = index >= 0 ? index + 1 : -index - 1;
+        while (index < values.length - 1 && cumulativeWeights[index] <= point)
+            index++;
+        return values[Math.min(index, values.length - 1)];
+    }
+
+    /**
+     * Return the largest value that can be drawn from this distribution.
+     */
+    public int getMax() {
+        int max = 0;
+        for (int i = 0; i < values.length; i++) {
+            double weight = cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]);
+            if (weight > 0)
+                max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Return the mean of this distribution.
+     */
+    public double getMean() {
+        double sum = 0;
+        for (int i = 0; i < values.length; i++)
+            sum += values[i] * (cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]));
+        return sum / cumulativeWeights[cumulativeWeights.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        if (values.length == 1)
+            return Integer.toString(values[0]);
+
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                builder.append(',');
+            double weight = cumulativeWeights[i] - (i == 0 ? 0 : cumulativeWeights[i - 1]);
+            builder.append('(').append(values[i]).append(',').append(weight).append(')');
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -1,6 +1,7 @@
 package com.gmail.benrcarver.distributed.workload.files;
 
-import com.gmail.benrcarver.distributed.util.Utils;
+import com.gmail.benrcarver.distributed.util.NamespaceSnapshot;
+import com.gmail.benrcarver.distributed.workload.random.KeySelector;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -9,7 +10,7 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class ExistingSubtreeFileGenerator implements FilePool {
     public static final Log LOG = LogFactory.getLog(ExistingSubtreeFileGenerator.class);
@@ -25,9 +26,9 @@ public class ExistingSubtreeFileGenerator implements FilePool {
     public static final String FILE_NAME = "FileLambda";
 
     /**
-     * All the files in this pool.
+     * All the files in this pool. May be shared with other threads.
      */
-    protected List<String> filesInPool;
+    protected final CompactPathStore filesInPool;
 
     /**
      * The directories in this pool. These are disjoint from the {@code baseDirectories} set of directories.
@@ -41,7 +42,15 @@ public class ExistingSubtreeFileGenerator implements FilePool {
      */
     protected List<String> baseDirectories;
 
-    private final Random random;
+    /**
+     * Used to select files and directories. See {@link ExistingSubtreeFileGenerator#setRandom(SplittableRandom)}.
+     */
+    private SplittableRandom random;
+
+    /**
+     * How the targets of each class of operation are selected.
+     */
+    private final FileSelectionPolicy selectionPolicy;
 
     /**
      * Keeps track of the number of directories we've created.
@@ -56,9 +65,10 @@ public class ExistingSubtreeFileGenerator implements FilePool {
     private int numFilesCreated;
 
     /**
-     * Index of the file we're modifying.
+     * Slot and entry of the file we're modifying.
      */
     private int lastModifiedIndex = 0;
+    private long lastModifiedEntry = CompactPathStore.EMPTY;
 
     /**
      * Directories that will be created when a `create file` operation succeeds.
@@ -71,10 +81,45 @@ public class ExistingSubtreeFileGenerator implements FilePool {
      *                                 to add to this file pool.
      */
     public ExistingSubtreeFileGenerator(String pathToInitialDirectories) throws FileNotFoundException {
-        this.baseDirectories = Utils.getFilePathsFromFile(pathToInitialDirectories);
-        this.filesInPool = new ArrayList<>();
+        this(pathToInitialDirectories, new CompactPathStore());
+    }
+
+    /**
+     * @param pathToInitialDirectories Path to a file on-disk that contains all the initial directories
+     *                                 to add to this file pool.
+     * @param filesInPool Where to keep track of the files that have been created.
+     */
+    public ExistingSubtreeFileGenerator(String pathToInitialDirectories, CompactPathStore filesInPool)
+            throws FileNotFoundException {
+        this(pathToInitialDirectories, filesInPool, FileSelectionPolicy.UNIFORM);
+    }
+
+    /**
+     * @param pathToInitialDirectories Path to a file on-disk that contains all the initial directories
+     *                                 to add to this file pool. Either a {@link NamespaceSnapshot} or a plain-text
+     *                                 file with one directory per line.
+     * @param filesInPool Where to keep track of the files that have been created.
+     * @param selectionPolicy How files and directories are selected.
+     */
+    public ExistingSubtreeFileGenerator(String pathToInitialDirectories, CompactPathStore filesInPool,
+                                        FileSelectionPolicy selectionPolicy) throws FileNotFoundException {
+        this(FilePoolUtils.getExistingSubtree(pathToInitialDirectories), filesInPool, selectionPolicy);
+    }
+
+    /**
+     * @param subtree The initial subtree. Only its directories are used; the caller decides whether to add its
+     *                files to {@code filesInPool}.
+     * @param filesInPool Where to keep track of the files that have been created.
+     * @param selectionPolicy How files and directories are selected.
+     */
+    public ExistingSubtreeFileGenerator(NamespaceSnapshot subtree, CompactPathStore filesInPool,
+                                        FileSelectionPolicy selectionPolicy) {
+        // The snapshot is shared by every file pool of the VM, so its directories are only decoded once.
+        this.baseDirectories = subtree.getDecodedDirectories();
+        this.filesInPool = filesInPool;
+        this.selectionPolicy = selectionPolicy;
         this.directoriesInPool = new ArrayList<>();
-        this.random = new Random();
+        this.random = new SplittableRandom();
     }
 
     /**
@@ -88,22 +133,41 @@ public class ExistingSubtreeFileGenerator implements FilePool {
     /**
      * Return a random, existing file.
      */
-    private String getRandomFile() {
-        if (!filesInPool.isEmpty()) {
-            int idx = random.nextInt(filesInPool.size());
-            return filesInPool.get(idx);
-        }
+    private String getRandomFile(KeySelector selector) {
+        if (selectRandomFile(selector))
+            return filesInPool.getPath(lastModifiedEntry);
 
         LOG.error("Unable to getRandomFile from file pool: " + this + ".");
         return null;
     }
 
+    /**
+     * Select a random, existing file, and store its slot and entry in {@code lastModifiedIndex} and
+     * {@code lastModifiedEntry}.
+     *
+     * @return False if the pool is empty.
+     */
+    private boolean selectRandomFile(KeySelector selector) {
+        while (filesInPool.size() > 0) {
+            int idx = selector.select(Math.max(filesInPool.getNumSlots(), 1), random);
+            long entry = filesInPool.getEntry(idx);
+            // The slot is empty if its file was removed, in which case we draw again.
+            if (entry != CompactPathStore.EMPTY) {
+                lastModifiedIndex = idx;
+                lastModifiedEntry = entry;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Return a random directory from all directories we've created and the base subtree.
      */
-    private String getRandomDirectory() {
+    private String getRandomDirectory(KeySelector selector) {
         // Select a directory from both the base subtree and any directories we've since created.
-        int idx = random.nextInt(baseDirectories.size() + directoriesInPool.size() - 1);
+        int idx = selector.select(baseDirectories.size() + directoriesInPool.size(), random);
 
         // If the index is greater than the size of the base subtree, then we're picking a directory we've generated.
         if (idx >= baseDirectories.size())
@@ -116,7 +180,7 @@ public class ExistingSubtreeFileGenerator implements FilePool {
      * Randomly pick and return a directory from the set of directories created during this workload.
      */
     private String getRandomNonExistingSubtreeDirectory() {
-        int idx = random.nextInt(directoriesInPool.size());
+        int idx = selectionPolicy.getListSelector().select(directoriesInPool.size(), random);
         return directoriesInPool.get(idx);
     }
 
@@ -131,7 +195,7 @@ public class ExistingSubtreeFileGenerator implements FilePool {
 
     private String getDirToCreate(boolean addToPool) {
         // All of these should contain the trailing '/' symbol.
-        String directory = getRandomDirectory() + "/" + DIR_NAME + "-" + RandomStringUtils.randomAlphabetic(6) +
+        String directory = getRandomDirectory(KeySelector.UNIFORM) + "/" + DIR_NAME + "-" + RandomStringUtils.randomAlphabetic(6) +
                 "-" + numDirectoriesCreated++;
         if (addToPool)
             directoriesInPool.add(directory);
@@ -159,7 +223,7 @@ public class ExistingSubtreeFileGenerator implements FilePool {
             return newFile;
         }
         else {
-            return getRandomDirectory() + "/" + FILE_NAME +
+            return getRandomDirectory(KeySelector.UNIFORM) + "/" + FILE_NAME +
                     RandomStringUtils.randomAlphabetic(6) + numFilesCreated++;
         }
     }
@@ -169,7 +233,9 @@ public class ExistingSubtreeFileGenerator implements FilePool {
         if (LOG.isDebugEnabled())
             LOG.debug("Successfully created file: '" + file + "'");
 
-        filesInPool.add(file);
+        if (!filesInPool.addFile(file) && LOG.isDebugEnabled())
+            LOG.debug("Created file '" + file + "' is shallower than the minimum depth of the file pool (" +
+                    filesInPool.getMinDepth() + "). It will not be selected by other operations.");
 
         if (dirsToBeCreated.containsKey(file)) {
             String dir = dirsToBeCreated.remove(file);
@@ -179,12 +245,12 @@ public class ExistingSubtreeFileGenerator implements FilePool {
 
     @Override
     public String getFileToRead() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getReadSelector());
     }
 
     @Override
     public String getFileToStat() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getStatSelector());
     }
 
     @Override
@@ -194,43 +260,49 @@ public class ExistingSubtreeFileGenerator implements FilePool {
 
     @Override
     public String getFileToInfo() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getStatSelector());
     }
 
     @Override
     public String getDirToInfo() {
-        return getRandomDirectory();
+        return getRandomDirectory(selectionPolicy.getListSelector());
     }
 
     @Override
     public String getFileToRename() {
-        if (filesInPool.isEmpty()) {
+        if (!selectRandomFile(selectionPolicy.getMutateSelector())) {
             return null;
         }
 
-        lastModifiedIndex = random.nextInt(filesInPool.size());
-        return filesInPool.get(lastModifiedIndex);
+        return filesInPool.getPath(lastModifiedEntry);
     }
 
     @Override
     public void fileRenamed(String previousName, String newName) {
-        String currentFile = filesInPool.get(lastModifiedIndex);
-
-        if (!currentFile.equals(previousName))
+        if (lastModifiedEntry == CompactPathStore.EMPTY)
             throw new IllegalStateException("Renamed file with old name '" + previousName +
-                    "' not found. New name is " + newName);
+                    "', but no file was selected. New name is " + newName);
+
+        // The file may have been deleted by another thread in the meantime, in which case there is nothing to do.
+        if (!filesInPool.replaceFile(lastModifiedIndex, lastModifiedEntry, newName) && LOG.isDebugEnabled())
+            LOG.debug("Renamed file '" + previousName + "' is no longer in the file pool. Dropping " + newName);
 
-        filesInPool.set(lastModifiedIndex, newName);
+        lastModifiedEntry = CompactPathStore.EMPTY;
     }
 
     @Override
     public String getFileToDelete() {
-        if (filesInPool.isEmpty()) {
+        long entry = CompactPathStore.EMPTY;
+        // An empty slot means that the file was already removed, so we draw again.
+        while (entry == CompactPathStore.EMPTY && filesInPool.size() > 0)
+            entry = filesInPool.removeFile(
+                    selectionPolicy.getMutateSelector().select(Math.max(filesInPool.getNumSlots(), 1), random));
+
+        if (entry == CompactPathStore.EMPTY) {
             return null;
         }
 
-        lastModifiedIndex = filesInPool.size() - 1;
-        return filesInPool.remove(lastModifiedIndex);
+        return filesInPool.getPath(entry);
     }
 
     @Override
@@ -238,6 +310,11 @@ public class ExistingSubtreeFileGenerator implements FilePool {
         return true;
     }
 
+    @Override
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
     @Override
     public String toString() {
         return "ExistingSubtreeFileGenerator(numBaseDirs=" + baseDirectories.size() + ", numGenDirs=" +
@@ -1,6 +1,7 @@
 package com.gmail.benrcarver.distributed.workload.files;
 
 import java.io.IOException;
+import java.util.SplittableRandom;
 
 public interface FilePool {
     public String getDirToCreate();
@@ -26,4 +27,25 @@ public interface FilePool {
     public String getFileToDelete();
 
     public boolean hasMoreFilesToWrite();
+
+    // Set the generator from which files and directories are selected. File pools belong to a single thread, so
+    // this should be the generator of the thread's current worker, for the selections to be reproducible.
+
+    public void setRandom(SplittableRandom random);
+
+    // The following are used by the APPEND, CHMOD, CHOWN, and SET REPLICATION operations. By default, they pick
+    // a random existing file or directory, like reads and stats do. Pools can override them to steer these
+    // operations elsewhere.
+
+    public default String getFileToAppend() { return getFileToRead(); }
+
+    public default String getFileToChmod() { return getFileToInfo(); }
+
+    public default String getDirToChmod() { return getDirToInfo(); }
+
+    public default String getFileToChown() { return getFileToInfo(); }
+
+    public default String getDirToChown() { return getDirToInfo(); }
+
+    public default String getFileToSetReplication() { return getFileToInfo(); }
 }
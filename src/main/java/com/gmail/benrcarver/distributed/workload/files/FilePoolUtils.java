@@ -1,10 +1,15 @@
 package com.gmail.benrcarver.distributed.workload.files;
 
 import com.gmail.benrcarver.distributed.FSOperation;
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import com.gmail.benrcarver.distributed.util.NamespaceSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class FilePoolUtils {
@@ -12,46 +17,194 @@ public class FilePoolUtils {
     private static final ThreadLocal<FilePool> filePools = new ThreadLocal<>();
     private static final AtomicInteger filePoolCount = new AtomicInteger(0);
 
+    /**
+     * Holds the files of every shared file pool on this VM. Created by the first shared file pool of each workload
+     * (see {@link FilePoolUtils#resetSharedPathStore()}), as its minimum depth depends on the kind of file pool.
+     */
+    private static CompactPathStore sharedPathStore;
+
+    /**
+     * The pre-populated namespace whose files have already been added to {@code sharedPathStore}, if any.
+     */
+    private static PrepopulatedNamespace sharedPathStoreNamespace;
+
+    /**
+     * The existing subtrees that have been loaded on this VM, keyed by the path of the local file they were loaded
+     * from. Loaded once and shared by every file pool.
+     */
+    private static final Map<String, NamespaceSnapshot> existingSubtrees = new HashMap<>();
+
+    /**
+     * The namespace that was created before the current workload started, if any. Its files are added to every new
+     * file store: all of them to the shared store, or one slice (of {@code numPrepopulatedSlices}) to each store
+     * that is not shared.
+     */
+    private static PrepopulatedNamespace prepopulatedNamespace;
+    private static int numPrepopulatedSlices = 1;
+    private static int nextPrepopulatedSlice = 0;
+
+    /**
+     * The shape of the namespace generated by new {@link FileTreeGenerator}s, or null for the fixed fan-out tree.
+     */
+    private static NamespaceShape namespaceShape;
+
     public static String getPath(FSOperation opType, FilePool filePool) {
-        String path;
-        if (opType == FSOperation.FILE_INFO) {
-            path = filePool.getFileToInfo();
-        } else if (opType == FSOperation.DIR_INFO) {
-            path = filePool.getDirToInfo();
-        } else if (opType == FSOperation.LIST_DIR_NO_PRINT) {
-            path = filePool.getDirToStat();
-        } else if (opType == FSOperation.LIST_FILE_NO_PRINT) {
-            path = filePool.getFileToStat();
-        } else if (opType == FSOperation.READ_FILE) {
-            path = filePool.getFileToRead();
-        } else if (opType == FSOperation.MKDIRS) {
-            path = filePool.getDirToCreate();
-        } else if (opType == FSOperation.CREATE_FILE) {
-            path = filePool.getFileToCreate();
-        } else if (opType == FSOperation.DELETE_FILE) {
-            path = filePool.getFileToDelete();
-        } else if (opType == FSOperation.RENAME_FILE) {
-            path = filePool.getFileToRename();
-        } else {
-            throw new IllegalStateException("Unexpected/unsupported FSOperation specified.");
+        return opType.selectPath(filePool);
+    }
+
+    /**
+     * Return the store that holds the files of the shared file pools of this VM, or null if no shared file pool
+     * has been created yet.
+     */
+    public static synchronized CompactPathStore getSharedPathStore() {
+        return sharedPathStore;
+    }
+
+    /**
+     * @param subtree If not null, and the store is created by this call, the files of this subtree are added to it
+     *                (along with those of the pre-populated namespace, if any).
+     */
+    private static synchronized CompactPathStore getOrCreateSharedPathStore(int minDepth, NamespaceSnapshot subtree) {
+        if (sharedPathStore == null) {
+            sharedPathStore = createPathStore(minDepth, subtree, true);
+            sharedPathStoreNamespace = prepopulatedNamespace;
         }
+        return sharedPathStore;
+    }
+
+    /**
+     * Discard the store of the shared file pools, so that the first shared file pool created from now on starts
+     * with a new store, with its own minimum depth. Called whenever a workload is created, as the files of the
+     * previous workload are not part of the new one. File pools that were already created keep the old store.
+     */
+    public static synchronized void resetSharedPathStore() {
+        if (sharedPathStore != null && sharedPathStore.getNumRejected() > 0)
+            LOG.warn(sharedPathStore.getNumRejected() + " file(s) were not added to the shared file store, as they " +
+                    "were shallower than its minimum depth (" + sharedPathStore.getMinDepth() + ").");
+
+        sharedPathStore = null;
+        sharedPathStoreNamespace = null;
+    }
+
+    private static CompactPathStore createPathStore(int minDepth, NamespaceSnapshot subtree, boolean shared) {
+        CompactPathStore files = new CompactPathStore(minDepth);
+        if (subtree != null) {
+            for (String file : subtree.getFiles())
+                files.addFile(file);
+        }
+
+        synchronized (FilePoolUtils.class) {
+            if (prepopulatedNamespace != null) {
+                if (shared)
+                    prepopulatedNamespace.addFilesTo(files, 0, 1);
+                else
+                    prepopulatedNamespace.addFilesTo(files, nextPrepopulatedSlice++ % numPrepopulatedSlices,
+                            numPrepopulatedSlices);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Make the files of the given pre-populated namespace (other than those that could not be created) available to
+     * the file pools of this VM, including the shared file pools that have already been created.
+     *
+     * @param numSlices When file pools are not shared, the files are split into this many slices (usually, one per
+     *                  worker thread), and each new file pool receives the next slice.
+     */
+    public static synchronized void setPrepopulatedNamespace(PrepopulatedNamespace namespace, int numSlices) {
+        prepopulatedNamespace = namespace;
+        numPrepopulatedSlices = Math.max(numSlices, 1);
+        nextPrepopulatedSlice = 0;
+
+        // A namespace is only added to the shared store once, however many times it is set.
+        if (namespace != null && sharedPathStore != null && sharedPathStoreNamespace != namespace) {
+            if (sharedPathStoreNamespace != null)
+                LOG.warn("The shared file store already holds pre-populated namespace " + sharedPathStoreNamespace +
+                        ". Adding the files of " + namespace + " as well.");
+
+            int numAdded = namespace.addFilesTo(sharedPathStore, 0, 1);
+            sharedPathStoreNamespace = namespace;
+            LOG.debug("Added " + numAdded + " pre-populated file(s) to the shared file store.");
+        }
+    }
+
+    /**
+     * Set the shape of the namespace generated by the {@link FileTreeGenerator}s created from now on. If null, they
+     * generate a tree with a fixed fan-out ({@code dir.per.dir} and {@code files.per.dir}).
+     */
+    public static synchronized void setNamespaceShape(NamespaceShape shape) {
+        namespaceShape = shape;
+    }
+
+    private static synchronized NamespaceShape getNamespaceShape() {
+        return namespaceShape;
+    }
+
+    /**
+     * Return the existing subtree stored in the given local file, loading it if this is the first time it has
+     * been requested on this VM.
+     *
+     * @param path Path to either a {@link NamespaceSnapshot} or a plain-text file with one directory per line.
+     */
+    public static synchronized NamespaceSnapshot getExistingSubtree(String path) throws FileNotFoundException {
+        NamespaceSnapshot subtree = existingSubtrees.get(path);
+        if (subtree == null) {
+            try {
+                subtree = NamespaceSnapshot.load(path);
+            } catch (FileNotFoundException ex) {
+                throw ex;
+            } catch (IOException ex) {
+                FileNotFoundException notFound = new FileNotFoundException("Could not load existing subtree from '" +
+                        path + "': " + ex.getMessage());
+                notFound.initCause(ex);
+                throw notFound;
+            }
+
+            LOG.info("Loaded existing subtree " + subtree + ".");
+            existingSubtrees.put(path, subtree);
+        }
+        return subtree;
+    }
 
-        return path;
+    /**
+     * Return the calling thread's file pool, creating it if necessary, as described by the given configuration.
+     */
+    public static FilePool getFilePool(BMConfiguration bmConf) throws FileNotFoundException {
+        return getFilePool(bmConf.getBaseDir(), bmConf.getDirPerDir(), bmConf.getFilesPerDir(), bmConf.getTreeDepth(),
+                bmConf.isFixedDepthTree(), bmConf.isExistingSubtree(), bmConf.getExistingSubtreePath(),
+                bmConf.isSharedFilePool(), FileSelectionPolicy.fromConfiguration(bmConf));
     }
 
+    /**
+     * Return the calling thread's file pool, creating it if necessary.
+     *
+     * @param sharedFilePool If true, a new file pool selects files from all the files created by the shared file
+     *                       pools of this VM. Otherwise, it only selects from the files that it created itself.
+     * @param selectionPolicy How a new file pool selects the targets of each class of operation.
+     */
     public static FilePool getFilePool(String baseDir, int dirsPerDir, int filesPerDir, int treeDepth,
-                                       boolean fixedDepthTree, boolean isExistingSubtree, String existingSubtreePath)
+                                       boolean fixedDepthTree, boolean isExistingSubtree, String existingSubtreePath,
+                                       boolean sharedFilePool, FileSelectionPolicy selectionPolicy)
             throws FileNotFoundException {
         FilePool filePool = filePools.get();
         if (filePool == null) {
+            // Generated trees skip files and directories that are too shallow. The existing subtree does not.
+            int minDepth = isExistingSubtree && !fixedDepthTree ? 0 : FileTreeGenerator.THRESHOLD;
+            // The files of an existing subtree (if it has any) can be operated on like any other file.
+            NamespaceSnapshot subtree = isExistingSubtree && !fixedDepthTree ?
+                    getExistingSubtree(existingSubtreePath) : null;
+            CompactPathStore files = sharedFilePool ?
+                    getOrCreateSharedPathStore(minDepth, subtree) : createPathStore(minDepth, subtree, false);
             if (fixedDepthTree) {
-                filePool = new FixeDepthFileTreeGenerator(baseDir, treeDepth);
+                filePool = new FixeDepthFileTreeGenerator(baseDir, treeDepth, files, selectionPolicy);
             }
             else if (isExistingSubtree) {
-                filePool = new ExistingSubtreeFileGenerator(existingSubtreePath);
+                filePool = new ExistingSubtreeFileGenerator(subtree, files, selectionPolicy);
             }
             else {
-                filePool = new FileTreeGenerator(baseDir, filesPerDir, dirsPerDir, 0);
+                filePool = new FileTreeGenerator(baseDir, filesPerDir, dirsPerDir, 0, files, selectionPolicy,
+                        getNamespaceShape());
             }
             filePools.set(filePool);
             LOG.debug("New FilePool " +filePool+" created. Total :"+ filePoolCount.incrementAndGet());
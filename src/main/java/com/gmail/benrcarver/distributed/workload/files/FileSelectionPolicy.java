@@ -0,0 +1,61 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import com.gmail.benrcarver.distributed.workload.random.KeySelector;
+
+/**
+ * The {@link KeySelector}s with which a {@link FilePool} selects the files and directories targeted by each class of
+ * operation:
+ *
+ * - read: READ and APPEND.
+ * - stat: LS FILE, STAT FILE, and the CHMOD, CHOWN and SET REPLICATION of files.
+ * - list: LS DIR, STAT DIR, and the CHMOD and CHOWN of directories.
+ * - mutate: RENAME and DELETE.
+ */
+public class FileSelectionPolicy {
+    /**
+     * Selects every file and directory uniformly.
+     */
+    public static final FileSelectionPolicy UNIFORM = new FileSelectionPolicy(KeySelector.UNIFORM,
+            KeySelector.UNIFORM, KeySelector.UNIFORM, KeySelector.UNIFORM);
+
+    private final KeySelector read;
+    private final KeySelector stat;
+    private final KeySelector list;
+    private final KeySelector mutate;
+
+    public FileSelectionPolicy(KeySelector read, KeySelector stat, KeySelector list, KeySelector mutate) {
+        this.read = read;
+        this.stat = stat;
+        this.list = list;
+        this.mutate = mutate;
+    }
+
+    /**
+     * Create the policy described by the given configuration.
+     */
+    public static FileSelectionPolicy fromConfiguration(BMConfiguration bmConf) {
+        double theta = bmConf.getKeyDistributionZipfianTheta();
+        double hotDataFraction = bmConf.getKeyDistributionHotspotDataFraction();
+        double hotOpFraction = bmConf.getKeyDistributionHotspotOpFraction();
+
+        return new FileSelectionPolicy(
+                KeySelector.create(bmConf.getReadKeyDistribution(), theta, hotDataFraction, hotOpFraction),
+                KeySelector.create(bmConf.getStatKeyDistribution(), theta, hotDataFraction, hotOpFraction),
+                KeySelector.create(bmConf.getListKeyDistribution(), theta, hotDataFraction, hotOpFraction),
+                KeySelector.create(bmConf.getMutateKeyDistribution(), theta, hotDataFraction, hotOpFraction));
+    }
+
+    public KeySelector getReadSelector() { return read; }
+
+    public KeySelector getStatSelector() { return stat; }
+
+    public KeySelector getListSelector() { return list; }
+
+    public KeySelector getMutateSelector() { return mutate; }
+
+    @Override
+    public String toString() {
+        return "FileSelectionPolicy(read=" + read + ", stat=" + stat + ", list=" + list + ", mutate=" + mutate + ")";
+    }
+}
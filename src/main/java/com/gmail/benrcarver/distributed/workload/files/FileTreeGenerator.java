@@ -2,33 +2,93 @@ package com.gmail.benrcarver.distributed.workload.files;
 
 import com.gmail.benrcarver.distributed.Commander;
 import com.gmail.benrcarver.distributed.coin.FileSizeMultiFaceCoin;
+import com.gmail.benrcarver.distributed.workload.random.KeySelector;
 import io.hops.metadata.ndb.dalimpl.hdfs.PathUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.UUID;
 
 public class FileTreeGenerator implements FilePool {
     public static final Logger LOG = LoggerFactory.getLogger(FileTreeGenerator.class);
     private final Random rand1;
-    protected List<String> allThreadFiles;
-    protected List<String> allThreadDirs;
+
+    /**
+     * The files that can be read, stat'd, renamed, and deleted. May be shared with other threads.
+     */
+    protected final CompactPathStore files;
+
+    /**
+     * How the targets of each class of operation are selected from {@code files}.
+     */
+    protected final FileSelectionPolicy selectionPolicy;
+
+    /**
+     * Passed to the selectors of {@code selectionPolicy}. See {@link FileTreeGenerator#setRandom(SplittableRandom)}.
+     */
+    private SplittableRandom random = new SplittableRandom();
     protected String threadDir;
-    private final NameSpaceGenerator nameSpaceGenerator;
-    private final int THRESHOLD = 3;
+    private final PathGenerator nameSpaceGenerator;
+
+    /**
+     * Files and directories whose paths have fewer components than this are never selected.
+     */
+    public static final int THRESHOLD = 3;
+
+    /**
+     * Reused to build the paths that are handed out.
+     */
+    private final StringBuilder pathBuilder = new StringBuilder(128);
+
+    /**
+     * The slot and entry of the most recently selected file. Used when that file is renamed.
+     */
     private int currIndex = -1;
+    private long currEntry = CompactPathStore.EMPTY;
 
     public FileTreeGenerator(String baseDir, int filesPerDir,
                              int dirPerDir, int initialTreeDepth) {
-        this.allThreadFiles = new ArrayList<>(10000);
-        this.allThreadDirs = new ArrayList<>(10000);
+        this(baseDir, filesPerDir, dirPerDir, initialTreeDepth, new CompactPathStore(THRESHOLD));
+    }
+
+    /**
+     * @param files Where to keep track of the files that have been created. New files are always created within
+     *              this generator's own directory, but files are selected from the entire store. The store
+     *              should have a minimum depth of {@link FileTreeGenerator#THRESHOLD}.
+     */
+    public FileTreeGenerator(String baseDir, int filesPerDir,
+                             int dirPerDir, int initialTreeDepth, CompactPathStore files) {
+        this(baseDir, filesPerDir, dirPerDir, initialTreeDepth, files, FileSelectionPolicy.UNIFORM);
+    }
+
+    /**
+     * @param files Where to keep track of the files that have been created. New files are always created within
+     *              this generator's own directory, but files are selected from the entire store. The store
+     *              should have a minimum depth of {@link FileTreeGenerator#THRESHOLD}.
+     * @param selectionPolicy How files and directories are selected from the store.
+     */
+    public FileTreeGenerator(String baseDir, int filesPerDir, int dirPerDir, int initialTreeDepth,
+                             CompactPathStore files, FileSelectionPolicy selectionPolicy) {
+        this(baseDir, filesPerDir, dirPerDir, initialTreeDepth, files, selectionPolicy, null);
+    }
+
+    /**
+     * @param files Where to keep track of the files that have been created. New files are always created within
+     *              this generator's own directory, but files are selected from the entire store. The store
+     *              should have a minimum depth of {@link FileTreeGenerator#THRESHOLD}.
+     * @param selectionPolicy How files and directories are selected from the store.
+     * @param shape If not null, new files and directories are generated by a {@link SampledNameSpaceGenerator} of
+     *              this shape, and {@code filesPerDir} and {@code dirPerDir} are ignored.
+     */
+    public FileTreeGenerator(String baseDir, int filesPerDir, int dirPerDir, int initialTreeDepth,
+                             CompactPathStore files, FileSelectionPolicy selectionPolicy, NamespaceShape shape) {
+        this.files = files;
+        this.selectionPolicy = selectionPolicy;
         this.rand1 = new Random(System.currentTimeMillis());
         UUID uuid = UUID.randomUUID();
 
@@ -58,14 +118,15 @@ public class FileTreeGenerator implements FilePool {
             }
         }
 
-        nameSpaceGenerator = new NameSpaceGenerator(threadDir, filesPerDir, dirPerDir);
+        if (shape != null)
+            nameSpaceGenerator = shape.newGenerator(threadDir);
+        else
+            nameSpaceGenerator = new NameSpaceGenerator(threadDir, filesPerDir, dirPerDir);
     }
 
     @Override
     public String getDirToCreate() {
-        String path = nameSpaceGenerator.generateNewDirPath();
-        allThreadDirs.add(path);
-        return path;
+        return nameSpaceGenerator.generateNewDirPath();
     }
 
     @Override
@@ -75,52 +136,53 @@ public class FileTreeGenerator implements FilePool {
 
     @Override
     public void fileCreationSucceeded(String file) {
-        allThreadFiles.add(file);
+        if (!files.addFile(file) && LOG.isDebugEnabled())
+            LOG.debug("Created file '" + file + "' is shallower than the minimum depth of the file pool (" +
+                    files.getMinDepth() + "). It will not be selected by other operations.");
     }
 
     @Override
     public String getFileToRead() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getReadSelector());
     }
 
     @Override
     public String getFileToRename() {
-        if (allThreadFiles.isEmpty()) {
-            return null;
-        }
-
-        for (int i = 0; i < allThreadFiles.size(); i++) {
-            currIndex = rand1.nextInt(allThreadFiles.size());
-            String path = allThreadFiles.get(currIndex);
-            if (getPathLength(path) < THRESHOLD) {
-                continue;
-            }
-            return path;
-        }
+        if (selectRandomFile(selectionPolicy.getMutateSelector()))
+            return buildPath(currEntry);
 
         return null;
     }
 
     @Override
     public void fileRenamed(String previousName, String newName) {
-        String currentFile = allThreadFiles.get(currIndex);
-        if (!currentFile.equals(previousName))
+        if (currEntry == CompactPathStore.EMPTY)
             throw new IllegalStateException("Renamed file with old name '" + previousName +
-                    "' not found. New name is '" + newName + "'. Current name is: '" + currentFile + "'");
-        allThreadFiles.set(currIndex, newName);
+                    "', but no file was selected. New name is '" + newName + "'");
+
+        // The file may have been deleted by another thread in the meantime, in which case there is nothing to do.
+        if (!files.replaceFile(currIndex, currEntry, newName) && LOG.isDebugEnabled())
+            LOG.debug("Renamed file '" + previousName + "' is no longer in the file pool. Dropping '" +
+                    newName + "'.");
+
+        currEntry = CompactPathStore.EMPTY;
     }
 
     @Override
     public String getFileToDelete() {
-        if (allThreadFiles.isEmpty()) {
+        long entry = CompactPathStore.EMPTY;
+        // An empty slot means that the file was already removed, so we draw again.
+        while (entry == CompactPathStore.EMPTY && files.size() > 0)
+            entry = files.removeFile(selectionPolicy.getMutateSelector().select(Math.max(files.getNumSlots(), 1), random));
+
+        if (entry == CompactPathStore.EMPTY) {
             return null;
         }
 
-        currIndex = allThreadFiles.size()-1;
-        String fileToDelete = allThreadFiles.remove(currIndex);
+        String fileToDelete = buildPath(entry);
 
         if (LOG.isDebugEnabled())
-            LOG.debug("Returning file '" + fileToDelete + "' for deletion. File pool size: " + allThreadFiles.size());
+            LOG.debug("Returning file '" + fileToDelete + "' for deletion. File pool size: " + files.size());
 
         return fileToDelete;
 
@@ -133,12 +195,12 @@ public class FileTreeGenerator implements FilePool {
 
     @Override
     public String getFileToStat() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getStatSelector());
     }
 
     @Override
     public String getFileToInfo() {
-        return getRandomFile();
+        return getRandomFile(selectionPolicy.getStatSelector());
     }
 
     @Override
@@ -151,42 +213,56 @@ public class FileTreeGenerator implements FilePool {
         return true;
     }
 
+    @Override
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
 
-    private String getRandomFile() {
-        if (!allThreadFiles.isEmpty()) {
-            for (int i = 0; i < allThreadFiles.size(); i++) {
-                currIndex = rand1.nextInt(allThreadFiles.size());
-                String path = allThreadFiles.get(currIndex);
-                if (getPathLength(path) < THRESHOLD) {
-                    continue;
-                }
-                return path;
+    /**
+     * Select a random file, and store its slot and entry in {@code currIndex} and {@code currEntry}. The store only
+     * holds files that are deep enough, so this takes a single draw, unless it lands on the slot of a removed file.
+     *
+     * @return False if the pool is empty.
+     */
+    private boolean selectRandomFile(KeySelector selector) {
+        while (files.size() > 0) {
+            int index = selector.select(Math.max(files.getNumSlots(), 1), random);
+            long entry = files.getEntry(index);
+            // The slot is empty if its file was removed, in which case we draw again.
+            if (entry != CompactPathStore.EMPTY) {
+                currIndex = index;
+                currEntry = entry;
+                return true;
             }
         }
 
-        LOG.error("Error: Unable to getRandomFile from file pool: " + this + ". PoolSize is: "+allThreadFiles.size());
-        return null;
+        return false;
     }
 
-    private int getPathLength(String path){
-        return StringUtils.countMatches(path,"/");
+    private String buildPath(long entry) {
+        pathBuilder.setLength(0);
+        return files.appendPath(pathBuilder, entry).toString();
+    }
+
+    private String getRandomFile(KeySelector selector) {
+        if (selectRandomFile(selector))
+            return buildPath(currEntry);
+
+        LOG.error("Error: Unable to getRandomFile from file pool: " + this + ". PoolSize is: "+files.size());
+        return null;
     }
 
     public String getRandomDir() {
-        if (!allThreadFiles.isEmpty()) {
-            for (int i = 0; i < allThreadFiles.size(); i++) {
-                currIndex = rand1.nextInt(allThreadFiles.size());
-                String path = allThreadFiles.get(currIndex);
-                int dirIndex = path.lastIndexOf("/");
-                path = path.substring(0, dirIndex);
-                if (getPathLength(path) < THRESHOLD) {
-                    continue;
-                }
-                return path;
-            }
+        // Directories are selected from the store's index of parent directories, which only holds those that are
+        // deep enough.
+        int numDirs = files.getNumParentDirectories();
+        if (numDirs > 0) {
+            pathBuilder.setLength(0);
+            int index = selectionPolicy.getListSelector().select(numDirs, random);
+            return files.appendDirectoryPath(pathBuilder, files.getParentDirectory(index)).toString();
         }
 
-        LOG.error("Error: Unable to getRandomDir from file pool: " + this + ". PoolSize is: "+allThreadFiles.size());
+        LOG.error("Error: Unable to getRandomDir from file pool: " + this + ". PoolSize is: "+files.size());
         return null;
     }
 
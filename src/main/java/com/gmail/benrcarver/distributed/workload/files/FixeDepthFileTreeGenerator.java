@@ -4,4 +4,9 @@ public class FixeDepthFileTreeGenerator extends FileTreeGenerator {
     public FixeDepthFileTreeGenerator(String baseDir, int treeDepth) {
         super(baseDir, Integer.MAX_VALUE, Integer.MAX_VALUE, treeDepth);
     }
-}
\ No newline at end of file
+
+    public FixeDepthFileTreeGenerator(String baseDir, int treeDepth, CompactPathStore files,
+                                      FileSelectionPolicy selectionPolicy) {
+        super(baseDir, Integer.MAX_VALUE, Integer.MAX_VALUE, treeDepth, files, selectionPolicy);
+    }
+}
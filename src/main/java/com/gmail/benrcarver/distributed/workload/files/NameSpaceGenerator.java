@@ -1,14 +1,16 @@
 package com.gmail.benrcarver.distributed.workload.files;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
 
-public class NameSpaceGenerator {
+/**
+ * Generates a tree with a fixed fan-out: the directories are filled one after the other, with {@code filesPerDir}
+ * files each, and every directory has up to {@code dirPerDir} subdirectories. See {@link SampledNameSpaceGenerator}
+ * for a namespace whose shape is drawn from distributions.
+ */
+public class NameSpaceGenerator implements PathGenerator {
     private int filesPerDirCount;
     private final List<String> allDirs;
-    private final List<String> allDirectoriesEverCreated;
     private final int FILES_PER_DIR;
     private final int DIR_PER_DIR;
     private int fileCounter;
@@ -18,7 +20,6 @@ public class NameSpaceGenerator {
 
     public NameSpaceGenerator(String baseDir, int filesPerDir, int dirPerDir) {
         this.allDirs = new LinkedList<>();
-        this.allDirectoriesEverCreated = new ArrayList<>();
         this.FILES_PER_DIR = filesPerDir;
         this.DIR_PER_DIR = dirPerDir;
 
@@ -34,13 +35,14 @@ public class NameSpaceGenerator {
         return null;
     }
 
+    @Override
     public String generateNewDirPath(){
         String path = dirGenerator.getNextDirName(DIR_PREFIX);
         allDirs.add(path);
-        allDirectoriesEverCreated.add(path);
         return path;
     }
 
+    @Override
     public String getFileToCreate() {
         if (allDirs.isEmpty()) {
             generateNewDirPath();
@@ -0,0 +1,92 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import com.gmail.benrcarver.distributed.workload.random.Utils;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Describes the namespace generated by {@link SampledNameSpaceGenerator}s: the distributions from which the number of
+ * subdirectories and files of each directory, the depth of each new file and directory, and the length of each name
+ * are drawn.
+ *
+ * Every generator created by the same shape draws from its own {@link Random}, seeded with the shape's seed and the
+ * number of generators that the shape created before it. So, for a given seed, the same generators produce the same
+ * namespace from one run to the next.
+ */
+public class NamespaceShape {
+    private final DiscreteDistribution dirsPerDir;
+    private final DiscreteDistribution filesPerDir;
+    private final DiscreteDistribution depth;
+    private final DiscreteDistribution nameLength;
+    private final long seed;
+
+    private final AtomicInteger numGenerators = new AtomicInteger(0);
+
+    /**
+     * @param dirsPerDir The maximum number of subdirectories of a directory. Drawn once per directory.
+     * @param filesPerDir The maximum number of files in a directory. Drawn once per directory.
+     * @param depth The number of directories between the generator's base directory and a new file or directory.
+     *              Drawn once per file and directory.
+     * @param nameLength The length of the name of a new file or directory, unless more characters are needed to keep
+     *                   the name unique.
+     */
+    public NamespaceShape(DiscreteDistribution dirsPerDir, DiscreteDistribution filesPerDir,
+                          DiscreteDistribution depth, DiscreteDistribution nameLength, long seed) {
+        this.dirsPerDir = dirsPerDir;
+        this.filesPerDir = filesPerDir;
+        this.depth = depth;
+        this.nameLength = nameLength;
+        this.seed = seed;
+    }
+
+    /**
+     * Return the shape described by the given configuration, or null if no namespace distribution is configured
+     * (in which case the fixed fan-out {@link NameSpaceGenerator} should be used). Distributions that are not
+     * configured fall back to {@code dir.per.dir}, {@code files.per.dir} and {@code tree.depth}, and to names of
+     * {@link SampledNameSpaceGenerator#DEFAULT_NAME_LENGTH} characters.
+     */
+    public static NamespaceShape fromConfiguration(BMConfiguration bmConf) {
+        String dirsPerDir = bmConf.getNamespaceDirsPerDirDistribution();
+        String filesPerDir = bmConf.getNamespaceFilesPerDirDistribution();
+        String depth = bmConf.getNamespaceDepthDistribution();
+        String nameLength = bmConf.getNamespaceNameLengthDistribution();
+
+        if (dirsPerDir.isEmpty() && filesPerDir.isEmpty() && depth.isEmpty() && nameLength.isEmpty())
+            return null;
+
+        return new NamespaceShape(
+                dirsPerDir.isEmpty() ? DiscreteDistribution.fixed(bmConf.getDirPerDir()) :
+                        DiscreteDistribution.parse(dirsPerDir),
+                filesPerDir.isEmpty() ? DiscreteDistribution.fixed(bmConf.getFilesPerDir()) :
+                        DiscreteDistribution.parse(filesPerDir),
+                depth.isEmpty() ? DiscreteDistribution.fixed(bmConf.getTreeDepth()) :
+                        DiscreteDistribution.parse(depth),
+                nameLength.isEmpty() ? DiscreteDistribution.fixed(SampledNameSpaceGenerator.DEFAULT_NAME_LENGTH) :
+                        DiscreteDistribution.parse(nameLength),
+                bmConf.getBenchMarkRandomSeed());
+    }
+
+    /**
+     * Create a generator of paths within the given directory.
+     */
+    public SampledNameSpaceGenerator newGenerator(String baseDir) {
+        long generatorSeed = Utils.fnvhash64(seed + numGenerators.getAndIncrement());
+        return new SampledNameSpaceGenerator(baseDir, this, new Random(generatorSeed));
+    }
+
+    public DiscreteDistribution getDirsPerDir() { return dirsPerDir; }
+
+    public DiscreteDistribution getFilesPerDir() { return filesPerDir; }
+
+    public DiscreteDistribution getDepth() { return depth; }
+
+    public DiscreteDistribution getNameLength() { return nameLength; }
+
+    @Override
+    public String toString() {
+        return "NamespaceShape(dirsPerDir=" + dirsPerDir + ", filesPerDir=" + filesPerDir + ", depth=" + depth +
+                ", nameLength=" + nameLength + ", seed=" + seed + ")";
+    }
+}
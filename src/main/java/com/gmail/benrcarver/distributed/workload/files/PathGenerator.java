@@ -0,0 +1,16 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+/**
+ * Generates the paths of the files and directories created by a {@link FileTreeGenerator}.
+ */
+public interface PathGenerator {
+    /**
+     * Return the path of a new directory.
+     */
+    public String generateNewDirPath();
+
+    /**
+     * Return the path of a new file.
+     */
+    public String getFileToCreate();
+}
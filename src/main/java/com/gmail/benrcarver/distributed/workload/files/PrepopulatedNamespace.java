@@ -0,0 +1,235 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import com.gmail.benrcarver.distributed.Commands;
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A namespace of files that is created before a randomly-generated workload starts, so that every VM operates on
+ * the same, known set of files from the start of the measured phase.
+ *
+ * The files are spread across "leaf" directories of {@code filesPerDir} files each. The leaf directories are the
+ * bottom level of a tree with a fan-out of {@code dirsPerDir}, and are all at the same depth below the root. Leaf
+ * directory {@code k} is named after the digits of {@code k} in base {@code dirsPerDir}, and file {@code j} is in
+ * leaf directory {@code j / filesPerDir}. Since the namespace is fully determined by its parameters, it can be
+ * partitioned across VMs (each creates the leaf directories whose index modulo the number of partitions is its
+ * partition), and the manifest of the files that exist once it has been created only consists of the (usually
+ * empty) list of files that could not be created.
+ */
+public class PrepopulatedNamespace {
+    public static final Logger LOG = LoggerFactory.getLogger(PrepopulatedNamespace.class);
+
+    /**
+     * The base name used for pre-populated directories.
+     */
+    public static final String DIR_NAME = "PreDir";
+
+    /**
+     * The base name used for pre-populated files.
+     */
+    public static final String FILE_NAME = "PreFile";
+
+    private final String rootDir;
+    private final int numFiles;
+    private final int dirsPerDir;
+    private final int filesPerDir;
+    private final int numLeafDirectories;
+
+    /**
+     * The number of levels of directories below the root. The leaf directories are at the last level.
+     */
+    private final int depth;
+
+    /**
+     * The files that could not be created, in ascending order.
+     */
+    private volatile int[] failedFiles = new int[0];
+
+    public PrepopulatedNamespace(String rootDir, int numFiles, int dirsPerDir, int filesPerDir) {
+        if (numFiles < 1 || dirsPerDir < 2 || filesPerDir < 1)
+            throw new IllegalArgumentException("Invalid pre-populated namespace: numFiles=" + numFiles +
+                    ", dirsPerDir=" + dirsPerDir + ", filesPerDir=" + filesPerDir);
+
+        this.rootDir = rootDir.length() > 1 && rootDir.endsWith("/") ?
+                rootDir.substring(0, rootDir.length() - 1) : rootDir;
+        this.numFiles = numFiles;
+        this.dirsPerDir = dirsPerDir;
+        this.filesPerDir = filesPerDir;
+        this.numLeafDirectories = (int) (((long) numFiles + filesPerDir - 1) / filesPerDir);
+
+        int levels = 1;
+        for (long capacity = dirsPerDir; capacity < numLeafDirectories; capacity *= dirsPerDir)
+            levels++;
+        this.depth = levels;
+    }
+
+    /**
+     * Return the pre-populated namespace described by the given configuration, or null if there is none.
+     */
+    public static PrepopulatedNamespace fromConfiguration(BMConfiguration bmConf) {
+        if (bmConf.getPrepopulateNumFiles() <= 0)
+            return null;
+
+        return new PrepopulatedNamespace(bmConf.getPrepopulateRootDir(), bmConf.getPrepopulateNumFiles(),
+                bmConf.getPrepopulateDirsPerDir(), bmConf.getPrepopulateFilesPerDir());
+    }
+
+    public int getNumFiles() {
+        return numFiles;
+    }
+
+    public int getNumLeafDirectories() {
+        return numLeafDirectories;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Return the path of the given leaf directory.
+     */
+    public String getLeafDirectory(int leaf) {
+        return appendLeafDirectory(new StringBuilder(rootDir.length() + depth * 12), leaf).toString();
+    }
+
+    private StringBuilder appendLeafDirectory(StringBuilder builder, int leaf) {
+        builder.append(rootDir.equals("/") ? "" : rootDir);
+
+        int[] digits = new int[depth];
+        for (int level = depth - 1, remaining = leaf; level >= 0; level--, remaining /= dirsPerDir)
+            digits[level] = remaining % dirsPerDir;
+        for (int digit : digits)
+            builder.append('/').append(DIR_NAME).append(digit);
+
+        return builder;
+    }
+
+    /**
+     * Return the path of the given file.
+     */
+    public String getFile(int file) {
+        StringBuilder builder = new StringBuilder(rootDir.length() + depth * 12 + 16);
+        return appendLeafDirectory(builder, file / filesPerDir).append('/').append(FILE_NAME).append(file)
+                .toString();
+    }
+
+    /**
+     * Create this VM's partition of the namespace: every leaf directory whose index modulo {@code numPartitions} is
+     * {@code partition}, along with its files. The leaf directories are striped across {@code numTasks} tasks, each
+     * of which uses its own client and creates one leaf directory (and then its files) at a time. The HopsFS client
+     * has no batched create, so each file is its own create. Throughput comes from the number of tasks.
+     *
+     * @return The files of this partition that could not be created, in ascending order.
+     */
+    public int[] create(DistributedFileSystem sharedHdfs, ExecutorService executor, int numTasks, int partition,
+                        int numPartitions) throws InterruptedException {
+        if (numPartitions < 1 || partition < 0 || partition >= numPartitions)
+            throw new IllegalArgumentException("Invalid partition " + partition + " of " + numPartitions + ".");
+
+        LOG.info("Creating partition " + partition + "/" + numPartitions + " of pre-populated namespace " + this +
+                " with " + numTasks + " task(s).");
+
+        AtomicInteger filesCreated = new AtomicInteger(0);
+        long start = System.currentTimeMillis();
+
+        List<Callable<List<Integer>>> tasks = new ArrayList<>(numTasks);
+        for (int t = 0; t < numTasks; t++) {
+            final int firstLeaf = partition + t * numPartitions;
+            final int stride = numTasks * numPartitions;
+            tasks.add(() -> {
+                List<Integer> failed = new ArrayList<>();
+                DistributedFileSystem hdfs = Commands.getHdfsClient(sharedHdfs, true);
+                try {
+                    for (int leaf = firstLeaf; leaf < numLeafDirectories; leaf += stride) {
+                        // Failures to create the directory are detected when its files are created.
+                        Commands.mkdir(getLeafDirectory(leaf), hdfs);
+
+                        int lastFile = (int) Math.min((long) (leaf + 1) * filesPerDir, numFiles);
+                        for (int file = leaf * filesPerDir; file < lastFile; file++) {
+                            if (Commands.createFile(getFile(file), "", hdfs))
+                                filesCreated.incrementAndGet();
+                            else
+                                failed.add(file);
+                        }
+                    }
+                } finally {
+                    Commands.clearMetricDataNoPrompt(hdfs);
+                    Commands.returnHdfsClient(hdfs);
+                }
+                return failed;
+            });
+        }
+
+        List<Integer> failed = new ArrayList<>();
+        for (Future<List<Integer>> future : executor.invokeAll(tasks)) {
+            try {
+                failed.addAll(future.get());
+            } catch (ExecutionException ex) {
+                LOG.error("Failed to create part of the pre-populated namespace:", ex);
+            }
+        }
+
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        LOG.info("Created " + filesCreated.get() + " pre-populated file(s) in " + duration + " ms (" +
+                String.format("%.2f", filesCreated.get() * 1000.0 / duration) + " files/sec). " + failed.size() +
+                " file(s) could not be created.");
+
+        int[] failedFiles = new int[failed.size()];
+        for (int i = 0; i < failedFiles.length; i++)
+            failedFiles[i] = failed.get(i);
+        Arrays.sort(failedFiles);
+        return failedFiles;
+    }
+
+    /**
+     * Record which files could not be created (by any VM). These are excluded from {@link #addFilesTo}.
+     */
+    public void setFailedFiles(int[] failedFiles) {
+        int[] sorted = failedFiles.clone();
+        Arrays.sort(sorted);
+        this.failedFiles = sorted;
+    }
+
+    /**
+     * Return true unless the given file could not be created.
+     */
+    public boolean exists(int file) {
+        return Arrays.binarySearch(failedFiles, file) < 0;
+    }
+
+    /**
+     * Add the files in the given slice of the namespace (those in every leaf directory whose index modulo
+     * {@code numSlices} is {@code slice}) to the given store, skipping any that could not be created.
+     *
+     * @return The number of files that were added.
+     */
+    public int addFilesTo(CompactPathStore store, int slice, int numSlices) {
+        int numAdded = 0;
+        for (int leaf = slice; leaf < numLeafDirectories; leaf += numSlices) {
+            int lastFile = (int) Math.min((long) (leaf + 1) * filesPerDir, numFiles);
+            for (int file = leaf * filesPerDir; file < lastFile; file++) {
+                if (exists(file) && store.addFile(getFile(file)))
+                    numAdded++;
+            }
+        }
+        return numAdded;
+    }
+
+    @Override
+    public String toString() {
+        return "PrepopulatedNamespace(root=" + rootDir + ", numFiles=" + numFiles + ", dirsPerDir=" + dirsPerDir +
+                ", filesPerDir=" + filesPerDir + ", depth=" + depth + ", numFailed=" + failedFiles.length + ")";
+    }
+}
@@ -0,0 +1,166 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a namespace whose fan-out, depth and name lengths are drawn from the distributions of a
+ * {@link NamespaceShape}, rather than the fixed fan-out tree of {@link NameSpaceGenerator}.
+ *
+ * Paths are produced incrementally. Every directory gets a maximum number of files and of subdirectories, drawn when
+ * it is created, and stays open until it is full. For each new file, a depth is drawn, and the file is placed in the
+ * oldest directory of that depth that still has room for a file. If there is none, a new directory is created at that
+ * depth, in the oldest directory of the level above that still has room for a subdirectory (recursively). New
+ * directories are placed the same way, and are open like any other. So, apart from the few directories that are
+ * still open when generation stops, every directory ends up with the fan-out that was drawn for it, as long as the
+ * depth distribution sends enough files and directories to its level. Parents never need to be created explicitly,
+ * as creating a file or directory in HopsFS also creates its missing ancestors.
+ *
+ * The generator only keeps track of the directories that are still open, so its memory footprint depends on how
+ * many directories have room left, not on the number of paths it has generated.
+ *
+ * Names are unique within their parent: each ends with the (decimal) index of the entry within its parent, and is
+ * padded with random letters, in front of the index, up to the drawn length.
+ */
+public class SampledNameSpaceGenerator implements PathGenerator {
+    /**
+     * The length of names when no name length distribution is configured.
+     */
+    public static final int DEFAULT_NAME_LENGTH = 10;
+
+    private final NamespaceShape shape;
+    private final Random random;
+
+    /**
+     * The open directories of each level. Level 0 is the base directory.
+     */
+    private final List<Level> levels = new ArrayList<>();
+
+    private final StringBuilder pathBuilder = new StringBuilder(128);
+
+    private long numDirectories = 0;
+    private long numFiles = 0;
+
+    SampledNameSpaceGenerator(String baseDir, NamespaceShape shape, Random random) {
+        this.shape = shape;
+        this.random = random;
+
+        baseDir = baseDir.trim();
+        if (baseDir.length() > 1 && baseDir.endsWith("/"))
+            baseDir = baseDir.substring(0, baseDir.length() - 1);
+
+        // The base directory can never be filled, so it has no limits.
+        Directory base = new Directory(baseDir.equals("/") ? "" : baseDir, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        Level level = new Level();
+        level.withRoomForFiles.add(base);
+        level.withRoomForDirectories.add(base);
+        levels.add(level);
+    }
+
+    @Override
+    public String generateNewDirPath() {
+        // The base directory already exists, so new directories are at least one level below it.
+        return openDirectory(Math.max(shape.getDepth().sample(random), 1)).path;
+    }
+
+    @Override
+    public String getFileToCreate() {
+        int depth = shape.getDepth().sample(random);
+        Level level = getLevel(depth);
+
+        Directory directory = level.withRoomForFiles.peekFirst();
+        if (directory == null)
+            directory = openDirectory(depth);
+
+        // Whether it was already open or was just opened, the directory is the oldest one with room for a file.
+        if (++directory.numFiles >= directory.maxFiles)
+            level.withRoomForFiles.pollFirst();
+
+        numFiles++;
+        return newChildPath(directory);
+    }
+
+    /**
+     * Create a new directory at the given level (which must be at least 1), in the oldest directory of the level
+     * above that has room for a subdirectory, or in a new directory of that level if there is none.
+     */
+    private Directory openDirectory(int depth) {
+        Level parentLevel = getLevel(depth - 1);
+        Directory parent = parentLevel.withRoomForDirectories.peekFirst();
+        if (parent == null)
+            parent = openDirectory(depth - 1);
+
+        if (++parent.numDirectories >= parent.maxDirectories)
+            parentLevel.withRoomForDirectories.pollFirst();
+
+        // A directory always has room for at least one subdirectory and one file. Otherwise, we could not go any
+        // deeper (or place a file) without creating a sibling.
+        Directory directory = new Directory(newChildPath(parent), Math.max(shape.getDirsPerDir().sample(random), 1),
+                Math.max(shape.getFilesPerDir().sample(random), 1));
+        Level level = getLevel(depth);
+        level.withRoomForFiles.addLast(directory);
+        level.withRoomForDirectories.addLast(directory);
+        numDirectories++;
+        return directory;
+    }
+
+    private Level getLevel(int depth) {
+        while (levels.size() <= depth)
+            levels.add(new Level());
+        return levels.get(depth);
+    }
+
+    private String newChildPath(Directory parent) {
+        String index = Long.toString(parent.numChildren++);
+        int padding = shape.getNameLength().sample(random) - index.length();
+
+        pathBuilder.setLength(0);
+        pathBuilder.append(parent.path).append('/');
+        // Letters only, so the index can always be told apart from the padding.
+        for (int i = 0; i < padding; i++)
+            pathBuilder.append((char) ('a' + random.nextInt(26)));
+        return pathBuilder.append(index).toString();
+    }
+
+    /**
+     * Return the number of directories generated so far, including those generated implicitly as the ancestors of
+     * files and other directories.
+     */
+    public long getNumDirectories() {
+        return numDirectories;
+    }
+
+    public long getNumFiles() {
+        return numFiles;
+    }
+
+    /**
+     * The open directories of one level, oldest first. A directory is in both queues when it is created, and leaves
+     * each of them when it is full of that kind of entry.
+     */
+    private static class Level {
+        final ArrayDeque<Directory> withRoomForFiles = new ArrayDeque<>();
+        final ArrayDeque<Directory> withRoomForDirectories = new ArrayDeque<>();
+    }
+
+    private static class Directory {
+        final String path;
+        final int maxDirectories;
+        final int maxFiles;
+        int numDirectories = 0;
+        int numFiles = 0;
+
+        /**
+         * The number of files and subdirectories. Used to name the next one.
+         */
+        long numChildren = 0;
+
+        Directory(String path, int maxDirectories, int maxFiles) {
+            this.path = path;
+            this.maxDirectories = maxDirectories;
+            this.maxFiles = maxFiles;
+        }
+    }
+}
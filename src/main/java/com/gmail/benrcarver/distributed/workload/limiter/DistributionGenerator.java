@@ -17,6 +17,7 @@
  */
 package com.gmail.benrcarver.distributed.workload.limiter;
 
+import java.io.Closeable;
 import java.util.Random;
 
 import com.gmail.benrcarver.distributed.coin.BMConfiguration;
@@ -25,12 +26,18 @@ import com.gmail.benrcarver.distributed.coin.BMConfiguration;
  *
  * @author Tianium
  */
-public class DistributionGenerator {
+public class DistributionGenerator implements Closeable {
   protected long seed;
   protected Random rand;
 
+  /**
+   * The configured unit ({@code interleaved.bm.iat.unit}), in seconds.
+   */
+  protected int unitSeconds;
+
   public DistributionGenerator(BMConfiguration bmConf) {
     this.seed = bmConf.getBenchMarkRandomSeed();
+    this.unitSeconds = Math.max(bmConf.getInterleavedBMIaTUnit(), 1);
     System.out.println("Confirmed seed used for bursty workload generator: " + seed);
     this.rand = new Random(seed);
   }
@@ -39,6 +46,14 @@ public class DistributionGenerator {
     return 0.0;
   }
 
+  /**
+   * Return how long, in seconds, each value returned by {@link DistributionGenerator#get()} lasts. This is the
+   * configured unit, unless the generator describes the rate at a finer grain.
+   */
+  public double getStepSeconds() {
+    return unitSeconds;
+  }
+
   public int getRandom() {
     return rand.nextInt();
   }
@@ -54,4 +69,11 @@ public class DistributionGenerator {
   public double getGaussian() {
     return rand.nextGaussian();
   }
+
+  /**
+   * Release any resources held by this generator, such as an open file. Called once the workload has finished.
+   */
+  @Override
+  public void close() {
+  }
 }
@@ -17,35 +17,55 @@
  */
 package com.gmail.benrcarver.distributed.workload.limiter;
 
-import com.gmail.benrcarver.distributed.Commander;
 import com.gmail.benrcarver.distributed.coin.BMConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Limits the rate of operations to the one drawn from a {@link DistributionGenerator}, which is re-drawn every
+ * step of the generator (see {@link DistributionGenerator#getStepSeconds()}), i.e., every {@code opsUnit} seconds
+ * unless the generator has a finer grain.
+ *
+ * Rather than periodically releasing batches of permits, the limiter computes the time of every single permit (in
+ * nanoseconds) from the arrival schedule: within each unit, permits are spaced evenly at the unit's rate, and a
+ * fractional number of permits is carried over to the next unit. So, rates of less than one operation per second
+ * (e.g., once the rate is divided among many VMs) are honored, and load does not arrive in bursts. A worker claims
+ * the next permit with a single atomic increment, which never has to be retried, computes its time without locking,
+ * and parks until then. There is no dedicated thread handing out permits: the thread running {@link #call()} only
+ * reports the throughput and how far behind schedule the workers are.
+ *
+ * The schedule is kept as a list of units, which is extended (under a lock) when a permit falls beyond the last unit
+ * drawn so far. This happens once per unit, so the workers almost never contend for the lock.
+ */
 public class DistributionRateLimiter implements WorkerRateLimiter {
   public static final Logger LOG = LoggerFactory.getLogger(DistributionRateLimiter.class);
 
-  public static int OPS_BASE = 1000; // 1 s
-  public static int OPS_INTERVAL = 10; // 10 ms
+  /**
+   * Returned by {@link DistributionRateLimiter#getPermitTime(long)} for permits that fall after the end of the
+   * workload.
+   */
+  private static final long NO_PERMIT = Long.MAX_VALUE;
+
+  private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
 
   protected int lenSlave = 1;
+
+  /**
+   * The index of this VM among the {@code lenSlave} VMs running the workload. Used to interleave the permits of the
+   * VMs, see {@link DistributionRateLimiter#appendUnit()}.
+   */
+  protected int slaveIndex = 0;
   protected DistributionGenerator generator;
   protected long startTime = 0;
   protected long duration = 0;
-  protected long lastInterval = 0;
-  protected final Semaphore semaphore = new Semaphore(0 , false);
-  protected boolean closed = false;
+  protected volatile boolean closed = false;
 
-  protected int unfulfilled = 0;
-  protected int unfulfilledUnit = 0;
-  protected int unfulfilledRemainder = 0;
   protected AtomicInteger completed;
   protected long lastCompleted;
 
@@ -56,23 +76,66 @@ public class DistributionRateLimiter implements WorkerRateLimiter {
 
   private Writer throughputWriter;
 
+  /**
+   * In open-loop mode, rather than waiting for their permits, workers take the time of the next permit as the
+   * intended start time of their next operation, and measure latency from it. So, time spent queued behind slow
+   * operations is included in the reported latency, rather than silently lowering the offered load.
+   */
+  protected final boolean openLoop;
+
+  /**
+   * The time (in terms of {@link System#nanoTime()}) at which the schedule starts, i.e., the time of the first
+   * permit.
+   */
+  private volatile long baseNanos;
+
+  private final long unitNanos;
+
+  /**
+   * The index of the next permit to be claimed.
+   */
+  private final AtomicLong nextPermit = new AtomicLong(0);
+
+  /**
+   * The units of the schedule drawn so far. Unit i starts {@code i * unitNanos} after {@code baseNanos}. Only the
+   * thread holding the lock appends to the array, and it publishes each new unit by incrementing
+   * {@code numUnits}, so the units can be read without locking.
+   */
+  private volatile Unit[] units = new Unit[64];
+  private volatile int numUnits = 0;
+
+  /**
+   * The largest delay observed by {@link #call()} between the time of a permit and the time it was claimed.
+   */
+  private volatile long maxLagNanos = 0;
+
   private final String workloadId;
 
   /**
    * DistributionRateLimiter constructor
+   *
+   * @param numWorkers The number of VMs running the workload. The rates drawn from the generator are divided among
+   *                   them.
+   * @param workerIndex The index of this VM, from 0 to {@code numWorkers - 1}.
    */
-  public DistributionRateLimiter(BMConfiguration bmConf, DistributionGenerator distGenerator, int numWorkers, String id) {
+  public DistributionRateLimiter(BMConfiguration bmConf, DistributionGenerator distGenerator, int numWorkers,
+                                 int workerIndex, String id) {
     try {
       this.lenSlave = numWorkers; // bmConf.getWork().size();
     } catch (Exception e) {
       // Ignore
     }
+    this.slaveIndex = workerIndex;
     this.generator = distGenerator;
     this.duration = bmConf.getInterleavedBmDuration();
-    this.lastInterval = startTime - OPS_INTERVAL;
     this.opsUnit = bmConf.getInterleavedBMIaTUnit();
     this.opsUnitSkiped = bmConf.getInterleavedBMIaTSkipUnit();
     this.workloadId = id;
+    this.openLoop = bmConf.isInterleavedBmOpenLoop();
+    this.unitNanos = Math.max((long) (distGenerator.getStepSeconds() * 1.0e9), 1);
+    // Skipped units are counted in the configured unit, whatever the step of the generator.
+    this.opsUnitSkiped = (int) Math.round(opsUnitSkiped * (double) TimeUnit.SECONDS.toNanos(Math.max(opsUnit, 1)) /
+        unitNanos);
 
     try {
       this.throughputWriter = new BufferedWriter(new FileWriter("rand-workload-" + id + "-throughput.txt", true));
@@ -81,13 +144,23 @@ public class DistributionRateLimiter implements WorkerRateLimiter {
     }
   }
 
-  public int getOPS() {
-    return (int) (generator.get());
+  /**
+   * Draw the number of operations per second of the next unit, for this VM.
+   */
+  public double getOPS() {
+    return generator.get() / lenSlave;
   }
 
+  /**
+   * Set the start of the schedule. The first permit is due immediately, so this should be called as the workload
+   * starts, rather than while the workers are still getting ready.
+   *
+   * @param startTime The start of the workload, in terms of {@link System#currentTimeMillis()}.
+   */
   @Override
   public void setStart(long startTime) {
     this.startTime = startTime;
+    this.baseNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - startTime);
   }
 
   @Override
@@ -107,91 +180,255 @@ public class DistributionRateLimiter implements WorkerRateLimiter {
     this.lastCompleted = 0;
   }
 
+  /**
+   * Claim the next permit and block until it is due.
+   *
+   * @return False if the workload has ended (or the thread was interrupted), in which case no operation should be
+   * performed.
+   */
   @Override
   public boolean checkRate() {
     if (closed) {
       return false;
     }
-    try {
-      semaphore.acquire();
-      return true;
-    } catch (InterruptedException ex) {
+
+    long permitTime = getPermitTime(nextPermit.getAndIncrement());
+    if (permitTime == NO_PERMIT) {
       return false;
     }
+
+    long delay;
+    while ((delay = permitTime - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(this, delay);
+      if (Thread.interrupted()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public DistributionGenerator getGenerator() {
+    return generator;
+  }
+
+  public boolean isOpenLoop() {
+    return openLoop;
+  }
+
+  /**
+   * Open-loop counterpart of {@link DistributionRateLimiter#checkRate()}. Claims the next permit without waiting for
+   * it, and returns its time, which is the intended start time of the next operation. The intended start time may be
+   * in the past if the workers have fallen behind the arrival process.
+   *
+   * @return The intended start time of the next operation in terms of {@link System#nanoTime()}, or -1 if the
+   * workload has ended.
+   */
+  public long acquireIntendedStartTime() {
+    long permitTime = closed ? NO_PERMIT : getPermitTime(nextPermit.getAndIncrement());
+    return permitTime == NO_PERMIT ? -1 : permitTime;
+  }
+
+  /**
+   * Return the number of operations that were scheduled in open-loop mode but never started because
+   * all the workers were busy.
+   */
+  public int getNumUnstarted() {
+    long numScheduled = getNumPermitsBefore(TimeUnit.MILLISECONDS.toNanos(duration));
+    return (int) Math.max(numScheduled - nextPermit.get(), 0);
+  }
+
+  /**
+   * Return how far behind schedule the workers currently are, i.e., how long ago the next unclaimed permit was
+   * due, in nanoseconds. Zero if the workers are keeping up.
+   */
+  public long getLagNanos() {
+    long permitTime = getPermitTime(nextPermit.get());
+    return permitTime == NO_PERMIT ? 0 : Math.max(System.nanoTime() - permitTime, 0);
+  }
+
+  /**
+   * Return the largest value of {@link DistributionRateLimiter#getLagNanos()} observed so far, in nanoseconds.
+   * Sampled once per second.
+   */
+  public long getMaxLagNanos() {
+    return maxLagNanos;
   }
 
   public void closeFileStream() throws IOException {
     this.throughputWriter.close();
   }
 
+  /**
+   * Report the number of operations completed and scheduled, and how far behind schedule the workers are, every
+   * second until the end of the workload.
+   */
   @Override
   public Object call() throws Exception {
-    // Skip units
-    while (opsUnitSkiped > 0) {
-      getOPS();
-      opsUnitSkiped--;
-    }
-
     if (startTime == 0) {
-      startTime = System.currentTimeMillis();
+      setStart(System.currentTimeMillis());
     }
-    int lasts = 0;
-    int lastOPS = 0;
-    while (true) {
-      long now = System.currentTimeMillis();
-      if ((now - startTime) > duration) {
+
+    long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+    long lastScheduled = 0;
+    for (long reportNanos = REPORT_INTERVAL_NANOS; ; reportNanos += REPORT_INTERVAL_NANOS) {
+      long delay;
+      while ((delay = baseNanos + Math.min(reportNanos, durationNanos) - System.nanoTime()) > 0) {
+        TimeUnit.NANOSECONDS.sleep(delay);
+      }
+
+      if (reportNanos > durationNanos) {
         closed = true;
+        LOG.info("Experiment has completed. The workers were at most " + (maxLagNanos / 1.0e6) +
+            " ms behind schedule.");
+        return null;
+      }
+
+      long scheduled = getNumPermitsBefore(reportNanos);
+      long lag = getLagNanos();
+      maxLagNanos = Math.max(maxLagNanos, lag);
+
+      long c = completed == null ? 0 : completed.get();
+      String report = "Completed: " + (c - lastCompleted) + " Released: " + (scheduled - lastScheduled) +
+          " Behind: " + (lag / 1.0e6) + " ms";
+      LOG.info(report);
+
+      if (this.throughputWriter != null) {
+        this.throughputWriter.write(report + "\n");
+        this.throughputWriter.flush();
+      }
+
+      lastCompleted = c;
+      lastScheduled = scheduled;
+    }
+  }
+
+  /**
+   * Return the time of the given permit in terms of {@link System#nanoTime()}, or {@link #NO_PERMIT} if it falls
+   * after the end of the workload.
+   */
+  private long getPermitTime(long permit) {
+    int n = numUnits;
+    Unit[] us = units;
+    Unit unit;
+    if (n > 0 && permit >= us[n - 1].startCount && permit < us[n - 1].endCount) {
+      unit = us[n - 1];
+    } else if (n > 0 && permit < us[n - 1].endCount) {
+      // A permit claimed before the last unit was drawn.
+      unit = findUnitOf(us, n, permit);
+    } else {
+      unit = drawUnitOfPermit(permit);
+      if (unit == null) {
+        return NO_PERMIT;
+      }
+    }
+
+    return baseNanos + unit.startNanos + (long) ((permit - unit.startCount) * unit.nanosPerOp);
+  }
+
+  /**
+   * Return the number of permits due less than the given number of nanoseconds after the start of the schedule.
+   */
+  private long getNumPermitsBefore(long offsetNanos) {
+    Unit unit = drawUnit((int) (offsetNanos / unitNanos));
+    if (unit == null) {
+      // The schedule ends before then.
+      int n = numUnits;
+      return n == 0 ? 0 : (long) Math.ceil(units[n - 1].endCount);
+    }
 
-        if (LOG.isDebugEnabled())
-          LOG.debug("Experiment has completed. Releasing all " + semaphore.getQueueLength() + " waiting threads now.");
-        // Release all waiting threads
-        while(semaphore.hasQueuedThreads()) {
-          semaphore.release();
-        }
+    double count = unit.startCount + (offsetNanos - unit.startNanos) / unit.nanosPerOp;
+    return (long) Math.ceil(Math.min(count, unit.endCount));
+  }
+
+  /**
+   * Draw units until the given permit falls within the last one, and return that unit, or null if the permit falls
+   * after the end of the workload.
+   */
+  private synchronized Unit drawUnitOfPermit(long permit) {
+    long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+    while (numUnits == 0 || units[numUnits - 1].endCount <= permit) {
+      if (numUnits * unitNanos >= durationNanos) {
         return null;
       }
+      appendUnit();
+    }
+    return findUnitOf(units, numUnits, permit);
+  }
 
-      long until = lastInterval + (long)OPS_INTERVAL - now;
-      if (until <= 0) {
-        if (unfulfilled <= 0) {
-          // Generate new OPS after opsUnit.
-          if (lasts <= 0) {
-            lasts = opsUnit;
-            lastOPS = getOPS() / lenSlave;
-          }
-          unfulfilled = lastOPS;
-          lasts--;
-          int numInterval = OPS_BASE / OPS_INTERVAL;
-          unfulfilledUnit = unfulfilled / numInterval;
-          unfulfilledRemainder = unfulfilled % numInterval;
-
-          // Log every 1 second
-          long c = completed.get();
-          LOG.info("Completed: " + (c - lastCompleted) + " Released: " + unfulfilled);
-
-          if (this.throughputWriter != null) {
-            this.throughputWriter.write("Completed: " + (c - lastCompleted) + " Released: " + unfulfilled + "\n");
-            this.throughputWriter.flush();
-          }
-
-          lastCompleted = c;
-        }
-
-        // Grant quota
-        semaphore.release(unfulfilledUnit);
-        unfulfilled -= unfulfilledUnit;
-        if (unfulfilledRemainder > 0) {
-          semaphore.release();
-          unfulfilledRemainder--;
-          unfulfilled--;
-        }
-
-        // Update interval to sleep
-        lastInterval = System.currentTimeMillis();
-        until = (long) OPS_INTERVAL;
+  /**
+   * Draw units until there are more than the given number of them, and return the given unit, or null if it starts
+   * after the end of the workload.
+   */
+  private synchronized Unit drawUnit(int index) {
+    long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+    while (numUnits <= index) {
+      if (numUnits * unitNanos >= durationNanos) {
+        return null;
       }
+      appendUnit();
+    }
+    return units[index];
+  }
+
+  /**
+   * Return the first of the given units that ends after the given permit. The permit must fall within one of them.
+   */
+  private static Unit findUnitOf(Unit[] us, int n, long permit) {
+    int low = 0;
+    int high = n - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (us[mid].endCount > permit) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return us[low];
+  }
+
+  private void appendUnit() {
+    if (numUnits == 0) {
+      // Skip units
+      while (opsUnitSkiped > 0) {
+        getOPS();
+        opsUnitSkiped--;
+      }
+    }
+
+    // The first unit of VM k starts k/lenSlave permits early, so that permit i of VM k is global arrival
+    // i * lenSlave + k. This way, the VMs take turns rather than all issuing operations at the same time, and a
+    // remainder of the global rate is shared evenly rather than rounded away.
+    double startCount = numUnits == 0 ? -(double) slaveIndex / lenSlave : units[numUnits - 1].endCount;
+    double opsPerSecond = Math.max(getOPS(), 0);
+    Unit unit = new Unit(numUnits * unitNanos, startCount, opsPerSecond * unitNanos / 1.0e9,
+        opsPerSecond > 0 ? 1.0e9 / opsPerSecond : Double.POSITIVE_INFINITY);
+
+    if (numUnits == units.length) {
+      Unit[] grown = new Unit[units.length * 2];
+      System.arraycopy(units, 0, grown, 0, numUnits);
+      units = grown;
+    }
+    units[numUnits] = unit;
+    numUnits++;
+  }
+
+  /**
+   * A unit of the schedule, during which permits are due at a constant rate. Permit i is due
+   * {@code (i - startCount) * nanosPerOp} nanoseconds after the start of its unit, for {@code startCount <= i <
+   * endCount}. The counts are fractional, so that the remainder of a unit is carried over to the next one.
+   */
+  private static class Unit {
+    final long startNanos;
+    final double startCount;
+    final double endCount;
+    final double nanosPerOp;
 
-      TimeUnit.MILLISECONDS.sleep(until);
+    Unit(long startNanos, double startCount, double numOperations, double nanosPerOp) {
+      this.startNanos = startNanos;
+      this.startCount = startCount;
+      this.endCount = startCount + numOperations;
+      this.nanosPerOp = nanosPerOp;
     }
   }
 }
@@ -0,0 +1,514 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gmail.benrcarver.distributed.workload.limiter;
+
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Drives the {@link DistributionRateLimiter} from a schedule of phases, each of which shapes the (global) request
+ * rate for a given duration. Schedules are written as a list of phases separated by semicolons, e.g.:
+ *
+ * <pre>
+ *   constant(500, 30s); ramp(500, 5000, 2m); steps(1000, 1000, 5, 30s); sine(2000, 1500, 60s, 5m);
+ *   burst(500, 8000, 60s, 5s, 5m); poisson(2m)
+ * </pre>
+ *
+ * The supported phases are:
+ * <ul>
+ *   <li>{@code constant(rate, duration)}</li>
+ *   <li>{@code ramp(from, to, duration)}: the rate changes linearly from {@code from} to {@code to}.</li>
+ *   <li>{@code steps(from, step, numSteps, stepDuration)}: a ladder of {@code numSteps} steps, starting at
+ *   {@code from} and increasing by {@code step} (which may be negative) every {@code stepDuration}.</li>
+ *   <li>{@code sine(mean, amplitude, period, duration)}: the rate oscillates around {@code mean}.</li>
+ *   <li>{@code burst(base, peak, every, length, duration)}: the rate is {@code peak} for the last {@code length} of
+ *   every {@code every}, and {@code base} otherwise.</li>
+ *   <li>{@code poisson(duration)}, {@code pareto(duration)}: the rate is drawn from the {@link PoissonGenerator} or
+ *   {@link ParetoGenerator} (configured as usual) once per unit ({@code opsUnit} seconds).</li>
+ * </ul>
+ *
+ * Rates are in operations per second. Durations are in seconds, unless they end with "ms", "s", "m" or "h".
+ *
+ * The schedule is followed at a finer grain than the unit, so that bursts, steps and oscillations shorter than a unit
+ * are not averaged away: each call to {@link ScheduleGenerator#get()} returns the mean rate of the next step of the
+ * schedule ({@link ScheduleGenerator#STEP_SECONDS} seconds), which may span several phases. Features shorter than a
+ * step are still averaged, and a warning is logged for the phases that have any. Once the schedule is over, the rate
+ * is zero.
+ */
+public class ScheduleGenerator extends DistributionGenerator {
+  public static final Logger LOG = LoggerFactory.getLogger(ScheduleGenerator.class);
+
+  private static final Pattern PHASE_PATTERN = Pattern.compile("\\s*([a-zA-Z]+)\\s*\\((.*)\\)\\s*");
+  private static final Pattern DURATION_PATTERN = Pattern.compile("([0-9]*\\.?[0-9]+)\\s*(ms|s|m|h)?");
+
+  /**
+   * The length of the steps at which the limiter follows the schedule, in seconds.
+   */
+  public static final double STEP_SECONDS = 0.1;
+
+  /**
+   * The number of points at which the rate of a phase is evaluated to compute its mean over a step.
+   */
+  private static final int NUM_SAMPLES = 16;
+
+  private final List<Phase> phases;
+  private final double[] phaseStarts;
+  private final double totalDuration;
+  private final double stepSeconds;
+
+  /**
+   * The units skipped by the limiter (see {@code interleaved.bm.iat.skipunit}) still consume the schedule, so
+   * the workload starts this far into it.
+   */
+  private final double skippedSeconds;
+
+  /**
+   * The index of the next step. Steps are counted, rather than their durations summed, so that rounding errors do
+   * not accumulate over a long schedule.
+   */
+  private long nextStep = 0;
+
+  /**
+   * The index of the last phase that was logged as started.
+   */
+  private int lastStartedPhase = -1;
+
+  public ScheduleGenerator(BMConfiguration bmConf) {
+    super(bmConf);
+    this.phases = parse(bmConf.getInterleavedBMIaTSchedule(), bmConf);
+    this.stepSeconds = STEP_SECONDS;
+    this.skippedSeconds = bmConf.getInterleavedBMIaTSkipUnit() * unitSeconds;
+
+    this.phaseStarts = new double[phases.size()];
+    double start = 0;
+    for (int i = 0; i < phases.size(); i++) {
+      phaseStarts[i] = start;
+      start += phases.get(i).duration;
+    }
+    this.totalDuration = start;
+
+    LOG.info("Arrival-rate schedule (" + totalDuration + " seconds):");
+    for (int i = 0; i < phases.size(); i++) {
+      LOG.info("  " + getPhaseLabel(i) + " starting at " + phaseStarts[i] + " s");
+      if (phases.get(i).getShortestFeature() < stepSeconds)
+        LOG.warn("Schedule phase " + getPhaseLabel(i) + " changes faster than the limiter follows the schedule (" +
+            stepSeconds + " s). Its rate will be averaged over each " + stepSeconds + " s.");
+    }
+  }
+
+  @Override
+  public double get() {
+    double from = nextStep * stepSeconds;
+    double to = (nextStep + 1) * stepSeconds;
+    nextStep++;
+
+    double numOperations = 0;
+    for (int i = 0; i < phases.size(); i++) {
+      double phaseStart = phaseStarts[i];
+      double phaseEnd = phaseStart + phases.get(i).duration;
+      if (phaseEnd <= from || phaseStart >= to)
+        continue;
+
+      if (i > lastStartedPhase) {
+        lastStartedPhase = i;
+        LOG.info("Entering schedule phase " + getPhaseLabel(i) + " at " + Math.max(phaseStart - skippedSeconds, 0) +
+            " s into the workload.");
+      }
+
+      double overlapStart = Math.max(from, phaseStart);
+      double overlapEnd = Math.min(to, phaseEnd);
+      numOperations += phases.get(i).getMeanRate(overlapStart - phaseStart, overlapEnd - phaseStart) *
+          (overlapEnd - overlapStart);
+    }
+
+    if (from < totalDuration && to >= totalDuration)
+      LOG.info("The arrival-rate schedule ends " + Math.max(totalDuration - skippedSeconds, 0) +
+          " s into the workload. No more operations will be scheduled.");
+
+    return numOperations / stepSeconds;
+  }
+
+  @Override
+  public double getStepSeconds() {
+    return stepSeconds;
+  }
+
+  /**
+   * Return the label of the given phase, which identifies it in logs and in the timeline of the results.
+   */
+  public String getPhaseLabel(int index) {
+    return (index + 1) + "/" + phases.size() + " " + phases.get(index);
+  }
+
+  public int getNumPhases() {
+    return phases.size();
+  }
+
+  /**
+   * Return the time at which the given phase starts, in milliseconds after the start of the workload. Phases that
+   * started before the workload (because of skipped units) start at 0, and those that ended before it at -1.
+   */
+  public long getPhaseStartMillis(int index) {
+    double end = phaseStarts[index] + phases.get(index).duration;
+    if (end <= skippedSeconds)
+      return -1;
+    return (long) (Math.max(phaseStarts[index] - skippedSeconds, 0) * 1000);
+  }
+
+  /**
+   * Parse a schedule. See the description of the class for the format.
+   */
+  public static List<Phase> parse(String schedule, BMConfiguration bmConf) {
+    List<Phase> phases = new ArrayList<>();
+    for (String spec : schedule.split(";")) {
+      if (spec.trim().isEmpty())
+        continue;
+
+      Matcher matcher = PHASE_PATTERN.matcher(spec);
+      if (!matcher.matches())
+        throw new IllegalArgumentException("Malformed schedule phase '" + spec.trim() + "'. Expected e.g. " +
+            "'ramp(100, 1000, 60s)'.");
+
+      String type = matcher.group(1).toLowerCase(Locale.ROOT);
+      String[] args = matcher.group(2).trim().isEmpty() ? new String[0] : matcher.group(2).split(",");
+      for (int i = 0; i < args.length; i++)
+        args[i] = args[i].trim();
+
+      try {
+        phases.add(parsePhase(type, args, bmConf));
+      } catch (IllegalArgumentException ex) {
+        throw new IllegalArgumentException("Invalid schedule phase '" + spec.trim() + "': " + ex.getMessage());
+      }
+    }
+
+    if (phases.isEmpty())
+      throw new IllegalArgumentException("The SCHEDULE inter-arrival distribution requires a schedule. " +
+          "Please set 'interleaved.bm.iat.schedule'.");
+
+    return Collections.unmodifiableList(phases);
+  }
+
+  private static Phase parsePhase(String type, String[] args, BMConfiguration bmConf) {
+    switch (type) {
+      case "constant":
+        checkNumArgs(args, "rate, duration");
+        return new ConstantPhase(parseRate(args[0]), parseDuration(args[1]));
+      case "ramp":
+        checkNumArgs(args, "from, to, duration");
+        return new RampPhase(parseRate(args[0]), parseRate(args[1]), parseDuration(args[2]));
+      case "steps":
+        checkNumArgs(args, "from, step, numSteps, stepDuration");
+        int numSteps = Integer.parseInt(args[2]);
+        if (numSteps <= 0)
+          throw new IllegalArgumentException("The number of steps must be positive. Got: " + numSteps);
+        return new StepsPhase(parseRate(args[0]), Double.parseDouble(args[1]), numSteps, parseDuration(args[3]));
+      case "sine":
+        checkNumArgs(args, "mean, amplitude, period, duration");
+        return new SinePhase(parseRate(args[0]), Double.parseDouble(args[1]), parseDuration(args[2]),
+            parseDuration(args[3]));
+      case "burst":
+        checkNumArgs(args, "base, peak, every, length, duration");
+        double every = parseDuration(args[2]);
+        double length = parseDuration(args[3]);
+        if (length > every)
+          throw new IllegalArgumentException("Bursts cannot be longer than the interval between them.");
+        return new BurstPhase(parseRate(args[0]), parseRate(args[1]), every, length, parseDuration(args[4]));
+      case "poisson":
+        checkNumArgs(args, "duration");
+        return new DistributionPhase("poisson", new PoissonGenerator(bmConf), parseDuration(args[0]),
+            Math.max(bmConf.getInterleavedBMIaTUnit(), 1));
+      case "pareto":
+        checkNumArgs(args, "duration");
+        return new DistributionPhase("pareto", new ParetoGenerator(bmConf), parseDuration(args[0]),
+            Math.max(bmConf.getInterleavedBMIaTUnit(), 1));
+      default:
+        throw new IllegalArgumentException("Unknown phase type '" + type + "'. Supported types are constant, " +
+            "ramp, steps, sine, burst, poisson and pareto.");
+    }
+  }
+
+  private static void checkNumArgs(String[] args, String expected) {
+    if (args.length != expected.split(",").length)
+      throw new IllegalArgumentException("Expected arguments (" + expected + "). Got " + args.length +
+          " argument(s).");
+  }
+
+  private static double parseRate(String str) {
+    double rate = Double.parseDouble(str);
+    if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate))
+      throw new IllegalArgumentException("Rates must be finite and non-negative. Got: " + str);
+    return rate;
+  }
+
+  /**
+   * Parse a (positive) duration, and return it in seconds.
+   */
+  private static double parseDuration(String str) {
+    Matcher matcher = DURATION_PATTERN.matcher(str);
+    if (!matcher.matches())
+      throw new IllegalArgumentException("Malformed duration '" + str + "'. Expected e.g. '500ms', '30s', " +
+          "'2m' or '1h'.");
+
+    double value = Double.parseDouble(matcher.group(1));
+    String unit = matcher.group(2) == null ? "s" : matcher.group(2);
+    switch (unit) {
+      case "ms": value /= 1000; break;
+      case "m": value *= 60; break;
+      case "h": value *= 3600; break;
+      default: break;
+    }
+
+    if (value <= 0)
+      throw new IllegalArgumentException("Durations must be positive. Got: " + str);
+    return value;
+  }
+
+  private static String format(double value) {
+    return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+  }
+
+  /**
+   * A phase of a schedule.
+   */
+  public abstract static class Phase {
+    /**
+     * The duration of the phase, in seconds.
+     */
+    protected final double duration;
+
+    protected Phase(double duration) {
+      this.duration = duration;
+    }
+
+    public double getDuration() {
+      return duration;
+    }
+
+    /**
+     * Return the rate at the given time, in seconds after the start of the phase.
+     */
+    public abstract double getRate(double time);
+
+    /**
+     * Return the duration, in seconds, of the shortest stretch over which the rate of the phase does not change (or
+     * of a quarter of the period of a periodic phase).
+     */
+    public double getShortestFeature() {
+      return duration;
+    }
+
+    /**
+     * Return the mean rate between the given times, in seconds after the start of the phase.
+     */
+    public double getMeanRate(double from, double to) {
+      double step = (to - from) / NUM_SAMPLES;
+      double sum = 0;
+      for (int i = 0; i < NUM_SAMPLES; i++)
+        sum += getRate(from + (i + 0.5) * step);
+      return sum / NUM_SAMPLES;
+    }
+  }
+
+  static class ConstantPhase extends Phase {
+    private final double rate;
+
+    ConstantPhase(double rate, double duration) {
+      super(duration);
+      this.rate = rate;
+    }
+
+    @Override
+    public double getRate(double time) {
+      return rate;
+    }
+
+    @Override
+    public String toString() {
+      return "constant(" + format(rate) + ", " + format(duration) + "s)";
+    }
+  }
+
+  static class RampPhase extends Phase {
+    private final double from;
+    private final double to;
+
+    RampPhase(double from, double to, double duration) {
+      super(duration);
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public double getRate(double time) {
+      return from + (to - from) * time / duration;
+    }
+
+    @Override
+    public String toString() {
+      return "ramp(" + format(from) + ", " + format(to) + ", " + format(duration) + "s)";
+    }
+  }
+
+  static class StepsPhase extends Phase {
+    private final double from;
+    private final double step;
+    private final int numSteps;
+
+    StepsPhase(double from, double step, int numSteps, double stepDuration) {
+      super(stepDuration * numSteps);
+      this.from = from;
+      this.step = step;
+      this.numSteps = numSteps;
+    }
+
+    @Override
+    public double getRate(double time) {
+      int stepIndex = Math.min((int) (time / (duration / numSteps)), numSteps - 1);
+      return Math.max(from + stepIndex * step, 0);
+    }
+
+    @Override
+    public double getShortestFeature() {
+      return duration / numSteps;
+    }
+
+    @Override
+    public String toString() {
+      return "steps(" + format(from) + ", " + format(step) + ", " + numSteps + ", " + format(duration / numSteps) +
+          "s)";
+    }
+  }
+
+  static class SinePhase extends Phase {
+    private final double mean;
+    private final double amplitude;
+    private final double period;
+
+    SinePhase(double mean, double amplitude, double period, double duration) {
+      super(duration);
+      this.mean = mean;
+      this.amplitude = amplitude;
+      this.period = period;
+    }
+
+    @Override
+    public double getRate(double time) {
+      return Math.max(mean + amplitude * Math.sin(2 * Math.PI * time / period), 0);
+    }
+
+    @Override
+    public double getShortestFeature() {
+      return Math.min(period / 4, duration);
+    }
+
+    @Override
+    public String toString() {
+      return "sine(" + format(mean) + ", " + format(amplitude) + ", " + format(period) + "s, " + format(duration) +
+          "s)";
+    }
+  }
+
+  static class BurstPhase extends Phase {
+    private final double base;
+    private final double peak;
+    private final double every;
+    private final double length;
+
+    BurstPhase(double base, double peak, double every, double length, double duration) {
+      super(duration);
+      this.base = base;
+      this.peak = peak;
+      this.every = every;
+      this.length = length;
+    }
+
+    @Override
+    public double getRate(double time) {
+      return time % every >= every - length ? peak : base;
+    }
+
+    @Override
+    public double getShortestFeature() {
+      double shortest = Math.min(length, duration);
+      return length < every ? Math.min(shortest, every - length) : shortest;
+    }
+
+    @Override
+    public String toString() {
+      return "burst(" + format(base) + ", " + format(peak) + ", " + format(every) + "s, " + format(length) + "s, " +
+          format(duration) + "s)";
+    }
+  }
+
+  /**
+   * A phase whose rate is drawn from a {@link DistributionGenerator}, once per unit. The rate of a step that starts
+   * in a new unit is drawn anew, and that of the other steps is the last rate drawn.
+   */
+  static class DistributionPhase extends Phase {
+    private final String name;
+    private final DistributionGenerator generator;
+    private final double unitSeconds;
+
+    /**
+     * The unit (counted from the start of the phase) of the last rate drawn, or -1 if none has been drawn yet.
+     */
+    private long currentUnit = -1;
+    private double rate = 0;
+
+    DistributionPhase(String name, DistributionGenerator generator, double duration, double unitSeconds) {
+      super(duration);
+      this.name = name;
+      this.generator = generator;
+      this.unitSeconds = unitSeconds;
+    }
+
+    @Override
+    public double getRate(double time) {
+      // Steps are much shorter than units, so a small tolerance keeps rounding errors from starting a unit early.
+      long unit = (long) Math.floor(time / unitSeconds + 1e-6);
+      if (unit != currentUnit) {
+        currentUnit = unit;
+        rate = Math.max(generator.get(), 0);
+      }
+      return rate;
+    }
+
+    @Override
+    public double getMeanRate(double from, double to) {
+      return getRate(from);
+    }
+
+    @Override
+    public double getShortestFeature() {
+      return Math.min(unitSeconds, duration);
+    }
+
+    @Override
+    public String toString() {
+      return name + "(" + format(duration) + "s)";
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gmail.benrcarver.distributed.workload.limiter;
+
+import com.gmail.benrcarver.distributed.coin.BMConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Replays a recorded trace of request rates, rather than synthesizing them. The trace holds the global rate (in
+ * operations per second, across all VMs) of every second, and is streamed from disk, so its size does not matter.
+ *
+ * A trace is either a text file with one rate per line, or, if its name ends with ".bin", a sequence of big-endian
+ * 64-bit floating point rates. In a text file, blank lines and lines starting with '#' are ignored, a first line that
+ * is not a number is taken to be a header, and if a line has several comma-separated fields, the last one is the
+ * rate (so "timestamp,rate" records can be used as-is).
+ *
+ * Each call to {@link TraceGenerator#get()} consumes {@code opsUnit} seconds of the trace and returns their mean rate,
+ * multiplied by the configured scale. Within each unit, the {@link DistributionRateLimiter} spaces the operations
+ * evenly and splits them among the VMs. Once the trace is exhausted (or the generator is closed), the rate is zero.
+ */
+public class TraceGenerator extends DistributionGenerator {
+  public static final Logger LOG = LoggerFactory.getLogger(TraceGenerator.class);
+
+  private final String traceFile;
+  private final double scale;
+  private final int opsUnit;
+  private final boolean binary;
+
+  private BufferedReader textReader;
+  private DataInputStream binaryReader;
+  /**
+   * Set once the trace is exhausted or the generator is closed. Volatile, as the workload closes the generator from
+   * a different thread than the one replaying the trace.
+   */
+  private volatile boolean exhausted = false;
+  private long numRecords = 0;
+
+  public TraceGenerator(BMConfiguration bmConf) {
+    super(bmConf);
+    this.traceFile = bmConf.getInterleavedBMIaTTraceFile();
+    this.scale = bmConf.getInterleavedBMIaTTraceScale();
+    this.opsUnit = Math.max(bmConf.getInterleavedBMIaTUnit(), 1);
+    this.binary = traceFile.endsWith(".bin");
+
+    if (traceFile.isEmpty())
+      throw new IllegalArgumentException("The TRACE inter-arrival distribution requires a trace file. " +
+          "Please set 'interleaved.bm.iat.trace.file'.");
+
+    try {
+      if (binary)
+        binaryReader = new DataInputStream(new BufferedInputStream(new FileInputStream(traceFile)));
+      else
+        textReader = new BufferedReader(new InputStreamReader(new FileInputStream(traceFile),
+            StandardCharsets.UTF_8));
+    } catch (IOException ex) {
+      throw new IllegalArgumentException("Could not open trace file '" + traceFile + "': " + ex);
+    }
+
+    LOG.info("Replaying request rates from trace file '" + traceFile + "' (scale=" + scale + ").");
+  }
+
+  @Override
+  public double get() {
+    double sum = 0;
+    for (int i = 0; i < opsUnit; i++) {
+      double rate = nextRecord();
+      if (rate < 0)
+        break;
+      sum += rate;
+    }
+    return sum / opsUnit * scale;
+  }
+
+  /**
+   * Return the next rate of the trace, or -1 if the trace is exhausted.
+   */
+  private double nextRecord() {
+    if (exhausted)
+      return -1;
+
+    try {
+      double rate = binary ? nextBinaryRecord() : nextTextRecord();
+      if (rate >= 0) {
+        numRecords++;
+        return rate;
+      }
+    } catch (IOException | IllegalArgumentException ex) {
+      // The stream fails once it has been closed, which is not an error.
+      if (exhausted)
+        return -1;
+      LOG.error("Failed to read record " + (numRecords + 1) + " of trace file '" + traceFile + "':", ex);
+    }
+
+    LOG.warn("Trace file '" + traceFile + "' is exhausted after " + numRecords + " second(s). No more operations " +
+        "will be scheduled.");
+    close();
+    return -1;
+  }
+
+  private double nextBinaryRecord() throws IOException {
+    double rate;
+    try {
+      rate = binaryReader.readDouble();
+    } catch (EOFException ex) {
+      return -1;
+    }
+    return validateRate(rate);
+  }
+
+  private double nextTextRecord() throws IOException {
+    String line;
+    while ((line = textReader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#"))
+        continue;
+
+      String field = line.substring(line.lastIndexOf(',') + 1).trim();
+      try {
+        return validateRate(Double.parseDouble(field));
+      } catch (NumberFormatException ex) {
+        if (numRecords > 0)
+          throw new IllegalArgumentException("Malformed rate '" + field + "'.");
+        // The header.
+      }
+    }
+    return -1;
+  }
+
+  private static double validateRate(double rate) {
+    if (rate < 0 || Double.isNaN(rate) || Double.isInfinite(rate))
+      throw new IllegalArgumentException("Rates must be finite and non-negative. Got: " + rate);
+    return rate;
+  }
+
+  /**
+   * Return the number of seconds of the trace that have been replayed so far.
+   */
+  public long getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * Close the trace file. Safe to call more than once, and whether or not the trace is exhausted.
+   */
+  @Override
+  public synchronized void close() {
+    exhausted = true;
+    try {
+      if (binaryReader != null)
+        binaryReader.close();
+      if (textReader != null)
+        textReader.close();
+    } catch (IOException ex) {
+      // Ignore
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package com.gmail.benrcarver.distributed.workload.random;
+
+/**
+ * The distributions from which a file pool can select the files (or directories) that operations target.
+ * See {@link KeySelector#create}.
+ */
+public enum KeyDistribution {
+  /**
+   * Every key is equally likely.
+   */
+  UNIFORM,
+
+  /**
+   * Zipfian over the keys, in the order in which they were added: the oldest keys are the most popular.
+   */
+  ZIPFIAN,
+
+  /**
+   * Zipfian, but with the popular keys scattered across the key space rather than clustered at the start.
+   */
+  SCRAMBLED_ZIPFIAN,
+
+  /**
+   * A fraction of the operations go to a (uniformly-selected) key in a hot set at the start of the key space.
+   */
+  HOTSPOT,
+
+  /**
+   * Zipfian, with the most recently added keys being the most popular.
+   */
+  LATEST
+}
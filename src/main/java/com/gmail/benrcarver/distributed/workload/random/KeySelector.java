@@ -0,0 +1,194 @@
+package com.gmail.benrcarver.distributed.workload.random;
+
+import java.util.SplittableRandom;
+
+/**
+ * Selects a key (i.e., an index) from a key space whose size may change from one call to the next, as is the case
+ * for the files of a file pool. This is unlike the generators of this package, which are built for a fixed number of
+ * items and keep the last value they generated.
+ *
+ * Selectors are stateless: their randomness comes from the generator passed to {@link KeySelector#select}, so a
+ * single instance can be used by any number of threads without locking, and the keys a thread selects are
+ * reproducible when its generator is seeded.
+ */
+public abstract class KeySelector {
+  /**
+   * Return a key in the range [0, numKeys). numKeys must be positive.
+   *
+   * @param random The calling thread's own generator.
+   */
+  public abstract int select(int numKeys, SplittableRandom random);
+
+  /**
+   * Create a selector.
+   *
+   * @param distribution The distribution of the selected keys.
+   * @param zipfianTheta The skew of the zipfian distributions. Must be positive.
+   * @param hotDataFraction For {@link KeyDistribution#HOTSPOT}, the fraction of the keys that are hot.
+   * @param hotOpFraction For {@link KeyDistribution#HOTSPOT}, the fraction of the selections that target a hot key.
+   */
+  public static KeySelector create(KeyDistribution distribution, double zipfianTheta, double hotDataFraction,
+                                   double hotOpFraction) {
+    switch (distribution) {
+      case UNIFORM:
+        return UNIFORM;
+      case ZIPFIAN:
+        return new ZipfianKeySelector(zipfianTheta);
+      case SCRAMBLED_ZIPFIAN:
+        return new ZipfianKeySelector(zipfianTheta) {
+          @Override
+          public int select(int numKeys, SplittableRandom random) {
+            return (int) Math.floorMod(Utils.fnvhash64(nextRank(numKeys, random)), (long) numKeys);
+          }
+        };
+      case LATEST:
+        return new ZipfianKeySelector(zipfianTheta) {
+          @Override
+          public int select(int numKeys, SplittableRandom random) {
+            return numKeys - nextRank(numKeys, random);
+          }
+        };
+      case HOTSPOT:
+        return new HotspotKeySelector(hotDataFraction, hotOpFraction);
+      default:
+        throw new IllegalArgumentException("Unsupported key distribution: " + distribution);
+    }
+  }
+
+  /**
+   * Selects every key with the same probability.
+   */
+  public static final KeySelector UNIFORM = new KeySelector() {
+    @Override
+    public int select(int numKeys, SplittableRandom random) {
+      return random.nextInt(numKeys);
+    }
+
+    @Override
+    public String toString() {
+      return "UNIFORM";
+    }
+  };
+
+  /**
+   * Selects keys with a zipfian distribution over their index: key i has a probability proportional to
+   * 1 / (i + 1)^theta.
+   *
+   * The YCSB {@link ZipfianRandom} relies on zeta(n), which takes O(n) to compute and has to be recomputed whenever
+   * the number of keys changes. This uses the rejection-inversion method of Hormann and Derflinger instead
+   * ("Rejection-inversion to generate variates from monotone discrete distributions", 1996), which takes O(1)
+   * regardless of the number of keys, and needs no per-size state.
+   */
+  public static class ZipfianKeySelector extends KeySelector {
+    private final double theta;
+    private final double hIntegralX1;
+    private final double s;
+
+    public ZipfianKeySelector(double theta) {
+      if (!(theta > 0))
+        throw new IllegalArgumentException("The zipfian constant must be positive. Got: " + theta);
+
+      this.theta = theta;
+      this.hIntegralX1 = hIntegral(1.5) - 1.0;
+      this.s = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    @Override
+    public int select(int numKeys, SplittableRandom random) {
+      return nextRank(numKeys, random) - 1;
+    }
+
+    /**
+     * Return a rank in the range [1, numKeys], where rank 1 is the most popular.
+     */
+    protected int nextRank(int numKeys, SplittableRandom random) {
+      double hIntegralNumKeys = hIntegral(numKeys + 0.5);
+
+      while (true) {
+        double u = hIntegralNumKeys + random.nextDouble() * (hIntegralX1 - hIntegralNumKeys);
+        double x = hIntegralInverse(u);
+        int k = (int) (x + 0.5);
+        if (k < 1)
+          k = 1;
+        else if (k > numKeys)
+          k = numKeys;
+
+        if (k - x <= s || u >= hIntegral(k + 0.5) - h(k))
+          return k;
+      }
+    }
+
+    private double h(double x) {
+      return Math.exp(-theta * Math.log(x));
+    }
+
+    private double hIntegral(double x) {
+      double logX = Math.log(x);
+      return helper2((1.0 - theta) * logX) * logX;
+    }
+
+    private double hIntegralInverse(double x) {
+      double t = x * (1.0 - theta);
+      if (t < -1.0)
+        t = -1.0; // Guards against rounding errors.
+      return Math.exp(helper1(t) * x);
+    }
+
+    /**
+     * log(1 + x) / x, accurate near 0.
+     */
+    private static double helper1(double x) {
+      if (Math.abs(x) > 1e-8)
+        return Math.log1p(x) / x;
+      return 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+    }
+
+    /**
+     * (exp(x) - 1) / x, accurate near 0.
+     */
+    private static double helper2(double x) {
+      if (Math.abs(x) > 1e-8)
+        return Math.expm1(x) / x;
+      return 1.0 + x * 0.5 * (1.0 + x * 1.0 / 3.0 * (1.0 + 0.25 * x));
+    }
+
+    @Override
+    public String toString() {
+      return getClass().getSimpleName() + "(theta=" + theta + ")";
+    }
+  }
+
+  /**
+   * Selects a key from the first {@code hotDataFraction} of the key space with probability {@code hotOpFraction},
+   * and from the rest of the key space otherwise. Keys are selected uniformly within each set.
+   */
+  public static class HotspotKeySelector extends KeySelector {
+    private final double hotDataFraction;
+    private final double hotOpFraction;
+
+    public HotspotKeySelector(double hotDataFraction, double hotOpFraction) {
+      if (hotDataFraction < 0 || hotDataFraction > 1)
+        throw new IllegalArgumentException("The hot data fraction must be between 0 and 1. Got: " +
+            hotDataFraction);
+      if (hotOpFraction < 0 || hotOpFraction > 1)
+        throw new IllegalArgumentException("The hot operation fraction must be between 0 and 1. Got: " +
+            hotOpFraction);
+
+      this.hotDataFraction = hotDataFraction;
+      this.hotOpFraction = hotOpFraction;
+    }
+
+    @Override
+    public int select(int numKeys, SplittableRandom random) {
+      int numHotKeys = Math.max(1, (int) (numKeys * hotDataFraction));
+      if (numHotKeys >= numKeys || random.nextDouble() < hotOpFraction)
+        return random.nextInt(numHotKeys);
+      return numHotKeys + random.nextInt(numKeys - numHotKeys);
+    }
+
+    @Override
+    public String toString() {
+      return "HotspotKeySelector(hotDataFraction=" + hotDataFraction + ", hotOpFraction=" + hotOpFraction + ")";
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.gmail.benrcarver.distributed.coin;
+
+import com.gmail.benrcarver.distributed.FSOperation;
+import com.gmail.benrcarver.distributed.workload.files.FilePool;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an {@link InterleavedMultiFaceCoin} flips each operation of the {@link FSOperation} registry with the
+ * percentage it was given, including operations registered outside of {@link FSOperation}.
+ */
+public class InterleavedMultiFaceCoinTest {
+    private static final int NUM_FLIPS = 200000;
+
+    /**
+     * The largest difference allowed between the percentage of flips of an operation and its configured percentage.
+     */
+    private static final double MAX_ERROR_PERCENTAGE = 0.5;
+
+    private static final FSOperation CUSTOM_OPERATION = FSOperation.register(
+            new FSOperation("COIN TEST OPERATION", false, FilePool::getFileToRead) {
+                @Override
+                public boolean call(DistributedFileSystem hdfs, String path, String content) {
+                    return true;
+                }
+            });
+
+    @Test
+    public void flipsMatchPercentages() {
+        Map<String, BigDecimal> percentages = new LinkedHashMap<>();
+        percentages.put(FSOperation.READ_FILE.getName(), new BigDecimal("70.5"));
+        percentages.put(FSOperation.FILE_INFO.getName(), new BigDecimal("19.5"));
+        percentages.put(FSOperation.RENAME_FILE.getName(), new BigDecimal(10));
+
+        assertFlipsMatch(percentages);
+    }
+
+    @Test
+    public void flipsRegisteredOperations() {
+        Map<String, BigDecimal> percentages = new LinkedHashMap<>();
+        percentages.put(FSOperation.READ_FILE.getName(), new BigDecimal(60));
+        percentages.put(CUSTOM_OPERATION.getName(), new BigDecimal(40));
+
+        assertFlipsMatch(percentages);
+    }
+
+    @Test
+    public void builtInPercentagesMapToTheirOperations() {
+        BigDecimal zero = BigDecimal.ZERO;
+        InterleavedMultiFaceCoin coin = new InterleavedMultiFaceCoin(zero, zero, zero, zero, zero, zero, zero,
+                zero, zero, zero, new BigDecimal(100), zero, zero, zero, zero, new SplittableRandom(3));
+
+        for (int i = 0; i < 1000; i++)
+            assertEquals(FSOperation.SET_REPLICATION, coin.flip());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownOperations() {
+        Map<String, BigDecimal> percentages = new HashMap<>();
+        percentages.put("NO SUCH OPERATION", new BigDecimal(100));
+        new InterleavedMultiFaceCoin(percentages, new SplittableRandom(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPercentagesThatDoNotAddUpTo100() {
+        Map<String, BigDecimal> percentages = new HashMap<>();
+        percentages.put(FSOperation.READ_FILE.getName(), new BigDecimal(90));
+        new InterleavedMultiFaceCoin(percentages, new SplittableRandom(1));
+    }
+
+    private static void assertFlipsMatch(Map<String, BigDecimal> percentages) {
+        InterleavedMultiFaceCoin coin = new InterleavedMultiFaceCoin(percentages, new SplittableRandom(42));
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < NUM_FLIPS; i++)
+            counts.merge(coin.flip().getName(), 1, Integer::sum);
+
+        for (String name : counts.keySet())
+            assertTrue("Flipped " + name + ", which was not given a percentage", percentages.containsKey(name));
+
+        for (Map.Entry<String, BigDecimal> entry : percentages.entrySet()) {
+            double percentage = 100.0 * counts.getOrDefault(entry.getKey(), 0) / NUM_FLIPS;
+            assertTrue(entry.getKey() + " was flipped " + percentage + "% of the time (expected " +
+                            entry.getValue() + "%)",
+                    Math.abs(percentage - entry.getValue().doubleValue()) <= MAX_ERROR_PERCENTAGE);
+        }
+    }
+}
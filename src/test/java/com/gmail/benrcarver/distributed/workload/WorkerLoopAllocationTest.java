@@ -0,0 +1,126 @@
+package com.gmail.benrcarver.distributed.workload;
+
+import com.gmail.benrcarver.distributed.FSOperation;
+import com.gmail.benrcarver.distributed.coin.InterleavedMultiFaceCoin;
+import com.gmail.benrcarver.distributed.util.LatencyRecorder;
+import com.gmail.benrcarver.distributed.util.TimelineRecorder;
+import com.gmail.benrcarver.distributed.workload.files.CompactPathStore;
+import com.gmail.benrcarver.distributed.workload.files.FilePool;
+import com.gmail.benrcarver.distributed.workload.files.FilePoolUtils;
+import com.gmail.benrcarver.distributed.workload.files.FileSelectionPolicy;
+import com.gmail.benrcarver.distributed.workload.files.FileTreeGenerator;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the client-side bookkeeping of the {@link RandomlyGeneratedWorkload.Worker} loop stays (nearly)
+ * allocation-free: flipping the operation coin, selecting a path from the file pool, building rename targets, and
+ * recording each operation's latency into the per-thread histograms and the shared timeline.
+ *
+ * The HDFS client call itself is left out, as it needs a running file system. The allocations are measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}, so the test is skipped on JVMs that do not
+ * support it.
+ */
+public class WorkerLoopAllocationTest {
+    private static final int NUM_FILES = 100000;
+
+    private static final int WARMUP_ITERATIONS = 200000;
+    private static final int MEASURED_ITERATIONS = 1000000;
+
+    /**
+     * The paths handed out by the file pool are decoded into new strings, and every rename builds the string of its
+     * target, so a few allocations per operation are expected. Anything more (boxing, iterators, temporary
+     * builders or arrays on every operation) pushes the average well above this budget.
+     */
+    private static final long MAX_BYTES_PER_OPERATION = 512;
+
+    @Test
+    public void workerLoopStaysWithinAllocationBudget() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        // Mostly reads and metadata operations, plus renames, which build a new path every time. Creates and
+        // deletes are left out so that the size of the store does not change while measuring.
+        InterleavedMultiFaceCoin coin = new InterleavedMultiFaceCoin(new BigDecimal(0), new BigDecimal(0),
+                new BigDecimal(40), new BigDecimal(10), new BigDecimal(0), new BigDecimal(10),
+                new BigDecimal(10), new BigDecimal(0), new BigDecimal(0), new BigDecimal(0),
+                new BigDecimal(0), new BigDecimal(20), new BigDecimal(10), new BigDecimal(0),
+                new BigDecimal(0), new SplittableRandom(42));
+
+        FilePool pool = new FileTreeGenerator("/test", 16, 4, 6,
+                new CompactPathStore(FileTreeGenerator.THRESHOLD), FileSelectionPolicy.UNIFORM);
+        pool.setRandom(new SplittableRandom(7));
+        for (int i = 0; i < NUM_FILES; i++)
+            pool.fileCreationSucceeded(pool.getFileToCreate());
+
+        LatencyRecorder latencyRecorder = new LatencyRecorder(8);
+        TimelineRecorder timeline = new TimelineRecorder(1000);
+        StringBuilder renameTarget = new StringBuilder(256);
+        long timestampMillis = System.currentTimeMillis();
+
+        runWorkerLoop(WARMUP_ITERATIONS, coin, pool, latencyRecorder, timeline, renameTarget, timestampMillis);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+        int numOperations = runWorkerLoop(MEASURED_ITERATIONS, coin, pool, latencyRecorder, timeline,
+                renameTarget, timestampMillis);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(MEASURED_ITERATIONS, numOperations);
+        long bytesPerOperation = allocated / numOperations;
+        assertTrue("The worker loop allocated " + bytesPerOperation + " bytes per operation (budget: " +
+                MAX_BYTES_PER_OPERATION + ")", bytesPerOperation <= MAX_BYTES_PER_OPERATION);
+    }
+
+    @Test
+    public void renameTargetIncrementsCounter() {
+        StringBuilder builder = new StringBuilder();
+        String once = RandomlyGeneratedWorkload.getRenameTarget("/test/dir/file", builder);
+        assertEquals("/test/dir/file_R0N0_1_Times", once);
+        String twice = RandomlyGeneratedWorkload.getRenameTarget(once, builder);
+        assertEquals("/test/dir/file_R0N0_2_Times", twice);
+
+        String renamed = "/test/dir/file_R0N0_41_Times";
+        assertEquals("/test/dir/file_R0N0_42_Times", RandomlyGeneratedWorkload.getRenameTarget(renamed, builder));
+    }
+
+    /**
+     * The bookkeeping of {@code RandomlyGeneratedWorkload.Worker#performOperation}, with every operation succeeding.
+     * All the operations are recorded at the same time, so that they fall into a single interval of the timeline.
+     *
+     * @return The number of operations for which the file pool returned a path.
+     */
+    private static int runWorkerLoop(int numIterations, InterleavedMultiFaceCoin coin, FilePool pool,
+                                     LatencyRecorder latencyRecorder, TimelineRecorder timeline,
+                                     StringBuilder renameTarget, long timestampMillis) {
+        int numOperations = 0;
+        for (int i = 0; i < numIterations; i++) {
+            FSOperation operation = coin.flip();
+            String path = FilePoolUtils.getPath(operation, pool);
+            if (path == null)
+                continue;
+
+            boolean isRename = operation == FSOperation.RENAME_FILE;
+            String to = isRename ? RandomlyGeneratedWorkload.getRenameTarget(path, renameTarget) : "";
+
+            long latency = 1000000L + (i & 0xFFFF) * 100L;
+            latencyRecorder.recordOperation(operation.getName(), latency);
+            timeline.record(operation.getName(), latency, true, timestampMillis);
+
+            if (isRename)
+                pool.fileRenamed(path, to);
+            numOperations++;
+        }
+        return numOperations;
+    }
+}
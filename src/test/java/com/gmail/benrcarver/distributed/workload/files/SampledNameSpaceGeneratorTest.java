@@ -0,0 +1,164 @@
+package com.gmail.benrcarver.distributed.workload.files;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the namespace realized by a {@link SampledNameSpaceGenerator} has the fan-out that was configured, i.e.,
+ * that the histograms of files and subdirectories per directory match the configured distributions.
+ */
+public class SampledNameSpaceGeneratorTest {
+    private static final String BASE_DIR = "/base";
+
+    private static final int NUM_FILES = 200000;
+
+    /**
+     * The largest total variation distance allowed between a realized histogram and the configured distribution.
+     * Only the few directories that are still open at the end should differ from what was drawn for them.
+     */
+    private static final double MAX_DISTANCE = 0.02;
+
+    @Test
+    public void filesPerDirectoryMatchesWithVariableDepth() {
+        // Files at every level. A shallow directory filling up must not cut short the directories below it.
+        String filesPerDir = "[(1,30),(4,40),(10,30)]";
+        NamespaceShape shape = new NamespaceShape(DiscreteDistribution.parse("[(1,50),(3,50)]"),
+                DiscreteDistribution.parse(filesPerDir), DiscreteDistribution.parse("[(1,1),(2,1),(3,1)]"),
+                DiscreteDistribution.fixed(8), 42);
+
+        Namespace namespace = generate(shape);
+
+        assertEquals(NUM_FILES, namespace.numFiles);
+        assertHistogramMatches(filesPerDir, namespace.filesPerDirectory(1, 3));
+    }
+
+    @Test
+    public void subdirectoriesPerDirectoryMatches() {
+        // Few files at level 2, so that the directories of levels 1 and 2 are there to hold those of the level below.
+        String dirsPerDir = "[(1,30),(2,40),(5,30)]";
+        String filesPerDir = "[(2,50),(6,50)]";
+        NamespaceShape shape = new NamespaceShape(DiscreteDistribution.parse(dirsPerDir),
+                DiscreteDistribution.parse(filesPerDir), DiscreteDistribution.parse("[(2,20),(3,80)]"),
+                DiscreteDistribution.fixed(8), 7);
+
+        Namespace namespace = generate(shape);
+
+        assertHistogramMatches(dirsPerDir, namespace.subdirectoriesPerDirectory(1, 2));
+        assertHistogramMatches(filesPerDir, namespace.filesPerDirectory(3, 3));
+    }
+
+    @Test
+    public void namesAreUnique() {
+        NamespaceShape shape = new NamespaceShape(DiscreteDistribution.parse("[(1,50),(3,50)]"),
+                DiscreteDistribution.parse("[(1,50),(5,50)]"), DiscreteDistribution.parse("[(0,1),(1,1),(4,1)]"),
+                DiscreteDistribution.parse("[(1,50),(3,50)]"), 1);
+        SampledNameSpaceGenerator generator = shape.newGenerator(BASE_DIR);
+
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < 50000; i++) {
+            assertTrue(paths.add(generator.getFileToCreate()));
+            assertTrue(paths.add(generator.generateNewDirPath()));
+        }
+    }
+
+    private static Namespace generate(NamespaceShape shape) {
+        SampledNameSpaceGenerator generator = shape.newGenerator(BASE_DIR);
+        Namespace namespace = new Namespace();
+        for (int i = 0; i < NUM_FILES; i++)
+            namespace.addFile(generator.getFileToCreate());
+        return namespace;
+    }
+
+    /**
+     * Compare a realized histogram (value -> number of directories) with a distribution written as a list of
+     * (value, weight) pairs.
+     */
+    private static void assertHistogramMatches(String expected, Map<Integer, Integer> realized) {
+        Map<Integer, Double> expectedProbabilities = new TreeMap<>();
+        double totalWeight = 0;
+        String[] tokens = expected.replaceAll("[\\[\\]()]", "").split(",");
+        for (int i = 0; i < tokens.length; i += 2) {
+            double weight = Double.parseDouble(tokens[i + 1]);
+            expectedProbabilities.put(Integer.parseInt(tokens[i]), weight);
+            totalWeight += weight;
+        }
+
+        long numDirectories = 0;
+        for (int count : realized.values())
+            numDirectories += count;
+        assertTrue("No directories to compare with " + expected, numDirectories > 0);
+
+        Set<Integer> values = new HashSet<>(expectedProbabilities.keySet());
+        values.addAll(realized.keySet());
+        double distance = 0;
+        for (int value : values) {
+            double expectedProbability = expectedProbabilities.getOrDefault(value, 0.0) / totalWeight;
+            double realizedProbability = realized.getOrDefault(value, 0) / (double) numDirectories;
+            distance += Math.abs(expectedProbability - realizedProbability) / 2;
+        }
+
+        assertTrue("Realized histogram " + new TreeMap<>(realized) + " does not match " + expected +
+                " (total variation distance " + distance + ")", distance <= MAX_DISTANCE);
+    }
+
+    /**
+     * The directories implied by a set of file paths, with their number of files and subdirectories.
+     */
+    private static class Namespace {
+        final Map<String, Integer> numFilesOf = new HashMap<>();
+        final Map<String, Integer> numSubdirectoriesOf = new HashMap<>();
+        long numFiles = 0;
+
+        void addFile(String path) {
+            numFiles++;
+            String directory = parentOf(path);
+            numFilesOf.merge(directory, 1, Integer::sum);
+
+            // Register the ancestors that we have not seen yet, from the bottom up.
+            while (!directory.equals(BASE_DIR) && !numSubdirectoriesOf.containsKey(directory)) {
+                numSubdirectoriesOf.put(directory, 0);
+                directory = parentOf(directory);
+                numSubdirectoriesOf.merge(directory, 1, Integer::sum);
+            }
+        }
+
+        Map<Integer, Integer> filesPerDirectory(int minDepth, int maxDepth) {
+            return histogram(numFilesOf, minDepth, maxDepth);
+        }
+
+        Map<Integer, Integer> subdirectoriesPerDirectory(int minDepth, int maxDepth) {
+            return histogram(numSubdirectoriesOf, minDepth, maxDepth);
+        }
+
+        private Map<Integer, Integer> histogram(Map<String, Integer> counts, int minDepth, int maxDepth) {
+            Map<Integer, Integer> histogram = new HashMap<>();
+            for (String directory : numSubdirectoriesOf.keySet()) {
+                int depth = depthOf(directory);
+                if (depth >= minDepth && depth <= maxDepth)
+                    histogram.merge(counts.getOrDefault(directory, 0), 1, Integer::sum);
+            }
+            return histogram;
+        }
+
+        private static String parentOf(String path) {
+            return path.substring(0, path.lastIndexOf('/'));
+        }
+
+        private static int depthOf(String directory) {
+            int depth = 0;
+            for (int i = BASE_DIR.length(); i < directory.length(); i++) {
+                if (directory.charAt(i) == '/')
+                    depth++;
+            }
+            return depth;
+        }
+    }
+}